@@ -0,0 +1,135 @@
+package com.birdsenger.dao;
+
+import com.birdsenger.model.Message;
+import com.birdsenger.model.MessageStatus;
+import com.birdsenger.model.MessageType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MessageDAO against a seeded SQLite file
+ *
+ * Each fork gets a scratch database (birdsenger.db.path) holding a number
+ * of users, one conversation of historySize messages between users 1 and 2
+ * and background traffic between the others, so the indexes are exercised
+ * the way a long-running client database would.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageDAOBenchmark {
+    private static final int USER_COUNT = 50;
+    private static final int BACKGROUND_MESSAGES = 20_000;
+
+    // Messages in the conversation that is read back
+    @Param({"100", "1000"})
+    public int historySize;
+
+    private Path databaseFile;
+    private MessageDAO messageDAO;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        databaseFile = Files.createTempFile("birdsenger-bench", ".db");
+        System.setProperty("birdsenger.db.path", databaseFile.toString());
+
+        DatabaseConnection database = DatabaseConnection.getInstance();
+        database.initializeDatabase();
+        seed(database.getConnection());
+
+        messageDAO = new MessageDAO();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        DatabaseConnection.getInstance().closeConnection();
+        Files.deleteIfExists(databaseFile);
+    }
+
+    /**
+     * One autocommitted insert, as the client does for every sent or received message
+     */
+    @Benchmark
+    public boolean saveMessage() {
+        Message message = new Message(1, 2, "Benchmark message", MessageType.TEXT);
+        return messageDAO.saveMessage(message);
+    }
+
+    /**
+     * Load a whole conversation, as opening a chat does
+     */
+    @Benchmark
+    public List<Message> getMessagesBetweenUsers() {
+        return messageDAO.getMessagesBetweenUsers(1, 2);
+    }
+
+    /**
+     * Fill the scratch database in one transaction
+     */
+    private void seed(Connection connection) throws SQLException {
+        connection.setAutoCommit(false);
+
+        try (Statement stmt = connection.createStatement()) {
+            for (int userId = 1; userId <= USER_COUNT; userId++) {
+                stmt.addBatch("INSERT INTO users (id, username, email, password_hash, created_at) VALUES ("
+                        + userId + ", 'user" + userId + "', 'user" + userId + "@example.com', 'x', '"
+                        + LocalDateTime.now() + "')");
+            }
+            stmt.executeBatch();
+        }
+
+        String sql = "INSERT INTO messages (sender_id, receiver_id, content, message_type, status, timestamp) VALUES (?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            LocalDateTime start = LocalDateTime.now().minusDays(30);
+
+            for (int i = 0; i < historySize; i++) {
+                addMessage(pstmt, i % 2 == 0 ? 1 : 2, i % 2 == 0 ? 2 : 1, start.plusSeconds(i));
+            }
+            for (int i = 0; i < BACKGROUND_MESSAGES; i++) {
+                int senderId = 3 + i % (USER_COUNT - 2);
+                int receiverId = 3 + (i * 7 + 1) % (USER_COUNT - 2);
+                addMessage(pstmt, senderId, receiverId == senderId ? 1 : receiverId, start.plusSeconds(i));
+            }
+            pstmt.executeBatch();
+        }
+
+        connection.commit();
+        connection.setAutoCommit(true);
+    }
+
+    private static void addMessage(PreparedStatement pstmt, int senderId, int receiverId, LocalDateTime timestamp)
+            throws SQLException {
+        pstmt.setInt(1, senderId);
+        pstmt.setInt(2, receiverId);
+        pstmt.setString(3, "Seeded message from " + senderId + " to " + receiverId);
+        pstmt.setString(4, MessageType.TEXT.name());
+        pstmt.setString(5, MessageStatus.READ.name());
+        pstmt.setString(6, timestamp.toString());
+        pstmt.addBatch();
+    }
+}
@@ -0,0 +1,100 @@
+package com.birdsenger.network;
+
+import com.google.gson.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of protocol messages
+ * Covers the Protocol create* helpers, the JsonObject tree parser and the
+ * streaming JSON and binary codecs the server uses on every frame
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProtocolBenchmark {
+
+    // Chat message text length in characters
+    @Param({"32", "1024"})
+    public int contentLength;
+
+    private String content;
+    private String chatJson;
+    private ProtocolMessage chat;
+    private byte[] chatBinaryBody;
+
+    @Setup
+    public void setUp() {
+        content = "x".repeat(contentLength);
+        chatJson = Protocol.createChatMessage("3f2a9c1e-0000-4000-8000-000000000001", 1, 2, content);
+        chat = Protocol.decode(chatJson);
+
+        byte[] frame = BinaryCodec.encode(chat);
+        chatBinaryBody = Arrays.copyOfRange(frame, BinaryCodec.HEADER_SIZE, frame.length);
+    }
+
+    @Benchmark
+    public String createChatMessage() {
+        return Protocol.createChatMessage("3f2a9c1e-0000-4000-8000-000000000001", 1, 2, content);
+    }
+
+    @Benchmark
+    public String createAuthMessage() {
+        return Protocol.createAuthMessage(1, "alice", Protocol.CODEC_BINARY);
+    }
+
+    @Benchmark
+    public String createPresenceMessage() {
+        return Protocol.createPresenceMessage(1, Protocol.ONLINE);
+    }
+
+    @Benchmark
+    public String createTypingMessage() {
+        return Protocol.createTypingMessage(1, 2, true);
+    }
+
+    @Benchmark
+    public String createAckMessage() {
+        return Protocol.createAckMessage("3f2a9c1e-0000-4000-8000-000000000001", true);
+    }
+
+    @Benchmark
+    public JsonObject parseMessage() {
+        return Protocol.parseMessage(chatJson);
+    }
+
+    @Benchmark
+    public ProtocolMessage decodeJson() {
+        return Protocol.decode(chatJson);
+    }
+
+    @Benchmark
+    public byte[] encodeTextFrame() {
+        return Protocol.encodeTextFrame(chat.toJson());
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() {
+        return BinaryCodec.encode(chat);
+    }
+
+    @Benchmark
+    public ProtocolMessage decodeBinary() {
+        return BinaryCodec.decode(chatBinaryBody);
+    }
+}
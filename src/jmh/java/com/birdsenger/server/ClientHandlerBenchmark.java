@@ -0,0 +1,123 @@
+package com.birdsenger.server;
+
+import com.birdsenger.dao.DatabaseConnection;
+import com.birdsenger.network.Protocol;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inbound dispatch: ClientHandler.handleMessage from JSON text to the
+ * recipient's outbound queue (decode, route, ACK)
+ *
+ * Handlers have no socket; their queues are emptied after every call so
+ * the overflow policy never kicks in. The server runs without conversation
+ * log, offline queue and idle tracking so only the in-memory path is
+ * measured; logins read contacts from an empty scratch database.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClientHandlerBenchmark {
+    private static final int SENDER_ID = 1;
+    private static final int RECEIVER_ID = 2;
+
+    private Path databaseFile;
+    private BirdSengerServer server;
+    private ClientHandler sender;
+    private ClientHandler receiver;
+
+    private String chatJson;
+    private String chatWithIdJson;
+    private String typingJson;
+    private String presenceJson;
+    private long nextMessageId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        databaseFile = Files.createTempFile("birdsenger-bench", ".db");
+        System.setProperty("birdsenger.db.path", databaseFile.toString());
+        DatabaseConnection.getInstance().initializeDatabase();
+
+        server = new BirdSengerServer(ServerConfig.fromArgs(new String[] {
+                "--sync.enabled=false",
+                "--offline.enabled=false",
+                "--idle.missedHeartbeats=0",
+                "--presence.coalesceMillis=0",
+                "--ratelimit.enabled=false",
+                "--log.level=warn"
+        }));
+        BroadcastManager broadcastManager = server.getBroadcastManager();
+
+        sender = new ClientHandler(null, server, broadcastManager);
+        receiver = new ClientHandler(null, server, broadcastManager);
+        sender.handleMessage(Protocol.createAuthMessage(SENDER_ID, "alice"));
+        receiver.handleMessage(Protocol.createAuthMessage(RECEIVER_ID, "bob"));
+        drainQueues();
+
+        chatJson = Protocol.createChatMessage(SENDER_ID, RECEIVER_ID, "Hello, how are you doing today?");
+        chatWithIdJson = Protocol.createChatMessage("%s", SENDER_ID, RECEIVER_ID, "Hello, how are you doing today?");
+        typingJson = Protocol.createTypingMessage(SENDER_ID, RECEIVER_ID, true);
+        presenceJson = Protocol.createPresenceMessage(SENDER_ID, Protocol.ONLINE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        server.stop();
+        DatabaseConnection.getInstance().closeConnection();
+        Files.deleteIfExists(databaseFile);
+    }
+
+    @Benchmark
+    public void chatMessage() {
+        sender.handleMessage(chatJson);
+        drainQueues();
+    }
+
+    /**
+     * Chat with a fresh client message ID each time, so deduplication is on the path
+     * (includes putting the ID into the JSON text)
+     */
+    @Benchmark
+    public void chatMessageWithId() {
+        sender.handleMessage(chatWithIdJson.replace("%s", Long.toString(nextMessageId++)));
+        drainQueues();
+    }
+
+    @Benchmark
+    public void typingIndicator() {
+        sender.handleMessage(typingJson);
+        drainQueues();
+    }
+
+    /**
+     * Heartbeat: presence report that does not change the status
+     */
+    @Benchmark
+    public void presenceHeartbeat() {
+        sender.handleMessage(presenceJson);
+        drainQueues();
+    }
+
+    private void drainQueues() {
+        sender.getOutboundQueue().clear();
+        receiver.getOutboundQueue().clear();
+    }
+}
@@ -207,12 +207,17 @@ public class MainChatController implements Initializable {
                 // Set up callbacks for incoming messages
                 messageHandler.setOnNewMessageReceived(this::handleIncomingMessage);
                 messageHandler.setOnUserStatusChanged(this::handleUserStatusChange);
+                messageHandler.setOnUserStatusesChanged(this::handleUserStatusesChange);
                 messageHandler.setOnError(this::handleNetworkError);
 
-                // Set socket client callback to route to message handler
+                // Set socket client callbacks to route to message handler
                 socketClient.setMessageCallback(jsonMessage -> {
                     messageHandler.handleIncomingMessage(jsonMessage);
                 });
+                socketClient.setFrameCallback(messageHandler::handleIncomingFrame);
+
+                // After each login, fetch only what arrived since our last stored message
+                socketClient.setSyncCursors(() -> messageDAO.getSyncCursors(currentUser.getId()));
 
                 // Connect to server
                 boolean connected = socketClient.connect();
@@ -220,12 +225,11 @@ public class MainChatController implements Initializable {
                 if (connected) {
                     System.out.println("🌐 Connected to server!");
 
-                    // Send authentication message
-                    String authMessage = Protocol.createAuthMessage(
+                    // Send authentication message (negotiates binary frames)
+                    socketClient.authenticate(
                             currentUser.getId(),
                             currentUser.getUsername()
                     );
-                    socketClient.sendMessage(authMessage);
 
                     // Start presence manager
                     presenceManager = new PresenceManager(socketClient, currentUser);
@@ -333,6 +337,21 @@ public class MainChatController implements Initializable {
         });
     }
 
+    /**
+     * Handle a batch of status changes (reconnect storm), already on the JavaFX thread
+     */
+    private void handleUserStatusesChange(Map<Integer, String> statuses) {
+        if (selectedChatUser == null) {
+            return;
+        }
+
+        String status = statuses.get(selectedChatUser.getId());
+        if (status != null) {
+            chatStatusLabel.setText(status);
+            System.out.println("💚 Status updated: " + selectedChatUser.getUsername() + " is " + status);
+        }
+    }
+
     /**
      * Handle network error
      */
@@ -506,6 +525,7 @@ public class MainChatController implements Initializable {
                 content,
                 MessageType.TEXT
         );
+        message.setMessageUid(UUID.randomUUID().toString());
 
         // Save to database
         boolean saved = messageDAO.saveMessage(message);
@@ -516,12 +536,13 @@ public class MainChatController implements Initializable {
 
             // Send through server (NEW!)
             if (socketClient != null && socketClient.isConnected()) {
-                String chatMessage = Protocol.createChatMessage(
+                // Pipelined; retransmitted after a reconnect until the server acks it
+                socketClient.sendChatMessage(
+                        message.getMessageUid(),
                         currentUser.getId(),
                         selectedChatUser.getId(),
                         content
                 );
-                socketClient.sendMessage(chatMessage);
                 System.out.println("⚡ Message sent via server to: " + selectedChatUser.getUsername());
             } else {
                 System.out.println("⚠️ Sent locally only (server not connected)");
@@ -0,0 +1,192 @@
+package com.birdsenger.dao;
+
+import com.birdsenger.network.ProtocolMessage;
+import com.birdsenger.util.Log;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Data Access Object for the server's conversation log
+ * Every routed chat message is kept under its conversation (the two user
+ * IDs, lowest first) and sequence number, so clients can fetch what they missed
+ *
+ * Batches are written in transactions, so the log uses a connection of its
+ * own (DatabaseConnection.openConnection) from a single thread.
+ */
+public class ConversationLogDAO {
+    private final Connection connection;
+
+    /**
+     * @param connection Connection used only by this DAO
+     */
+    public ConversationLogDAO(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Get the highest sequence number of a conversation
+     * @param userLow Lower user ID
+     * @param userHigh Higher user ID
+     * @return Last sequence number, 0 for a new conversation, -1 on failure
+     */
+    public long getLastSequence(int userLow, int userHigh) {
+        String sql = "SELECT MAX(seq) AS last_seq FROM conversation_log WHERE user_low = ? AND user_high = ?";
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, userLow);
+            pstmt.setInt(2, userHigh);
+
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                return rs.getLong("last_seq");
+            }
+            return 0;
+
+        } catch (SQLException e) {
+            Log.error("❌ Failed to get conversation sequence: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Store sequenced messages in one transaction
+     * @param messages Messages with their sequence numbers set
+     * @return true if all were stored
+     */
+    public boolean appendMessages(List<ProtocolMessage.Chat> messages) {
+        String sql = """
+            INSERT OR IGNORE INTO conversation_log
+                (user_low, user_high, seq, message_id, sender_id, receiver_id, content, timestamp)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+        try {
+            connection.setAutoCommit(false);
+
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                for (ProtocolMessage.Chat chat : messages) {
+                    pstmt.setInt(1, Math.min(chat.senderId(), chat.receiverId()));
+                    pstmt.setInt(2, Math.max(chat.senderId(), chat.receiverId()));
+                    pstmt.setLong(3, chat.seq());
+                    pstmt.setString(4, chat.messageId());
+                    pstmt.setInt(5, chat.senderId());
+                    pstmt.setInt(6, chat.receiverId());
+                    pstmt.setString(7, chat.content());
+                    pstmt.setLong(8, chat.timestamp());
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+
+            connection.commit();
+            return true;
+
+        } catch (SQLException e) {
+            Log.error("❌ Failed to store conversation log: " + e.getMessage());
+            try {
+                connection.rollback();
+            } catch (SQLException ignored) {
+                // Nothing left to undo
+            }
+            return false;
+
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException ignored) {
+                // Connection is gone
+            }
+        }
+    }
+
+    /**
+     * Get the last sequence number of every conversation of a user
+     * @param userId User ID
+     * @return Conversation partner ID to last sequence number
+     */
+    public Map<Integer, Long> getConversationHeads(int userId) {
+        Map<Integer, Long> heads = new HashMap<>();
+        String sql = """
+            SELECT CASE WHEN user_low = ? THEN user_high ELSE user_low END AS partner_id,
+                   MAX(seq) AS last_seq
+            FROM conversation_log
+            WHERE user_low = ? OR user_high = ?
+            GROUP BY user_low, user_high
+            """;
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, userId);
+            pstmt.setInt(2, userId);
+            pstmt.setInt(3, userId);
+
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                heads.put(rs.getInt("partner_id"), rs.getLong("last_seq"));
+            }
+
+        } catch (SQLException e) {
+            Log.error("❌ Failed to get conversations: " + e.getMessage());
+        }
+        return heads;
+    }
+
+    /**
+     * Get messages of a conversation after a sequence number, oldest first
+     * @param userLow Lower user ID
+     * @param userHigh Higher user ID
+     * @param afterSeq Last sequence number the client already has
+     * @param limit Maximum number of messages
+     * @return Messages with their sequence numbers
+     */
+    public List<ProtocolMessage.Chat> getMessagesAfter(int userLow, int userHigh, long afterSeq, int limit) {
+        List<ProtocolMessage.Chat> messages = new ArrayList<>();
+        String sql = """
+            SELECT seq, message_id, sender_id, receiver_id, content, timestamp
+            FROM conversation_log
+            WHERE user_low = ? AND user_high = ? AND seq > ?
+            ORDER BY seq ASC
+            LIMIT ?
+            """;
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, userLow);
+            pstmt.setInt(2, userHigh);
+            pstmt.setLong(3, afterSeq);
+            pstmt.setInt(4, limit);
+
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                messages.add(new ProtocolMessage.Chat(
+                        rs.getString("message_id"),
+                        rs.getLong("seq"),
+                        rs.getInt("sender_id"),
+                        rs.getInt("receiver_id"),
+                        rs.getString("content"),
+                        rs.getLong("timestamp")
+                ));
+            }
+
+        } catch (SQLException e) {
+            Log.error("❌ Failed to get conversation messages: " + e.getMessage());
+        }
+        return messages;
+    }
+
+    /**
+     * Close this DAO's connection
+     */
+    public void close() {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            Log.error("❌ Failed to close conversation log connection: " + e.getMessage());
+        }
+    }
+}
@@ -1,27 +1,35 @@
 package com.birdsenger.dao;
 
+import com.birdsenger.util.Log;
+
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Properties;
 
 /**
  * Singleton class to manage SQLite database connection
  * Ensures only one connection instance exists throughout the application
  */
 public class DatabaseConnection {
-    private static final String DB_URL = "jdbc:sqlite:birdsenger.db";
+    // Database file, overridable with -Dbirdsenger.db.path (benchmarks use a scratch file)
+    private static final String DB_URL = "jdbc:sqlite:" + System.getProperty("birdsenger.db.path", "birdsenger.db");
+
+    // How long a statement waits for another connection's write lock before failing with SQLITE_BUSY
+    private static final int BUSY_TIMEOUT_MILLIS = 5000;
+
     private static DatabaseConnection instance;
     private Connection connection;
 
     // Private constructor for Singleton pattern
     private DatabaseConnection() {
         try {
-            this.connection = DriverManager.getConnection(DB_URL);
-            System.out.println("✅ Database connection established");
+            this.connection = connect();
+            Log.info("✅ Database connection established");
         } catch (SQLException e) {
-            System.err.println("❌ Failed to connect to database: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("❌ Failed to connect to database: " + e.getMessage(), e);
         }
     }
 
@@ -48,16 +56,36 @@ public class DatabaseConnection {
         try {
             // Check if connection is closed and reconnect if needed
             if (connection == null || connection.isClosed()) {
-                connection = DriverManager.getConnection(DB_URL);
-                System.out.println("🔄 Database connection re-established");
+                connection = connect();
+                Log.info("🔄 Database connection re-established");
             }
         } catch (SQLException e) {
-            System.err.println("❌ Failed to get connection: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("❌ Failed to get connection: " + e.getMessage(), e);
         }
         return connection;
     }
 
+    /**
+     * Open a separate connection to the same database
+     * For work that runs its own transactions on its own thread, which must
+     * not interleave with statements on the shared connection
+     * @return New connection, closed by the caller, or null if it could not be opened
+     */
+    public Connection openConnection() {
+        try {
+            return connect();
+        } catch (SQLException e) {
+            Log.error("❌ Failed to open database connection: " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private static Connection connect() throws SQLException {
+        Properties properties = new Properties();
+        properties.setProperty("busy_timeout", Integer.toString(BUSY_TIMEOUT_MILLIS));
+        return DriverManager.getConnection(DB_URL, properties);
+    }
+
     /**
      * Initialize all database tables
      * Creates tables if they don't exist
@@ -111,19 +139,81 @@ public class DatabaseConnection {
                 """;
             stmt.execute(createFriendsTable);
 
+            // 4. CONVERSATION LOG TABLE (server side: every routed message by conversation sequence)
+            String createConversationLogTable = """
+                CREATE TABLE IF NOT EXISTS conversation_log (
+                    user_low INTEGER NOT NULL,
+                    user_high INTEGER NOT NULL,
+                    seq INTEGER NOT NULL,
+                    message_id TEXT,
+                    sender_id INTEGER NOT NULL,
+                    receiver_id INTEGER NOT NULL,
+                    content TEXT NOT NULL,
+                    timestamp INTEGER NOT NULL,
+                    PRIMARY KEY (user_low, user_high, seq)
+                )
+                """;
+            stmt.execute(createConversationLogTable);
+
+            // 5. GROUPS TABLES (server side: group conversations and their members)
+            String createGroupsTable = """
+                CREATE TABLE IF NOT EXISTS groups (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    name TEXT NOT NULL,
+                    owner_id INTEGER NOT NULL,
+                    created_at TEXT NOT NULL,
+                    FOREIGN KEY (owner_id) REFERENCES users(id)
+                )
+                """;
+            stmt.execute(createGroupsTable);
+
+            String createGroupMembersTable = """
+                CREATE TABLE IF NOT EXISTS group_members (
+                    group_id INTEGER NOT NULL,
+                    user_id INTEGER NOT NULL,
+                    joined_at TEXT NOT NULL,
+                    PRIMARY KEY (group_id, user_id),
+                    FOREIGN KEY (group_id) REFERENCES groups(id),
+                    FOREIGN KEY (user_id) REFERENCES users(id)
+                )
+                """;
+            stmt.execute(createGroupMembersTable);
+
+            // Columns added after the first release
+            addColumnIfMissing(stmt, "messages", "message_uid", "TEXT");
+            addColumnIfMissing(stmt, "messages", "seq", "INTEGER DEFAULT 0");
+
             // Create indexes for performance
             stmt.execute("CREATE INDEX IF NOT EXISTS idx_messages_sender ON messages(sender_id)");
             stmt.execute("CREATE INDEX IF NOT EXISTS idx_messages_receiver ON messages(receiver_id)");
             stmt.execute("CREATE INDEX IF NOT EXISTS idx_messages_timestamp ON messages(timestamp)");
             stmt.execute("CREATE INDEX IF NOT EXISTS idx_friends_user1 ON friends(user1_id)");
             stmt.execute("CREATE INDEX IF NOT EXISTS idx_friends_user2 ON friends(user2_id)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_group_members_user ON group_members(user_id)");
 
-            System.out.println("✅ Database schema initialized successfully");
+            // A message arriving twice (live, offline queue, sync) is stored once
+            stmt.execute("CREATE UNIQUE INDEX IF NOT EXISTS idx_messages_uid ON messages(message_uid)");
+            stmt.execute("CREATE UNIQUE INDEX IF NOT EXISTS idx_messages_seq ON messages(sender_id, receiver_id, seq) WHERE seq > 0");
+
+            Log.info("✅ Database schema initialized successfully");
 
         } catch (SQLException e) {
-            System.err.println("❌ Failed to initialize database: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("❌ Failed to initialize database: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Add a column to an existing table unless it is already there
+     */
+    private void addColumnIfMissing(Statement stmt, String table, String column, String definition) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return;
+                }
+            }
         }
+        stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
     }
 
     /**
@@ -133,11 +223,10 @@ public class DatabaseConnection {
         try {
             if (connection != null && !connection.isClosed()) {
                 connection.close();
-                System.out.println("✅ Database connection closed");
+                Log.info("✅ Database connection closed");
             }
         } catch (SQLException e) {
-            System.err.println("❌ Failed to close connection: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("❌ Failed to close connection: " + e.getMessage(), e);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,50 @@
+package com.birdsenger.dao;
+
+import com.birdsenger.util.Log;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data Access Object for the friends table
+ * A friendship row links two users in both directions
+ */
+public class FriendDAO {
+    private final Connection connection;
+
+    public FriendDAO() {
+        this.connection = DatabaseConnection.getInstance().getConnection();
+    }
+
+    /**
+     * Get IDs of all friends of a user
+     * @param userId User ID
+     * @return Friend user IDs
+     */
+    public List<Integer> getFriendIds(int userId) {
+        List<Integer> friends = new ArrayList<>();
+        String sql = """
+            SELECT CASE WHEN user1_id = ? THEN user2_id ELSE user1_id END AS friend_id
+            FROM friends
+            WHERE user1_id = ? OR user2_id = ?
+            """;
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, userId);
+            pstmt.setInt(2, userId);
+            pstmt.setInt(3, userId);
+
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                friends.add(rs.getInt("friend_id"));
+            }
+        } catch (SQLException e) {
+            Log.error("❌ Failed to get friends: " + e.getMessage());
+        }
+        return friends;
+    }
+}
@@ -0,0 +1,154 @@
+package com.birdsenger.dao;
+
+import com.birdsenger.util.Log;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Data Access Object for the groups and group_members tables
+ * The server loads all memberships once at startup (GroupIndex) and
+ * writes every change through here
+ */
+public class GroupDAO {
+    private final Connection connection;
+
+    public GroupDAO() {
+        this.connection = DatabaseConnection.getInstance().getConnection();
+    }
+
+    /**
+     * Create a group
+     * @param name Group name
+     * @param ownerId User creating the group
+     * @return New group ID, or -1 on failure
+     */
+    public int createGroup(String name, int ownerId) {
+        String sql = "INSERT INTO groups (name, owner_id, created_at) VALUES (?, ?, ?)";
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            pstmt.setString(1, name);
+            pstmt.setInt(2, ownerId);
+            pstmt.setString(3, LocalDateTime.now().toString());
+            pstmt.executeUpdate();
+
+            ResultSet keys = pstmt.getGeneratedKeys();
+            return keys.next() ? keys.getInt(1) : -1;
+
+        } catch (SQLException e) {
+            Log.error("❌ Failed to create group: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Add members to a group in one transaction; existing members are skipped
+     * @param groupId Group ID
+     * @param userIds Users to add
+     * @return true if all were stored
+     */
+    public boolean addMembers(int groupId, Collection<Integer> userIds) {
+        String sql = "INSERT OR IGNORE INTO group_members (group_id, user_id, joined_at) VALUES (?, ?, ?)";
+        String now = LocalDateTime.now().toString();
+
+        try {
+            connection.setAutoCommit(false);
+
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                for (int userId : userIds) {
+                    pstmt.setInt(1, groupId);
+                    pstmt.setInt(2, userId);
+                    pstmt.setString(3, now);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+
+            connection.commit();
+            return true;
+
+        } catch (SQLException e) {
+            Log.error("❌ Failed to add group members: " + e.getMessage());
+            try {
+                connection.rollback();
+            } catch (SQLException ignored) {
+                // Nothing left to undo
+            }
+            return false;
+
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException ignored) {
+                // Connection is gone
+            }
+        }
+    }
+
+    /**
+     * Remove a member from a group
+     * @param groupId Group ID
+     * @param userId User leaving
+     * @return true if removed
+     */
+    public boolean removeMember(int groupId, int userId) {
+        String sql = "DELETE FROM group_members WHERE group_id = ? AND user_id = ?";
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, groupId);
+            pstmt.setInt(2, userId);
+            return pstmt.executeUpdate() > 0;
+
+        } catch (SQLException e) {
+            Log.error("❌ Failed to remove group member: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Get the names of all groups
+     * @return Group ID to name
+     */
+    public Map<Integer, String> getGroupNames() {
+        Map<Integer, String> names = new HashMap<>();
+        String sql = "SELECT id, name FROM groups";
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                names.put(rs.getInt("id"), rs.getString("name"));
+            }
+        } catch (SQLException e) {
+            Log.error("❌ Failed to get groups: " + e.getMessage());
+        }
+        return names;
+    }
+
+    /**
+     * Get the members of every group
+     * @return Group ID to member user IDs
+     */
+    public Map<Integer, List<Integer>> getAllMembers() {
+        Map<Integer, List<Integer>> members = new HashMap<>();
+        String sql = "SELECT group_id, user_id FROM group_members";
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                members.computeIfAbsent(rs.getInt("group_id"), id -> new ArrayList<>()).add(rs.getInt("user_id"));
+            }
+        } catch (SQLException e) {
+            Log.error("❌ Failed to get group members: " + e.getMessage());
+        }
+        return members;
+    }
+}
@@ -3,6 +3,7 @@ package com.birdsenger.dao;
 import com.birdsenger.model.Message;
 import com.birdsenger.model.MessageStatus;
 import com.birdsenger.model.MessageType;
+import com.birdsenger.util.Log;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -10,7 +11,9 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Data Access Object for Message entity
@@ -29,26 +32,114 @@ public class MessageDAO {
      * @return true if saved successfully
      */
     public boolean saveMessage(Message message) {
-        String sql = "INSERT INTO messages (sender_id, receiver_id, content, message_type, status, timestamp) VALUES (?, ?, ?, ?, ?, ?)";
+        String sql = "INSERT INTO messages (sender_id, receiver_id, content, message_type, status, timestamp, message_uid, seq) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
 
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, message.getSenderId());
-            pstmt.setInt(2, message.getReceiverId());
-            pstmt.setString(3, message.getContent());
-            pstmt.setString(4, message.getType().name());
-            pstmt.setString(5, message.getStatus().name());
-            pstmt.setString(6, message.getTimestamp().toString());
+            setMessageParameters(pstmt, message);
 
             pstmt.executeUpdate();
-            System.out.println("✅ Message saved to database");
+            Log.debug("✅ Message saved to database");
             return true;
 
         } catch (SQLException e) {
-            System.err.println("❌ Failed to save message: " + e.getMessage());
+            Log.error("❌ Failed to save message: " + e.getMessage());
             return false;
         }
     }
 
+    /**
+     * Save a message received from the server unless it is already stored
+     * The same message can arrive live, from the offline queue and from a
+     * SYNC; copies are recognised by message UID or conversation sequence.
+     * A copy of one of our own messages fills in its sequence number.
+     * @param message Received message
+     * @return true if the message was new
+     */
+    public boolean saveMessageIfNew(Message message) {
+        String sql = "INSERT OR IGNORE INTO messages (sender_id, receiver_id, content, message_type, status, timestamp, message_uid, seq) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            setMessageParameters(pstmt, message);
+
+            if (pstmt.executeUpdate() > 0) {
+                return true;
+            }
+
+        } catch (SQLException e) {
+            Log.error("❌ Failed to save message: " + e.getMessage());
+            return false;
+        }
+
+        if (message.getMessageUid() != null && message.getSeq() > 0) {
+            updateSequence(message.getMessageUid(), message.getSeq());
+        }
+        return false;
+    }
+
+    /**
+     * Record the sequence number the server assigned to a sent message
+     * @param messageUid Client message ID
+     * @param seq Conversation sequence number
+     * @return true if updated successfully
+     */
+    public boolean updateSequence(String messageUid, long seq) {
+        String sql = "UPDATE messages SET seq = ? WHERE message_uid = ? AND seq = 0";
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setLong(1, seq);
+            pstmt.setString(2, messageUid);
+
+            return pstmt.executeUpdate() > 0;
+
+        } catch (SQLException e) {
+            Log.error("❌ Failed to update message sequence: " + e.getMessage());
+        }
+
+        return false;
+    }
+
+    /**
+     * Get the SYNC cursor of every conversation of a user
+     * The cursor is the end of the unbroken run of sequence numbers starting
+     * at 1, so a gap (a message that never arrived) is fetched again
+     * @param userId User ID
+     * @return Conversation partner ID to last contiguous sequence number
+     */
+    public Map<Integer, Long> getSyncCursors(int userId) {
+        Map<Integer, Long> cursors = new HashMap<>();
+        String sql = """
+            SELECT CASE WHEN m.sender_id = ? THEN m.receiver_id ELSE m.sender_id END AS partner_id,
+                   MIN(m.seq) AS run_end
+            FROM messages m
+            WHERE (m.sender_id = ? OR m.receiver_id = ?) AND m.seq > 0
+              AND NOT EXISTS (
+                  SELECT 1 FROM messages n
+                  WHERE n.seq = m.seq + 1
+                    AND ((n.sender_id = m.sender_id AND n.receiver_id = m.receiver_id)
+                      OR (n.sender_id = m.receiver_id AND n.receiver_id = m.sender_id)))
+            GROUP BY partner_id
+            """;
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, userId);
+            pstmt.setInt(2, userId);
+            pstmt.setInt(3, userId);
+
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                cursors.put(rs.getInt("partner_id"), rs.getLong("run_end"));
+            }
+
+        } catch (SQLException e) {
+            Log.error("❌ Failed to get sync cursors: " + e.getMessage());
+            return cursors;
+        }
+
+        // A run that does not start at 1 means the start is missing too
+        cursors.replaceAll((partnerId, runEnd) -> hasSequence(userId, partnerId, 1) ? runEnd : 0L);
+        return cursors;
+    }
+
     /**
      * Get all messages between two users
      * @param userId1 First user ID
@@ -76,10 +167,12 @@ public class MessageDAO {
                 messages.add(extractMessageFromResultSet(rs));
             }
 
-            System.out.println("✅ Retrieved " + messages.size() + " messages");
+            if (Log.isDebugEnabled()) {
+                Log.debug("✅ Retrieved " + messages.size() + " messages");
+            }
 
         } catch (SQLException e) {
-            System.err.println("❌ Failed to get messages: " + e.getMessage());
+            Log.error("❌ Failed to get messages: " + e.getMessage());
         }
 
         return messages;
@@ -112,7 +205,7 @@ public class MessageDAO {
             }
 
         } catch (SQLException e) {
-            System.err.println("❌ Failed to get recent messages: " + e.getMessage());
+            Log.error("❌ Failed to get recent messages: " + e.getMessage());
         }
 
         return messages;
@@ -135,7 +228,7 @@ public class MessageDAO {
             return rowsAffected > 0;
 
         } catch (SQLException e) {
-            System.err.println("❌ Failed to update message status: " + e.getMessage());
+            Log.error("❌ Failed to update message status: " + e.getMessage());
         }
 
         return false;
@@ -159,7 +252,7 @@ public class MessageDAO {
             }
 
         } catch (SQLException e) {
-            System.err.println("❌ Failed to get unread count: " + e.getMessage());
+            Log.error("❌ Failed to get unread count: " + e.getMessage());
         }
 
         return 0;
@@ -179,11 +272,11 @@ public class MessageDAO {
             pstmt.setInt(2, senderId);
 
             int rowsAffected = pstmt.executeUpdate();
-            System.out.println("✅ Marked " + rowsAffected + " messages as read");
+            Log.info("✅ Marked " + rowsAffected + " messages as read");
             return rowsAffected > 0;
 
         } catch (SQLException e) {
-            System.err.println("❌ Failed to mark messages as read: " + e.getMessage());
+            Log.error("❌ Failed to mark messages as read: " + e.getMessage());
         }
 
         return false;
@@ -204,12 +297,52 @@ public class MessageDAO {
             return rowsAffected > 0;
 
         } catch (SQLException e) {
-            System.err.println("❌ Failed to delete message: " + e.getMessage());
+            Log.error("❌ Failed to delete message: " + e.getMessage());
+        }
+
+        return false;
+    }
+
+    /**
+     * Check if a message with a given sequence number is stored for a conversation
+     */
+    private boolean hasSequence(int userId, int partnerId, long seq) {
+        String sql = """
+            SELECT 1 FROM messages
+            WHERE seq = ?
+              AND ((sender_id = ? AND receiver_id = ?) OR (sender_id = ? AND receiver_id = ?))
+            """;
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setLong(1, seq);
+            pstmt.setInt(2, userId);
+            pstmt.setInt(3, partnerId);
+            pstmt.setInt(4, partnerId);
+            pstmt.setInt(5, userId);
+
+            return pstmt.executeQuery().next();
+
+        } catch (SQLException e) {
+            Log.error("❌ Failed to look up message sequence: " + e.getMessage());
         }
 
         return false;
     }
 
+    /**
+     * Bind the columns of an INSERT INTO messages statement
+     */
+    private void setMessageParameters(PreparedStatement pstmt, Message message) throws SQLException {
+        pstmt.setInt(1, message.getSenderId());
+        pstmt.setInt(2, message.getReceiverId());
+        pstmt.setString(3, message.getContent());
+        pstmt.setString(4, message.getType().name());
+        pstmt.setString(5, message.getStatus().name());
+        pstmt.setString(6, message.getTimestamp().toString());
+        pstmt.setString(7, message.getMessageUid());
+        pstmt.setLong(8, message.getSeq());
+    }
+
     /**
      * Helper method to extract Message object from ResultSet
      */
@@ -226,7 +359,10 @@ public class MessageDAO {
         MessageStatus status = MessageStatus.valueOf(statusStr);
         LocalDateTime timestamp = LocalDateTime.parse(timestampStr);
 
-        return new Message(id, senderId, receiverId, content, type, status, timestamp);
+        Message message = new Message(id, senderId, receiverId, content, type, status, timestamp);
+        message.setMessageUid(rs.getString("message_uid"));
+        message.setSeq(rs.getLong("seq"));
+        return message;
     }
 
 
@@ -256,7 +392,7 @@ public class MessageDAO {
                 partners.add(rs.getInt("partner_id"));
             }
         } catch (SQLException e) {
-            System.err.println("Failed to get conversation partners: " + e.getMessage());
+            Log.error("Failed to get conversation partners: " + e.getMessage());
         }
         return partners;
     }
@@ -2,6 +2,7 @@ package com.birdsenger.dao;
 
 import com.birdsenger.model.PresenceStatus;
 import com.birdsenger.model.User;
+import com.birdsenger.util.Log;
 import org.mindrot.jbcrypt.BCrypt;
 
 import java.sql.Connection;
@@ -42,11 +43,11 @@ public class UserDAO {
             pstmt.setString(5, PresenceStatus.OFFLINE.name());
 
             pstmt.executeUpdate();
-            System.out.println("✅ User created: " + username);
+            Log.info("✅ User created: " + username);
             return true;
 
         } catch (SQLException e) {
-            System.err.println("❌ Failed to create user: " + e.getMessage());
+            Log.error("❌ Failed to create user: " + e.getMessage());
             return false;
         }
     }
@@ -72,7 +73,7 @@ public class UserDAO {
             }
 
         } catch (SQLException e) {
-            System.err.println("❌ Failed to validate credentials: " + e.getMessage());
+            Log.error("❌ Failed to validate credentials: " + e.getMessage());
         }
 
         return false;
@@ -97,7 +98,7 @@ public class UserDAO {
             }
 
         } catch (SQLException e) {
-            System.err.println("❌ Failed to get user: " + e.getMessage());
+            Log.error("❌ Failed to get user: " + e.getMessage());
         }
 
         return null;
@@ -121,7 +122,7 @@ public class UserDAO {
             }
 
         } catch (SQLException e) {
-            System.err.println("❌ Failed to get user by ID: " + e.getMessage());
+            Log.error("❌ Failed to get user by ID: " + e.getMessage());
         }
 
         return null;
@@ -143,7 +144,7 @@ public class UserDAO {
             return rs.next();
 
         } catch (SQLException e) {
-            System.err.println("❌ Failed to check user existence: " + e.getMessage());
+            Log.error("❌ Failed to check user existence: " + e.getMessage());
         }
 
         return false;
@@ -167,7 +168,7 @@ public class UserDAO {
             return rowsAffected > 0;
 
         } catch (SQLException e) {
-            System.err.println("❌ Failed to update user status: " + e.getMessage());
+            Log.error("❌ Failed to update user status: " + e.getMessage());
         }
 
         return false;
@@ -191,7 +192,7 @@ public class UserDAO {
             return rowsAffected > 0;
 
         } catch (SQLException e) {
-            System.err.println("❌ Failed to update user profile: " + e.getMessage());
+            Log.error("❌ Failed to update user profile: " + e.getMessage());
         }
 
         return false;
@@ -0,0 +1,166 @@
+package com.birdsenger.loadtest;
+
+import com.birdsenger.network.BinaryCodec;
+import com.birdsenger.network.FrameDecoder;
+import com.birdsenger.network.Protocol;
+import com.birdsenger.network.ProtocolMessage;
+import com.birdsenger.server.ServerConfig;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A server running in a child JVM, and bare logins against it
+ *
+ * Tools that measure the server as a whole (memory, accept rate) start it
+ * this way so their own clients are not counted. Clients are plain
+ * blocking channels without a thread, so tens of thousands fit in the
+ * measuring JVM.
+ */
+final class ChildServer {
+    private static final int START_TIMEOUT_MILLIS = 15_000;
+    private static final int AUTH_READ_SIZE = 256;
+
+    private ChildServer() {
+    }
+
+    /**
+     * Start ServerRunner on this classpath and wait until it accepts connections
+     * @param options Tool options: host, port, serverJvmArgs
+     * @param serverArgs Server command line
+     */
+    static Process start(ServerConfig options, List<String> serverArgs) throws IOException, InterruptedException {
+        String host = options.getString("host", "127.0.0.1");
+        int port = options.getPort();
+
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(Arrays.asList(options.getString("serverJvmArgs", "").trim().split("\\s+")));
+        command.removeIf(String::isEmpty);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("com.birdsenger.server.ServerRunner");
+        command.addAll(serverArgs);
+
+        Process server = new ProcessBuilder(command).inheritIO().start();
+
+        long deadline = System.currentTimeMillis() + START_TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline && server.isAlive()) {
+            try (Socket probe = new Socket()) {
+                probe.connect(new InetSocketAddress(host, port), 200);
+                return server;
+            } catch (IOException e) {
+                Thread.sleep(100);
+            }
+        }
+        server.destroy();
+        throw new IllegalStateException("Server did not start on port " + port);
+    }
+
+    /**
+     * Stop a child server and wait for it to exit
+     */
+    static void stop(Process server) throws InterruptedException {
+        server.destroy();
+        server.waitFor();
+    }
+
+    /**
+     * Connect and log in one user, then leave the connection idle
+     * @param source Local address to bind, or null for any
+     * @param codec Protocol.CODEC_JSON or Protocol.CODEC_BINARY
+     * @return Open channel, logged in
+     */
+    static SocketChannel login(String host, int port, InetSocketAddress source, int userId, String codec)
+            throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            if (source != null) {
+                channel.bind(source);
+            }
+            channel.connect(new InetSocketAddress(host, port));
+
+            ByteBuffer auth = ByteBuffer.wrap(Protocol.encodeTextFrame(
+                    Protocol.createAuthMessage(userId, "idle" + userId, codec)));
+            while (auth.hasRemaining()) {
+                channel.write(auth);
+            }
+
+            FrameDecoder decoder = new FrameDecoder(Protocol.DEFAULT_MAX_FRAME_SIZE);
+            ByteBuffer in = ByteBuffer.allocate(AUTH_READ_SIZE);
+            boolean[] authenticated = new boolean[1];
+            FrameDecoder.FrameListener listener = new FrameDecoder.FrameListener() {
+                @Override
+                public void onTextFrame(byte[] frame) {
+                    onMessage(Protocol.decode(FrameDecoder.text(frame)));
+                }
+
+                @Override
+                public void onBinaryFrame(byte[] body) {
+                    onMessage(BinaryCodec.decode(body));
+                }
+
+                private void onMessage(ProtocolMessage message) {
+                    if (message instanceof ProtocolMessage.Ack ack && Protocol.AUTH.equals(ack.messageId())) {
+                        authenticated[0] = ack.success();
+                    }
+                }
+            };
+
+            while (!authenticated[0]) {
+                in.clear();
+                if (channel.read(in) == -1) {
+                    throw new IOException("Closed before login of user " + userId);
+                }
+                in.flip();
+                decoder.decode(in, listener);
+            }
+            return channel;
+
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Client codec named by the codec option (--codec=json|binary)
+     */
+    static String codec(ServerConfig options) {
+        return "binary".equalsIgnoreCase(options.getString("codec", "json"))
+                ? Protocol.CODEC_BINARY : Protocol.CODEC_JSON;
+    }
+
+    /**
+     * Local address for the index-th loopback connection, spread over
+     * 127.0.0.1 .. 127.0.0.N so the ephemeral port range does not run out
+     * @return Address to bind, or null if host is not loopback
+     */
+    static InetSocketAddress sourceAddress(String host, int index, int sourceAddresses) {
+        return host.startsWith("127.")
+                ? new InetSocketAddress("127.0.0." + (1 + index % Math.max(1, sourceAddresses)), 0)
+                : null;
+    }
+
+    /**
+     * Close client channels, ignoring errors
+     */
+    static void closeAll(Iterable<SocketChannel> clients) {
+        for (SocketChannel client : clients) {
+            if (client == null) {
+                continue;
+            }
+            try {
+                client.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+    }
+}
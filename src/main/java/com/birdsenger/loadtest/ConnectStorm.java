@@ -0,0 +1,153 @@
+package com.birdsenger.loadtest;
+
+import com.birdsenger.server.ServerConfig;
+import com.birdsenger.util.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures how fast the server takes on a storm of new connections
+ *
+ * Every client connects and logs in at once, as after a server restart or
+ * a network blip, with a limited number of logins in flight. The time until
+ * the last one is logged in gives connections per second; login latency
+ * includes waiting in the accept backlog.
+ *
+ * Each configuration gets a freshly started server (child JVM, see
+ * ChildServer). The baseline runs the server as it was before acceptor
+ * groups: one acceptor, the JDK's accept backlog and a single registry
+ * shard. The second run uses the server defaults plus any server options
+ * given (engine, accept.*, registry.*, ...).
+ *
+ * Usage:
+ *   ConnectStorm --connections=20000 --engine=nio
+ *   ConnectStorm --connections=20000 --engine=virtual --accept.threads=4 --rounds=3
+ */
+public class ConnectStorm {
+    // The server as it was: single accept loop and map, backlog 50
+    private static final List<String> BASELINE_ARGS = List.of(
+            "--accept.threads=1", "--accept.backlog=50", "--registry.shards=1");
+
+    private final ServerConfig options;
+
+    private ConnectStorm(ServerConfig options) {
+        this.options = options;
+    }
+
+    /**
+     * Run the baseline and the configured server, each for the given number of rounds
+     * @param args Command line, passed on to the server
+     */
+    private void run(String[] args) throws IOException, InterruptedException {
+        int rounds = Math.max(1, options.getInt("rounds", 1));
+        System.out.printf("Engine %s, %d connections, %d logins in flight%n", options.getEngine(),
+                options.getInt("connections", 20_000), options.getInt("connectConcurrency", 512));
+        System.out.printf("%-10s %8s %10s %12s %12s %10s%n",
+                "server", "round", "seconds", "conn/sec", "p99 login", "failures");
+
+        if (options.getBoolean("baseline", true)) {
+            for (int round = 1; round <= rounds; round++) {
+                List<String> serverArgs = new ArrayList<>(Arrays.asList(args));
+                serverArgs.addAll(BASELINE_ARGS); // later options win
+                storm("baseline", round, serverArgs);
+            }
+        }
+        for (int round = 1; round <= rounds; round++) {
+            storm("current", round, Arrays.asList(args));
+        }
+    }
+
+    /**
+     * Start a server, log in every client as fast as possible, then close them all
+     */
+    private void storm(String label, int round, List<String> args) throws IOException, InterruptedException {
+        String host = options.getString("host", "127.0.0.1");
+        int port = options.getPort();
+        int count = Math.max(1, options.getInt("connections", 20_000));
+        int sourceAddresses = options.getInt("sourceAddresses", 8);
+        int firstUserId = options.getInt("firstUserId", 1_000_000);
+        String codec = ChildServer.codec(options);
+
+        // Quiet and without heartbeats; overload control would turn the storm away
+        List<String> serverArgs = new ArrayList<>(List.of(
+                "--log.level=warn", "--idle.missedHeartbeats=0", "--overload.enabled=false"));
+        serverArgs.addAll(args);
+        Process server = ChildServer.start(options, serverArgs);
+
+        SocketChannel[] clients = new SocketChannel[count];
+        long[] loginNanos = new long[count];
+        AtomicInteger failures = new AtomicInteger();
+        Semaphore permits = new Semaphore(Math.max(1, options.getInt("connectConcurrency", 512)));
+
+        try {
+            Thread.sleep(Math.max(0, options.getInt("settleMillis", 1000)));
+
+            long start = System.nanoTime();
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < count; i++) {
+                    int index = i;
+                    InetSocketAddress source = ChildServer.sourceAddress(host, index, sourceAddresses);
+                    permits.acquire();
+                    executor.execute(() -> {
+                        long begin = System.nanoTime();
+                        try {
+                            clients[index] = ChildServer.login(host, port, source, firstUserId + index, codec);
+                            loginNanos[index] = System.nanoTime() - begin;
+                        } catch (IOException e) {
+                            if (failures.getAndIncrement() == 0) {
+                                Log.warn("⚠️ Connection failed: " + e.getMessage());
+                            }
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+
+            if (!server.isAlive()) {
+                throw new IllegalStateException("Server exited with code " + server.exitValue());
+            }
+
+            int connected = count - failures.get();
+            System.out.printf("%-10s %8d %10.2f %12.0f %10.1fms %10d%n", label, round, elapsed / 1e9,
+                    connected / (elapsed / 1e9), percentile(loginNanos, 0.99) / 1e6, failures.get());
+
+        } finally {
+            ChildServer.closeAll(Arrays.asList(clients));
+            ChildServer.stop(server);
+        }
+    }
+
+    /**
+     * Percentile of the successful login times
+     * @return Nanoseconds, 0 if none succeeded
+     */
+    private static long percentile(long[] nanos, double fraction) {
+        long[] succeeded = Arrays.stream(nanos).filter(value -> value > 0).sorted().toArray();
+        if (succeeded.length == 0) {
+            return 0;
+        }
+        return succeeded[Math.min(succeeded.length - 1, (int) (succeeded.length * fraction))];
+    }
+
+    public static void main(String[] args) throws Exception {
+        ServerConfig options = ServerConfig.fromArgs(args);
+        Log.configure(options.getLogLevel(), options.isContentLoggingEnabled());
+
+        try {
+            new ConnectStorm(options).run(args);
+        } finally {
+            Log.flush();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.birdsenger.loadtest;
+
+import com.birdsenger.util.Log;
+
+import java.util.Random;
+
+/**
+ * Who the simulated clients talk to
+ * PAIRS - Clients paired off (0-1, 2-3, ...), every conversation is two-way
+ * RING - Each client writes to the next one
+ * RANDOM - Each client writes to a fixed set of random contacts
+ * STAR - Everyone writes to client 0, which answers everyone (hot recipient)
+ */
+public enum ConversationGraph {
+    PAIRS("Pairs"),
+    RING("Ring"),
+    RANDOM("Random contacts"),
+    STAR("Star");
+
+    private final String displayName;
+
+    ConversationGraph(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Get the conversation partners of one client
+     * @param index Client index
+     * @param clients Number of clients
+     * @param contacts Partners per client (RANDOM only)
+     * @param random Seeded source for RANDOM
+     * @return Indexes of the clients this one sends to
+     */
+    public int[] partners(int index, int clients, int contacts, Random random) {
+        if (clients < 2) {
+            return new int[0];
+        }
+
+        return switch (this) {
+            case PAIRS -> new int[] {(index ^ 1) < clients ? index ^ 1 : index - 1};
+            case RING -> new int[] {(index + 1) % clients};
+            case RANDOM -> {
+                int[] partners = new int[Math.max(1, Math.min(contacts, clients - 1))];
+                for (int i = 0; i < partners.length; i++) {
+                    int partner = random.nextInt(clients - 1);
+                    partners[i] = partner >= index ? partner + 1 : partner;
+                }
+                yield partners;
+            }
+            case STAR -> {
+                if (index != 0) {
+                    yield new int[] {0};
+                }
+                int[] everyone = new int[clients - 1];
+                for (int i = 0; i < everyone.length; i++) {
+                    everyone[i] = i + 1;
+                }
+                yield everyone;
+            }
+        };
+    }
+
+    /**
+     * Parse a graph name
+     * @param value Graph name (pairs, ring, random, star)
+     * @return Matching graph, PAIRS if unknown
+     */
+    public static ConversationGraph parse(String value) {
+        if (value == null || value.isBlank()) {
+            return PAIRS;
+        }
+
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            Log.warn("⚠️ Unknown conversation graph '" + value + "', using pairs");
+            return PAIRS;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
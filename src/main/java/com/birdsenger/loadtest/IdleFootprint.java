@@ -0,0 +1,302 @@
+package com.birdsenger.loadtest;
+
+import com.birdsenger.server.ServerConfig;
+import com.birdsenger.server.ServerEngine;
+import com.birdsenger.util.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Measures how much memory the server keeps per idle, logged-in connection,
+ * and how many idle connections each engine sustains
+ *
+ * The server runs in a child JVM so the clients' own sockets and buffers
+ * are not counted. Its resident set size (VmRSS, Linux only) is read once
+ * the server is up, then again after each step of connections has logged
+ * in and sat idle for the settle time; the growth divided by the number of
+ * connections is the cost of one idle connection. RSS includes heap pages
+ * touched by garbage, so the figure is an upper bound; a fixed heap
+ * (--serverJvmArgs="-Xms512m -Xmx512m") keeps heap sizing out of it.
+ *
+ * Several engines (--engines=thread,virtual) are measured one after the
+ * other, each against a fresh server, and compared in a final table. With
+ * --ramp=true connections are added step by step until a step fails
+ * (refused, timed out or the server died) or maxConnections is reached;
+ * the last complete step is the engine's sustainable maximum. Limits of
+ * this machine (ulimit -n, thread limits, memory) apply to both JVMs, so
+ * the first failure is printed to show which side gave up.
+ *
+ * Clients are plain blocking channels without a thread, so 50k of them fit
+ * in this JVM. Loopback connections use several source addresses so the
+ * ephemeral port range does not run out. Options not listed here
+ * (outbound.*, ...) are passed on to the server.
+ *
+ * Usage:
+ *   IdleFootprint --counts=10000,50000 --engine=nio
+ *   IdleFootprint --counts=10000 --engine=virtual --serverJvmArgs="-Xmx1g"
+ *   IdleFootprint --engines=thread,virtual --ramp=true --step=10000 --maxConnections=200000
+ */
+public class IdleFootprint {
+
+    /**
+     * What one engine reached
+     * @param connections Connections open after the last complete step
+     * @param perConnection Resident bytes per connection at that step, -1 if unknown
+     * @param threads Server threads at that step, -1 if unknown
+     * @param stopReason Why the ramp ended, null if every step completed
+     */
+    private record Result(ServerEngine engine, int connections, long perConnection, long threads, String stopReason) {
+    }
+
+    private final ServerConfig options;
+
+    private IdleFootprint(ServerConfig options) {
+        this.options = options;
+    }
+
+    /**
+     * Engines to measure (--engines=thread,virtual), the server's --engine by default
+     */
+    private List<ServerEngine> getEngines() {
+        String engines = options.getString("engines", "");
+        if (engines.isBlank()) {
+            return List.of(options.getEngine());
+        }
+        return Arrays.stream(engines.split(",")).map(ServerEngine::parse).distinct().toList();
+    }
+
+    /**
+     * Connection counts to measure, each one building on the previous
+     * --counts=10000,50000, or with --ramp=true every step up to maxConnections
+     */
+    private int[] getCounts() {
+        if (options.getBoolean("ramp", false)) {
+            int step = Math.max(1, options.getInt("step", 10_000));
+            int max = Math.max(step, options.getInt("maxConnections", 200_000));
+            return IntStream.iterate(step, count -> count <= max, count -> count + step).toArray();
+        }
+        return Arrays.stream(options.getString("counts", "10000,50000").split(","))
+                .map(String::trim)
+                .mapToInt(Integer::parseInt)
+                .filter(count -> count > 0)
+                .sorted()
+                .toArray();
+    }
+
+    /**
+     * Measure every engine, then compare them
+     * @param args Command line, passed on to the server
+     */
+    private void run(String[] args) throws IOException, InterruptedException {
+        List<Result> results = new ArrayList<>();
+        for (ServerEngine engine : getEngines()) {
+            results.add(measure(engine, args));
+        }
+
+        if (results.size() < 2 && !options.getBoolean("ramp", false)) {
+            return;
+        }
+
+        System.out.printf("%n%-32s %12s %16s %10s  %s%n", "engine", "connections", "per connection", "threads", "stopped by");
+        for (Result result : results) {
+            System.out.printf("%-32s %12d %16s %10s  %s%n", result.engine().getDisplayName(), result.connections(),
+                    formatBytes(result.perConnection()), result.threads() < 0 ? "n/a" : result.threads(),
+                    result.stopReason() != null ? result.stopReason() : "-");
+        }
+    }
+
+    /**
+     * Run every step against a freshly started server on one engine
+     * @param args Command line, passed on to the server
+     * @return Largest step that completed and its footprint
+     */
+    private Result measure(ServerEngine engine, String[] args) throws IOException, InterruptedException {
+        String host = options.getString("host", "127.0.0.1");
+        int port = options.getPort();
+        long settleMillis = Math.max(0, options.getInt("settleMillis", 3000));
+        List<SocketChannel> clients = new ArrayList<>();
+
+        Process server = startServer(engine, args);
+        try {
+            Thread.sleep(settleMillis);
+            long baseline = residentBytes(server.pid());
+            System.out.printf("%nEngine %s, baseline RSS %s%n", engine, formatBytes(baseline));
+            System.out.printf("%12s %14s %14s %16s %10s%n", "connections", "server RSS", "growth", "per connection", "threads");
+
+            Result reached = new Result(engine, 0, -1, -1, null);
+            for (int count : getCounts()) {
+                int failures = connect(host, port, count, clients);
+                Thread.sleep(settleMillis);
+                if (!server.isAlive()) {
+                    return new Result(engine, reached.connections(), reached.perConnection(), reached.threads(),
+                            "server exited with code " + server.exitValue());
+                }
+
+                long resident = residentBytes(server.pid());
+                long growth = resident - baseline;
+                long perConnection = clients.isEmpty() || resident < 0 ? -1 : growth / clients.size();
+                long threads = threadCount(server.pid());
+                System.out.printf("%12d %14s %14s %16s %10s%n", clients.size(), formatBytes(resident),
+                        formatBytes(growth), formatBytes(perConnection), threads < 0 ? "n/a" : threads);
+
+                if (failures > 0) {
+                    return new Result(engine, reached.connections(), reached.perConnection(), reached.threads(),
+                            failures + " of " + (count - reached.connections()) + " logins failed at " + count);
+                }
+                reached = new Result(engine, clients.size(), perConnection, threads, null);
+            }
+            return reached;
+
+        } finally {
+            ChildServer.closeAll(clients);
+            ChildServer.stop(server);
+        }
+    }
+
+    /**
+     * Start the server in a child JVM and wait until it accepts connections
+     */
+    private Process startServer(ServerEngine engine, String[] args) throws IOException, InterruptedException {
+        // Quiet, and no heartbeats expected: the connections stay idle on purpose.
+        // The login burst is not what is measured, so it must not trip overload control
+        List<String> serverArgs = new ArrayList<>(List.of(
+                "--log.level=warn", "--idle.missedHeartbeats=0", "--overload.enabled=false"));
+        serverArgs.addAll(Arrays.asList(args));
+        serverArgs.add("--engine=" + engine.name()); // later options win
+        return ChildServer.start(options, serverArgs);
+    }
+
+    /**
+     * Open and log in connections until count are open, a limited number at a time
+     * A login that does not complete within loginTimeoutMillis counts as failed,
+     * so a server that stopped accepting ends the step instead of hanging it
+     * @return Number of logins that failed
+     */
+    private int connect(String host, int port, int count, List<SocketChannel> clients) throws InterruptedException {
+        int firstUserId = options.getInt("firstUserId", 1_000_000) + clients.size();
+        int missing = count - clients.size();
+        int sourceAddresses = options.getInt("sourceAddresses", 4);
+        long loginTimeoutMillis = Math.max(100, options.getInt("loginTimeoutMillis", 10_000));
+        String codec = ChildServer.codec(options);
+
+        Semaphore permits = new Semaphore(Math.max(1, options.getInt("connectConcurrency", 256)));
+        SocketChannel[] connected = new SocketChannel[missing];
+        AtomicInteger failures = new AtomicInteger();
+
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            for (int i = 0; i < missing; i++) {
+                int index = i;
+                InetSocketAddress source = ChildServer.sourceAddress(host, index, sourceAddresses);
+                if (!permits.tryAcquire(loginTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                    Log.warn("⚠️ Logins stalled after " + (clients.size() + i) + " connections");
+                    break;
+                }
+                executor.execute(() -> {
+                    try {
+                        connected[index] = ChildServer.login(host, port, source, firstUserId + index, codec);
+                    } catch (IOException e) {
+                        if (failures.getAndIncrement() == 0) {
+                            Log.warn("⚠️ Connection failed: " + e.getMessage());
+                        }
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            // Interrupting a blocked login closes its channel
+            if (!executor.awaitTermination(loginTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+                executor.awaitTermination(loginTimeoutMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        int opened = 0;
+        for (SocketChannel channel : connected) {
+            if (channel != null && channel.isOpen()) {
+                clients.add(channel);
+                opened++;
+            }
+        }
+        int failed = missing - opened;
+        if (failed > 0) {
+            Log.warn("⚠️ " + failed + " of " + missing + " connections failed (ulimit -n, thread limit, overload control?)");
+        }
+        return failed;
+    }
+
+    /**
+     * Read the resident set size of a process from /proc
+     * @return Bytes, or -1 if unavailable (not Linux)
+     */
+    private static long residentBytes(long pid) throws IOException {
+        long kib = procStatus(pid, "VmRSS:");
+        return kib < 0 ? -1 : kib * 1024;
+    }
+
+    /**
+     * Read the number of threads of a process from /proc
+     * @return Threads, or -1 if unavailable (not Linux)
+     */
+    private static long threadCount(long pid) throws IOException {
+        return procStatus(pid, "Threads:");
+    }
+
+    /**
+     * Read the first number of a /proc/pid/status line
+     * @return Value, or -1 if unavailable
+     */
+    private static long procStatus(long pid, String field) throws IOException {
+        Path status = Path.of("/proc", Long.toString(pid), "status");
+        if (!Files.exists(status)) {
+            return -1;
+        }
+
+        for (String line : Files.readAllLines(status)) {
+            if (line.startsWith(field)) {
+                String[] fields = line.substring(field.length()).trim().split("\\s+");
+                return Long.parseLong(fields[0]);
+            }
+        }
+        return -1;
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 0) {
+            return "n/a";
+        }
+        if (bytes < 10 * 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 10L * 1024 * 1024) {
+            return (bytes / 1024) + " KiB";
+        }
+        return (bytes / (1024 * 1024)) + " MiB";
+    }
+
+    public static void main(String[] args) throws Exception {
+        ServerConfig options = ServerConfig.fromArgs(args);
+        Log.configure(options.getLogLevel(), options.isContentLoggingEnabled());
+
+        try {
+            new IdleFootprint(options).run(args);
+        } finally {
+            Log.flush();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.birdsenger.loadtest;
+
+import com.birdsenger.network.BinaryCodec;
+import com.birdsenger.network.FrameDecoder;
+import com.birdsenger.network.Protocol;
+import com.birdsenger.network.ProtocolMessage;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One simulated user: a socket speaking the real Protocol
+ *
+ * A virtual thread reads and classifies everything the server sends; the
+ * owner thread sends. The send time travels inside the client message ID
+ * ("userId-counter-nanos-measured"), so the recipient can compute the
+ * end-to-end latency without any shared bookkeeping. All clients live in
+ * one JVM, so System.nanoTime() is comparable between them.
+ */
+class LoadClient {
+    private static final int CONNECT_TIMEOUT_MILLIS = 10_000;
+    private static final int AUTH_TIMEOUT_MILLIS = 10_000;
+
+    // Send times are carried relative to this, so they are never negative
+    private static final long BASE_NANOS = System.nanoTime();
+
+    private final int userId;
+    private final LoadStats stats;
+    private final FrameDecoder frameDecoder = new FrameDecoder(Protocol.DEFAULT_MAX_FRAME_SIZE);
+    private final CountDownLatch authenticated = new CountDownLatch(1);
+
+    private Socket socket;
+    private OutputStream out;
+    private long messageCounter;
+    private volatile boolean closing;
+
+    LoadClient(int userId, LoadStats stats) {
+        this.userId = userId;
+        this.stats = stats;
+    }
+
+    /**
+     * Connect, log in and wait for the AUTH acknowledgment
+     * @param codec Codec to ask for (Protocol.CODEC_JSON/CODEC_BINARY)
+     * @return true once authenticated
+     */
+    boolean connect(String host, int port, String codec) throws IOException, InterruptedException {
+        socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+        out = new BufferedOutputStream(socket.getOutputStream());
+
+        InputStream in = socket.getInputStream();
+        Thread.ofVirtual().name("LoadClient-" + userId).start(() -> readLoop(in));
+
+        send(Protocol.createAuthMessage(userId, "load" + userId, codec));
+        return authenticated.await(AUTH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Send a chat message, optionally preceded by a typing indicator
+     * @param receiverId Recipient user ID
+     * @param content Message text
+     * @param typing Send TYPING first
+     */
+    void sendChat(int receiverId, String content, boolean typing) throws IOException {
+        if (typing) {
+            out.write(Protocol.encodeTextFrame(Protocol.createTypingMessage(userId, receiverId, true)));
+            stats.typingSent.increment();
+        }
+
+        boolean measured = stats.isMeasuring();
+        String messageId = userId + "-" + (++messageCounter) + "-" + (System.nanoTime() - BASE_NANOS) + "-" + (measured ? 1 : 0);
+        send(Protocol.createChatMessage(messageId, userId, receiverId, content));
+
+        stats.sent.increment();
+        if (measured) {
+            stats.measuredSent.increment();
+        }
+    }
+
+    /**
+     * Send a presence heartbeat
+     */
+    void sendPresence() throws IOException {
+        send(Protocol.createPresenceMessage(userId, Protocol.ONLINE));
+        stats.presenceSent.increment();
+    }
+
+    /**
+     * Log out and close the connection
+     */
+    void close() {
+        closing = true;
+        try {
+            send(Protocol.createLogoutMessage(userId));
+        } catch (IOException e) {
+            // Already gone
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+    }
+
+    /**
+     * Get the simulated user's ID
+     */
+    int getUserId() {
+        return userId;
+    }
+
+    private void send(String json) throws IOException {
+        out.write(Protocol.encodeTextFrame(json));
+        out.flush();
+    }
+
+    private void readLoop(InputStream in) {
+        try {
+            frameDecoder.readFrom(in, new FrameDecoder.FrameListener() {
+                @Override
+                public void onTextFrame(byte[] frame) {
+                    onMessage(Protocol.decode(FrameDecoder.text(frame)));
+                }
+
+                @Override
+                public void onBinaryFrame(byte[] body) {
+                    onMessage(BinaryCodec.decode(body));
+                }
+            });
+        } catch (IOException e) {
+            // Treated as a disconnect below
+        }
+
+        if (!closing) {
+            stats.disconnects.increment();
+        }
+    }
+
+    private void onMessage(ProtocolMessage message) {
+        switch (message) {
+            case ProtocolMessage.Chat chat -> onChat(chat);
+            case ProtocolMessage.Ack ack -> onAck(ack);
+            case ProtocolMessage.Typing typing -> stats.typingReceived.increment();
+            case ProtocolMessage.Presence presence -> stats.presenceReceived.increment();
+            case ProtocolMessage.PresenceBatch batch -> stats.presenceReceived.add(batch.statuses().size());
+            case ProtocolMessage.Error error -> stats.errors.increment();
+            case null, default -> {
+                // Not part of the measured traffic
+            }
+        }
+    }
+
+    private void onChat(ProtocolMessage.Chat chat) {
+        stats.received.increment();
+
+        long[] sent = parseMessageId(chat.messageId());
+        if (sent != null && sent[1] == 1) {
+            stats.measuredReceived.increment();
+            stats.endToEndLatency.record((System.nanoTime() - BASE_NANOS - sent[0]) / 1000);
+        }
+    }
+
+    private void onAck(ProtocolMessage.Ack ack) {
+        if (Protocol.AUTH.equals(ack.messageId())) {
+            authenticated.countDown();
+            return;
+        }
+
+        if (!ack.success()) {
+            stats.acksFailed.increment();
+        } else if (Protocol.QUEUED.equals(ack.status())) {
+            stats.acksQueued.increment();
+        } else {
+            stats.acksDelivered.increment();
+        }
+
+        long[] sent = parseMessageId(ack.messageId());
+        if (sent != null && sent[1] == 1) {
+            stats.ackLatency.record((System.nanoTime() - BASE_NANOS - sent[0]) / 1000);
+        }
+    }
+
+    /**
+     * Read the send time and measurement flag back out of a message ID
+     * @return {send time relative to BASE_NANOS, measured flag}, or null for IDs not made by a LoadClient
+     */
+    private static long[] parseMessageId(String messageId) {
+        if (messageId == null) {
+            return null;
+        }
+
+        int flag = messageId.lastIndexOf('-');
+        int nanos = flag > 0 ? messageId.lastIndexOf('-', flag - 1) : -1;
+        if (nanos < 0) {
+            return null;
+        }
+
+        try {
+            return new long[] {
+                    Long.parseLong(messageId, nanos + 1, flag, 10),
+                    Long.parseLong(messageId, flag + 1, messageId.length(), 10)
+            };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
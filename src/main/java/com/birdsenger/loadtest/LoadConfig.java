@@ -0,0 +1,160 @@
+package com.birdsenger.loadtest;
+
+import com.birdsenger.server.ServerConfig;
+
+/**
+ * Settings for a LoadGenerator run
+ * Given on the command line as --name=value or as -Dbirdsenger.name=value,
+ * like ServerConfig; with --inProcess=true the same options also configure
+ * the server started in this JVM (--engine=nio, --outbound.capacity=N, ...)
+ */
+public class LoadConfig {
+    private final ServerConfig options;
+
+    private LoadConfig(ServerConfig options) {
+        this.options = options;
+    }
+
+    /**
+     * Build configuration from command line arguments and system properties
+     * @param args Command line arguments (may be null)
+     * @return Load test configuration
+     */
+    public static LoadConfig fromArgs(String[] args) {
+        return new LoadConfig(ServerConfig.fromArgs(args));
+    }
+
+    /**
+     * Options as server configuration, for a server started in this JVM
+     */
+    public ServerConfig getServerConfig() {
+        return options;
+    }
+
+    /**
+     * Start a server in this JVM instead of using a running one (--inProcess=false)
+     */
+    public boolean isInProcess() {
+        return options.getBoolean("inProcess", false);
+    }
+
+    /**
+     * Server host (--host=127.0.0.1)
+     */
+    public String getHost() {
+        return options.getString("host", "127.0.0.1");
+    }
+
+    /**
+     * Server port (--port=8080)
+     */
+    public int getPort() {
+        return options.getPort();
+    }
+
+    /**
+     * Simulated clients, one connection each (--clients=1000)
+     */
+    public int getClients() {
+        return Math.max(2, options.getInt("clients", 1000));
+    }
+
+    /**
+     * User ID of the first simulated client (--firstUserId=1000000)
+     * Kept far away from real accounts
+     */
+    public int getFirstUserId() {
+        return options.getInt("firstUserId", 1_000_000);
+    }
+
+    /**
+     * Connections opened at the same time while ramping up (--connectConcurrency=64)
+     */
+    public int getConnectConcurrency() {
+        return Math.max(1, options.getInt("connectConcurrency", 64));
+    }
+
+    /**
+     * Chat messages per second across all clients (--rate=1000)
+     */
+    public int getRate() {
+        return Math.max(1, options.getInt("rate", 1000));
+    }
+
+    /**
+     * Who talks to whom (--graph=pairs|ring|random|star)
+     */
+    public ConversationGraph getGraph() {
+        return ConversationGraph.parse(options.getString("graph", null));
+    }
+
+    /**
+     * Conversation partners per client for the random graph (--contacts=5)
+     */
+    public int getContacts() {
+        return Math.max(1, options.getInt("contacts", 5));
+    }
+
+    /**
+     * Seed for the random graph and send jitter (--seed=42)
+     */
+    public long getSeed() {
+        return options.getInt("seed", 42);
+    }
+
+    /**
+     * Chat message text length in characters (--messageBytes=64)
+     */
+    public int getMessageBytes() {
+        return Math.max(1, options.getInt("messageBytes", 64));
+    }
+
+    /**
+     * Percent of chat messages preceded by a TYPING indicator (--typingPercent=50)
+     */
+    public int getTypingPercent() {
+        return Math.max(0, Math.min(100, options.getInt("typingPercent", 50)));
+    }
+
+    /**
+     * Interval of the PRESENCE heartbeat each client sends (--presenceIntervalMs=30000, 0 = never)
+     */
+    public int getPresenceIntervalMillis() {
+        return Math.max(0, options.getInt("presenceIntervalMs", 30_000));
+    }
+
+    /**
+     * Ask the server for binary frames during AUTH (--codec=json|binary)
+     */
+    public String getCodec() {
+        return options.getString("codec", "json");
+    }
+
+    /**
+     * Seconds of traffic before latencies are recorded (--warmupSeconds=5)
+     */
+    public int getWarmupSeconds() {
+        return Math.max(0, options.getInt("warmupSeconds", 5));
+    }
+
+    /**
+     * Seconds of measured traffic (--durationSeconds=30)
+     */
+    public int getDurationSeconds() {
+        return Math.max(1, options.getInt("durationSeconds", 30));
+    }
+
+    /**
+     * How long to wait for in-flight messages after sending stops (--drainMs=3000)
+     */
+    public int getDrainMillis() {
+        return Math.max(0, options.getInt("drainMs", 3000));
+    }
+
+    /**
+     * File the JSON report is written to (--report=path, none by default)
+     */
+    public String getReportFile() {
+        return options.getString("report", null);
+    }
+}
@@ -0,0 +1,233 @@
+package com.birdsenger.loadtest;
+
+import com.birdsenger.network.Protocol;
+import com.birdsenger.server.BirdSengerServer;
+import com.birdsenger.util.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Headless load test for BirdSengerServer
+ *
+ * Opens one connection per simulated user, logs them all in, then sends
+ * chat messages (with optional TYPING before them and PRESENCE heartbeats)
+ * along a conversation graph at a fixed total rate. Each client sends from
+ * its own virtual thread on a fixed schedule with a random phase, so the
+ * load is spread evenly instead of arriving in bursts.
+ *
+ * Phases: connect, warm-up (not measured), measurement, drain. The report
+ * gives end-to-end latency percentiles (send -> recipient), ACK latency,
+ * throughput and the number of measured messages that never arrived.
+ *
+ * Usage:
+ *   LoadGenerator --port=8080 --clients=2000 --rate=5000 --graph=random
+ *   LoadGenerator --inProcess=true --engine=nio --clients=1000 --report=load.json
+ */
+public class LoadGenerator {
+    private static final int SERVER_START_TIMEOUT_MILLIS = 10_000;
+
+    private final LoadConfig config;
+    private final LoadStats stats = new LoadStats();
+    private final List<LoadClient> clients = new ArrayList<>();
+    private final List<Thread> senders = new ArrayList<>();
+    private volatile boolean sending;
+
+    public LoadGenerator(LoadConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Run all phases and return the results
+     * @return Report of the measurement window
+     */
+    public LoadReport run() throws InterruptedException {
+        connectClients();
+        if (clients.size() < 2) {
+            throw new IllegalStateException("Only " + clients.size() + " clients could log in");
+        }
+
+        startSenders();
+
+        Log.info("🔥 Warming up for " + config.getWarmupSeconds() + "s");
+        Thread.sleep(TimeUnit.SECONDS.toMillis(config.getWarmupSeconds()));
+
+        Log.info("📏 Measuring for " + config.getDurationSeconds() + "s");
+        stats.setMeasuring(true);
+        long measureStart = System.nanoTime();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(config.getDurationSeconds()));
+        stats.setMeasuring(false);
+        long measuredNanos = System.nanoTime() - measureStart;
+
+        stopSenders();
+        Log.info("⏳ Waiting " + config.getDrainMillis() + "ms for messages in flight");
+        Thread.sleep(config.getDrainMillis());
+
+        LoadReport report = new LoadReport(config, stats, clients.size(), measuredNanos);
+        for (LoadClient client : clients) {
+            client.close();
+        }
+        return report;
+    }
+
+    /**
+     * Open and log in every client, a limited number at a time
+     */
+    private void connectClients() throws InterruptedException {
+        Log.info("🔌 Connecting " + config.getClients() + " clients to " + config.getHost() + ":" + config.getPort());
+        String codec = "binary".equalsIgnoreCase(config.getCodec()) ? Protocol.CODEC_BINARY : Protocol.CODEC_JSON;
+        Semaphore permits = new Semaphore(config.getConnectConcurrency());
+        LoadClient[] connected = new LoadClient[config.getClients()];
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < connected.length; i++) {
+                int index = i;
+                permits.acquire();
+                executor.execute(() -> {
+                    LoadClient client = new LoadClient(config.getFirstUserId() + index, stats);
+                    try {
+                        if (client.connect(config.getHost(), config.getPort(), codec)) {
+                            connected[index] = client;
+                            stats.connected.increment();
+                        } else {
+                            client.close();
+                            stats.connectFailures.increment();
+                        }
+                    } catch (IOException e) {
+                        stats.connectFailures.increment();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        }
+
+        for (LoadClient client : connected) {
+            if (client != null) {
+                clients.add(client);
+            }
+        }
+        Log.info("✅ " + clients.size() + " clients logged in, " + stats.connectFailures.sum() + " failed");
+    }
+
+    /**
+     * Start one sending virtual thread per client
+     */
+    private void startSenders() {
+        Random graphRandom = new Random(config.getSeed());
+        long intervalNanos = TimeUnit.SECONDS.toNanos(clients.size()) / config.getRate();
+        String content = "x".repeat(config.getMessageBytes());
+
+        sending = true;
+        for (int i = 0; i < clients.size(); i++) {
+            LoadClient client = clients.get(i);
+            int[] partners = config.getGraph().partners(i, clients.size(), config.getContacts(), graphRandom);
+            int[] partnerIds = new int[partners.length];
+            for (int p = 0; p < partners.length; p++) {
+                partnerIds[p] = clients.get(partners[p]).getUserId();
+            }
+
+            senders.add(Thread.ofVirtual()
+                    .name("LoadSender-" + client.getUserId())
+                    .start(() -> sendLoop(client, partnerIds, intervalNanos, content)));
+        }
+        Log.info("📤 Sending " + config.getRate() + " messages/s along a " + config.getGraph() + " graph");
+    }
+
+    private void stopSenders() throws InterruptedException {
+        sending = false;
+        for (Thread sender : senders) {
+            sender.join();
+        }
+    }
+
+    /**
+     * Send to the client's partners in turn, one message per interval
+     */
+    private void sendLoop(LoadClient client, int[] partnerIds, long intervalNanos, String content) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long presenceIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getPresenceIntervalMillis());
+        long nextSend = System.nanoTime() + random.nextLong(Math.max(1, intervalNanos));
+        long nextPresence = System.nanoTime() + random.nextLong(Math.max(1, presenceIntervalNanos));
+        int partner = 0;
+
+        try {
+            while (sending) {
+                long now = System.nanoTime();
+                if (now < nextSend) {
+                    LockSupport.parkNanos(nextSend - now);
+                    continue;
+                }
+
+                boolean typing = random.nextInt(100) < config.getTypingPercent();
+                client.sendChat(partnerIds[partner], content, typing);
+                partner = (partner + 1) % partnerIds.length;
+                nextSend += intervalNanos;
+
+                if (presenceIntervalNanos > 0 && now >= nextPresence) {
+                    client.sendPresence();
+                    nextPresence += presenceIntervalNanos;
+                }
+            }
+        } catch (IOException e) {
+            // Counted by the client's reader as a disconnect
+        }
+    }
+
+    /**
+     * Start a server in this JVM and wait until it accepts connections
+     */
+    private static BirdSengerServer startServer(LoadConfig config) throws InterruptedException {
+        BirdSengerServer server = new BirdSengerServer(config.getServerConfig());
+        Thread.ofPlatform().daemon(true).name("LoadTest-Server").start(server::start);
+
+        long deadline = System.currentTimeMillis() + SERVER_START_TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            try (Socket probe = new Socket()) {
+                probe.connect(new InetSocketAddress(config.getHost(), config.getPort()), 200);
+                return server;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IllegalStateException("Server did not start on port " + config.getPort());
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadConfig config = LoadConfig.fromArgs(args);
+        Log.configure(config.getServerConfig().getLogLevel(), config.getServerConfig().isContentLoggingEnabled());
+
+        BirdSengerServer server = config.isInProcess() ? startServer(config) : null;
+        try {
+            LoadReport report = new LoadGenerator(config).run();
+            if (server != null) {
+                report.setServerMetrics(server.getMetrics().render());
+            }
+
+            // The report is the tool's output, so it goes to stdout even when logging is quiet
+            Log.flush();
+            System.out.print(report.toText());
+            if (config.getReportFile() != null) {
+                report.writeJson(config.getReportFile());
+                Log.info("📝 Report written to " + config.getReportFile());
+            }
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+            Log.flush();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.birdsenger.loadtest;
+
+import com.birdsenger.server.Histogram;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Results of one LoadGenerator run
+ * Printed as text and optionally written as JSON so runs against different
+ * engines, settings or machines can be compared
+ */
+public class LoadReport {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final String[] QUANTILE_NAMES = {"p50", "p90", "p99", "p999"};
+
+    private final LoadConfig config;
+    private final int clients;
+    private final double measuredSeconds;
+
+    private final long connectFailures;
+    private final long disconnects;
+    private final long sent;
+    private final long received;
+    private final long measuredSent;
+    private final long measuredReceived;
+    private final long acksDelivered;
+    private final long acksQueued;
+    private final long acksFailed;
+    private final long typingSent;
+    private final long typingReceived;
+    private final long presenceSent;
+    private final long errors;
+    private final Histogram.Snapshot endToEndLatency;
+    private final Histogram.Snapshot ackLatency;
+
+    // Server side metrics text, only when the server ran in this JVM
+    private String serverMetrics;
+
+    LoadReport(LoadConfig config, LoadStats stats, int clients, long measuredNanos) {
+        this.config = config;
+        this.clients = clients;
+        this.measuredSeconds = measuredNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        this.connectFailures = stats.connectFailures.sum();
+        this.disconnects = stats.disconnects.sum();
+        this.sent = stats.sent.sum();
+        this.received = stats.received.sum();
+        this.measuredSent = stats.measuredSent.sum();
+        this.measuredReceived = stats.measuredReceived.sum();
+        this.acksDelivered = stats.acksDelivered.sum();
+        this.acksQueued = stats.acksQueued.sum();
+        this.acksFailed = stats.acksFailed.sum();
+        this.typingSent = stats.typingSent.sum();
+        this.typingReceived = stats.typingReceived.sum();
+        this.presenceSent = stats.presenceSent.sum();
+        this.errors = stats.errors.sum();
+        this.endToEndLatency = stats.endToEndLatency.snapshot();
+        this.ackLatency = stats.ackLatency.snapshot();
+    }
+
+    /**
+     * Attach the server's own metrics (in-process runs)
+     */
+    public void setServerMetrics(String serverMetrics) {
+        this.serverMetrics = serverMetrics;
+    }
+
+    /**
+     * Get measured messages that did not reach their recipient
+     */
+    public long getLostMessages() {
+        return Math.max(0, measuredSent - measuredReceived);
+    }
+
+    /**
+     * Get measured messages received per second
+     */
+    public double getThroughput() {
+        return measuredSeconds > 0 ? measuredReceived / measuredSeconds : 0;
+    }
+
+    /**
+     * Get the send-to-receive latency distribution (microseconds)
+     */
+    public Histogram.Snapshot getEndToEndLatency() {
+        return endToEndLatency;
+    }
+
+    /**
+     * Human readable summary
+     */
+    public String toText() {
+        StringBuilder out = new StringBuilder(1024);
+        out.append("\n📊 Load test report\n");
+        out.append(String.format("  Clients          %d logged in, %d failed, %d dropped by server%n",
+                clients, connectFailures, disconnects));
+        out.append(String.format("  Traffic          %s graph, %d msg/s target, %d char messages, %d%% with typing%n",
+                config.getGraph(), config.getRate(), config.getMessageBytes(), config.getTypingPercent()));
+        out.append(String.format("  Measured         %.1fs, %d sent, %d received, %d lost (%.3f%%)%n",
+                measuredSeconds, measuredSent, measuredReceived, getLostMessages(),
+                measuredSent > 0 ? 100.0 * getLostMessages() / measuredSent : 0));
+        out.append(String.format("  Throughput       %.0f msg/s%n", getThroughput()));
+        out.append(String.format("  ACKs             %d delivered, %d queued, %d failed%n",
+                acksDelivered, acksQueued, acksFailed));
+        out.append(String.format("  Total            %d chat sent, %d received, %d typing sent, %d received, %d presence, %d errors%n",
+                sent, received, typingSent, typingReceived, presenceSent, errors));
+        appendLatency(out, "End-to-end (µs)", endToEndLatency);
+        appendLatency(out, "ACK (µs)", ackLatency);
+        return out.toString();
+    }
+
+    /**
+     * Write the report as JSON
+     * @param file Output file
+     */
+    public void writeJson(String file) throws IOException {
+        JsonObject json = new JsonObject();
+
+        JsonObject setup = new JsonObject();
+        setup.addProperty("clients", clients);
+        setup.addProperty("graph", config.getGraph().name());
+        setup.addProperty("rate", config.getRate());
+        setup.addProperty("messageBytes", config.getMessageBytes());
+        setup.addProperty("typingPercent", config.getTypingPercent());
+        setup.addProperty("codec", config.getCodec());
+        setup.addProperty("inProcess", config.isInProcess());
+        setup.addProperty("engine", config.getServerConfig().getEngine().name());
+        json.add("setup", setup);
+
+        json.addProperty("measuredSeconds", measuredSeconds);
+        json.addProperty("connectFailures", connectFailures);
+        json.addProperty("disconnects", disconnects);
+        json.addProperty("measuredSent", measuredSent);
+        json.addProperty("measuredReceived", measuredReceived);
+        json.addProperty("lost", getLostMessages());
+        json.addProperty("throughput", getThroughput());
+        json.addProperty("acksDelivered", acksDelivered);
+        json.addProperty("acksQueued", acksQueued);
+        json.addProperty("acksFailed", acksFailed);
+        json.addProperty("errors", errors);
+        json.add("endToEndLatencyMicros", latencyJson(endToEndLatency));
+        json.add("ackLatencyMicros", latencyJson(ackLatency));
+        if (serverMetrics != null) {
+            json.addProperty("serverMetrics", serverMetrics);
+        }
+
+        String text = new GsonBuilder().setPrettyPrinting().create().toJson(json);
+        Files.writeString(Path.of(file), text, StandardCharsets.UTF_8);
+    }
+
+    private static void appendLatency(StringBuilder out, String name, Histogram.Snapshot latency) {
+        out.append(String.format("  %-16s p50 %d  p90 %d  p99 %d  p99.9 %d  max %d  mean %.0f%n", name,
+                latency.percentile(0.5), latency.percentile(0.9), latency.percentile(0.99),
+                latency.percentile(0.999), latency.max(), latency.mean()));
+    }
+
+    private static JsonObject latencyJson(Histogram.Snapshot latency) {
+        JsonObject json = new JsonObject();
+        for (int i = 0; i < QUANTILES.length; i++) {
+            json.addProperty(QUANTILE_NAMES[i], latency.percentile(QUANTILES[i]));
+        }
+        json.addProperty("max", latency.max());
+        json.addProperty("mean", latency.mean());
+        json.addProperty("count", latency.count());
+        return json;
+    }
+}
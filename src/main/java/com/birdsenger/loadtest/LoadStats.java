@@ -0,0 +1,45 @@
+package com.birdsenger.loadtest;
+
+import com.birdsenger.server.Histogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters shared by all simulated clients of a run
+ * Only messages sent inside the measurement window count towards latency
+ * and loss; traffic during warm-up and drain is counted separately.
+ */
+class LoadStats {
+    final LongAdder connected = new LongAdder();
+    final LongAdder connectFailures = new LongAdder();
+    final LongAdder disconnects = new LongAdder();
+
+    final LongAdder sent = new LongAdder();
+    final LongAdder received = new LongAdder();
+    final LongAdder measuredSent = new LongAdder();
+    final LongAdder measuredReceived = new LongAdder();
+
+    final LongAdder acksDelivered = new LongAdder();
+    final LongAdder acksQueued = new LongAdder();
+    final LongAdder acksFailed = new LongAdder();
+
+    final LongAdder typingSent = new LongAdder();
+    final LongAdder typingReceived = new LongAdder();
+    final LongAdder presenceSent = new LongAdder();
+    final LongAdder presenceReceived = new LongAdder();
+    final LongAdder errors = new LongAdder();
+
+    // Send -> receive by the recipient, and send -> ACK back at the sender (microseconds)
+    final Histogram endToEndLatency = new Histogram();
+    final Histogram ackLatency = new Histogram();
+
+    private volatile boolean measuring;
+
+    void setMeasuring(boolean measuring) {
+        this.measuring = measuring;
+    }
+
+    boolean isMeasuring() {
+        return measuring;
+    }
+}
@@ -14,6 +14,8 @@ public class Message {
     private MessageType type;
     private MessageStatus status;
     private LocalDateTime timestamp;
+    private String messageUid;  // client-generated ID shared with the server (null for old messages)
+    private long seq;           // server-assigned conversation sequence number (0 until known)
 
     // Constructor for creating new message (before DB insert)
     public Message(int senderId, int receiverId, String content, MessageType type) {
@@ -94,6 +96,22 @@ public class Message {
         this.timestamp = timestamp;
     }
 
+    public String getMessageUid() {
+        return messageUid;
+    }
+
+    public void setMessageUid(String messageUid) {
+        this.messageUid = messageUid;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
+
     @Override
     public String toString() {
         return "Message{" +
@@ -104,6 +122,7 @@ public class Message {
                 ", type=" + type +
                 ", status=" + status +
                 ", timestamp=" + timestamp +
+                ", seq=" + seq +
                 '}';
     }
 }
\ No newline at end of file
@@ -0,0 +1,302 @@
+package com.birdsenger.network;
+
+import com.birdsenger.util.Log;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compact length-prefixed binary encoding for the hot Protocol messages
+ *
+ * Frame layout (big-endian):
+ *   magic (1 byte, 0xB5) | length (int32, bytes that follow) | type (1 byte) | body
+ *
+ * Bodies:
+ *   AUTH     action(1) userId(4) timestamp(8) username(UTF-8, rest)
+ *   MESSAGE  senderId(4) receiverId(4) timestamp(8) seq(8) idLength(1) messageId(UTF-8) content(UTF-8, rest)
+ *   PRESENCE userId(4) status(1) timestamp(8)
+ *   PRESENCE_BATCH timestamp(8) count(4) then userId(4) status(1) per user
+ *   TYPING   senderId(4) receiverId(4) isTyping(1) timestamp(8)
+ *   ACK      flags(1: success, delivered, queued, throttled) timestamp(8) seq(8) messageId(UTF-8, rest)
+ *   GROUP_MESSAGE senderId(4) groupId(4) timestamp(8) idLength(1) messageId(UTF-8) content(UTF-8, rest)
+ *
+ * A JSON frame always starts with '{', so the magic byte lets a reader
+ * tell both formats apart frame by frame. Messages without a binary form
+ * (ERROR, USER_LIST, SYNC, SYNC_PAGE, GROUP, unknown presence states) stay JSON on binary connections.
+ */
+public final class BinaryCodec {
+    public static final byte MAGIC = (byte) 0xB5;
+    public static final int HEADER_SIZE = 5;
+
+    // Message type bytes
+    private static final byte TYPE_AUTH = 1;
+    private static final byte TYPE_MESSAGE = 2;
+    private static final byte TYPE_PRESENCE = 3;
+    private static final byte TYPE_TYPING = 4;
+    private static final byte TYPE_ACK = 5;
+    private static final byte TYPE_GROUP_MESSAGE = 6;
+    private static final byte TYPE_PRESENCE_BATCH = 7;
+
+    // Auth action bytes
+    private static final byte ACTION_LOGIN = 0;
+    private static final byte ACTION_LOGOUT = 1;
+
+    // Longest message ID that fits the one-byte length prefix
+    private static final int MAX_MESSAGE_ID_LENGTH = 255;
+
+    // Ack flag bits
+    private static final byte ACK_SUCCESS = 1;
+    private static final byte ACK_DELIVERED = 2;
+    private static final byte ACK_QUEUED = 4;
+    private static final byte ACK_THROTTLED = 8;
+
+    // Presence status bytes, indexed by code
+    private static final String[] STATUSES = {"ONLINE", "OFFLINE", "AWAY", "DO_NOT_DISTURB"};
+
+    private BinaryCodec() {
+    }
+
+    /**
+     * Encode a message as a complete binary frame
+     * @param message Message to encode
+     * @return Frame bytes, or null if the message has no binary form
+     */
+    public static byte[] encode(ProtocolMessage message) {
+        if (message instanceof ProtocolMessage.Auth auth) {
+            byte action = actionCode(auth.action());
+            if (action < 0) {
+                return null;
+            }
+            byte[] username = utf8(auth.username());
+            ByteBuffer frame = allocate(TYPE_AUTH, 1 + 4 + 8 + username.length);
+            frame.put(action).putInt(auth.userId()).putLong(auth.timestamp()).put(username);
+            return frame.array();
+
+        } else if (message instanceof ProtocolMessage.Chat chat) {
+            byte[] messageId = utf8(chat.messageId());
+            if (messageId.length > MAX_MESSAGE_ID_LENGTH) {
+                return null;
+            }
+            byte[] content = utf8(chat.content());
+            ByteBuffer frame = allocate(TYPE_MESSAGE, 4 + 4 + 8 + 8 + 1 + messageId.length + content.length);
+            frame.putInt(chat.senderId()).putInt(chat.receiverId()).putLong(chat.timestamp()).putLong(chat.seq())
+                    .put((byte) messageId.length).put(messageId).put(content);
+            return frame.array();
+
+        } else if (message instanceof ProtocolMessage.GroupChat groupChat) {
+            byte[] messageId = utf8(groupChat.messageId());
+            if (messageId.length > MAX_MESSAGE_ID_LENGTH) {
+                return null;
+            }
+            byte[] content = utf8(groupChat.content());
+            ByteBuffer frame = allocate(TYPE_GROUP_MESSAGE, 4 + 4 + 8 + 1 + messageId.length + content.length);
+            frame.putInt(groupChat.senderId()).putInt(groupChat.groupId()).putLong(groupChat.timestamp())
+                    .put((byte) messageId.length).put(messageId).put(content);
+            return frame.array();
+
+        } else if (message instanceof ProtocolMessage.Presence presence) {
+            byte status = statusCode(presence.status());
+            if (status < 0) {
+                return null;
+            }
+            ByteBuffer frame = allocate(TYPE_PRESENCE, 4 + 1 + 8);
+            frame.putInt(presence.userId()).put(status).putLong(presence.timestamp());
+            return frame.array();
+
+        } else if (message instanceof ProtocolMessage.PresenceBatch batch) {
+            ByteBuffer frame = allocate(TYPE_PRESENCE_BATCH, 8 + 4 + 5 * batch.statuses().size());
+            frame.putLong(batch.timestamp()).putInt(batch.statuses().size());
+            for (Map.Entry<Integer, String> entry : batch.statuses().entrySet()) {
+                byte status = statusCode(entry.getValue());
+                if (status < 0) {
+                    return null;
+                }
+                frame.putInt(entry.getKey()).put(status);
+            }
+            return frame.array();
+
+        } else if (message instanceof ProtocolMessage.Typing typing) {
+            ByteBuffer frame = allocate(TYPE_TYPING, 4 + 4 + 1 + 8);
+            frame.putInt(typing.senderId()).putInt(typing.receiverId())
+                    .put((byte) (typing.isTyping() ? 1 : 0)).putLong(typing.timestamp());
+            return frame.array();
+
+        } else if (message instanceof ProtocolMessage.Ack ack) {
+            byte[] messageId = utf8(ack.messageId());
+            ByteBuffer frame = allocate(TYPE_ACK, 1 + 8 + 8 + messageId.length);
+            frame.put(ackFlags(ack)).putLong(ack.timestamp()).putLong(ack.seq()).put(messageId);
+            return frame.array();
+        }
+
+        return null;
+    }
+
+    /**
+     * Decode the part of a frame after the length header
+     * @param body Type byte followed by the message body
+     * @return Decoded message, or null if the frame is malformed or unknown
+     */
+    public static ProtocolMessage decode(byte[] body) {
+        try {
+            ByteBuffer in = ByteBuffer.wrap(body);
+            byte type = in.get();
+
+            switch (type) {
+                case TYPE_AUTH -> {
+                    byte action = in.get();
+                    int userId = in.getInt();
+                    long timestamp = in.getLong();
+                    String username = remainingString(in);
+                    return new ProtocolMessage.Auth(
+                            action == ACTION_LOGOUT ? Protocol.LOGOUT : Protocol.LOGIN,
+                            userId, username, null, timestamp);
+                }
+                case TYPE_MESSAGE -> {
+                    int senderId = in.getInt();
+                    int receiverId = in.getInt();
+                    long timestamp = in.getLong();
+                    long seq = in.getLong();
+                    String messageId = messageId(in);
+                    return new ProtocolMessage.Chat(messageId, seq, senderId, receiverId, remainingString(in), timestamp);
+                }
+                case TYPE_GROUP_MESSAGE -> {
+                    int senderId = in.getInt();
+                    int groupId = in.getInt();
+                    long timestamp = in.getLong();
+                    String messageId = messageId(in);
+                    return new ProtocolMessage.GroupChat(messageId, senderId, groupId, remainingString(in), timestamp);
+                }
+                case TYPE_PRESENCE -> {
+                    int userId = in.getInt();
+                    int status = in.get();
+                    long timestamp = in.getLong();
+                    if (status < 0 || status >= STATUSES.length) {
+                        return null;
+                    }
+                    return new ProtocolMessage.Presence(userId, STATUSES[status], timestamp);
+                }
+                case TYPE_PRESENCE_BATCH -> {
+                    long timestamp = in.getLong();
+                    int count = in.getInt();
+                    if (count < 0 || count > in.remaining() / 5) {
+                        return null;
+                    }
+                    Map<Integer, String> statuses = new LinkedHashMap<>();
+                    for (int i = 0; i < count; i++) {
+                        int userId = in.getInt();
+                        int status = in.get();
+                        if (status < 0 || status >= STATUSES.length) {
+                            return null;
+                        }
+                        statuses.put(userId, STATUSES[status]);
+                    }
+                    return new ProtocolMessage.PresenceBatch(statuses, timestamp);
+                }
+                case TYPE_TYPING -> {
+                    int senderId = in.getInt();
+                    int receiverId = in.getInt();
+                    boolean isTyping = in.get() != 0;
+                    long timestamp = in.getLong();
+                    return new ProtocolMessage.Typing(senderId, receiverId, isTyping, timestamp);
+                }
+                case TYPE_ACK -> {
+                    byte flags = in.get();
+                    long timestamp = in.getLong();
+                    long seq = in.getLong();
+                    return new ProtocolMessage.Ack(remainingString(in), (flags & ACK_SUCCESS) != 0,
+                            ackStatus(flags), null, seq, timestamp);
+                }
+                default -> {
+                    Log.error("❌ Unknown binary message type: " + type);
+                    return null;
+                }
+            }
+
+        } catch (BufferUnderflowException e) {
+            Log.error("❌ Truncated binary frame");
+            return null;
+        }
+    }
+
+    /**
+     * Encode a JSON message string as a binary frame when possible
+     * @param jsonString JSON message
+     * @return Binary frame, or null if the message has no binary form
+     */
+    public static byte[] encodeJson(String jsonString) {
+        ProtocolMessage message = JsonCodec.decode(jsonString);
+        return message != null ? encode(message) : null;
+    }
+
+    private static ByteBuffer allocate(byte type, int bodyLength) {
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + 1 + bodyLength);
+        frame.put(MAGIC).putInt(1 + bodyLength).put(type);
+        return frame;
+    }
+
+    private static byte actionCode(String action) {
+        if (Protocol.LOGIN.equals(action)) {
+            return ACTION_LOGIN;
+        } else if (Protocol.LOGOUT.equals(action)) {
+            return ACTION_LOGOUT;
+        }
+        return -1;
+    }
+
+    private static byte ackFlags(ProtocolMessage.Ack ack) {
+        byte flags = ack.success() ? ACK_SUCCESS : 0;
+        if (Protocol.DELIVERED.equals(ack.status())) {
+            flags |= ACK_DELIVERED;
+        } else if (Protocol.QUEUED.equals(ack.status())) {
+            flags |= ACK_QUEUED;
+        } else if (Protocol.THROTTLED.equals(ack.status())) {
+            flags |= ACK_THROTTLED;
+        }
+        return flags;
+    }
+
+    private static String ackStatus(byte flags) {
+        if ((flags & ACK_DELIVERED) != 0) {
+            return Protocol.DELIVERED;
+        } else if ((flags & ACK_QUEUED) != 0) {
+            return Protocol.QUEUED;
+        } else if ((flags & ACK_THROTTLED) != 0) {
+            return Protocol.THROTTLED;
+        }
+        return null;
+    }
+
+    private static byte statusCode(String status) {
+        for (byte i = 0; i < STATUSES.length; i++) {
+            if (STATUSES[i].equals(status)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] utf8(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+    }
+
+    /**
+     * Read a message ID with a one-byte length prefix (length 0 = no ID)
+     */
+    private static String messageId(ByteBuffer in) {
+        int idLength = in.get() & 0xFF;
+        if (idLength > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String messageId = idLength > 0
+                ? new String(in.array(), in.position(), idLength, StandardCharsets.UTF_8) : null;
+        in.position(in.position() + idLength);
+        return messageId;
+    }
+
+    private static String remainingString(ByteBuffer in) {
+        return new String(in.array(), in.position(), in.remaining(), StandardCharsets.UTF_8);
+    }
+}
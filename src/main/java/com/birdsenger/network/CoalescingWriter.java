@@ -0,0 +1,185 @@
+package com.birdsenger.network;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes encoded frames from a FrameQueue to a socket stream,
+ * coalescing everything that is queued into one buffered write
+ *
+ * A flush happens when the queue drains, when the oldest unflushed frame
+ * is older than maxFlushDelay, or when the buffer fills. A max flush delay
+ * of zero flushes after every frame (the old autoFlush behaviour).
+ * Meant to be driven by a single writer thread.
+ *
+ * The buffer is allocated on the first write and, given an idle release
+ * time, dropped again when nothing was queued for that long, so a quiet
+ * connection holds no write buffer while its writer waits.
+ */
+public class CoalescingWriter {
+    private final OutputStream out;
+    private final FrameQueue queue;
+
+    // Frames are copied straight out of their (possibly shared, direct) buffers into this one
+    private byte[] buffer;
+    private int buffered;
+    private final int bufferSize;
+    private final long maxFlushDelayNanos;
+    private final long lingerNanos;
+    private final long idleReleaseNanos;
+
+    // Written by the writer thread only, read by monitoring code
+    private volatile long framesWritten;
+    private volatile long bytesWritten;
+    private volatile long flushCount;
+
+    /**
+     * @param out Socket output stream
+     * @param queue Frames to write
+     * @param bufferSize Application buffer size in bytes
+     * @param maxFlushDelayMicros Longest time a written frame may sit unflushed
+     * @param lingerMicros How long to wait for more frames once the queue drains (0 = flush at once)
+     */
+    public CoalescingWriter(OutputStream out, FrameQueue queue, int bufferSize,
+                            long maxFlushDelayMicros, long lingerMicros) {
+        this(out, queue, bufferSize, maxFlushDelayMicros, lingerMicros, 0);
+    }
+
+    /**
+     * @param out Socket output stream
+     * @param queue Frames to write
+     * @param bufferSize Application buffer size in bytes
+     * @param maxFlushDelayMicros Longest time a written frame may sit unflushed
+     * @param lingerMicros How long to wait for more frames once the queue drains (0 = flush at once)
+     * @param idleReleaseMillis Idle time after which run() drops the buffer (0 = keep it)
+     */
+    public CoalescingWriter(OutputStream out, FrameQueue queue, int bufferSize,
+                            long maxFlushDelayMicros, long lingerMicros, long idleReleaseMillis) {
+        this.out = out;
+        this.bufferSize = Math.max(512, bufferSize);
+        this.queue = queue;
+        this.maxFlushDelayNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, maxFlushDelayMicros));
+        this.lingerNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, Math.min(lingerMicros, maxFlushDelayMicros)));
+        this.idleReleaseNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, idleReleaseMillis));
+    }
+
+    /**
+     * Write frames until the thread is interrupted or the stream fails
+     */
+    public void run() throws IOException, InterruptedException {
+        while (!Thread.currentThread().isInterrupted()) {
+            if (buffer == null || idleReleaseNanos == 0) {
+                writeBatch(queue.take());
+                continue;
+            }
+
+            SharedFrame frame = queue.poll(idleReleaseNanos, TimeUnit.NANOSECONDS);
+            if (frame != null) {
+                writeBatch(frame);
+            } else {
+                // Everything was flushed, so the buffer is empty
+                buffer = null;
+            }
+        }
+        throw new InterruptedException();
+    }
+
+    /**
+     * Write a frame plus everything queued behind it, then flush
+     * @param first Frame already taken from the queue
+     */
+    public void writeBatch(SharedFrame first) throws IOException, InterruptedException {
+        long batchStart = System.nanoTime();
+        SharedFrame frame = first;
+
+        while (frame != null) {
+            write(frame);
+
+            frame = queue.poll();
+            if (frame == null && lingerNanos > 0) {
+                frame = queue.poll(lingerNanos, TimeUnit.NANOSECONDS);
+            }
+
+            if (frame != null && System.nanoTime() - batchStart >= maxFlushDelayNanos) {
+                flush();
+                batchStart = System.nanoTime();
+            }
+        }
+
+        flush();
+    }
+
+    /**
+     * Write whatever is still queued without waiting (used on shutdown)
+     */
+    public void drain() throws IOException {
+        SharedFrame frame;
+        while ((frame = queue.poll()) != null) {
+            write(frame);
+        }
+        flush();
+    }
+
+    /**
+     * Copy a frame into the buffer, writing the buffer out whenever it fills,
+     * then give back the queue's reference to the frame
+     */
+    private void write(SharedFrame frame) throws IOException {
+        try {
+            if (buffer == null) {
+                buffer = new byte[bufferSize];
+            }
+            int length = frame.length();
+            int offset = 0;
+            while (offset < length) {
+                if (buffered == buffer.length) {
+                    writeBuffer();
+                }
+                int chunk = Math.min(length - offset, buffer.length - buffered);
+                frame.copyTo(offset, buffer, buffered, chunk);
+                buffered += chunk;
+                offset += chunk;
+            }
+            framesWritten++;
+            bytesWritten += length;
+        } finally {
+            frame.release();
+        }
+    }
+
+    private void writeBuffer() throws IOException {
+        out.write(buffer, 0, buffered);
+        buffered = 0;
+    }
+
+    private void flush() throws IOException {
+        if (buffered > 0) {
+            writeBuffer();
+        }
+        out.flush();
+        flushCount++;
+        queue.onFlushed();
+    }
+
+    /**
+     * Get number of frames written
+     */
+    public long getFramesWritten() {
+        return framesWritten;
+    }
+
+    /**
+     * Get number of bytes written including frame headers and terminators
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Get number of flushes (roughly one write syscall each)
+     */
+    public long getFlushCount() {
+        return flushCount;
+    }
+}
@@ -0,0 +1,231 @@
+package com.birdsenger.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Incremental decoder for the two wire formats
+ * - Newline-delimited JSON frames
+ * - Length-prefixed binary frames (see BinaryCodec), recognised by their magic byte
+ *
+ * Bytes can arrive in arbitrary chunks (non-blocking reads), so partial
+ * frames are kept until complete. Frames above maxFrameSize are rejected
+ * with FrameTooLargeException before their buffer is allocated.
+ *
+ * Memory follows the data rather than the limit: a binary frame's buffer
+ * grows as its bytes arrive instead of being sized from the header, a
+ * line buffer that grew for one large frame is dropped once it completes,
+ * and readFrom() blocks on a small buffer while the peer is quiet.
+ */
+public class FrameDecoder {
+    private static final int INITIAL_CAPACITY = 256;
+
+    // Buffers above this are not kept once their frame is done
+    private static final int RETAINED_CAPACITY = 4096;
+
+    // readFrom() buffer: small while idle, doubled while reads fill it
+    private static final int MIN_STREAM_READ_SIZE = 512;
+    private static final int MAX_STREAM_READ_SIZE = 8192;
+
+    /**
+     * Receives decoded frames
+     */
+    public interface FrameListener {
+
+        /**
+         * A JSON frame as raw UTF-8 bytes, terminated by a single '\n'
+         * The bytes can be forwarded to other JSON peers untouched
+         */
+        void onTextFrame(byte[] frame);
+
+        /**
+         * A binary frame: type byte followed by the body (header stripped)
+         */
+        void onBinaryFrame(byte[] body);
+    }
+
+    private final int maxFrameSize;
+
+    // Partial JSON line
+    private byte[] pending = new byte[INITIAL_CAPACITY];
+    private int pendingLength;
+
+    // Partial binary frame: header bytes first, then the body
+    private boolean inBinaryFrame;
+    private final byte[] header = new byte[BinaryCodec.HEADER_SIZE];
+    private int headerLength;
+    private byte[] body;
+    private int bodyLength;
+    private int bodyExpected;
+
+    public FrameDecoder(int maxFrameSize) {
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * Decode all complete frames available in the buffer
+     * @param in Buffer in read mode, fully consumed by this call
+     * @param listener Receives each decoded frame
+     * @throws FrameTooLargeException if a frame exceeds the size limit
+     */
+    public void decode(ByteBuffer in, FrameListener listener) throws FrameTooLargeException {
+        while (in.hasRemaining()) {
+            if (inBinaryFrame) {
+                if (!decodeBinary(in, listener)) {
+                    return;
+                }
+                continue;
+            }
+
+            if (pendingLength == 0 && in.get(in.position()) == BinaryCodec.MAGIC) {
+                inBinaryFrame = true;
+                continue;
+            }
+
+            int newline = indexOfNewline(in);
+
+            if (newline < 0) {
+                // No terminator yet - keep the partial frame for the next read
+                append(in, in.remaining());
+                return;
+            }
+
+            append(in, newline - in.position());
+            in.get(); // skip '\n'
+
+            int length = pendingLength;
+            if (length > 0 && pending[length - 1] == '\r') {
+                length--;
+            }
+            pendingLength = 0;
+
+            if (length > 0) {
+                byte[] frame = Arrays.copyOf(pending, length + 1);
+                frame[length] = '\n';
+                shrinkPending();
+                listener.onTextFrame(frame);
+            }
+        }
+    }
+
+    /**
+     * Read frames from a blocking stream until end of stream
+     * A read that fills the buffer doubles it for the next one; a read that
+     * does not has drained the socket, so the next read, which will likely
+     * wait for the peer, uses the smallest buffer again
+     * @param in Socket input stream
+     * @param listener Receives each decoded frame
+     * @throws IOException on read failure or oversize frame
+     */
+    public void readFrom(InputStream in, FrameListener listener) throws IOException {
+        byte[] chunk = new byte[MIN_STREAM_READ_SIZE];
+        int bytesRead;
+
+        while ((bytesRead = in.read(chunk)) != -1) {
+            decode(ByteBuffer.wrap(chunk, 0, bytesRead), listener);
+
+            if (bytesRead == chunk.length && chunk.length < MAX_STREAM_READ_SIZE) {
+                chunk = new byte[chunk.length * 2];
+            } else if (bytesRead < chunk.length && chunk.length > MIN_STREAM_READ_SIZE) {
+                chunk = new byte[MIN_STREAM_READ_SIZE];
+            }
+        }
+    }
+
+    /**
+     * Decode the JSON text of a frame passed to onTextFrame
+     * @param frame Newline-terminated UTF-8 frame
+     * @return JSON string without the terminator
+     */
+    public static String text(byte[] frame) {
+        return new String(frame, 0, frame.length - 1, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Number of bytes buffered for an incomplete frame
+     * @return Pending byte count
+     */
+    public int getPendingBytes() {
+        return inBinaryFrame ? headerLength + bodyLength : pendingLength;
+    }
+
+    /**
+     * Continue a binary frame
+     * @return true if the frame completed
+     */
+    private boolean decodeBinary(ByteBuffer in, FrameListener listener) throws FrameTooLargeException {
+        if (body == null) {
+            int count = Math.min(in.remaining(), header.length - headerLength);
+            in.get(header, headerLength, count);
+            headerLength += count;
+
+            if (headerLength < header.length) {
+                return false;
+            }
+
+            int length = ByteBuffer.wrap(header, 1, 4).getInt();
+            if (length <= 0 || length > maxFrameSize) {
+                throw new FrameTooLargeException(length & 0xFFFFFFFFL, maxFrameSize);
+            }
+            // The header only claims a size, so a peer that never sends the body costs little
+            body = new byte[Math.min(length, RETAINED_CAPACITY)];
+            bodyLength = 0;
+            bodyExpected = length;
+        }
+
+        int count = Math.min(in.remaining(), bodyExpected - bodyLength);
+        if (bodyLength + count > body.length) {
+            body = Arrays.copyOf(body, Math.min(bodyExpected, Math.max(body.length * 2, bodyLength + count)));
+        }
+        in.get(body, bodyLength, count);
+        bodyLength += count;
+
+        if (bodyLength < bodyExpected) {
+            return false;
+        }
+
+        byte[] frame = body;
+        body = null;
+        bodyExpected = 0;
+        headerLength = 0;
+        bodyLength = 0;
+        inBinaryFrame = false;
+
+        listener.onBinaryFrame(frame);
+        return true;
+    }
+
+    private int indexOfNewline(ByteBuffer in) {
+        for (int i = in.position(); i < in.limit(); i++) {
+            if (in.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void append(ByteBuffer in, int count) throws FrameTooLargeException {
+        if (pendingLength + count > maxFrameSize) {
+            long size = (long) pendingLength + count;
+            pendingLength = 0;
+            throw new FrameTooLargeException(size, maxFrameSize);
+        }
+        if (pendingLength + count > pending.length) {
+            pending = Arrays.copyOf(pending, Math.min(maxFrameSize, Math.max(pending.length * 2, pendingLength + count)));
+        }
+        in.get(pending, pendingLength, count);
+        pendingLength += count;
+    }
+
+    /**
+     * Drop a line buffer that grew for a large frame, once that frame is done
+     */
+    private void shrinkPending() {
+        if (pending.length > RETAINED_CAPACITY) {
+            pending = new byte[INITIAL_CAPACITY];
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.birdsenger.network;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Direct buffers for frames that are shared by many connections
+ *
+ * Buffers come in power-of-two size classes from 256 bytes to 64 KiB;
+ * bigger frames are not pooled. The idle byte budget is split evenly over
+ * the classes, so small classes keep many buffers and large ones a few.
+ * Buffers released beyond that are left to the garbage collector.
+ *
+ * Direct buffers let the NIO engine hand the same memory to every socket
+ * write; heap buffers are copied into a temporary direct buffer per write.
+ */
+public class FramePool {
+    private static final int MIN_SHIFT = 8;
+    private static final int MAX_SHIFT = 16;
+    private static final int SIZE_CLASSES = MAX_SHIFT - MIN_SHIFT + 1;
+
+    private final ConcurrentLinkedQueue<ByteBuffer>[] idle;
+    // ConcurrentLinkedQueue.size() walks the queue, so idle buffers are counted separately
+    private final AtomicInteger[] idleCounts = new AtomicInteger[SIZE_CLASSES];
+    private final int[] maxIdle = new int[SIZE_CLASSES];
+
+    private final LongAdder allocated = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+
+    /**
+     * @param maxIdleBytes Bytes of idle buffers kept for reuse (0 = do not pool, frames stay on the heap)
+     */
+    @SuppressWarnings("unchecked")
+    public FramePool(long maxIdleBytes) {
+        this.idle = (ConcurrentLinkedQueue<ByteBuffer>[]) new ConcurrentLinkedQueue<?>[SIZE_CLASSES];
+        long budgetPerClass = Math.max(0, maxIdleBytes) / SIZE_CLASSES;
+
+        for (int sizeClass = 0; sizeClass < SIZE_CLASSES; sizeClass++) {
+            idle[sizeClass] = new ConcurrentLinkedQueue<>();
+            idleCounts[sizeClass] = new AtomicInteger();
+            maxIdle[sizeClass] = (int) Math.min(Integer.MAX_VALUE, budgetPerClass >> (sizeClass + MIN_SHIFT));
+        }
+    }
+
+    /**
+     * Copy an encoded frame into a pooled buffer
+     * @param frame Encoded frame
+     * @return Frame holding one reference, or an unpooled wrapper if the frame is too big or pooling is off
+     */
+    public SharedFrame copyOf(byte[] frame) {
+        int sizeClass = sizeClassOf(frame.length);
+        if (sizeClass < 0 || maxIdle[sizeClass] == 0) {
+            return SharedFrame.wrap(frame);
+        }
+
+        ByteBuffer buffer = idle[sizeClass].poll();
+        if (buffer != null) {
+            idleCounts[sizeClass].decrementAndGet();
+            reused.increment();
+            buffer.clear();
+        } else {
+            buffer = ByteBuffer.allocateDirect(1 << (sizeClass + MIN_SHIFT));
+            allocated.increment();
+        }
+
+        buffer.put(frame).flip();
+        return new SharedFrame(buffer, this);
+    }
+
+    /**
+     * Take back a buffer whose last reference was released
+     */
+    void recycle(ByteBuffer buffer) {
+        int sizeClass = sizeClassOf(buffer.capacity());
+        if (idleCounts[sizeClass].incrementAndGet() <= maxIdle[sizeClass]) {
+            idle[sizeClass].offer(buffer);
+        } else {
+            idleCounts[sizeClass].decrementAndGet();
+        }
+    }
+
+    private static int sizeClassOf(int length) {
+        if (length > 1 << MAX_SHIFT) {
+            return -1;
+        }
+        int shift = 32 - Integer.numberOfLeadingZeros(Math.max(1, length - 1));
+        return Math.max(MIN_SHIFT, shift) - MIN_SHIFT;
+    }
+
+    /**
+     * Get number of direct buffers allocated so far
+     */
+    public long getAllocatedCount() {
+        return allocated.sum();
+    }
+
+    /**
+     * Get number of frames served from an idle buffer
+     */
+    public long getReusedCount() {
+        return reused.sum();
+    }
+
+    /**
+     * Get number of buffers waiting for reuse
+     */
+    public int getIdleCount() {
+        int total = 0;
+        for (AtomicInteger count : idleCounts) {
+            total += count.get();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,60 @@
+package com.birdsenger.network;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Source of outgoing frames drained by a CoalescingWriter
+ * Frames are fully encoded (JSON line with terminator, or binary frame);
+ * the writer releases each frame it takes once it has been written
+ */
+public interface FrameQueue {
+
+    /**
+     * Wait for the next frame
+     */
+    SharedFrame take() throws InterruptedException;
+
+    /**
+     * Next frame, or null if none is queued
+     */
+    SharedFrame poll();
+
+    /**
+     * Wait up to the timeout for the next frame
+     * @return Next frame or null on timeout
+     */
+    SharedFrame poll(long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Called by the writer once every frame taken so far has been written to the socket
+     */
+    default void onFlushed() {
+    }
+
+    /**
+     * Adapt a plain BlockingQueue
+     * @param queue Queue of frames
+     * @return FrameQueue view of the queue
+     */
+    static FrameQueue of(BlockingQueue<byte[]> queue) {
+        return new FrameQueue() {
+            @Override
+            public SharedFrame take() throws InterruptedException {
+                return SharedFrame.wrap(queue.take());
+            }
+
+            @Override
+            public SharedFrame poll() {
+                byte[] frame = queue.poll();
+                return frame != null ? SharedFrame.wrap(frame) : null;
+            }
+
+            @Override
+            public SharedFrame poll(long timeout, TimeUnit unit) throws InterruptedException {
+                byte[] frame = queue.poll(timeout, unit);
+                return frame != null ? SharedFrame.wrap(frame) : null;
+            }
+        };
+    }
+}
@@ -0,0 +1,28 @@
+package com.birdsenger.network;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a peer announces or sends a frame above the configured limit
+ * The frame is rejected before any buffer for it is allocated
+ */
+public class FrameTooLargeException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final long frameSize;
+    private final int maxFrameSize;
+
+    public FrameTooLargeException(long frameSize, int maxFrameSize) {
+        super("Frame of " + frameSize + " bytes exceeds limit of " + maxFrameSize + " bytes");
+        this.frameSize = frameSize;
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    public long getFrameSize() {
+        return frameSize;
+    }
+
+    public int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+}
@@ -0,0 +1,356 @@
+package com.birdsenger.network;
+
+import com.birdsenger.util.Log;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming JSON codec for Protocol messages
+ * Decodes frames field by field with Gson's JsonReader directly into
+ * ProtocolMessage records and encodes records with JsonWriter, so the hot
+ * path never builds a JsonObject tree
+ */
+public final class JsonCodec {
+
+    private JsonCodec() {
+    }
+
+    /**
+     * Decode a JSON frame
+     * @param jsonString JSON message
+     * @return Typed message (Other for types without a record), or null if malformed
+     */
+    public static ProtocolMessage decode(String jsonString) {
+        try (JsonReader reader = new JsonReader(new StringReader(jsonString))) {
+            Fields fields = new Fields();
+            readFields(reader, fields);
+
+            return fields.toMessage(jsonString);
+
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            Log.error("❌ Failed to parse message: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Add a numeric field to an encoded JSON object frame without re-encoding it
+     * @param jsonFrame Frame starting with '{'
+     * @param name Field name (plain ASCII, no escaping needed)
+     * @param value Field value
+     * @return New frame with the field first, or null if the frame is not an object
+     */
+    public static byte[] insertField(byte[] jsonFrame, String name, long value) {
+        if (jsonFrame == null || jsonFrame.length < 2 || jsonFrame[0] != '{') {
+            return null;
+        }
+
+        byte[] field = ("\"" + name + "\":" + value + (jsonFrame[1] == '}' ? "" : ",")).getBytes(StandardCharsets.US_ASCII);
+        byte[] frame = new byte[jsonFrame.length + field.length];
+        frame[0] = '{';
+        System.arraycopy(field, 0, frame, 1, field.length);
+        System.arraycopy(jsonFrame, 1, frame, 1 + field.length, jsonFrame.length - 1);
+        return frame;
+    }
+
+    /**
+     * Encode a message as JSON
+     * @param message Message to encode
+     * @return JSON string
+     */
+    public static String encode(ProtocolMessage message) {
+        if (message instanceof ProtocolMessage.Other other) {
+            return other.json();
+        }
+
+        StringWriter out = new StringWriter(128);
+
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject();
+            writer.name("type").value(message.type());
+
+            switch (message) {
+                case ProtocolMessage.Auth auth -> {
+                    writer.name("action").value(auth.action());
+                    writer.name("userId").value(auth.userId());
+                    writeOptional(writer, "username", auth.username());
+                    writeOptional(writer, "codec", auth.codec());
+                    writer.name("timestamp").value(auth.timestamp());
+                }
+                case ProtocolMessage.Chat chat -> writeChatFields(writer, chat);
+                case ProtocolMessage.GroupChat groupChat -> {
+                    writeOptional(writer, "messageId", groupChat.messageId());
+                    writer.name("senderId").value(groupChat.senderId());
+                    writer.name("groupId").value(groupChat.groupId());
+                    writer.name("content").value(groupChat.content());
+                    writer.name("timestamp").value(groupChat.timestamp());
+                }
+                case ProtocolMessage.Group group -> {
+                    writer.name("action").value(group.action());
+                    if (group.groupId() > 0) {
+                        writer.name("groupId").value(group.groupId());
+                    }
+                    writeOptional(writer, "name", group.name());
+                    writer.name("memberIds").beginArray();
+                    for (int memberId : group.memberIds()) {
+                        writer.value(memberId);
+                    }
+                    writer.endArray();
+                    writer.name("timestamp").value(group.timestamp());
+                }
+                case ProtocolMessage.Presence presence -> {
+                    writer.name("userId").value(presence.userId());
+                    writer.name("status").value(presence.status());
+                    writer.name("timestamp").value(presence.timestamp());
+                }
+                case ProtocolMessage.PresenceBatch batch -> {
+                    // Grouped by status: {"ONLINE":[1,2],"AWAY":[3]}
+                    Map<String, List<Integer>> byStatus = new LinkedHashMap<>();
+                    for (Map.Entry<Integer, String> entry : batch.statuses().entrySet()) {
+                        byStatus.computeIfAbsent(entry.getValue(), status -> new ArrayList<>()).add(entry.getKey());
+                    }
+                    writer.name("statuses").beginObject();
+                    for (Map.Entry<String, List<Integer>> group : byStatus.entrySet()) {
+                        writer.name(group.getKey()).beginArray();
+                        for (int userId : group.getValue()) {
+                            writer.value(userId);
+                        }
+                        writer.endArray();
+                    }
+                    writer.endObject();
+                    writer.name("timestamp").value(batch.timestamp());
+                }
+                case ProtocolMessage.Typing typing -> {
+                    writer.name("senderId").value(typing.senderId());
+                    writer.name("receiverId").value(typing.receiverId());
+                    writer.name("isTyping").value(typing.isTyping());
+                    writer.name("timestamp").value(typing.timestamp());
+                }
+                case ProtocolMessage.Ack ack -> {
+                    writer.name("messageId").value(ack.messageId());
+                    writer.name("success").value(ack.success());
+                    writeOptional(writer, "status", ack.status());
+                    writeOptional(writer, "codec", ack.codec());
+                    if (ack.seq() > 0) {
+                        writer.name("seq").value(ack.seq());
+                    }
+                    writer.name("timestamp").value(ack.timestamp());
+                }
+                case ProtocolMessage.Sync sync -> {
+                    writer.name("cursors").beginObject();
+                    for (Map.Entry<Integer, Long> cursor : sync.cursors().entrySet()) {
+                        writer.name(String.valueOf(cursor.getKey())).value(cursor.getValue());
+                    }
+                    writer.endObject();
+                    writer.name("timestamp").value(sync.timestamp());
+                }
+                case ProtocolMessage.SyncPage page -> {
+                    writer.name("messages").beginArray();
+                    for (ProtocolMessage.Chat chat : page.messages()) {
+                        writer.beginObject();
+                        writeChatFields(writer, chat);
+                        writer.endObject();
+                    }
+                    writer.endArray();
+                    writer.name("done").value(page.done());
+                    writer.name("timestamp").value(page.timestamp());
+                }
+                case ProtocolMessage.Stats stats -> {
+                    writeOptional(writer, "metrics", stats.metrics());
+                    writer.name("timestamp").value(stats.timestamp());
+                }
+                case ProtocolMessage.Error error -> {
+                    writer.name("message").value(error.message());
+                    if (error.retryAfterMillis() > 0) {
+                        writer.name("retryAfterMs").value(error.retryAfterMillis());
+                    }
+                    writer.name("timestamp").value(error.timestamp());
+                }
+                case ProtocolMessage.Other other -> {
+                    // Handled above
+                }
+            }
+
+            writer.endObject();
+
+        } catch (IOException e) {
+            // StringWriter does not throw
+            throw new IllegalStateException(e);
+        }
+
+        return out.toString();
+    }
+
+    private static void writeChatFields(JsonWriter writer, ProtocolMessage.Chat chat) throws IOException {
+        writeOptional(writer, "messageId", chat.messageId());
+        if (chat.seq() > 0) {
+            writer.name("seq").value(chat.seq());
+        }
+        writer.name("senderId").value(chat.senderId());
+        writer.name("receiverId").value(chat.receiverId());
+        writer.name("content").value(chat.content());
+        writer.name("timestamp").value(chat.timestamp());
+    }
+
+    /**
+     * Read the fields of one JSON object
+     * Chat messages nested in a SYNC_PAGE are read with the same field names
+     */
+    private static void readFields(JsonReader reader, Fields fields) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+
+            switch (name) {
+                case "type" -> fields.type = reader.nextString();
+                case "action" -> fields.action = reader.nextString();
+                case "userId" -> fields.userId = reader.nextInt();
+                case "username" -> fields.username = reader.nextString();
+                case "codec" -> fields.codec = reader.nextString();
+                case "senderId" -> fields.senderId = reader.nextInt();
+                case "receiverId" -> fields.receiverId = reader.nextInt();
+                case "groupId" -> fields.groupId = reader.nextInt();
+                case "name" -> fields.name = reader.nextString();
+                case "content" -> fields.content = reader.nextString();
+                case "status" -> fields.status = reader.nextString();
+                case "isTyping" -> fields.isTyping = reader.nextBoolean();
+                case "messageId" -> fields.messageId = reader.nextString();
+                case "seq" -> fields.seq = reader.nextLong();
+                case "success" -> fields.success = reader.nextBoolean();
+                case "message" -> fields.message = reader.nextString();
+                case "done" -> fields.done = reader.nextBoolean();
+                case "metrics" -> fields.metrics = reader.nextString();
+                case "retryAfterMs" -> fields.retryAfterMillis = reader.nextLong();
+                case "timestamp" -> fields.timestamp = reader.nextLong();
+                case "cursors" -> {
+                    fields.cursors = new HashMap<>();
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        int peerId = Integer.parseInt(reader.nextName());
+                        fields.cursors.put(peerId, reader.nextLong());
+                    }
+                    reader.endObject();
+                }
+                case "statuses" -> {
+                    fields.statuses = new LinkedHashMap<>();
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String status = reader.nextName();
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            fields.statuses.put(reader.nextInt(), status);
+                        }
+                        reader.endArray();
+                    }
+                    reader.endObject();
+                }
+                case "memberIds" -> {
+                    fields.memberIds = new ArrayList<>();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        fields.memberIds.add(reader.nextInt());
+                    }
+                    reader.endArray();
+                }
+                case "messages" -> {
+                    fields.messages = new ArrayList<>();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        Fields chat = new Fields();
+                        readFields(reader, chat);
+                        if (chat.content != null) {
+                            fields.messages.add(chat.toChat());
+                        }
+                    }
+                    reader.endArray();
+                }
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void writeOptional(JsonWriter writer, String name, String value) throws IOException {
+        if (value != null) {
+            writer.name(name).value(value);
+        }
+    }
+
+    /**
+     * Fields collected while scanning one frame
+     */
+    private static final class Fields {
+        String type;
+        String action;
+        int userId;
+        String username;
+        String codec;
+        int senderId;
+        int receiverId;
+        int groupId;
+        String name;
+        List<Integer> memberIds;
+        String content;
+        String status;
+        boolean isTyping;
+        String messageId;
+        long seq;
+        boolean success;
+        String message;
+        boolean done;
+        String metrics;
+        long retryAfterMillis;
+        Map<Integer, Long> cursors;
+        Map<Integer, String> statuses;
+        List<ProtocolMessage.Chat> messages;
+        long timestamp = System.currentTimeMillis();
+
+        ProtocolMessage.Chat toChat() {
+            return new ProtocolMessage.Chat(messageId, seq, senderId, receiverId, content, timestamp);
+        }
+
+        ProtocolMessage toMessage(String json) {
+            if (type == null) {
+                return null;
+            }
+
+            return switch (type) {
+                case Protocol.AUTH -> action != null
+                        ? new ProtocolMessage.Auth(action, userId, username, codec, timestamp) : null;
+                case Protocol.MESSAGE -> content != null ? toChat() : null;
+                case Protocol.GROUP_MESSAGE -> content != null
+                        ? new ProtocolMessage.GroupChat(messageId, senderId, groupId, content, timestamp) : null;
+                case Protocol.GROUP -> action != null
+                        ? new ProtocolMessage.Group(action, groupId, name, memberIds != null ? memberIds : List.of(), timestamp) : null;
+                case Protocol.PRESENCE -> status != null
+                        ? new ProtocolMessage.Presence(userId, status, timestamp) : null;
+                case Protocol.PRESENCE_BATCH -> new ProtocolMessage.PresenceBatch(statuses != null ? statuses : Map.of(), timestamp);
+                case Protocol.TYPING -> new ProtocolMessage.Typing(senderId, receiverId, isTyping, timestamp);
+                case Protocol.ACK -> messageId != null
+                        ? new ProtocolMessage.Ack(messageId, success, status, codec, seq, timestamp) : null;
+                case Protocol.ERROR -> new ProtocolMessage.Error(message, retryAfterMillis, timestamp);
+                case Protocol.SYNC -> new ProtocolMessage.Sync(cursors != null ? cursors : Map.of(), timestamp);
+                case Protocol.SYNC_PAGE -> new ProtocolMessage.SyncPage(messages != null ? messages : List.of(), done, timestamp);
+                case Protocol.STATS -> new ProtocolMessage.Stats(metrics, timestamp);
+                default -> new ProtocolMessage.Other(type, json);
+            };
+        }
+    }
+}
@@ -3,25 +3,42 @@ package com.birdsenger.network;
 import com.birdsenger.dao.MessageDAO;
 import com.birdsenger.model.Message;
 import com.birdsenger.model.MessageType;
-import com.google.gson.JsonObject;
+import com.birdsenger.util.Log;
 import javafx.application.Platform;
 
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.function.Consumer;
 
 /**
  * Handles parsing and routing of incoming messages from server
  * Routes messages to appropriate handlers based on type
+ * Accepts both JSON frames and decoded binary frames
+ *
+ * Received messages are stored with their conversation sequence number;
+ * one that was already stored (offline queue and SYNC can overlap) is not
+ * shown again.
+ *
+ * Presence arrives as single PRESENCE frames or, while the server batches
+ * a reconnect storm, as PRESENCE_BATCH frames that are applied in one UI
+ * update. The two can arrive out of order, so a status older than the one
+ * already applied for a user is ignored.
  */
 public class MessageHandler {
     private MessageDAO messageDAO;
     private Consumer<Message> onNewMessageReceived;
     private Consumer<String> onUserStatusChanged;
+    private Consumer<Map<Integer, String>> onUserStatusesChanged;
     private Consumer<String> onTypingIndicator;
     private Consumer<String> onError;
 
+    // Timestamp of the presence last applied per user (reader thread only)
+    private final Map<Integer, Long> presenceTimestamps = new HashMap<>();
+
     public MessageHandler() {
         this.messageDAO = new MessageDAO();
     }
@@ -31,67 +48,78 @@ public class MessageHandler {
      * @param jsonString JSON message string
      */
     public void handleIncomingMessage(String jsonString) {
-        try {
-            JsonObject json = Protocol.parseMessage(jsonString);
+        ProtocolMessage message = JsonCodec.decode(jsonString);
 
-            if (json == null) {
-                System.err.println("❌ Received invalid JSON message");
-                return;
-            }
+        if (message == null) {
+            Log.error("❌ Received invalid JSON message");
+            return;
+        }
 
-            String type = Protocol.getMessageType(json);
+        if (message.type() == null) {
+            Log.error("❌ Message has no type field");
+            return;
+        }
 
-            if (type == null) {
-                System.err.println("❌ Message has no type field");
-                return;
-            }
+        handleIncomingFrame(message);
+    }
 
+    /**
+     * Process a decoded message from server (JSON or binary frame)
+     * @param message Decoded frame
+     */
+    public void handleIncomingFrame(ProtocolMessage message) {
+        try {
             // Route to appropriate handler based on type
-            switch (type) {
-                case Protocol.MESSAGE -> handleChatMessage(json);
-                case Protocol.PRESENCE -> handlePresenceUpdate(json);
-                case Protocol.TYPING -> handleTypingIndicator(json);
-                case Protocol.USER_LIST -> handleUserList(json);
-                case Protocol.ACK -> handleAcknowledgment(json);
-                case Protocol.ERROR -> handleError(json);
-                default -> System.err.println("⚠️ Unknown message type: " + type);
+            switch (message) {
+                case ProtocolMessage.Chat chat -> onChatMessage(chat);
+                case ProtocolMessage.SyncPage page -> onSyncPage(page);
+                case ProtocolMessage.Presence presence -> onPresenceUpdate(presence.userId(), presence.status(), presence.timestamp());
+                case ProtocolMessage.PresenceBatch batch -> onPresenceBatch(batch);
+                case ProtocolMessage.Typing typing -> onTypingIndicator(typing.senderId(), typing.isTyping());
+                case ProtocolMessage.Ack ack -> onAcknowledgment(ack.messageId(), ack.success(), ack.status(), ack.seq());
+                case ProtocolMessage.Error error -> onError(error.message());
+                case ProtocolMessage.Other other when Protocol.USER_LIST.equals(other.type()) -> handleUserList(other);
+                default -> Log.warn("⚠️ Unknown message type: " + message.type());
             }
 
         } catch (Exception e) {
-            System.err.println("❌ Error handling message: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("❌ Error handling message: " + e.getMessage(), e);
         }
     }
 
     /**
-     * Handle incoming chat message
+     * Save a received chat message and notify the UI
      */
-    private void handleChatMessage(JsonObject json) {
+    private void onChatMessage(ProtocolMessage.Chat chat) {
         try {
-            int senderId = json.get("senderId").getAsInt();
-            int receiverId = json.get("receiverId").getAsInt();
-            String content = json.get("content").getAsString();
-            long timestamp = json.get("timestamp").getAsLong();
-
             // Convert timestamp to LocalDateTime
             LocalDateTime dateTime = LocalDateTime.ofInstant(
-                    Instant.ofEpochMilli(timestamp),
+                    Instant.ofEpochMilli(chat.timestamp()),
                     ZoneId.systemDefault()
             );
 
             // Create Message object
             Message message = new Message(
-                    senderId,
-                    receiverId,
-                    content,
+                    chat.senderId(),
+                    chat.receiverId(),
+                    chat.content(),
                     MessageType.TEXT
             );
             message.setTimestamp(dateTime);
+            message.setMessageUid(chat.messageId());
+            message.setSeq(chat.seq());
+
+            // Save to database, skipping copies we already have
+            if (!messageDAO.saveMessageIfNew(message)) {
+                if (Log.isDebugEnabled()) {
+                    Log.debug("♻️ Already have message " + chat.seq() + " from user " + chat.senderId());
+                }
+                return;
+            }
 
-            // Save to database
-            messageDAO.saveMessage(message);
-
-            System.out.println("✅ Received message from user " + senderId + ": " + content);
+            if (Log.isDebugEnabled()) {
+                Log.debug("✅ Received message from user " + chat.senderId() + ": " + Log.content(chat.content()));
+            }
 
             // Notify UI to update (must run on JavaFX thread)
             if (onNewMessageReceived != null) {
@@ -99,19 +127,32 @@ public class MessageHandler {
             }
 
         } catch (Exception e) {
-            System.err.println("❌ Error processing chat message: " + e.getMessage());
+            Log.error("❌ Error processing chat message: " + e.getMessage());
         }
     }
 
     /**
-     * Handle presence update (user online/offline)
+     * Store the messages of one SYNC page
      */
-    private void handlePresenceUpdate(JsonObject json) {
-        try {
-            int userId = json.get("userId").getAsInt();
-            String status = json.get("status").getAsString();
+    private void onSyncPage(ProtocolMessage.SyncPage page) {
+        for (ProtocolMessage.Chat chat : page.messages()) {
+            onChatMessage(chat);
+        }
 
-            System.out.println("👤 User " + userId + " is now " + status);
+        if (page.done()) {
+            Log.info("🔄 Sync complete");
+        }
+    }
+
+    /**
+     * Notify the UI about a user's status
+     */
+    private void onPresenceUpdate(int userId, String status, long timestamp) {
+        try {
+            if (!isCurrentPresence(userId, timestamp)) {
+                return;
+            }
+            Log.info("👤 User " + userId + " is now " + status);
 
             // Notify UI
             if (onUserStatusChanged != null) {
@@ -120,21 +161,63 @@ public class MessageHandler {
             }
 
         } catch (Exception e) {
-            System.err.println("❌ Error processing presence update: " + e.getMessage());
+            Log.error("❌ Error processing presence update: " + e.getMessage());
         }
     }
 
     /**
-     * Handle typing indicator
+     * Apply the statuses of a PRESENCE_BATCH in a single UI update
      */
-    private void handleTypingIndicator(JsonObject json) {
+    private void onPresenceBatch(ProtocolMessage.PresenceBatch batch) {
         try {
-            int senderId = json.get("senderId").getAsInt();
-            boolean isTyping = json.get("isTyping").getAsBoolean();
+            Map<Integer, String> statuses = new LinkedHashMap<>();
+            for (Map.Entry<Integer, String> entry : batch.statuses().entrySet()) {
+                if (isCurrentPresence(entry.getKey(), batch.timestamp())) {
+                    statuses.put(entry.getKey(), entry.getValue());
+                }
+            }
+            if (statuses.isEmpty()) {
+                return;
+            }
+
+            Log.info("👥 Presence of " + statuses.size() + " users updated");
+
+            // Notify UI once for the whole batch
+            if (onUserStatusesChanged != null) {
+                Platform.runLater(() -> onUserStatusesChanged.accept(statuses));
+            } else if (onUserStatusChanged != null) {
+                Platform.runLater(() -> statuses.forEach(
+                        (userId, status) -> onUserStatusChanged.accept(userId + ":" + status)));
+            }
 
+        } catch (Exception e) {
+            Log.error("❌ Error processing presence batch: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Remember a user's presence timestamp unless a newer one was already applied
+     * @return true if the status should be applied
+     */
+    private boolean isCurrentPresence(int userId, long timestamp) {
+        Long applied = presenceTimestamps.get(userId);
+        if (applied != null && applied > timestamp) {
+            return false;
+        }
+        presenceTimestamps.put(userId, timestamp);
+        return true;
+    }
+
+    /**
+     * Notify the UI that a user started or stopped typing
+     */
+    private void onTypingIndicator(int senderId, boolean isTyping) {
+        try {
             String indicator = senderId + ":" + (isTyping ? "typing" : "stopped");
 
-            System.out.println("⌨️ User " + senderId + " is " + (isTyping ? "typing..." : "not typing"));
+            if (Log.isDebugEnabled()) {
+                Log.debug("⌨️ User " + senderId + " is " + (isTyping ? "typing..." : "not typing"));
+            }
 
             // Notify UI
             if (onTypingIndicator != null) {
@@ -142,48 +225,59 @@ public class MessageHandler {
             }
 
         } catch (Exception e) {
-            System.err.println("❌ Error processing typing indicator: " + e.getMessage());
+            Log.error("❌ Error processing typing indicator: " + e.getMessage());
         }
     }
 
     /**
      * Handle user list update from server
      */
-    private void handleUserList(JsonObject json) {
+    private void handleUserList(ProtocolMessage.Other message) {
         try {
             // For Phase 2, we'll implement this when needed
-            System.out.println("📋 Received user list update");
+            Log.info("📋 Received user list update");
         } catch (Exception e) {
-            System.err.println("❌ Error processing user list: " + e.getMessage());
+            Log.error("❌ Error processing user list: " + e.getMessage());
         }
     }
 
     /**
-     * Handle acknowledgment from server
+     * Log the server's verdict on a sent message and store its sequence number
      */
-    private void handleAcknowledgment(JsonObject json) {
+    private void onAcknowledgment(String messageId, boolean success, String status, long seq) {
         try {
-            String messageId = json.get("messageId").getAsString();
-            boolean success = json.get("success").getAsBoolean();
+            if (seq > 0) {
+                messageDAO.updateSequence(messageId, seq);
+            }
 
-            if (success) {
-                System.out.println("✅ Server acknowledged: " + messageId);
+            if (success && Protocol.QUEUED.equals(status)) {
+                if (Log.isDebugEnabled()) {
+                    Log.debug("📥 Server queued for offline recipient: " + messageId);
+                }
+            } else if (success) {
+                if (Log.isDebugEnabled()) {
+                    Log.debug("✅ Server acknowledged: " + messageId);
+                }
+            } else if (Protocol.THROTTLED.equals(status)) {
+                // SocketClient keeps the message and sends it again
+                if (Log.isDebugEnabled()) {
+                    Log.debug("⏳ Server throttled: " + messageId);
+                }
             } else {
-                System.err.println("❌ Server rejected: " + messageId);
+                Log.error("❌ Server rejected: " + messageId);
             }
 
         } catch (Exception e) {
-            System.err.println("❌ Error processing acknowledgment: " + e.getMessage());
+            Log.error("❌ Error processing acknowledgment: " + e.getMessage());
         }
     }
 
     /**
      * Handle error message from server
      */
-    private void handleError(JsonObject json) {
+    private void onError(String errorMessage) {
         try {
-            String errorMessage = json.get("message").getAsString();
-            System.err.println("❌ Server error: " + errorMessage);
+            Log.error("❌ Server error: " + errorMessage);
 
             // Notify UI
             if (onError != null) {
@@ -191,7 +285,7 @@ public class MessageHandler {
             }
 
         } catch (Exception e) {
-            System.err.println("❌ Error processing error message: " + e.getMessage());
+            Log.error("❌ Error processing error message: " + e.getMessage());
         }
     }
 
@@ -211,6 +305,14 @@ public class MessageHandler {
         this.onUserStatusChanged = callback;
     }
 
+    /**
+     * Set callback for several status changes applied at once (PRESENCE_BATCH)
+     * Without it each change of a batch goes to the single status callback
+     */
+    public void setOnUserStatusesChanged(Consumer<Map<Integer, String>> callback) {
+        this.onUserStatusesChanged = callback;
+    }
+
     /**
      * Set callback for typing indicators
      */
@@ -3,6 +3,7 @@ package com.birdsenger.network;
 import com.birdsenger.dao.UserDAO;
 import com.birdsenger.model.PresenceStatus;
 import com.birdsenger.model.User;
+import com.birdsenger.util.Log;
 
 import java.util.Timer;
 import java.util.TimerTask;
@@ -12,7 +13,7 @@ import java.util.TimerTask;
  * Sends periodic heartbeat to indicate user is online
  */
 public class PresenceManager {
-    private static final int HEARTBEAT_INTERVAL = 30000; // 30 seconds
+    public static final int HEARTBEAT_INTERVAL = 30000; // 30 seconds
 
     private SocketClient socketClient;
     private UserDAO userDAO;
@@ -50,7 +51,7 @@ public class PresenceManager {
             }
         }, HEARTBEAT_INTERVAL, HEARTBEAT_INTERVAL);
 
-        System.out.println("💚 Started heartbeat for user: " + currentUser.getUsername());
+        Log.info("💚 Started heartbeat for user: " + currentUser.getUsername());
     }
 
     /**
@@ -66,7 +67,7 @@ public class PresenceManager {
         userDAO.updateUserStatus(currentUser.getId(), PresenceStatus.OFFLINE);
         sendPresenceUpdate(PresenceStatus.OFFLINE);
 
-        System.out.println("💔 Stopped heartbeat for user: " + currentUser.getUsername());
+        Log.info("💔 Stopped heartbeat for user: " + currentUser.getUsername());
     }
 
     /**
@@ -79,9 +80,9 @@ public class PresenceManager {
                     currentStatus.name()
             );
             socketClient.sendMessage(presenceMessage);
-            System.out.println("💓 Heartbeat sent");
+            Log.debug("💓 Heartbeat sent");
         } else {
-            System.err.println("⚠️ Cannot send heartbeat: Not connected to server");
+            Log.warn("⚠️ Cannot send heartbeat: Not connected to server");
         }
     }
 
@@ -98,7 +99,7 @@ public class PresenceManager {
         // Notify server
         sendPresenceUpdate(status);
 
-        System.out.println("✅ Status updated to: " + status);
+        Log.info("✅ Status updated to: " + status);
     }
 
     /**
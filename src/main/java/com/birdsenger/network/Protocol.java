@@ -1,11 +1,19 @@
 package com.birdsenger.network;
 
+import com.birdsenger.util.Log;
+
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
 /**
  * Protocol class defining the message format for client-server communication
- * Uses JSON format for all messages
+ * Uses JSON format for all messages; connections that negotiate the binary
+ * codec during AUTH also exchange BinaryCodec frames for the hot message types
+ * Messages are written and read with the streaming JsonCodec; parseMessage
+ * is kept for callers that want a JsonObject tree
  */
 public class Protocol {
     private static final Gson gson = new Gson();
@@ -14,19 +22,43 @@ public class Protocol {
     public static final String AUTH = "AUTH";
     public static final String MESSAGE = "MESSAGE";
     public static final String PRESENCE = "PRESENCE";
+    public static final String PRESENCE_BATCH = "PRESENCE_BATCH";
     public static final String USER_LIST = "USER_LIST";
     public static final String TYPING = "TYPING";
     public static final String ACK = "ACK";
     public static final String ERROR = "ERROR";
+    public static final String SYNC = "SYNC";
+    public static final String SYNC_PAGE = "SYNC_PAGE";
+    public static final String STATS = "STATS";
+    public static final String GROUP_MESSAGE = "GROUP_MESSAGE";
+    public static final String GROUP = "GROUP";
 
     // Auth Actions
     public static final String LOGIN = "LOGIN";
     public static final String LOGOUT = "LOGOUT";
 
+    // Group Actions (GROUP requests; the server answers with MEMBERS)
+    public static final String GROUP_CREATE = "CREATE";
+    public static final String GROUP_ADD = "ADD";
+    public static final String GROUP_LEAVE = "LEAVE";
+    public static final String GROUP_MEMBERS = "MEMBERS";
+
     // Presence Status
     public static final String ONLINE = "ONLINE";
     public static final String OFFLINE = "OFFLINE";
 
+    // Delivery status carried by message ACKs
+    public static final String DELIVERED = "DELIVERED";
+    public static final String QUEUED = "QUEUED";
+    public static final String THROTTLED = "THROTTLED"; // failed, send again after the ERROR's retryAfter
+
+    // Frame codecs negotiated during AUTH
+    public static final String CODEC_JSON = "json";
+    public static final String CODEC_BINARY = "binary";
+
+    // Largest frame accepted from a peer unless configured otherwise
+    public static final int DEFAULT_MAX_FRAME_SIZE = 1024 * 1024;
+
     /**
      * Create authentication message
      * @param userId User ID
@@ -34,13 +66,18 @@ public class Protocol {
      * @return JSON string
      */
     public static String createAuthMessage(int userId, String username) {
-        JsonObject json = new JsonObject();
-        json.addProperty("type", AUTH);
-        json.addProperty("action", LOGIN);
-        json.addProperty("userId", userId);
-        json.addProperty("username", username);
-        json.addProperty("timestamp", System.currentTimeMillis());
-        return gson.toJson(json);
+        return new ProtocolMessage.Auth(LOGIN, userId, username, null, System.currentTimeMillis()).toJson();
+    }
+
+    /**
+     * Create authentication message requesting a frame codec
+     * @param userId User ID
+     * @param username Username
+     * @param codec Preferred codec (CODEC_JSON/CODEC_BINARY)
+     * @return JSON string
+     */
+    public static String createAuthMessage(int userId, String username, String codec) {
+        return new ProtocolMessage.Auth(LOGIN, userId, username, codec, System.currentTimeMillis()).toJson();
     }
 
     /**
@@ -49,12 +86,7 @@ public class Protocol {
      * @return JSON string
      */
     public static String createLogoutMessage(int userId) {
-        JsonObject json = new JsonObject();
-        json.addProperty("type", AUTH);
-        json.addProperty("action", LOGOUT);
-        json.addProperty("userId", userId);
-        json.addProperty("timestamp", System.currentTimeMillis());
-        return gson.toJson(json);
+        return new ProtocolMessage.Auth(LOGOUT, userId, null, null, System.currentTimeMillis()).toJson();
     }
 
     /**
@@ -65,13 +97,60 @@ public class Protocol {
      * @return JSON string
      */
     public static String createChatMessage(int senderId, int receiverId, String content) {
-        JsonObject json = new JsonObject();
-        json.addProperty("type", MESSAGE);
-        json.addProperty("senderId", senderId);
-        json.addProperty("receiverId", receiverId);
-        json.addProperty("content", content);
-        json.addProperty("timestamp", System.currentTimeMillis());
-        return gson.toJson(json);
+        return createChatMessage(null, senderId, receiverId, content);
+    }
+
+    /**
+     * Create chat message carrying a client message ID
+     * @param messageId Client-generated ID echoed in the server's ACK
+     * @param senderId Sender user ID
+     * @param receiverId Receiver user ID
+     * @param content Message content
+     * @return JSON string
+     */
+    public static String createChatMessage(String messageId, int senderId, int receiverId, String content) {
+        return new ProtocolMessage.Chat(messageId, 0, senderId, receiverId, content, System.currentTimeMillis()).toJson();
+    }
+
+    /**
+     * Create group chat message
+     * @param messageId Client-generated ID echoed in the server's ACK (may be null)
+     * @param senderId Sender user ID
+     * @param groupId Group ID
+     * @param content Message content
+     * @return JSON string
+     */
+    public static String createGroupMessage(String messageId, int senderId, int groupId, String content) {
+        return new ProtocolMessage.GroupChat(messageId, senderId, groupId, content, System.currentTimeMillis()).toJson();
+    }
+
+    /**
+     * Create group creation request; the creator is always a member
+     * @param name Group name
+     * @param memberIds Other initial members
+     * @return JSON string
+     */
+    public static String createGroupCreateMessage(String name, List<Integer> memberIds) {
+        return new ProtocolMessage.Group(GROUP_CREATE, 0, name, memberIds, System.currentTimeMillis()).toJson();
+    }
+
+    /**
+     * Create request to add members to a group
+     * @param groupId Group ID
+     * @param memberIds Users to add
+     * @return JSON string
+     */
+    public static String createGroupAddMessage(int groupId, List<Integer> memberIds) {
+        return new ProtocolMessage.Group(GROUP_ADD, groupId, null, memberIds, System.currentTimeMillis()).toJson();
+    }
+
+    /**
+     * Create request to leave a group
+     * @param groupId Group ID
+     * @return JSON string
+     */
+    public static String createGroupLeaveMessage(int groupId) {
+        return new ProtocolMessage.Group(GROUP_LEAVE, groupId, null, List.of(), System.currentTimeMillis()).toJson();
     }
 
     /**
@@ -81,12 +160,7 @@ public class Protocol {
      * @return JSON string
      */
     public static String createPresenceMessage(int userId, String status) {
-        JsonObject json = new JsonObject();
-        json.addProperty("type", PRESENCE);
-        json.addProperty("userId", userId);
-        json.addProperty("status", status);
-        json.addProperty("timestamp", System.currentTimeMillis());
-        return gson.toJson(json);
+        return new ProtocolMessage.Presence(userId, status, System.currentTimeMillis()).toJson();
     }
 
     /**
@@ -97,13 +171,7 @@ public class Protocol {
      * @return JSON string
      */
     public static String createTypingMessage(int senderId, int receiverId, boolean isTyping) {
-        JsonObject json = new JsonObject();
-        json.addProperty("type", TYPING);
-        json.addProperty("senderId", senderId);
-        json.addProperty("receiverId", receiverId);
-        json.addProperty("isTyping", isTyping);
-        json.addProperty("timestamp", System.currentTimeMillis());
-        return gson.toJson(json);
+        return new ProtocolMessage.Typing(senderId, receiverId, isTyping, System.currentTimeMillis()).toJson();
     }
 
     /**
@@ -113,12 +181,16 @@ public class Protocol {
      * @return JSON string
      */
     public static String createAckMessage(String messageId, boolean success) {
-        JsonObject json = new JsonObject();
-        json.addProperty("type", ACK);
-        json.addProperty("messageId", messageId);
-        json.addProperty("success", success);
-        json.addProperty("timestamp", System.currentTimeMillis());
-        return gson.toJson(json);
+        return new ProtocolMessage.Ack(messageId, success, null, null, 0, System.currentTimeMillis()).toJson();
+    }
+
+    /**
+     * Create authentication acknowledgment carrying the accepted codec
+     * @param codec Codec the server will use from now on
+     * @return JSON string
+     */
+    public static String createAuthAckMessage(String codec) {
+        return new ProtocolMessage.Ack(AUTH, true, null, codec, 0, System.currentTimeMillis()).toJson();
     }
 
     /**
@@ -127,11 +199,16 @@ public class Protocol {
      * @return JSON string
      */
     public static String createErrorMessage(String errorMessage) {
-        JsonObject json = new JsonObject();
-        json.addProperty("type", ERROR);
-        json.addProperty("message", errorMessage);
-        json.addProperty("timestamp", System.currentTimeMillis());
-        return gson.toJson(json);
+        return new ProtocolMessage.Error(errorMessage, System.currentTimeMillis()).toJson();
+    }
+
+    /**
+     * Decode a JSON message into its typed form without building a tree
+     * @param jsonString JSON string
+     * @return ProtocolMessage, or null if malformed
+     */
+    public static ProtocolMessage decode(String jsonString) {
+        return JsonCodec.decode(jsonString);
     }
 
     /**
@@ -143,11 +220,24 @@ public class Protocol {
         try {
             return gson.fromJson(jsonString, JsonObject.class);
         } catch (Exception e) {
-            System.err.println("❌ Failed to parse message: " + e.getMessage());
+            Log.error("❌ Failed to parse message: " + e.getMessage());
             return null;
         }
     }
 
+    /**
+     * Encode a JSON message as a newline-terminated UTF-8 frame
+     * @param jsonString JSON string
+     * @return Frame bytes
+     */
+    public static byte[] encodeTextFrame(String jsonString) {
+        byte[] json = jsonString.getBytes(StandardCharsets.UTF_8);
+        byte[] frame = new byte[json.length + 1];
+        System.arraycopy(json, 0, frame, 0, json.length);
+        frame[json.length] = '\n';
+        return frame;
+    }
+
     /**
      * Get message type from JSON
      * @param json JsonObject
@@ -0,0 +1,180 @@
+package com.birdsenger.network;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Typed form of the Protocol messages
+ * Decoded straight from the wire by JsonCodec or BinaryCodec, without an
+ * intermediate JSON tree. Every record can render itself as the equivalent
+ * JSON frame, so JSON and binary peers can be served from the same message.
+ */
+public sealed interface ProtocolMessage {
+
+    /**
+     * Protocol message type (Protocol.AUTH, Protocol.MESSAGE, ...)
+     */
+    String type();
+
+    /**
+     * Render as a JSON frame
+     */
+    default String toJson() {
+        return JsonCodec.encode(this);
+    }
+
+    /**
+     * Authentication (LOGIN/LOGOUT), optionally requesting a frame codec
+     */
+    record Auth(String action, int userId, String username, String codec, long timestamp) implements ProtocolMessage {
+        @Override
+        public String type() {
+            return Protocol.AUTH;
+        }
+    }
+
+    /**
+     * One-to-one chat message
+     * messageId is generated by the sending client and echoed in the ACK (may be null);
+     * seq is the conversation sequence number stamped by the server (0 until stamped)
+     */
+    record Chat(String messageId, long seq, int senderId, int receiverId, String content, long timestamp) implements ProtocolMessage {
+        @Override
+        public String type() {
+            return Protocol.MESSAGE;
+        }
+
+        /**
+         * Copy of this message with a server-assigned sequence number
+         */
+        public Chat withSeq(long seq) {
+            return new Chat(messageId, seq, senderId, receiverId, content, timestamp);
+        }
+    }
+
+    /**
+     * Message to every member of a group
+     * messageId is generated by the sending client and echoed in the ACK (may be null)
+     */
+    record GroupChat(String messageId, int senderId, int groupId, String content, long timestamp) implements ProtocolMessage {
+        @Override
+        public String type() {
+            return Protocol.GROUP_MESSAGE;
+        }
+    }
+
+    /**
+     * Group membership request (CREATE/ADD/LEAVE) or the server's MEMBERS answer
+     * groupId is 0 in CREATE; name is only set in CREATE and MEMBERS
+     */
+    record Group(String action, int groupId, String name, List<Integer> memberIds, long timestamp) implements ProtocolMessage {
+        @Override
+        public String type() {
+            return Protocol.GROUP;
+        }
+    }
+
+    /**
+     * Presence status of a user
+     */
+    record Presence(int userId, String status, long timestamp) implements ProtocolMessage {
+        @Override
+        public String type() {
+            return Protocol.PRESENCE;
+        }
+    }
+
+    /**
+     * Presence of several users in one frame, sent instead of single
+     * PRESENCE frames while many users connect at once
+     * statuses maps user ID to status
+     */
+    record PresenceBatch(Map<Integer, String> statuses, long timestamp) implements ProtocolMessage {
+        @Override
+        public String type() {
+            return Protocol.PRESENCE_BATCH;
+        }
+    }
+
+    /**
+     * Typing indicator
+     */
+    record Typing(int senderId, int receiverId, boolean isTyping, long timestamp) implements ProtocolMessage {
+        @Override
+        public String type() {
+            return Protocol.TYPING;
+        }
+    }
+
+    /**
+     * Acknowledgment
+     * status tells a sender whether its message was DELIVERED or QUEUED for an
+     * offline recipient (null when not applicable); codec is only set when
+     * acknowledging AUTH; seq is the sequence number the message was stamped
+     * with (0 when not applicable)
+     */
+    record Ack(String messageId, boolean success, String status, String codec, long seq, long timestamp) implements ProtocolMessage {
+        @Override
+        public String type() {
+            return Protocol.ACK;
+        }
+    }
+
+    /**
+     * Catch-up request: last contiguous sequence number the client holds
+     * per conversation partner; conversations not listed start from 0
+     */
+    record Sync(Map<Integer, Long> cursors, long timestamp) implements ProtocolMessage {
+        @Override
+        public String type() {
+            return Protocol.SYNC;
+        }
+    }
+
+    /**
+     * One page of missed chat messages answering a SYNC
+     * done is set on the last page
+     */
+    record SyncPage(List<Chat> messages, boolean done, long timestamp) implements ProtocolMessage {
+        @Override
+        public String type() {
+            return Protocol.SYNC_PAGE;
+        }
+    }
+
+    /**
+     * Server metrics query; the server answers with the same type carrying
+     * the metrics text (metrics is null in the query)
+     */
+    record Stats(String metrics, long timestamp) implements ProtocolMessage {
+        @Override
+        public String type() {
+            return Protocol.STATS;
+        }
+    }
+
+    /**
+     * Error reported by the server
+     * retryAfterMillis, when above 0, tells the client how long to wait before trying again
+     */
+    record Error(String message, long retryAfterMillis, long timestamp) implements ProtocolMessage {
+        public Error(String message, long timestamp) {
+            this(message, 0, timestamp);
+        }
+
+        @Override
+        public String type() {
+            return Protocol.ERROR;
+        }
+    }
+
+    /**
+     * Any other message type, kept as its original JSON
+     */
+    record Other(String type, String json) implements ProtocolMessage {
+        @Override
+        public String toJson() {
+            return json;
+        }
+    }
+}
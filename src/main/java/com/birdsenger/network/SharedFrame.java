@@ -0,0 +1,107 @@
+package com.birdsenger.network;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * An encoded frame that may be queued on many connections at once
+ *
+ * Fan-out encodes a frame once and queues the same SharedFrame for every
+ * recipient. Each queue holds a reference (retain) and gives it back once
+ * the frame is written or discarded (release); after the last release a
+ * pooled buffer goes back to its FramePool. The buffer itself is never
+ * modified: writers copy with absolute gets or write a read-only duplicate.
+ *
+ * Frames wrapping a byte array have no pool and are left to the garbage
+ * collector, so counting references is skipped for them.
+ */
+public final class SharedFrame {
+    private static final AtomicIntegerFieldUpdater<SharedFrame> REFERENCES =
+            AtomicIntegerFieldUpdater.newUpdater(SharedFrame.class, "references");
+
+    // Position 0, limit = frame length
+    private final ByteBuffer buffer;
+    private final FramePool pool;
+    private volatile int references = 1;
+
+    SharedFrame(ByteBuffer buffer, FramePool pool) {
+        this.buffer = buffer;
+        this.pool = pool;
+    }
+
+    /**
+     * Share a frame that is already encoded in a byte array
+     * @param frame Encoded frame, must not be modified afterwards
+     * @return Unpooled frame
+     */
+    public static SharedFrame wrap(byte[] frame) {
+        return new SharedFrame(ByteBuffer.wrap(frame), null);
+    }
+
+    /**
+     * Get the frame length in bytes
+     */
+    public int length() {
+        return buffer.limit();
+    }
+
+    /**
+     * Check if the frame lives in a pooled (direct) buffer
+     */
+    public boolean isPooled() {
+        return pool != null;
+    }
+
+    /**
+     * Take another reference, e.g. before queueing the frame on one more connection
+     * @return This frame
+     */
+    public SharedFrame retain() {
+        if (pool == null) {
+            return this;
+        }
+
+        int current;
+        do {
+            current = references;
+            if (current <= 0) {
+                throw new IllegalStateException("Frame already released");
+            }
+        } while (!REFERENCES.compareAndSet(this, current, current + 1));
+        return this;
+    }
+
+    /**
+     * Give back a reference; the last one returns the buffer to the pool
+     */
+    public void release() {
+        if (pool == null) {
+            return;
+        }
+
+        int remaining = REFERENCES.decrementAndGet(this);
+        if (remaining == 0) {
+            pool.recycle(buffer);
+        } else if (remaining < 0) {
+            throw new IllegalStateException("Frame released too often");
+        }
+    }
+
+    /**
+     * Get a read-only view with its own position, for one connection's write
+     */
+    public ByteBuffer duplicate() {
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Copy part of the frame without touching the shared buffer's position
+     * @param offset Offset in the frame
+     * @param destination Target array
+     * @param destinationOffset Offset in the target array
+     * @param length Bytes to copy
+     */
+    public void copyTo(int offset, byte[] destination, int destinationOffset, int length) {
+        buffer.get(offset, destination, destinationOffset, length);
+    }
+}
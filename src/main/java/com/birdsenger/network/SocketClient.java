@@ -1,28 +1,99 @@
 package com.birdsenger.network;
 
-import java.io.BufferedReader;
+import com.birdsenger.util.Log;
+
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.InputStream;
 import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.net.InetSocketAddress;
 
 /**
  * Socket client for connecting to BirdSenger server
  * Handles TCP connection, sending and receiving messages
+ * Negotiates binary frames during AUTH unless -Dbirdsenger.client.binary=false
+ *
+ * Chat messages carry a client-generated ID. Up to SEND_WINDOW of them may
+ * be in flight without waiting for the server's ACK; unacknowledged ones
+ * are retransmitted after re-authenticating, and the server drops copies
+ * it already routed. A message the server throttled stays in flight and is
+ * sent again once the retry-after of its rate limit ERROR has passed.
+ *
+ * After every AUTH the client sends a SYNC with the cursors from its sync
+ * cursor supplier, so it receives only what it missed while disconnected.
  */
 public class SocketClient {
 //    private static final String SERVER_HOST = "localhost";
     private static final String SERVER_HOST = "18.142.245.55";
     private static final int SERVER_PORT = 8080;
 
+    // Output tuning (-Dbirdsenger.client.*), see CoalescingWriter
+    private static final boolean TCP_NO_DELAY = !"false".equals(System.getProperty("birdsenger.client.tcpNoDelay"));
+    private static final int WRITE_BUFFER_SIZE = Integer.getInteger("birdsenger.client.bufferSize", 8192);
+    private static final int MAX_FLUSH_DELAY_MICROS = Integer.getInteger("birdsenger.client.maxFlushDelayMicros", 1000);
+    private static final int LINGER_MICROS = Integer.getInteger("birdsenger.client.lingerMicros", 0);
+
+    // Frame codec negotiation and inbound frame limit
+    private static final boolean PREFER_BINARY = !"false".equals(System.getProperty("birdsenger.client.binary"));
+    private static final int MAX_FRAME_SIZE = Integer.getInteger("birdsenger.client.maxFrameBytes", Protocol.DEFAULT_MAX_FRAME_SIZE);
+
+    // Chat messages sent without waiting for their ACK
+    private static final int SEND_WINDOW = Math.max(1, Integer.getInteger("birdsenger.client.window", 64));
+
+    // Wait before resending a throttled message when the server gave no retry-after
+    private static final long THROTTLE_RETRY_MS = 1000;
+
+    // How long disconnect waits for queued frames (e.g. LOGOUT) to be written
+    private static final long DRAIN_TIMEOUT_MS = 1000;
+
     private Socket socket;
-    private PrintWriter out;
-    private BufferedReader in;
+    private InputStream in;
     private Thread listenerThread;
+
+    // Frames waiting for the writer thread
+    private final BlockingQueue<byte[]> outboundQueue = new LinkedBlockingQueue<>();
+    private CoalescingWriter writer;
+    private Thread writerThread;
+
     private boolean connected;
     private Consumer<String> messageCallback;
+    private Consumer<ProtocolMessage> frameCallback;
+
+    // Binary codec state: requested in AUTH, active once the server acks it
+    private volatile boolean awaitingAuthAck;
+    private volatile boolean binaryFraming;
+
+    // Chat messages awaiting an ACK (send order), and those waiting for window space
+    private final Map<String, ProtocolMessage.Chat> inFlight = new LinkedHashMap<>();
+    private final Deque<ProtocolMessage.Chat> sendBacklog = new ArrayDeque<>();
+
+    // Wait asked for by the last ERROR (overloaded server, rate limit), 0 if none
+    private volatile long retryAfterMillis;
+
+    // Resends throttled messages once their wait is over
+    private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "SocketClient-Retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Last identity used, so reconnect() can log in again
+    private int authUserId;
+    private String authUsername;
+
+    // Last contiguous sequence number per conversation partner, sent in SYNC
+    private Supplier<Map<Integer, Long>> syncCursors;
 
     /**
      * Connect to the server
@@ -58,19 +129,29 @@ public class SocketClient {
         try {
             socket = new Socket();
             socket.connect(new InetSocketAddress(SERVER_HOST, SERVER_PORT), 5000); // 5 second timeout
-            out = new PrintWriter(socket.getOutputStream(), true);
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            socket.setTcpNoDelay(TCP_NO_DELAY);
+            in = socket.getInputStream();
+            binaryFraming = false;
+            awaitingAuthAck = false;
+            writer = new CoalescingWriter(
+                    socket.getOutputStream(),
+                    FrameQueue.of(outboundQueue),
+                    WRITE_BUFFER_SIZE,
+                    MAX_FLUSH_DELAY_MICROS,
+                    LINGER_MICROS
+            );
             connected = true;
 
-            System.out.println("✅ Connected to server at " + SERVER_HOST + ":" + SERVER_PORT);
+            Log.info("✅ Connected to server at " + SERVER_HOST + ":" + SERVER_PORT);
 
-            // Start listener thread
+            // Start writer and listener threads
+            startWriting();
             startListening();
 
             return true;
 
         } catch (IOException e) {
-            System.err.println("❌ Failed to connect to server: " + e.getMessage());
+            Log.error("❌ Failed to connect to server: " + e.getMessage());
             connected = false;
             return false;
         }
@@ -95,46 +176,325 @@ public class SocketClient {
         this.messageCallback = callback;
     }
 
+    /**
+     * Set callback for received binary frames
+     * Without one, binary frames are handed to the message callback as JSON
+     * @param callback Function to handle decoded frames
+     */
+    public void setFrameCallback(Consumer<ProtocolMessage> callback) {
+        this.frameCallback = callback;
+    }
+
+    /**
+     * Authenticate with the server, requesting binary frames if preferred
+     * @param userId User ID
+     * @param username Username
+     * @return true if queued successfully
+     */
+    public boolean authenticate(int userId, String username) {
+        authUserId = userId;
+        authUsername = username;
+        awaitingAuthAck = PREFER_BINARY;
+
+        boolean sent = sendMessage(Protocol.createAuthMessage(
+                userId,
+                username,
+                PREFER_BINARY ? Protocol.CODEC_BINARY : Protocol.CODEC_JSON
+        ));
+
+        // Anything not acknowledged before the connection dropped goes out again,
+        // then catch up on what arrived while disconnected
+        if (sent) {
+            retransmitInFlight();
+            requestSync();
+        }
+        return sent;
+    }
+
+    /**
+     * Set where the SYNC cursors sent after each AUTH come from
+     * @param cursors Supplies the last contiguous sequence number per conversation partner
+     */
+    public void setSyncCursors(Supplier<Map<Integer, Long>> cursors) {
+        this.syncCursors = cursors;
+    }
+
+    /**
+     * Ask the server for messages after the current sync cursors
+     * Answered with SYNC_PAGE frames; does nothing without a cursor supplier
+     * @return true if queued successfully
+     */
+    public boolean requestSync() {
+        if (syncCursors == null) {
+            return false;
+        }
+        return sendMessage(new ProtocolMessage.Sync(syncCursors.get(), System.currentTimeMillis()));
+    }
+
+    /**
+     * Send a chat message with a fresh message ID
+     * Returns immediately; the message is kept until the server acknowledges
+     * it, and waits for window space if SEND_WINDOW messages are in flight
+     * @param senderId Sender user ID
+     * @param receiverId Receiver user ID
+     * @param content Message content
+     * @return Message ID echoed in the server's ACK
+     */
+    public String sendChatMessage(int senderId, int receiverId, String content) {
+        return sendChatMessage(UUID.randomUUID().toString(), senderId, receiverId, content);
+    }
+
+    /**
+     * Send a chat message under a message ID chosen by the caller
+     * (e.g. the one stored with the local copy)
+     * @param messageId Unique message ID
+     * @param senderId Sender user ID
+     * @param receiverId Receiver user ID
+     * @param content Message content
+     * @return Message ID echoed in the server's ACK
+     */
+    public String sendChatMessage(String messageId, int senderId, int receiverId, String content) {
+        ProtocolMessage.Chat chat = new ProtocolMessage.Chat(
+                messageId, 0, senderId, receiverId, content, System.currentTimeMillis());
+
+        synchronized (inFlight) {
+            if (inFlight.size() < SEND_WINDOW && sendBacklog.isEmpty()) {
+                inFlight.put(chat.messageId(), chat);
+                transmit(chat);
+            } else {
+                sendBacklog.addLast(chat);
+            }
+        }
+        return chat.messageId();
+    }
+
+    /**
+     * Get number of chat messages sent but not yet acknowledged
+     */
+    public int getInFlightCount() {
+        synchronized (inFlight) {
+            return inFlight.size();
+        }
+    }
+
+    /**
+     * Get number of chat messages waiting for window space
+     */
+    public int getBacklogCount() {
+        synchronized (inFlight) {
+            return sendBacklog.size();
+        }
+    }
+
     /**
      * Send message to server
+     * The frame is queued and written by the writer thread together with
+     * anything else queued at the same time
      * @param message JSON message string
-     * @return true if sent successfully
+     * @return true if queued successfully
      */
     public boolean sendMessage(String message) {
-        if (!connected || out == null) {
-            System.err.println("❌ Cannot send message: Not connected to server");
+        byte[] frame = binaryFraming ? BinaryCodec.encodeJson(message) : null;
+        if (!enqueue(frame != null ? frame : Protocol.encodeTextFrame(message))) {
             return false;
         }
 
-        try {
-            out.println(message);
-            System.out.println("📤 Sent to server: " + message.substring(0, Math.min(50, message.length())) + "...");
-            return true;
-        } catch (Exception e) {
-            System.err.println("❌ Failed to send message: " + e.getMessage());
+        if (Log.isDebugEnabled()) {
+            Log.debug("📤 Sent to server: " + message.substring(0, Math.min(50, message.length())) + "...");
+        }
+        return true;
+    }
+
+    /**
+     * Send typed message to server in the negotiated codec
+     * @param message Message to send
+     * @return true if queued successfully
+     */
+    public boolean sendMessage(ProtocolMessage message) {
+        byte[] frame = binaryFraming ? BinaryCodec.encode(message) : null;
+        if (!enqueue(frame != null ? frame : Protocol.encodeTextFrame(message.toJson()))) {
+            return false;
+        }
+
+        if (Log.isDebugEnabled()) {
+            Log.debug("📤 Sent to server: " + message.type());
+        }
+        return true;
+    }
+
+    /**
+     * Send a windowed chat message if connected; otherwise it waits for retransmit
+     */
+    private void transmit(ProtocolMessage.Chat chat) {
+        if (connected) {
+            sendMessage(chat);
+        }
+    }
+
+    /**
+     * Send every unacknowledged chat message again, oldest first
+     */
+    private void retransmitInFlight() {
+        synchronized (inFlight) {
+            if (inFlight.isEmpty()) {
+                return;
+            }
+            Log.info("🔁 Retransmitting " + inFlight.size() + " unacknowledged messages");
+            for (ProtocolMessage.Chat chat : inFlight.values()) {
+                transmit(chat);
+            }
+        }
+    }
+
+    /**
+     * Release a message from the window once the server acknowledges it
+     * and fill the freed slots from the backlog
+     */
+    private void onAck(ProtocolMessage.Ack ack) {
+        if (!ack.success() && Protocol.THROTTLED.equals(ack.status())) {
+            scheduleRetransmit(ack.messageId());
+            return;
+        }
+
+        synchronized (inFlight) {
+            if (inFlight.remove(ack.messageId()) == null) {
+                return;
+            }
+            if (!ack.success()) {
+                Log.error("❌ Server could not route message " + ack.messageId());
+            }
+
+            while (inFlight.size() < SEND_WINDOW && !sendBacklog.isEmpty()) {
+                ProtocolMessage.Chat next = sendBacklog.pollFirst();
+                inFlight.put(next.messageId(), next);
+                transmit(next);
+            }
+        }
+    }
+
+    /**
+     * Keep a throttled message in its window slot and send it again after
+     * the wait the server asked for (the ERROR arrives before the ACK)
+     */
+    private void scheduleRetransmit(String messageId) {
+        long delayMillis = retryAfterMillis > 0 ? retryAfterMillis : THROTTLE_RETRY_MS;
+        if (Log.isDebugEnabled()) {
+            Log.debug("⏳ Message " + messageId + " throttled, resending in " + delayMillis + " ms");
+        }
+
+        retryScheduler.schedule(() -> {
+            synchronized (inFlight) {
+                ProtocolMessage.Chat chat = inFlight.get(messageId);
+                if (chat != null) {
+                    transmit(chat);
+                }
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queue an encoded frame for the writer thread
+     */
+    private boolean enqueue(byte[] frame) {
+        if (!connected || writer == null) {
+            Log.error("❌ Cannot send message: Not connected to server");
             return false;
         }
+
+        outboundQueue.add(frame);
+        return true;
+    }
+
+    /**
+     * Start the writer thread that drains the outbound queue
+     */
+    private void startWriting() {
+        writerThread = new Thread(() -> {
+            try {
+                writer.run();
+            } catch (InterruptedException e) {
+                // Disconnecting - write what is still queued (e.g. LOGOUT)
+                try {
+                    writer.drain();
+                } catch (IOException ignored) {
+                    // Socket already gone
+                }
+            } catch (IOException e) {
+                if (connected) {
+                    Log.error("❌ Failed to send message: " + e.getMessage());
+                    connected = false;
+                }
+            }
+        });
+
+        writerThread.setDaemon(true);
+        writerThread.setName("SocketClient-Writer");
+        writerThread.start();
     }
 
     /**
      * Start listening for incoming messages in a background thread
      */
     private void startListening() {
-        listenerThread = new Thread(() -> {
-            try {
-                String message;
-                while (connected && (message = in.readLine()) != null) {
-                    final String receivedMessage = message;
-                    System.out.println("📥 Received from server: " + receivedMessage.substring(0, Math.min(50, receivedMessage.length())) + "...");
-
-                    // Call the message callback if set
-                    if (messageCallback != null) {
-                        messageCallback.accept(receivedMessage);
+        FrameDecoder decoder = new FrameDecoder(MAX_FRAME_SIZE);
+        FrameDecoder.FrameListener listener = new FrameDecoder.FrameListener() {
+            @Override
+            public void onTextFrame(byte[] frame) {
+                String receivedMessage = FrameDecoder.text(frame);
+                if (Log.isDebugEnabled()) {
+                    Log.debug("📥 Received from server: " + receivedMessage.substring(0, Math.min(50, receivedMessage.length())) + "...");
+                }
+
+                // Decode once; typed listeners skip the string callback
+                ProtocolMessage message = JsonCodec.decode(receivedMessage);
+
+                if (message instanceof ProtocolMessage.Ack ack) {
+                    if (awaitingAuthAck) {
+                        checkAuthAck(ack);
                     }
+                    onAck(ack);
+                } else if (message instanceof ProtocolMessage.Error error && error.retryAfterMillis() > 0) {
+                    retryAfterMillis = error.retryAfterMillis();
+                    Log.warn("⚠️ " + error.message() + ", retrying in " + retryAfterMillis + " ms");
+                }
+
+                // Call the message callback if set
+                if (frameCallback != null && message != null) {
+                    frameCallback.accept(message);
+                } else if (messageCallback != null) {
+                    messageCallback.accept(receivedMessage);
+                }
+            }
+
+            @Override
+            public void onBinaryFrame(byte[] body) {
+                ProtocolMessage message = BinaryCodec.decode(body);
+                if (message == null) {
+                    return;
                 }
+
+                if (Log.isDebugEnabled()) {
+                    Log.debug("📥 Received from server: binary " + message.type());
+                }
+
+                if (message instanceof ProtocolMessage.Ack ack) {
+                    onAck(ack);
+                }
+
+                if (frameCallback != null) {
+                    frameCallback.accept(message);
+                } else if (messageCallback != null) {
+                    messageCallback.accept(message.toJson());
+                }
+            }
+        };
+
+        listenerThread = new Thread(() -> {
+            try {
+                decoder.readFrom(in, listener);
             } catch (IOException e) {
                 if (connected) {
-                    System.err.println("❌ Connection lost: " + e.getMessage());
+                    Log.error("❌ Connection lost: " + e.getMessage());
                     connected = false;
                 }
             }
@@ -143,7 +503,29 @@ public class SocketClient {
         listenerThread.setDaemon(true);
         listenerThread.setName("SocketClient-Listener");
         listenerThread.start();
-        System.out.println("✅ Started listening for messages");
+        Log.info("✅ Started listening for messages");
+    }
+
+    /**
+     * Switch to binary frames once the server acknowledges them for AUTH
+     */
+    private void checkAuthAck(ProtocolMessage message) {
+        if (!(message instanceof ProtocolMessage.Ack ack) || !Protocol.AUTH.equals(ack.messageId())) {
+            return;
+        }
+
+        binaryFraming = Protocol.CODEC_BINARY.equals(ack.codec());
+        awaitingAuthAck = false;
+
+        Log.info("🔤 Using " + (binaryFraming ? "binary" : "JSON") + " frames");
+    }
+
+    /**
+     * Check if binary frames were negotiated
+     * @return true if sending and receiving binary frames
+     */
+    public boolean isBinaryFraming() {
+        return binaryFraming;
     }
 
     /**
@@ -156,18 +538,22 @@ public class SocketClient {
             if (listenerThread != null) {
                 listenerThread.interrupt();
             }
-            if (out != null) {
-                out.close();
+            if (writerThread != null) {
+                writerThread.interrupt();
+                writerThread.join(DRAIN_TIMEOUT_MS);
             }
+            outboundQueue.clear();
             if (in != null) {
                 in.close();
             }
             if (socket != null && !socket.isClosed()) {
                 socket.close();
             }
-            System.out.println("✅ Disconnected from server");
+            Log.info("✅ Disconnected from server");
         } catch (IOException e) {
-            System.err.println("❌ Error during disconnect: " + e.getMessage());
+            Log.error("❌ Error during disconnect: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -181,17 +567,27 @@ public class SocketClient {
 
     /**
      * Attempt to reconnect to server
+     * Waits 1 second, or as long as an overloaded server asked
      * @return true if reconnected successfully
      */
     public boolean reconnect() {
-        System.out.println("🔄 Attempting to reconnect...");
+        Log.info("🔄 Attempting to reconnect...");
         disconnect();
         try {
-            Thread.sleep(1000); // Wait 1 second before reconnecting
+            Thread.sleep(Math.max(1000, retryAfterMillis));
+            retryAfterMillis = 0;
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
-        return connect();
+        if (!connect()) {
+            return false;
+        }
+
+        // Log in again; this also retransmits unacknowledged messages
+        if (authUsername != null) {
+            authenticate(authUserId, authUsername);
+        }
+        return true;
     }
 
     /**
@@ -0,0 +1,83 @@
+package com.birdsenger.server;
+
+import com.birdsenger.util.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+
+/**
+ * Listening sockets for the accept threads of every engine
+ *
+ * With SO_REUSEPORT (Linux, macOS) each acceptor binds its own socket to
+ * the server port and the kernel spreads incoming connections over them,
+ * so a connect storm is accepted on several cores with no lock or handoff
+ * between the acceptors. Without it there is a single socket and a single
+ * acceptor, which hands connections off round-robin as before.
+ */
+final class Acceptors {
+    private Acceptors() {
+    }
+
+    /**
+     * Number of accept threads to run
+     * @return The configured count if SO_REUSEPORT is available, otherwise 1
+     */
+    static int count(ServerConfig config) {
+        int configured = config.getAcceptThreads();
+        if (configured == 1) {
+            return 1;
+        }
+        if (!isReusePortSupported()) {
+            Log.warn("⚠️ SO_REUSEPORT not supported here, using a single acceptor instead of " + configured);
+            return 1;
+        }
+        return configured;
+    }
+
+    /**
+     * Bind a listening channel for one NIO acceptor
+     * @param shared True if other acceptors bind the same port (SO_REUSEPORT)
+     */
+    static ServerSocketChannel openChannel(ServerConfig config, boolean shared) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            if (shared) {
+                channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            }
+            channel.bind(new InetSocketAddress(config.getPort()), config.getAcceptBacklog());
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Bind a listening socket for one thread-engine acceptor
+     * @param shared True if other acceptors bind the same port (SO_REUSEPORT)
+     */
+    static ServerSocket openSocket(ServerConfig config, boolean shared) throws IOException {
+        ServerSocket socket = new ServerSocket();
+        try {
+            if (shared) {
+                socket.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            }
+            socket.bind(new InetSocketAddress(config.getPort()), config.getAcceptBacklog());
+            return socket;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private static boolean isReusePortSupported() {
+        try (ServerSocketChannel probe = ServerSocketChannel.open()) {
+            return probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
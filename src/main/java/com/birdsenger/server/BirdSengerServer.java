@@ -1,73 +1,247 @@
 package com.birdsenger.server;
 
+import com.birdsenger.dao.ConversationLogDAO;
+import com.birdsenger.dao.DatabaseConnection;
+import com.birdsenger.dao.GroupDAO;
+import com.birdsenger.network.FramePool;
+import com.birdsenger.network.PresenceManager;
 import com.birdsenger.network.Protocol;
+import com.birdsenger.network.ProtocolMessage;
+import com.birdsenger.util.Log;
 import com.google.gson.JsonObject;
 
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.sql.Connection;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 /**
  * Main BirdSenger server
  * Accepts client connections and manages message routing
  */
 public class BirdSengerServer {
-    private static final int PORT = 8080;
+    // Slots in the idle timer wheel; deadlines further out take extra rounds
+    private static final int IDLE_WHEEL_SIZE = 512;
 
-    private ServerSocket serverSocket;
-    private boolean running;
+    // One per accept thread (SO_REUSEPORT), thread and virtual engines
+    private ServerSocket[] serverSockets;
+    private volatile boolean running;
 
-    // Map of userId -> ClientHandler
-    private Map<Integer, ClientHandler> connectedClients;
+    // Startup settings (engine, port, ...)
+    private final ServerConfig config;
+    private final ServerEngine engine;
+    private NioServer nioServer;
+
+    // Runs one virtual thread per ClientHandler (VIRTUAL_THREADS engine)
+    private ExecutorService virtualThreadExecutor;
+
+    // userId -> ClientHandler, sharded by user
+    private final ConnectionRegistry connectedClients;
 
     // Broadcast manager for routing messages
     private BroadcastManager broadcastManager;
 
+    // Who receives whose presence updates
+    private final PresenceSubscriptions presenceSubscriptions;
+
+    // Recently routed client message IDs, for dropping retransmits
+    private final RecentMessageIds recentMessageIds;
+
+    // Drops connections that miss several heartbeats (null when disabled)
+    private IdleTracker idleTracker;
+
+    // Conversation sequence numbers and SYNC history (null when disabled)
+    private final ConversationLog conversationLog;
+
+    // Group memberships and the workers delivering group messages
+    private final GroupIndex groupIndex;
+    private final GroupFanout groupFanout;
+
+    // Sheds typing, coalesces presence and rejects connections under load (null when disabled)
+    private final OverloadController overloadController;
+
+    // Inbound rate limits shared by all connections, tunable over HTTP
+    private final RateLimits rateLimits;
+
+    // Other server nodes sharing the users (null when not clustered)
+    private final Cluster cluster;
+
+    // Batches presence while many users log in at once (null when disabled)
+    private final PresenceBatcher presenceBatcher;
+
+    // Counters and histograms behind STATS and the metrics endpoint
+    private final ServerMetrics metrics;
+    private MetricsHttpServer metricsHttpServer;
+
     public BirdSengerServer() {
-        this.connectedClients = new ConcurrentHashMap<>();
-        this.broadcastManager = new BroadcastManager(connectedClients);
+        this(ServerConfig.defaults());
+    }
+
+    public BirdSengerServer(ServerConfig config) {
+        this.config = config;
+        this.engine = config.getEngine();
+        Log.configure(config.getLogLevel(), config.isContentLoggingEnabled());
+        this.connectedClients = new ConnectionRegistry(config.getRegistryShards(), config.getRegistryParallelThreshold());
+        this.metrics = new ServerMetrics();
+        this.rateLimits = new RateLimits(config);
+        this.presenceSubscriptions = new PresenceSubscriptions();
+        this.recentMessageIds = new RecentMessageIds(config.getDedupeWindow(), config.getDedupeMaxSenders());
+        this.conversationLog = createConversationLog(config);
+        this.broadcastManager = new BroadcastManager(
+                connectedClients,
+                presenceSubscriptions,
+                config.getPresenceCoalesceMillis(),
+                createOfflineDrainer(config),
+                metrics,
+                new FramePool(config.getFramePoolBytes())
+        );
+        this.cluster = createCluster(config, broadcastManager, metrics);
+        this.presenceBatcher = createPresenceBatcher(config, broadcastManager);
+        this.groupIndex = createGroupIndex(config);
+        this.groupFanout = new GroupFanout(broadcastManager, config.getGroupFanoutThreads(), config.getGroupFanoutQueue());
+        this.overloadController = config.isOverloadControlEnabled()
+                ? new OverloadController(config, broadcastManager.getPresenceTable(),
+                        broadcastManager::getTotalOutboundQueueDepth, metrics)
+                : null;
+        registerGauges();
     }
 
     /**
      * Start the server
      */
     public void start() {
+        startIdleTracker();
+        startMetricsHttpServer();
+        startCluster();
+        if (presenceBatcher != null) {
+            presenceBatcher.start();
+        }
+        if (overloadController != null) {
+            overloadController.start();
+        }
+
+        if (engine == ServerEngine.NIO) {
+            startNio();
+            return;
+        }
+
+        if (engine == ServerEngine.VIRTUAL_THREADS) {
+            virtualThreadExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        }
+
+        int acceptors = Acceptors.count(config);
+        serverSockets = new ServerSocket[acceptors];
         try {
-            serverSocket = new ServerSocket(PORT);
-            running = true;
+            for (int i = 0; i < acceptors; i++) {
+                serverSockets[i] = Acceptors.openSocket(config, acceptors > 1);
+            }
+        } catch (IOException e) {
+            Log.error("❌ Failed to start server: " + e.getMessage(), e);
+            closeServerSockets();
+            return;
+        }
+        running = true;
 
-            System.out.println("🚀 BirdSenger Server started on port " + PORT);
-            System.out.println("⏳ Waiting for clients to connect...\n");
+        Log.info("🚀 BirdSenger Server started on port " + config.getPort() + " (" + engine + ", "
+                + acceptors + (acceptors > 1 ? " acceptors)" : " acceptor)"));
+        Log.info("⏳ Waiting for clients to connect...\n");
 
-            // Accept client connections
-            while (running) {
-                try {
-                    Socket clientSocket = serverSocket.accept();
-                    System.out.println("🔌 New client connected: " + clientSocket.getInetAddress());
+        for (int i = 1; i < acceptors; i++) {
+            ServerSocket serverSocket = serverSockets[i];
+            Thread.ofPlatform().name("acceptor-" + i).start(() -> acceptLoop(serverSocket));
+        }
+        acceptLoop(serverSockets[0]);
+    }
 
-                    // Create handler for this client
-                    ClientHandler clientHandler = new ClientHandler(
-                            clientSocket,
-                            this,
-                            broadcastManager
-                    );
+    /**
+     * Accept client connections on one listening socket until stopped
+     */
+    private void acceptLoop(ServerSocket serverSocket) {
+        while (running) {
+            try {
+                Socket clientSocket = serverSocket.accept();
+                if (rejectIfOverloaded(clientSocket)) {
+                    continue;
+                }
+                Log.info("🔌 New client connected: " + clientSocket.getInetAddress());
+
+                // Create handler for this client
+                ClientHandler clientHandler = new ClientHandler(
+                        clientSocket,
+                        this,
+                        broadcastManager
+                );
 
-                    // Start handler in new thread
+                // Start handler in new platform or virtual thread
+                if (virtualThreadExecutor != null) {
+                    virtualThreadExecutor.execute(clientHandler);
+                } else {
                     new Thread(clientHandler).start();
+                }
 
-                } catch (IOException e) {
-                    if (running) {
-                        System.err.println("❌ Error accepting client: " + e.getMessage());
-                    }
+            } catch (IOException e) {
+                if (running) {
+                    Log.error("❌ Error accepting client: " + e.getMessage());
                 }
             }
+        }
+    }
+
+    private void closeServerSockets() {
+        if (serverSockets == null) {
+            return;
+        }
+        for (ServerSocket serverSocket : serverSockets) {
+            if (serverSocket == null) {
+                continue;
+            }
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+    }
+
+    /**
+     * Start the server on the NIO engine (blocks while accepting)
+     */
+    private void startNio() {
+        try {
+            nioServer = new NioServer(config, this, broadcastManager);
+            if (overloadController != null) {
+                nioServer.getEventLoops().forEach(overloadController::watch);
+            }
+            running = true;
+            nioServer.start();
+
+        } catch (IOException e) {
+            Log.error("❌ Failed to start server: " + e.getMessage(), e);
+        }
+    }
 
+    /**
+     * Turn a new connection away with an ERROR and a retry-after hint while overloaded
+     * Done before any handler or thread exists for it
+     * @param clientSocket Connection just accepted
+     * @return true if the connection was rejected and closed
+     */
+    private boolean rejectIfOverloaded(Socket clientSocket) {
+        if (overloadController == null || !overloadController.isRejectingConnections()) {
+            return false;
+        }
+
+        metrics.recordConnectionRejected();
+        try (clientSocket) {
+            clientSocket.getOutputStream().write(overloadController.rejectFrame());
         } catch (IOException e) {
-            System.err.println("❌ Failed to start server: " + e.getMessage());
-            e.printStackTrace();
+            // Client is gone already
         }
+        return true;
     }
 
     /**
@@ -78,20 +252,103 @@ public class BirdSengerServer {
 
         try {
             // Disconnect all clients
-            for (ClientHandler client : connectedClients.values()) {
-                client.disconnect();
-            }
+            connectedClients.forEach(ClientHandler::disconnect);
             connectedClients.clear();
 
-            // Close server socket
-            if (serverSocket != null && !serverSocket.isClosed()) {
-                serverSocket.close();
+            // Close server sockets
+            closeServerSockets();
+            if (nioServer != null) {
+                nioServer.stop();
+            }
+            if (virtualThreadExecutor != null) {
+                virtualThreadExecutor.shutdownNow();
+            }
+            if (overloadController != null) {
+                overloadController.stop();
+            }
+            if (cluster != null) {
+                cluster.stop();
+            }
+            if (presenceBatcher != null) {
+                presenceBatcher.stop();
+            }
+            groupFanout.shutdown();
+            broadcastManager.shutdown();
+            if (idleTracker != null) {
+                idleTracker.stop();
+            }
+            if (conversationLog != null) {
+                conversationLog.shutdown();
+            }
+            if (metricsHttpServer != null) {
+                metricsHttpServer.stop();
             }
 
-            System.out.println("🛑 Server stopped");
+            Log.info("🛑 Server stopped");
 
         } catch (IOException e) {
-            System.err.println("❌ Error stopping server: " + e.getMessage());
+            Log.error("❌ Error stopping server: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Number a chat message in its conversation, route it to its recipient
+     * or queue it until they come back, then acknowledge it to the sender
+     * A retransmit of an already routed message is only acknowledged. In a
+     * cluster, messages of conversations another node numbers are handed to
+     * that node, which acknowledges them; if it cannot be reached the sender
+     * gets a FAILED ACK and may send the message again
+     * @param chat Message from a client
+     * @param jsonFrame Frame it was decoded from, null if it arrived in binary
+     * @param receivedNanos When it arrived
+     * @param reply Sends the ACK to the sender
+     */
+    public void routeChat(ProtocolMessage.Chat chat, byte[] jsonFrame, long receivedNanos, Consumer<ProtocolMessage> reply) {
+        routeChat(chat, jsonFrame, receivedNanos, reply, true);
+    }
+
+    /**
+     * Route a chat message, optionally without handing it to another node
+     * @param mayDelegate False for messages another node handed here to be numbered
+     */
+    private void routeChat(ProtocolMessage.Chat chat, byte[] jsonFrame, long receivedNanos,
+                           Consumer<ProtocolMessage> reply, boolean mayDelegate) {
+        String ackId = chat.messageId() != null ? chat.messageId() : Protocol.MESSAGE;
+        DeliveryStatus previous = recentMessageIds.claim(chat.senderId(), chat.messageId());
+        if (previous != null) {
+            reply.accept(ClientHandler.ack(ackId, previous, 0));
+            return;
+        }
+
+        if (mayDelegate && conversationLog != null && cluster != null) {
+            int sequencer = cluster.getSequencerOf(chat.senderId(), chat.receiverId());
+            if (sequencer != cluster.getNodeId()) {
+                byte[] frame = jsonFrame != null ? jsonFrame : new EncodedMessage(chat).getJsonFrame();
+                DeliveryStatus status = cluster.requestSequence(sequencer, frame) ? DeliveryStatus.QUEUED : DeliveryStatus.FAILED;
+                recentMessageIds.complete(chat.senderId(), chat.messageId(), status);
+                if (status == DeliveryStatus.FAILED) {
+                    Log.warn("⚠️ Cluster node " + sequencer + " unreachable, message from " + chat.senderId() + " not routed");
+                    reply.accept(ClientHandler.ack(ackId, status, 0));
+                }
+                return;
+            }
+        }
+
+        // Stamping may finish on the ConversationLog worker if the conversation's
+        // counter has to be loaded first; the ACK follows the routing either way
+        Consumer<ProtocolMessage.Chat> route = routed -> {
+            EncodedMessage encoded = new EncodedMessage(routed, ClientHandler.stampedFrame(chat, routed, jsonFrame), receivedNanos);
+            DeliveryStatus status = broadcastManager.routeMessage(chat.receiverId(), encoded);
+            recentMessageIds.complete(chat.senderId(), chat.messageId(), status);
+
+            // Tell the sender whether it was delivered or queued, echoing its message ID
+            reply.accept(ClientHandler.ack(ackId, status, routed.seq()));
+        };
+
+        if (conversationLog != null) {
+            conversationLog.stamp(chat, route);
+        } else {
+            route.accept(chat);
         }
     }
 
@@ -102,10 +359,24 @@ public class BirdSengerServer {
      */
     public void registerClient(int userId, ClientHandler handler) {
         connectedClients.put(userId, handler);
-        System.out.println("✅ User " + userId + " registered. Total clients: " + connectedClients.size());
+        Log.info("✅ User " + userId + " registered. Total clients: " + connectedClients.size());
+        if (cluster != null) {
+            cluster.userConnected(userId);
+        }
+        if (presenceBatcher != null) {
+            presenceBatcher.recordLogin();
+        }
 
-        // Broadcast presence update to all clients
-        broadcastManager.broadcastPresenceUpdate(userId, Protocol.ONLINE);
+        // Tell the user's contacts, then tell the user which contacts are online;
+        // skipped if the connection closed or was replaced while contacts loaded
+        handler.offload(() -> presenceSubscriptions.loadContacts(userId), contacts -> {
+            if (connectedClients.get(userId) != handler) {
+                return;
+            }
+            presenceSubscriptions.subscribe(userId, contacts);
+            broadcastManager.updatePresence(userId, Protocol.ONLINE);
+            broadcastManager.sendPresenceSnapshot(userId);
+        });
     }
 
     /**
@@ -113,11 +384,329 @@ public class BirdSengerServer {
      * @param userId User ID
      */
     public void unregisterClient(int userId) {
-        connectedClients.remove(userId);
-        System.out.println("👋 User " + userId + " disconnected. Total clients: " + connectedClients.size());
+        ClientHandler handler = connectedClients.get(userId);
+        if (handler != null) {
+            unregisterClient(userId, handler);
+        }
+    }
+
+    /**
+     * Unregister a client connection
+     * Does nothing if the user has already reconnected on another connection
+     * @param userId User ID
+     * @param handler Connection that closed
+     */
+    public void unregisterClient(int userId, ClientHandler handler) {
+        if (!connectedClients.remove(userId, handler)) {
+            return;
+        }
+        Log.info("👋 User " + userId + " disconnected. Total clients: " + connectedClients.size());
+        if (cluster != null) {
+            cluster.userDisconnected(userId);
+        }
+
+        // Contacts hear about it once the coalescing window closes
+        broadcastManager.updatePresence(userId, Protocol.OFFLINE);
+    }
+
+    /**
+     * Open the offline message store
+     * @return Drainer for the store, or null if disabled or unavailable
+     */
+    private static OfflineDrainer createOfflineDrainer(ServerConfig config) {
+        if (!config.isOfflineQueueEnabled()) {
+            return null;
+        }
+
+        try {
+            OfflineQueue offlineQueue = new OfflineQueue(Path.of(config.getOfflineQueueDir()), config.getOfflineSegmentBytes());
+            return new OfflineDrainer(offlineQueue, config.getOfflineBatchSize());
+        } catch (IOException e) {
+            Log.error("❌ Offline queue unavailable, messages to offline users will be dropped: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Join the cluster listed in cluster.nodes
+     * @return Cluster, or null if not clustered or the node list is invalid
+     */
+    private Cluster createCluster(ServerConfig config, BroadcastManager broadcastManager, ServerMetrics metrics) {
+        String nodes = config.getClusterNodes();
+        if (nodes.isBlank()) {
+            return null;
+        }
+
+        Cluster.ForwardListener listener = new Cluster.ForwardListener() {
+            @Override
+            public void onForwarded(int[] userIds, ProtocolMessage message, byte[] jsonFrame) {
+                broadcastManager.deliverForwarded(userIds, message, jsonFrame);
+            }
+
+            @Override
+            public void onSequenceRequest(ProtocolMessage.Chat chat, byte[] jsonFrame) {
+                // The ACK travels back to the sender's node like any message to the sender
+                routeChat(chat, jsonFrame, System.nanoTime(),
+                        ack -> broadcastManager.sendMessageToUser(chat.senderId(), ack), false);
+            }
+
+            @Override
+            public void onSyncRequest(int nodeId, int userId, ProtocolMessage.Sync sync) {
+                if (conversationLog == null) {
+                    return;
+                }
+                // Pages travel back over the link to the user's node, paced by that link's backlog
+                conversationLog.sync(userId, new ConversationLog.PageSink() {
+                    @Override
+                    public boolean isOpen() {
+                        return cluster.getNodeOf(userId) == nodeId;
+                    }
+
+                    @Override
+                    public boolean isBacklogged() {
+                        return cluster.isBacklogged(nodeId);
+                    }
+
+                    @Override
+                    public void send(ProtocolMessage.SyncPage page) {
+                        // The user's own node already answered; an empty page adds nothing
+                        if (!page.messages().isEmpty()) {
+                            broadcastManager.sendMessageToUser(userId, page);
+                        }
+                    }
+                }, sync.cursors());
+            }
+        };
+
+        try {
+            Cluster cluster = new Cluster(config, Cluster.Node.parseAll(nodes),
+                    listener, broadcastManager::getConnectedUserIds, metrics);
+            broadcastManager.setCluster(cluster);
+            return cluster;
+        } catch (IllegalArgumentException e) {
+            Log.error("❌ Cluster mode disabled: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Batch presence during reconnect storms unless presence.stormLoginsPerSecond is 0
+     * @return Batcher, or null if disabled
+     */
+    private static PresenceBatcher createPresenceBatcher(ServerConfig config, BroadcastManager broadcastManager) {
+        if (config.getPresenceStormLoginsPerSecond() <= 0) {
+            return null;
+        }
 
-        // Broadcast presence update to all clients
-        broadcastManager.broadcastPresenceUpdate(userId, Protocol.OFFLINE);
+        PresenceBatcher presenceBatcher = new PresenceBatcher(config, broadcastManager::deliverPresenceBatch);
+        broadcastManager.setPresenceBatcher(presenceBatcher);
+        return presenceBatcher;
+    }
+
+    /**
+     * Listen for and connect to the other cluster nodes
+     */
+    private void startCluster() {
+        if (cluster == null) {
+            return;
+        }
+
+        try {
+            cluster.start();
+        } catch (IOException e) {
+            Log.error("❌ Failed to start cluster listener, running without peers: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Open the conversation log in the database
+     * @return Log, or null if disabled or the database is unavailable
+     */
+    private static ConversationLog createConversationLog(ServerConfig config) {
+        if (!config.isSyncEnabled()) {
+            return null;
+        }
+
+        DatabaseConnection database = DatabaseConnection.getInstance();
+        if (database.getConnection() == null) {
+            Log.error("❌ Database unavailable, messages will not be sequenced and SYNC returns nothing");
+            return null;
+        }
+
+        database.initializeDatabase();
+        Connection connection = database.openConnection();
+        if (connection == null) {
+            Log.error("❌ Database unavailable, messages will not be sequenced and SYNC returns nothing");
+            return null;
+        }
+        return new ConversationLog(new ConversationLogDAO(connection), config.getSyncPageSize(),
+                config.getSequenceIdleMillis());
+    }
+
+    /**
+     * Load group memberships from the database
+     * @return Index, memory-only if the database is unavailable
+     */
+    private static GroupIndex createGroupIndex(ServerConfig config) {
+        DatabaseConnection database = DatabaseConnection.getInstance();
+        if (database.getConnection() == null) {
+            Log.error("❌ Database unavailable, groups are kept in memory only");
+            return new GroupIndex(null, config.getGroupMaxMembers());
+        }
+
+        database.initializeDatabase();
+        return new GroupIndex(new GroupDAO(), config.getGroupMaxMembers());
+    }
+
+    /**
+     * Start idle detection: a connection silent for the configured number
+     * of heartbeat intervals is disconnected and goes OFFLINE
+     */
+    private void startIdleTracker() {
+        int missedHeartbeats = config.getIdleMissedHeartbeats();
+        if (missedHeartbeats <= 0) {
+            return;
+        }
+
+        long timeoutMillis = (long) missedHeartbeats * PresenceManager.HEARTBEAT_INTERVAL;
+        idleTracker = new IdleTracker(timeoutMillis, config.getIdleTickMillis(), IDLE_WHEEL_SIZE);
+        idleTracker.start();
+    }
+
+    /**
+     * Publish live state that is read each time the metrics are rendered
+     */
+    private void registerGauges() {
+        metrics.registerGauge("connected_users", "Authenticated users", connectedClients::size);
+        metrics.registerGauge("outbound_queued_frames", "Frames waiting in all outbound queues",
+                broadcastManager::getTotalOutboundQueueDepth);
+        metrics.registerGauge("outbound_queue_depth_max", "Frames waiting on the most backed up connection",
+                broadcastManager::getMaxOutboundQueueDepth);
+        metrics.registerGauge("frame_pool_buffers_allocated", "Direct buffers allocated for shared broadcast frames",
+                broadcastManager.getFramePool()::getAllocatedCount);
+        metrics.registerGauge("frame_pool_buffers_idle", "Pooled broadcast buffers waiting for reuse",
+                broadcastManager.getFramePool()::getIdleCount);
+        metrics.registerGauge("groups", "Group conversations", groupIndex::getGroupCount);
+        metrics.registerGauge("group_fanout_backlog", "Group messages waiting for a fan-out worker",
+                groupFanout::getBacklog);
+        if (overloadController != null) {
+            metrics.registerGauge("overload_state", "0 normal, 1 shedding typing, 2 coalescing presence, 3 rejecting connections",
+                    () -> overloadController.getState().ordinal());
+            metrics.registerGauge("overload_lag_millis", "Event loop / scheduling lag at the last overload sample",
+                    overloadController::getLagMillis);
+            metrics.registerGauge("heap_after_gc_percent", "Heap in use after the last collection, percent of maximum",
+                    overloadController::getHeapPercent);
+        }
+        if (presenceBatcher != null) {
+            metrics.registerGauge("presence_batching", "1 while presence is batched during a reconnect storm",
+                    () -> presenceBatcher.isBatching() ? 1 : 0);
+        }
+        if (cluster != null) {
+            metrics.registerGauge("cluster_links_up", "Other cluster nodes currently reachable", cluster::getLinksUp);
+            metrics.registerGauge("cluster_remote_users", "Users connected to other cluster nodes",
+                    cluster::getRemoteUserCount);
+        }
+        metrics.registerGauge("log_dropped_lines", "Log lines dropped because the log buffer was full",
+                Log::getDroppedCount);
+    }
+
+    /**
+     * Serve the metrics over HTTP if a metrics port is configured
+     */
+    private void startMetricsHttpServer() {
+        int port = config.getMetricsPort();
+        if (port <= 0) {
+            return;
+        }
+
+        try {
+            metricsHttpServer = new MetricsHttpServer(metrics, rateLimits, config.getMetricsHost(), port);
+            metricsHttpServer.start();
+        } catch (IOException e) {
+            Log.error("❌ Failed to start metrics endpoint on port " + port + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get the broadcast manager that routes between connected clients
+     */
+    public BroadcastManager getBroadcastManager() {
+        return broadcastManager;
+    }
+
+    /**
+     * Get the server metrics
+     */
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get the inbound rate limits
+     */
+    public RateLimits getRateLimits() {
+        return rateLimits;
+    }
+
+    /**
+     * Get the per-sender cache of recently routed message IDs
+     */
+    public RecentMessageIds getRecentMessageIds() {
+        return recentMessageIds;
+    }
+
+    /**
+     * Get the conversation log
+     * @return Log, or null if sequencing is disabled
+     */
+    public ConversationLog getConversationLog() {
+        return conversationLog;
+    }
+
+    /**
+     * Get the group membership index
+     */
+    public GroupIndex getGroupIndex() {
+        return groupIndex;
+    }
+
+    /**
+     * Get the group message fan-out workers
+     */
+    public GroupFanout getGroupFanout() {
+        return groupFanout;
+    }
+
+    /**
+     * Get the overload controller
+     * @return Controller, or null if overload control is disabled
+     */
+    public OverloadController getOverloadController() {
+        return overloadController;
+    }
+
+    /**
+     * Get the cluster this server belongs to
+     * @return Cluster, or null if not clustered
+     */
+    public Cluster getCluster() {
+        return cluster;
+    }
+
+    /**
+     * Get the reconnect storm presence batcher
+     * @return Batcher, or null if disabled
+     */
+    public PresenceBatcher getPresenceBatcher() {
+        return presenceBatcher;
+    }
+
+    /**
+     * Get the idle connection tracker
+     * @return Tracker, or null if idle detection is disabled
+     */
+    public IdleTracker getIdleTracker() {
+        return idleTracker;
     }
 
     /**
@@ -137,16 +726,35 @@ public class BirdSengerServer {
         return connectedClients.containsKey(userId);
     }
 
+    /**
+     * Get the startup configuration
+     * @return Server configuration
+     */
+    public ServerConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Get the connection handling engine
+     * @return Engine selected at startup
+     */
+    public ServerEngine getEngine() {
+        return engine;
+    }
+
     /**
      * Main method to run the server
+     * Pass --engine=nio (or -Dbirdsenger.engine=nio) to use the NIO engine
+     * and --port=N to run several engines side by side
      */
     public static void main(String[] args) {
-        BirdSengerServer server = new BirdSengerServer();
+        BirdSengerServer server = new BirdSengerServer(ServerConfig.fromArgs(args));
 
         // Add shutdown hook
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            System.out.println("\n🛑 Shutting down server...");
+            Log.info("\n🛑 Shutting down server...");
             server.stop();
+            Log.flush();
         }));
 
         // Start server
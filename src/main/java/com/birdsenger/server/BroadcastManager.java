@@ -1,18 +1,84 @@
 package com.birdsenger.server;
 
-import com.birdsenger.network.Protocol;
+import com.birdsenger.model.PresenceStatus;
+import com.birdsenger.network.FramePool;
+import com.birdsenger.network.ProtocolMessage;
+import com.birdsenger.util.Log;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
 
 /**
  * Manages broadcasting messages to clients
  * Routes messages to specific users or all users
+ * Presence updates only go to the user's contacts (PresenceSubscriptions),
+ * and only for real transitions (PresenceTable)
+ * Fan-out encodes each message once into a pooled buffer (FramePool) that
+ * every recipient's queue shares
+ * In cluster mode, recipients connected to another node are forwarded to
+ * it (Cluster); frames forwarded here are delivered to local users only
+ * During a reconnect storm presence goes out as one PRESENCE_BATCH per
+ * subscriber and tick instead (PresenceBatcher)
  */
 public class BroadcastManager {
-    private Map<Integer, ClientHandler> connectedClients;
+    // broadcastToAllExcept() target that matches no user
+    private static final int NO_EXCLUSION = Integer.MIN_VALUE;
 
-    public BroadcastManager(Map<Integer, ClientHandler> connectedClients) {
+    private final ConnectionRegistry connectedClients;
+    private final PresenceSubscriptions presenceSubscriptions;
+    private final PresenceTable presenceTable;
+
+    // Store-and-forward for offline recipients (null when disabled)
+    private final OfflineDrainer offlineDrainer;
+
+    private final ServerMetrics metrics;
+
+    // Buffers for frames shared by many recipients
+    private final FramePool framePool;
+
+    // Other server nodes (null when not clustered)
+    private volatile Cluster cluster;
+
+    // Collects presence into PRESENCE_BATCH frames during reconnect storms (null when disabled)
+    private volatile PresenceBatcher presenceBatcher;
+
+    public BroadcastManager(ConnectionRegistry connectedClients) {
+        this(connectedClients, new PresenceSubscriptions(), 0, null, new ServerMetrics(),
+                new FramePool(ServerConfig.DEFAULT_FRAME_POOL_BYTES));
+    }
+
+    public BroadcastManager(ConnectionRegistry connectedClients,
+                            PresenceSubscriptions presenceSubscriptions,
+                            long presenceCoalesceMillis,
+                            OfflineDrainer offlineDrainer,
+                            ServerMetrics metrics,
+                            FramePool framePool) {
         this.connectedClients = connectedClients;
+        this.presenceSubscriptions = presenceSubscriptions;
+        this.offlineDrainer = offlineDrainer;
+        this.metrics = metrics;
+        this.framePool = framePool;
+        this.presenceTable = new PresenceTable(presenceCoalesceMillis, new PresenceTable.PresenceListener() {
+            @Override
+            public void onPresenceChanged(int userId, PresenceStatus status) {
+                PresenceBatcher batcher = presenceBatcher;
+                if (batcher == null || !batcher.offer(userId, status)) {
+                    broadcastPresenceUpdate(userId, status.name());
+                }
+            }
+
+            @Override
+            public void onPresenceRemoved(int userId) {
+                // Keep the subscriptions of a user that already reconnected
+                if (!connectedClients.containsKey(userId)) {
+                    presenceSubscriptions.unsubscribe(userId);
+                }
+            }
+        });
     }
 
     /**
@@ -26,61 +92,577 @@ public class BroadcastManager {
 
         if (handler != null && handler.isRunning()) {
             handler.sendMessage(message);
-            System.out.println("📤 Message sent to user " + userId);
+            if (Log.isDebugEnabled()) {
+                Log.debug("📤 Message sent to user " + userId);
+            }
             return true;
         } else {
-            System.out.println("⚠️ User " + userId + " is not connected - message not delivered");
+            if (Log.isDebugEnabled()) {
+                Log.debug("⚠️ User " + userId + " is not connected - message not delivered");
+            }
             return false;
         }
     }
 
     /**
-     * Broadcast message to all connected clients
-     * @param message JSON message string
+     * Send typed message to a specific user in that user's codec
+     * @param userId Target user ID
+     * @param message Message to send
+     * @return true if message was sent
      */
-    public void broadcastToAll(String message) {
+    public boolean sendMessageToUser(int userId, ProtocolMessage message) {
+        ClientHandler handler = connectedClients.get(userId);
+
+        if (handler != null && handler.isRunning()) {
+            handler.sendMessage(message);
+            if (Log.isDebugEnabled()) {
+                Log.debug("📤 Message sent to user " + userId);
+            }
+            return true;
+        } else if (forward(userId, new EncodedMessage(message))) {
+            return true;
+        } else {
+            if (Log.isDebugEnabled()) {
+                Log.debug("⚠️ User " + userId + " is not connected - message not delivered");
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Send typed message to several users, encoded once per codec
+     * @param userIds Target user IDs; offline users are skipped
+     * @param message Message to send
+     * @return Number of users it was sent to
+     */
+    public int sendMessageToUsers(Iterable<Integer> userIds, ProtocolMessage message) {
+        EncodedMessage encoded = new EncodedMessage(message, framePool);
+        RemoteRecipients remote = new RemoteRecipients();
         int sentCount = 0;
 
-        for (ClientHandler handler : connectedClients.values()) {
-            if (handler.isRunning()) {
-                handler.sendMessage(message);
-                sentCount++;
+        try {
+            for (int userId : userIds) {
+                ClientHandler handler = connectedClients.get(userId);
+                if (handler != null && handler.isRunning()) {
+                    handler.sendMessage(encoded);
+                    sentCount++;
+                } else {
+                    remote.add(userId);
+                }
             }
+            sentCount += remote.forward(encoded);
+        } finally {
+            encoded.release();
         }
+        return sentCount;
+    }
 
-        System.out.println("📢 Broadcast message sent to " + sentCount + " clients");
+    /**
+     * Send an encoded message to a specific user
+     * @param userId Target user ID
+     * @param message Message with any frames already encoded
+     * @return true if message was sent
+     */
+    public boolean sendMessageToUser(int userId, EncodedMessage message) {
+        ClientHandler handler = connectedClients.get(userId);
+
+        if (handler != null && handler.isRunning()) {
+            handler.sendMessage(message);
+            if (Log.isDebugEnabled()) {
+                Log.debug("📤 Message sent to user " + userId);
+            }
+            return true;
+        } else if (forward(userId, message)) {
+            return true;
+        } else {
+            if (Log.isDebugEnabled()) {
+                Log.debug("⚠️ User " + userId + " is not connected - message not delivered");
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Route a chat message to its recipient, queueing it if the recipient is offline
+     * Messages also queue while an earlier backlog is still being delivered,
+     * so they never overtake it. A recipient on another cluster node counts
+     * as delivered once its node's link has taken the message
+     * @param receiverId Recipient
+     * @param message Message to deliver
+     * @return Whether the message was delivered, queued or lost
+     */
+    public DeliveryStatus routeMessage(int receiverId, EncodedMessage message) {
+        return routeMessage(receiverId, message, true);
+    }
+
+    /**
+     * Route a chat message, optionally without forwarding to another node
+     * @param mayForward False for messages another node forwarded here
+     */
+    private DeliveryStatus routeMessage(int receiverId, EncodedMessage message, boolean mayForward) {
+        if (offlineDrainer != null && offlineDrainer.storeIfPending(receiverId, message.getJsonFrame())) {
+            if (Log.isDebugEnabled()) {
+                Log.debug("📥 Message queued behind offline backlog of user " + receiverId);
+            }
+            return DeliveryStatus.QUEUED;
+        }
+
+        ClientHandler handler = connectedClients.get(receiverId);
+        if (handler != null && handler.isRunning()) {
+            handler.sendMessage(message);
+            if (Log.isDebugEnabled()) {
+                Log.debug("📤 Message sent to user " + receiverId);
+            }
+            return DeliveryStatus.DELIVERED;
+        }
+
+        if (mayForward && forward(receiverId, message)) {
+            if (Log.isDebugEnabled()) {
+                Log.debug("🕸️ Message for user " + receiverId + " forwarded to node " + cluster.getNodeOf(receiverId));
+            }
+            return DeliveryStatus.DELIVERED;
+        }
+
+        if (offlineDrainer == null) {
+            if (Log.isDebugEnabled()) {
+                Log.debug("⚠️ User " + receiverId + " is not connected - message not delivered");
+            }
+            return DeliveryStatus.FAILED;
+        }
+
+        // Written to disk on the OfflineDrainer thread; a failed write is logged there
+        offlineDrainer.store(receiverId, message.getJsonFrame());
+        if (Log.isDebugEnabled()) {
+            Log.debug("📥 User " + receiverId + " is offline - message queued");
+        }
+        return DeliveryStatus.QUEUED;
+    }
+
+    /**
+     * Deliver a group message to every member except its sender
+     * Online members share one encoded frame, members on other nodes get one
+     * forwarded frame per node, and offline members get it queued like any
+     * chat message (runs on a GroupFanout worker)
+     * @param group Members to deliver to
+     * @param senderId Sender, skipped
+     * @param message Message to deliver
+     * @return DELIVERED if every member was online, QUEUED if some were queued,
+     *         FAILED if no other member could be reached
+     */
+    public DeliveryStatus routeGroupMessage(GroupIndex.Group group, int senderId, EncodedMessage message) {
+        // Outcomes indexed by DeliveryStatus ordinal
+        int[] outcomes = new int[DeliveryStatus.values().length];
+        RemoteRecipients remote = new RemoteRecipients();
+
+        for (int memberId : group.members()) {
+            if (memberId == senderId) {
+                continue;
+            }
+            if (isRemote(memberId)) {
+                remote.add(memberId);
+            } else {
+                outcomes[routeMessage(memberId, message).ordinal()]++;
+            }
+        }
+
+        // One DELIVER per node; members whose node could not take it are queued here
+        outcomes[DeliveryStatus.DELIVERED.ordinal()] += remote.forward(message,
+                memberId -> outcomes[routeMessage(memberId, message, false).ordinal()]++);
+
+        int delivered = outcomes[DeliveryStatus.DELIVERED.ordinal()];
+        int queued = outcomes[DeliveryStatus.QUEUED.ordinal()];
+        int failed = outcomes[DeliveryStatus.FAILED.ordinal()];
+
+        metrics.recordGroupFanout(delivered + queued);
+        if (Log.isDebugEnabled()) {
+            Log.debug("👥 Group " + group.id() + " message: " + delivered + " delivered, "
+                    + queued + " queued, " + failed + " unreachable");
+        }
+
+        if (failed > 0 && delivered + queued == 0) {
+            return DeliveryStatus.FAILED;
+        }
+        return queued > 0 ? DeliveryStatus.QUEUED : DeliveryStatus.DELIVERED;
+    }
+
+    /**
+     * Check whether routeMessage would forward a message for this user to another node
+     */
+    private boolean isRemote(int userId) {
+        Cluster current = cluster;
+        if (current == null || current.getNodeOf(userId) == 0) {
+            return false;
+        }
+
+        OfflineQueue offlineQueue = offlineDrainer != null ? offlineDrainer.getOfflineQueue() : null;
+        if (offlineQueue != null && offlineQueue.hasPending(userId)) {
+            return false;
+        }
+        ClientHandler handler = connectedClients.get(userId);
+        return handler == null || !handler.isRunning();
+    }
+
+    /**
+     * Start delivering messages queued while a user was offline
+     * @param userId User that just authenticated
+     * @param handler User's connection
+     */
+    public void deliverOfflineMessages(int userId, ClientHandler handler) {
+        if (offlineDrainer != null) {
+            offlineDrainer.drain(userId, handler);
+        }
+    }
+
+    /**
+     * Stop background presence and offline delivery work
+     */
+    public void shutdown() {
+        presenceTable.shutdown();
+        if (offlineDrainer != null) {
+            offlineDrainer.shutdown();
+        }
+    }
+
+    /**
+     * Broadcast message to all connected clients
+     * Encoded once per codec and shared by all recipients
+     * @param message JSON message string
+     */
+    public void broadcastToAll(String message) {
+        broadcastToAllExcept(NO_EXCLUSION, EncodedMessage.ofJson(message, framePool));
     }
 
     /**
      * Broadcast message to all clients except one
+     * Encoded once per codec and shared by all recipients
      * @param excludeUserId User ID to exclude
      * @param message JSON message string
      */
     public void broadcastToAllExcept(int excludeUserId, String message) {
-        int sentCount = 0;
+        broadcastToAllExcept(excludeUserId, EncodedMessage.ofJson(message, framePool));
+    }
 
-        for (Map.Entry<Integer, ClientHandler> entry : connectedClients.entrySet()) {
-            if (entry.getKey() != excludeUserId && entry.getValue().isRunning()) {
-                entry.getValue().sendMessage(message);
-                sentCount++;
-            }
+    /**
+     * Broadcast typed message to all clients except one
+     * Encoded once per codec and shared by all recipients
+     * @param excludeUserId User ID to exclude
+     * @param message Message to send
+     */
+    public void broadcastToAllExcept(int excludeUserId, ProtocolMessage message) {
+        broadcastToAllExcept(excludeUserId, new EncodedMessage(message, framePool));
+    }
+
+    /**
+     * Queue a message for every running connection except one
+     * Shards of the registry may be walked in parallel, so both frames are
+     * encoded up front and the walk only reads them
+     * @param excludeUserId User ID to skip, NO_EXCLUSION for none
+     */
+    private void broadcastToAllExcept(int excludeUserId, EncodedMessage encoded) {
+        LongAdder sentCount = new LongAdder();
+
+        try {
+            encoded.encodeAll();
+            connectedClients.forEachParallel((userId, handler) -> {
+                if (userId != excludeUserId && handler.isRunning()) {
+                    handler.sendMessage(encoded);
+                    sentCount.increment();
+                }
+            });
+        } finally {
+            encoded.release();
         }
 
-        System.out.println("📢 Broadcast message sent to " + sentCount + " clients (excluding " + excludeUserId + ")");
+        if (Log.isDebugEnabled()) {
+            Log.debug("📢 Broadcast message sent to " + sentCount.sum() + " clients"
+                    + (excludeUserId != NO_EXCLUSION ? " (excluding " + excludeUserId + ")" : ""));
+        }
     }
 
     /**
-     * Broadcast presence update to all clients
+     * Record a user's reported presence
+     * Repeats of the current status are heartbeats and are not sent anywhere;
+     * transitions reach the user's contacts after the coalescing window
+     * @param userId User ID
+     * @param status Reported status (ONLINE/AWAY/DO_NOT_DISTURB/OFFLINE)
+     * @return true if the status changed
+     */
+    public boolean updatePresence(int userId, String status) {
+        PresenceStatus presenceStatus;
+        try {
+            presenceStatus = PresenceStatus.valueOf(status);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            Log.warn("⚠️ Unknown presence status from user " + userId + ": " + status);
+            return false;
+        }
+        return presenceTable.update(userId, presenceStatus);
+    }
+
+    /**
+     * Send presence update to the user's contacts
      * @param userId User whose status changed
-     * @param status New status (ONLINE/OFFLINE)
+     * @param status New status (ONLINE/AWAY/DO_NOT_DISTURB/OFFLINE)
      */
     public void broadcastPresenceUpdate(int userId, String status) {
-        String presenceMessage = Protocol.createPresenceMessage(userId, status);
+        EncodedMessage presenceMessage = new EncodedMessage(
+                new ProtocolMessage.Presence(userId, status, System.currentTimeMillis()), framePool);
+        RemoteRecipients remote = new RemoteRecipients();
+        int sentCount = 0;
 
-        // Send to all clients except the user whose status changed
-        broadcastToAllExcept(userId, presenceMessage);
+        // Only subscribers see the change, never the user itself
+        try {
+            for (int subscriberId : presenceSubscriptions.getSubscribers(userId)) {
+                ClientHandler handler = connectedClients.get(subscriberId);
+                if (handler != null && handler.isRunning()) {
+                    handler.sendMessage(presenceMessage);
+                    sentCount++;
+                } else {
+                    remote.add(subscriberId);
+                }
+            }
+            sentCount += remote.forward(presenceMessage);
+        } finally {
+            presenceMessage.release();
+        }
 
-        System.out.println("💚 Presence update broadcasted: User " + userId + " is " + status);
+        metrics.recordPresenceFanout(sentCount);
+        if (Log.isDebugEnabled()) {
+            Log.debug("💚 Presence update sent to " + sentCount + " contacts: User " + userId + " is " + status);
+        }
+    }
+
+    /**
+     * Send presence changes collected during a reconnect storm
+     * Each local subscriber gets one PRESENCE_BATCH with every change it
+     * subscribes to; subscribers on other nodes get single PRESENCE frames
+     * forwarded as usual
+     * @param statuses Latest status per user, in the order the users changed
+     * @param timestamp When the batch was taken
+     */
+    public void deliverPresenceBatch(Map<Integer, PresenceStatus> statuses, long timestamp) {
+        Map<Integer, Map<Integer, String>> batches = new HashMap<>();
+
+        for (Map.Entry<Integer, PresenceStatus> change : statuses.entrySet()) {
+            int userId = change.getKey();
+            String status = change.getValue().name();
+            RemoteRecipients remote = new RemoteRecipients();
+
+            for (int subscriberId : presenceSubscriptions.getSubscribers(userId)) {
+                ClientHandler handler = connectedClients.get(subscriberId);
+                if (handler != null && handler.isRunning()) {
+                    batches.computeIfAbsent(subscriberId, id -> new LinkedHashMap<>()).put(userId, status);
+                } else {
+                    remote.add(subscriberId);
+                }
+            }
+
+            if (remote.isEmpty()) {
+                continue;
+            }
+            EncodedMessage presenceMessage = new EncodedMessage(
+                    new ProtocolMessage.Presence(userId, status, timestamp), framePool);
+            try {
+                remote.forward(presenceMessage);
+            } finally {
+                presenceMessage.release();
+            }
+        }
+
+        for (Map.Entry<Integer, Map<Integer, String>> batch : batches.entrySet()) {
+            ClientHandler handler = connectedClients.get(batch.getKey());
+            if (handler != null && handler.isRunning()) {
+                handler.sendMessage(new ProtocolMessage.PresenceBatch(batch.getValue(), timestamp));
+                metrics.recordPresenceBatch(batch.getValue().size());
+            }
+        }
+
+        if (Log.isDebugEnabled()) {
+            Log.debug("💚 Presence batch: " + statuses.size() + " changes sent to " + batches.size() + " contacts");
+        }
+    }
+
+    /**
+     * Tell a newly connected user which of its contacts are online
+     * During a reconnect storm the whole snapshot goes out as one PRESENCE_BATCH
+     * @param userId User that just connected
+     */
+    public void sendPresenceSnapshot(int userId) {
+        ClientHandler handler = connectedClients.get(userId);
+        if (handler == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        PresenceBatcher batcher = presenceBatcher;
+        Map<Integer, String> snapshot = batcher != null && batcher.isBatching() ? new LinkedHashMap<>() : null;
+
+        for (int contactId : presenceSubscriptions.getSubscribers(userId)) {
+            PresenceStatus status = getPublishedStatus(contactId);
+            if (status == PresenceStatus.OFFLINE) {
+                continue;
+            }
+            if (snapshot != null) {
+                snapshot.put(contactId, status.name());
+            } else {
+                handler.sendMessage(new ProtocolMessage.Presence(contactId, status.name(), now));
+            }
+        }
+
+        if (snapshot != null && !snapshot.isEmpty()) {
+            handler.sendMessage(new ProtocolMessage.PresenceBatch(snapshot, now));
+            metrics.recordPresenceBatch(snapshot.size());
+        }
+    }
+
+    /**
+     * Subscribe two users to each other's presence once they start talking
+     * Each side learns the other's current status if it did not know it yet
+     * @param senderId User sending a message
+     * @param receiverId Recipient
+     */
+    public void linkContacts(int senderId, int receiverId) {
+        if (!presenceSubscriptions.link(senderId, receiverId)) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        PresenceStatus senderStatus = getPublishedStatus(senderId);
+        if (senderStatus != PresenceStatus.OFFLINE) {
+            sendMessageToUser(receiverId, new ProtocolMessage.Presence(senderId, senderStatus.name(), now));
+        }
+        PresenceStatus receiverStatus = getPublishedStatus(receiverId);
+        if (receiverStatus != PresenceStatus.OFFLINE) {
+            sendMessageToUser(senderId, new ProtocolMessage.Presence(receiverId, receiverStatus.name(), now));
+        }
+    }
+
+    /**
+     * Get the status contacts see for a user
+     * Users on another node are not in this node's presence table; they
+     * are shown ONLINE until their own node forwards a transition
+     */
+    private PresenceStatus getPublishedStatus(int userId) {
+        PresenceStatus status = presenceTable.getPublishedStatus(userId);
+        Cluster current = cluster;
+        if (status == PresenceStatus.OFFLINE && current != null && current.getNodeOf(userId) != 0) {
+            return PresenceStatus.ONLINE;
+        }
+        return status;
+    }
+
+    /**
+     * Batch presence during reconnect storms
+     * @param presenceBatcher Batcher whose batches are sent with deliverPresenceBatch()
+     */
+    public void setPresenceBatcher(PresenceBatcher presenceBatcher) {
+        this.presenceBatcher = presenceBatcher;
+    }
+
+    /**
+     * Join a cluster: recipients not connected here are forwarded to their node
+     * @param cluster Other server nodes
+     */
+    public void setCluster(Cluster cluster) {
+        this.cluster = cluster;
+    }
+
+    /**
+     * Deliver a frame another node forwarded here, to local users only
+     * Chat and group messages for users that have left are queued like any
+     * message to an offline user; anything else is dropped
+     * @param userIds Recipients
+     * @param message Decoded message
+     * @param jsonFrame Newline-terminated JSON frame it was decoded from
+     */
+    public void deliverForwarded(int[] userIds, ProtocolMessage message, byte[] jsonFrame) {
+        EncodedMessage encoded = new EncodedMessage(message, jsonFrame, 0, framePool);
+        boolean chat = message instanceof ProtocolMessage.Chat || message instanceof ProtocolMessage.GroupChat;
+
+        try {
+            for (int userId : userIds) {
+                if (chat) {
+                    // The recipient's side of the conversation lives here
+                    if (message instanceof ProtocolMessage.Chat direct) {
+                        presenceSubscriptions.link(direct.senderId(), userId);
+                    }
+                    routeMessage(userId, encoded, false);
+                } else {
+                    ClientHandler handler = connectedClients.get(userId);
+                    if (handler != null && handler.isRunning()) {
+                        handler.sendMessage(encoded);
+                    }
+                }
+            }
+        } finally {
+            encoded.release();
+        }
+    }
+
+    private boolean forward(int userId, EncodedMessage message) {
+        Cluster current = cluster;
+        return current != null && current.forward(userId, message);
+    }
+
+    /**
+     * Recipients of a fan-out not connected to this node, forwarded in one frame per node
+     */
+    private final class RemoteRecipients {
+        private int[] userIds;
+        private int count;
+
+        void add(int userId) {
+            if (cluster == null) {
+                return;
+            }
+            if (userIds == null) {
+                userIds = new int[16];
+            } else if (count == userIds.length) {
+                userIds = Arrays.copyOf(userIds, count * 2);
+            }
+            userIds[count++] = userId;
+        }
+
+        boolean isEmpty() {
+            return count == 0;
+        }
+
+        /**
+         * @return Number of recipients handed to another node
+         */
+        int forward(EncodedMessage message) {
+            Cluster current = cluster;
+            return current != null && count > 0 ? current.forward(userIds, count, message) : 0;
+        }
+
+        /**
+         * @param unreached Called for each recipient no link took
+         * @return Number of recipients handed to another node
+         */
+        int forward(EncodedMessage message, IntConsumer unreached) {
+            Cluster current = cluster;
+            return current != null && count > 0 ? current.forward(userIds, count, message, unreached) : 0;
+        }
+    }
+
+    /**
+     * Get the pool backing shared broadcast frames
+     */
+    public FramePool getFramePool() {
+        return framePool;
+    }
+
+    /**
+     * Get the presence subscriber index
+     */
+    public PresenceSubscriptions getPresenceSubscriptions() {
+        return presenceSubscriptions;
+    }
+
+    /**
+     * Get the authoritative presence state table
+     */
+    public PresenceTable getPresenceTable() {
+        return presenceTable;
     }
 
     /**
@@ -90,10 +672,12 @@ public class BroadcastManager {
      * @param isTyping True if typing, false if stopped
      */
     public void sendTypingIndicator(int receiverId, int senderId, boolean isTyping) {
-        String typingMessage = Protocol.createTypingMessage(senderId, receiverId, isTyping);
+        ProtocolMessage typingMessage = new ProtocolMessage.Typing(senderId, receiverId, isTyping, System.currentTimeMillis());
         sendMessageToUser(receiverId, typingMessage);
 
-        System.out.println("⌨️ Typing indicator sent: " + senderId + " -> " + receiverId);
+        if (Log.isDebugEnabled()) {
+            Log.debug("⌨️ Typing indicator sent: " + senderId + " -> " + receiverId);
+        }
     }
 
     /**
@@ -104,6 +688,32 @@ public class BroadcastManager {
         return connectedClients.size();
     }
 
+    /**
+     * Get total number of frames waiting in all outbound queues
+     * @return Sum of per-connection queue depths
+     */
+    public long getTotalOutboundQueueDepth() {
+        return connectedClients.sum(ClientHandler::getOutboundQueueDepth);
+    }
+
+    /**
+     * Get the deepest outbound queue of any connected client
+     * @return Frames waiting on the slowest connection
+     */
+    public int getMaxOutboundQueueDepth() {
+        return connectedClients.max(ClientHandler::getOutboundQueueDepth);
+    }
+
+    /**
+     * Get outbound queue depth for a user
+     * @param userId User ID
+     * @return Frames waiting for that user, 0 if not connected
+     */
+    public int getOutboundQueueDepth(int userId) {
+        ClientHandler handler = connectedClients.get(userId);
+        return handler != null ? handler.getOutboundQueueDepth() : 0;
+    }
+
     /**
      * Check if a user is currently connected
      * @param userId User ID to check
@@ -119,6 +729,6 @@ public class BroadcastManager {
      * @return Array of user IDs
      */
     public Integer[] getConnectedUserIds() {
-        return connectedClients.keySet().toArray(new Integer[0]);
+        return connectedClients.userIds();
     }
 }
\ No newline at end of file
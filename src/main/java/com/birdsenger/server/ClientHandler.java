@@ -1,54 +1,147 @@
 package com.birdsenger.server;
 
+import com.birdsenger.network.BinaryCodec;
+import com.birdsenger.network.CoalescingWriter;
+import com.birdsenger.network.FrameDecoder;
+import com.birdsenger.network.FrameTooLargeException;
+import com.birdsenger.network.JsonCodec;
 import com.birdsenger.network.Protocol;
-import com.google.gson.JsonObject;
+import com.birdsenger.network.ProtocolMessage;
+import com.birdsenger.network.SharedFrame;
+import com.birdsenger.util.Log;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Handles communication with a single client
- * Runs in its own thread
+ * Runs in its own platform or virtual thread; NioClientHandler reuses the
+ * same message routing on top of non-blocking channels
+ *
+ * Outbound frames go through a bounded OutboundQueue drained by a dedicated
+ * writer thread, so routing never blocks on this client's socket.
+ *
+ * Inbound frames may be JSON lines or BinaryCodec frames; outbound frames
+ * switch to the binary codec once the client asks for it in AUTH.
+ *
+ * Virtual thread notes: the writer is the only thread touching the socket
+ * stream (no synchronized PrintWriter), so a blocked write parks the virtual
+ * thread rather than pinning its carrier. Logging only hands lines to the
+ * lock-free Log ring, and socket close uses j.u.c locks internally on JDK 21+.
  */
 public class ClientHandler implements Runnable {
     private Socket clientSocket;
     private BirdSengerServer server;
     private BroadcastManager broadcastManager;
 
-    private PrintWriter out;
-    private BufferedReader in;
+    private OutputStream out;
+    private InputStream in;
+
+    // Splits inbound bytes into JSON / binary frames
+    private final FrameDecoder frameDecoder;
+    private final FrameDecoder.FrameListener frameListener = new FrameDecoder.FrameListener() {
+        @Override
+        public void onTextFrame(byte[] frame) {
+            handleTextFrame(frame);
+        }
+
+        @Override
+        public void onBinaryFrame(byte[] body) {
+            handleBinaryFrame(body);
+        }
+    };
+
+    // True once the client negotiated binary frames during AUTH
+    private volatile boolean binaryFraming;
+
+    // Frames waiting for the writer; filled by any routing thread
+    private final OutboundQueue outboundQueue;
+    private final ServerMetrics metrics;
+    private CoalescingWriter writer;
+    private Thread writerThread;
 
     private Integer userId;
     private String username;
-    private boolean running;
+    private volatile boolean running;
+
+    // Last time anything arrived from the client (read by IdleTracker)
+    private volatile long lastActivityMillis;
+
+    // Token buckets checked before each frame is handled
+    private final RateLimiter rateLimiter;
+    // Throttle ERRORs go out at most once per second (reader thread only)
+    private long nextThrottleErrorNanos;
 
     public ClientHandler(Socket socket, BirdSengerServer server, BroadcastManager broadcastManager) {
         this.clientSocket = socket;
         this.server = server;
         this.broadcastManager = broadcastManager;
         this.running = true;
+
+        ServerConfig config = server.getConfig();
+        this.metrics = server.getMetrics();
+        this.outboundQueue = new OutboundQueue(
+                config.getOutboundCapacity(),
+                config.getOverflowPolicy(),
+                config.getOutboundBlockTimeoutMillis(),
+                metrics.getRouteLatency(),
+                config.getOutboundStatusEvery(),
+                metrics.getFramesSuperseded()
+        );
+        this.frameDecoder = new FrameDecoder(config.getMaxFrameSize());
+        this.rateLimiter = new RateLimiter(server.getRateLimits());
+        this.nextThrottleErrorNanos = System.nanoTime();
+        metrics.connectionOpened();
+    }
+
+    /**
+     * Constructor for handlers that manage their own transport (NIO engine)
+     */
+    protected ClientHandler(BirdSengerServer server, BroadcastManager broadcastManager) {
+        this(null, server, broadcastManager);
     }
 
     @Override
     public void run() {
         try {
             // Setup I/O streams
-            out = new PrintWriter(clientSocket.getOutputStream(), true);
-            in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-
-            System.out.println("👤 ClientHandler started for: " + clientSocket.getInetAddress());
-
-            // Read messages from client
-            String message;
-            while (running && (message = in.readLine()) != null) {
-                handleMessage(message);
-            }
-
+            ServerConfig config = server.getConfig();
+            applySocketOptions(clientSocket, config);
+            out = clientSocket.getOutputStream();
+            writer = new CoalescingWriter(
+                    out,
+                    outboundQueue,
+                    config.getOutboundBufferSize(),
+                    config.getMaxFlushDelayMicros(),
+                    config.getLingerMicros(),
+                    config.getOutboundIdleReleaseMillis()
+            );
+            in = clientSocket.getInputStream();
+
+            Log.info("👤 ClientHandler started for: " + clientSocket.getInetAddress());
+            startIdleTracking();
+
+            // Writer runs on the same kind of thread as this reader
+            Thread.Builder writerBuilder = Thread.currentThread().isVirtual()
+                    ? Thread.ofVirtual()
+                    : Thread.ofPlatform().daemon(true);
+            writerThread = writerBuilder
+                    .name("ClientHandler-Writer-" + clientSocket.getPort())
+                    .start(this::writeLoop);
+
+            // Read frames from client until end of stream
+            frameDecoder.readFrom(in, frameListener);
+
+        } catch (FrameTooLargeException e) {
+            Log.error("❌ Rejected frame from " + describe() + ": " + e.getMessage());
         } catch (IOException e) {
-            System.err.println("❌ ClientHandler error: " + e.getMessage());
+            Log.error("❌ ClientHandler error: " + e.getMessage());
         } finally {
             disconnect();
         }
@@ -57,138 +150,553 @@ public class ClientHandler implements Runnable {
     /**
      * Handle incoming message from client
      */
-    private void handleMessage(String jsonString) {
-        try {
-            JsonObject json = Protocol.parseMessage(jsonString);
+    void handleMessage(String jsonString) {
+        handleFrame(JsonCodec.decode(jsonString), null, System.nanoTime());
+    }
+
+    /**
+     * Handle incoming JSON frame from client
+     * The raw frame is kept so JSON recipients get it without re-encoding
+     */
+    void handleTextFrame(byte[] frame) {
+        long receivedNanos = System.nanoTime();
+        lastActivityMillis = System.currentTimeMillis();
+        ProtocolMessage message = JsonCodec.decode(FrameDecoder.text(frame));
+        metrics.recordReceived(message, frame.length);
+        handleFrame(message, frame, receivedNanos);
+    }
 
-            if (json == null) {
+    /**
+     * Handle incoming binary frame from client
+     */
+    void handleBinaryFrame(byte[] body) {
+        long receivedNanos = System.nanoTime();
+        lastActivityMillis = System.currentTimeMillis();
+        ProtocolMessage message = BinaryCodec.decode(body);
+        metrics.recordReceived(message, BinaryCodec.HEADER_SIZE + body.length);
+        handleFrame(message, null, receivedNanos);
+    }
+
+    /**
+     * Route a decoded message
+     * @param message Decoded message, null if malformed
+     * @param jsonFrame Original JSON frame, or null if it came in binary
+     * @param receivedNanos System.nanoTime() when the frame arrived
+     */
+    private void handleFrame(ProtocolMessage message, byte[] jsonFrame, long receivedNanos) {
+        try {
+            if (message == null) {
                 sendError("Invalid message format");
                 return;
             }
 
-            String type = Protocol.getMessageType(json);
-
-            if (type == null) {
+            if (message.type() == null) {
                 sendError("Message type missing");
                 return;
             }
 
-            System.out.println("📨 Received " + type + " from client");
+            if (Log.isDebugEnabled()) {
+                Log.debug("📨 Received " + message.type() + " from " + describe());
+            }
+
+            RateLimiter.Throttle throttle = rateLimiter.acquire(message.type());
+            if (throttle != null) {
+                onThrottled(message, throttle);
+                return;
+            }
 
             // Route based on message type
-            switch (type) {
-                case Protocol.AUTH -> handleAuth(json);
-                case Protocol.MESSAGE -> handleChatMessage(json);
-                case Protocol.PRESENCE -> handlePresence(json);
-                case Protocol.TYPING -> handleTyping(json);
-                default -> System.err.println("⚠️ Unknown message type: " + type);
+            switch (message) {
+                case ProtocolMessage.Auth auth -> handleAuth(auth.action(), auth.userId(), auth.username(), auth.codec());
+                case ProtocolMessage.Chat chat -> handleChatMessage(chat, jsonFrame, receivedNanos);
+                case ProtocolMessage.GroupChat groupChat -> handleGroupMessage(groupChat, jsonFrame, receivedNanos);
+                case ProtocolMessage.Group group -> handleGroup(group);
+                case ProtocolMessage.Presence presence -> handlePresence(presence.status());
+                case ProtocolMessage.Typing typing -> handleTyping(typing, jsonFrame, receivedNanos);
+                case ProtocolMessage.Sync sync -> handleSync(sync);
+                case ProtocolMessage.Stats stats -> handleStats();
+                default -> Log.warn("⚠️ Unknown message type: " + message.type());
             }
 
         } catch (Exception e) {
-            System.err.println("❌ Error handling message: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("❌ Error handling message: " + e.getMessage(), e);
         }
     }
 
     /**
-     * Handle authentication message
+     * Log in or out; a login may request the binary codec
      */
-    private void handleAuth(JsonObject json) {
-        try {
-            String action = json.get("action").getAsString();
+    private void handleAuth(String action, int userId, String username, String codec) {
+        if (Protocol.LOGIN.equals(action)) {
+            this.userId = userId;
+            this.username = username;
 
-            if (Protocol.LOGIN.equals(action)) {
-                userId = json.get("userId").getAsInt();
-                username = json.get("username").getAsString();
+            // Register this client with server
+            server.registerClient(userId, this);
+            metrics.loginCompleted();
 
-                // Register this client with server
-                server.registerClient(userId, this);
+            Log.info("✅ User authenticated: " + username + " (ID: " + userId + ")");
 
-                System.out.println("✅ User authenticated: " + username + " (ID: " + userId + ")");
+            // Acknowledge in JSON, then switch codec if binary was requested
+            boolean binary = Protocol.CODEC_BINARY.equals(codec) && server.getConfig().isBinaryProtocolEnabled();
+            sendMessage(Protocol.createAuthAckMessage(binary ? Protocol.CODEC_BINARY : Protocol.CODEC_JSON));
+            binaryFraming = binary;
 
-                // Send acknowledgment
-                String ack = Protocol.createAckMessage("AUTH", true);
-                sendMessage(ack);
+            // Stream anything that arrived while the user was away
+            broadcastManager.deliverOfflineMessages(userId, this);
 
-            } else if (Protocol.LOGOUT.equals(action)) {
-                System.out.println("👋 User logging out: " + username);
-                disconnect();
-            }
-
-        } catch (Exception e) {
-            System.err.println("❌ Error handling auth: " + e.getMessage());
-            sendError("Authentication failed");
+        } else if (Protocol.LOGOUT.equals(action)) {
+            Log.info("👋 User logging out: " + username);
+            disconnect();
         }
     }
 
     /**
      * Handle chat message - route to recipient
      */
-    private void handleChatMessage(JsonObject json) {
-        try {
-            int senderId = json.get("senderId").getAsInt();
-            int receiverId = json.get("receiverId").getAsInt();
-            String content = json.get("content").getAsString();
+    private void handleChatMessage(ProtocolMessage.Chat chat, byte[] jsonFrame, long receivedNanos) {
+        if (userId == null) {
+            sendError("MESSAGE before AUTH");
+            return;
+        }
+        // The recipient gets the frame as sent, and the sender ID keys dedupe and sequencing
+        if (chat.senderId() != userId) {
+            sendError("Message sender " + chat.senderId() + " is not the logged-in user");
+            return;
+        }
 
-            System.out.println("💬 Message from " + senderId + " to " + receiverId + ": " + content);
+        if (Log.isDebugEnabled()) {
+            Log.debug("💬 Message from " + chat.senderId() + " to " + chat.receiverId() + ": " + Log.content(chat.content()));
+        }
 
-            // Route message to recipient
-            broadcastManager.sendMessageToUser(receiverId, json.toString());
+        // A new conversation subscribes both users to each other's presence
+        broadcastManager.linkContacts(chat.senderId(), chat.receiverId());
 
-            // Send acknowledgment to sender
-            String ack = Protocol.createAckMessage("MESSAGE", true);
-            sendMessage(ack);
+        // Numbered, routed and acknowledged by the server, here or on the
+        // cluster node that numbers this conversation
+        server.routeChat(chat, jsonFrame, receivedNanos, this::sendMessage);
+    }
 
-        } catch (Exception e) {
-            System.err.println("❌ Error handling chat message: " + e.getMessage());
-            sendError("Failed to send message");
+    /**
+     * Refuse a frame over its rate limit
+     * Chat senders get a THROTTLED ACK and keep the message to send again;
+     * the ERROR with the limit and a retry-after hint is sent at most once
+     * per second so a flooding client cannot make the server flood it back
+     */
+    private void onThrottled(ProtocolMessage message, RateLimiter.Throttle throttle) {
+        metrics.recordRateLimited(throttle.name());
+
+        // The ERROR goes first so the client knows how long to wait when the ACK arrives
+        long now = System.nanoTime();
+        if (now - nextThrottleErrorNanos >= 0) {
+            nextThrottleErrorNanos = now + Math.max(throttle.waitNanos(), TimeUnit.SECONDS.toNanos(1));
+
+            RateLimits.Limit limit = throttle.limit();
+            long retryAfterMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(throttle.waitNanos()));
+            Log.warn("⚠️ Rate limit " + throttle.name() + " exceeded by " + describe());
+            sendMessage(new ProtocolMessage.Error("Rate limit exceeded: " + throttle.name() + " (" + limit.describe() + ")",
+                    retryAfterMillis, System.currentTimeMillis()));
+        }
+
+        // Not routed, but not lost either: THROTTLED tells the client to keep it and send it again
+        String messageId = switch (message) {
+            case ProtocolMessage.Chat chat -> chat.messageId() != null ? chat.messageId() : Protocol.MESSAGE;
+            case ProtocolMessage.GroupChat groupChat ->
+                    groupChat.messageId() != null ? groupChat.messageId() : Protocol.GROUP_MESSAGE;
+            default -> null;
+        };
+        if (messageId != null) {
+            sendMessage(new ProtocolMessage.Ack(messageId, false, Protocol.THROTTLED, null, 0, System.currentTimeMillis()));
         }
     }
 
     /**
-     * Handle presence update
+     * Handle group message - fan out to the members on a GroupFanout worker
+     * so this thread is free again after one queue offer
      */
-    private void handlePresence(JsonObject json) {
-        try {
-            int userId = json.get("userId").getAsInt();
-            String status = json.get("status").getAsString();
+    private void handleGroupMessage(ProtocolMessage.GroupChat groupChat, byte[] jsonFrame, long receivedNanos) {
+        if (userId == null) {
+            sendError("GROUP_MESSAGE before AUTH");
+            return;
+        }
+        // Members receive the frame as sent, so it must name its real sender
+        if (groupChat.senderId() != userId) {
+            sendError("Group message sender " + groupChat.senderId() + " is not the logged-in user");
+            return;
+        }
 
-            System.out.println("💚 Presence update: User " + userId + " is " + status);
+        String ackId = groupChat.messageId() != null ? groupChat.messageId() : Protocol.GROUP_MESSAGE;
+        GroupIndex.Group group = server.getGroupIndex().get(groupChat.groupId());
+        if (group == null || !group.isMember(userId)) {
+            sendError("Not a member of group " + groupChat.groupId());
+            return;
+        }
 
-            // Broadcast to all clients
-            broadcastManager.broadcastPresenceUpdate(userId, status);
+        if (Log.isDebugEnabled()) {
+            Log.debug("👥 Message from " + userId + " to group " + groupChat.groupId()
+                    + " (" + group.members().length + " members): " + Log.content(groupChat.content()));
+        }
 
-        } catch (Exception e) {
-            System.err.println("❌ Error handling presence: " + e.getMessage());
+        // The worker acknowledges once every member has it delivered or queued;
+        // a retransmit of a message already handed over is acknowledged here
+        boolean[] submitted = new boolean[1];
+        DeliveryStatus status = server.getRecentMessageIds().deliverOnce(userId, groupChat.messageId(), () -> {
+            EncodedMessage encoded = new EncodedMessage(groupChat, jsonFrame, receivedNanos, broadcastManager.getFramePool());
+            submitted[0] = server.getGroupFanout().submit(group, userId, encoded,
+                    outcome -> sendAck(ackId, outcome, 0));
+            return submitted[0] ? DeliveryStatus.QUEUED : DeliveryStatus.FAILED;
+        });
+
+        if (!submitted[0]) {
+            sendAck(ackId, status, 0);
+        }
+    }
+
+    /**
+     * Create, join or leave a group; the requester gets the resulting member list
+     * and, on CREATE/ADD, so does every added member that is online
+     */
+    private void handleGroup(ProtocolMessage.Group request) {
+        if (userId == null) {
+            sendError("GROUP before AUTH");
+            return;
+        }
+
+        // Membership changes are written through to the database
+        int requester = userId;
+        GroupIndex groups = server.getGroupIndex();
+        offload(() -> switch (request.action()) {
+            case Protocol.GROUP_CREATE -> groups.create(
+                    request.name() != null ? request.name() : "Group " + requester, requester, request.memberIds());
+            case Protocol.GROUP_ADD -> {
+                GroupIndex.Group current = groups.get(request.groupId());
+                yield current != null && current.isMember(requester)
+                        ? groups.addMembers(request.groupId(), request.memberIds()) : null;
+            }
+            case Protocol.GROUP_LEAVE -> groups.removeMember(request.groupId(), requester);
+            default -> null;
+        }, group -> {
+            if (group == null) {
+                sendError("GROUP " + request.action() + " failed");
+                return;
+            }
+
+            Log.info("👥 Group " + group.id() + " " + request.action() + " by user " + requester
+                    + " (" + group.members().length + " members)");
+            ProtocolMessage.Group members = new ProtocolMessage.Group(
+                    Protocol.GROUP_MEMBERS, group.id(), group.name(), group.memberList(), System.currentTimeMillis());
+            sendMessage(members);
+
+            if (!Protocol.GROUP_LEAVE.equals(request.action())) {
+                broadcastManager.sendMessageToUsers(
+                        request.memberIds().stream().filter(id -> id != requester).toList(), members);
+            }
+        });
+    }
+
+    /**
+     * Add the sequence number to the original JSON frame so it can still be forwarded as is
+     * @return Frame to forward, or null to re-encode the stamped message
+     */
+    static byte[] stampedFrame(ProtocolMessage.Chat received, ProtocolMessage.Chat routed, byte[] jsonFrame) {
+        if (routed.seq() == received.seq()) {
+            return jsonFrame;
+        }
+        // A client-supplied seq would clash with the inserted one
+        return received.seq() == 0 ? JsonCodec.insertField(jsonFrame, "seq", routed.seq()) : null;
+    }
+
+    /**
+     * Stream the messages the client missed since its last contiguous sequence numbers
+     */
+    private void handleSync(ProtocolMessage.Sync sync) {
+        if (userId == null) {
+            sendError("SYNC before AUTH");
+            return;
+        }
+
+        ConversationLog conversationLog = server.getConversationLog();
+        if (conversationLog == null) {
+            // Nothing is sequenced, so there is nothing to catch up on
+            sendMessage(new ProtocolMessage.SyncPage(List.of(), true, System.currentTimeMillis()));
+            return;
+        }
+
+        conversationLog.sync(userId, this, sync.cursors());
+
+        // Conversations numbered by other cluster nodes are streamed from there
+        Cluster cluster = server.getCluster();
+        if (cluster != null) {
+            cluster.requestSync(userId, new EncodedMessage(sync).getJsonFrame());
+        }
+    }
+
+    /**
+     * Record a presence report; only transitions reach contacts
+     */
+    private void handlePresence(String status) {
+        // A connection only reports its own user, whatever ID the frame names
+        if (userId == null) {
+            sendError("PRESENCE before AUTH");
+            return;
+        }
+
+        // Repeating the current status is only a heartbeat
+        if (broadcastManager.updatePresence(userId, status) && Log.isDebugEnabled()) {
+            Log.debug("💚 Presence update: User " + userId + " is " + status);
         }
     }
 
     /**
      * Handle typing indicator
      */
-    private void handleTyping(JsonObject json) {
-        try {
-            int senderId = json.get("senderId").getAsInt();
-            int receiverId = json.get("receiverId").getAsInt();
-            boolean isTyping = json.get("isTyping").getAsBoolean();
+    private void handleTyping(ProtocolMessage.Typing typing, byte[] jsonFrame, long receivedNanos) {
+        OverloadController overloadController = server.getOverloadController();
+        if (overloadController != null && overloadController.isSheddingTyping()) {
+            metrics.recordTypingShed();
+            return;
+        }
 
-            System.out.println("⌨️ Typing indicator: " + senderId + " -> " + receiverId);
+        if (Log.isDebugEnabled()) {
+            Log.debug("⌨️ Typing indicator: " + typing.senderId() + " -> " + typing.receiverId());
+        }
 
-            // Forward to recipient only
-            broadcastManager.sendMessageToUser(receiverId, json.toString());
+        // Forward to recipient only
+        broadcastManager.sendMessageToUser(typing.receiverId(), new EncodedMessage(typing, jsonFrame, receivedNanos));
+    }
 
-        } catch (Exception e) {
-            System.err.println("❌ Error handling typing: " + e.getMessage());
+    /**
+     * Answer a STATS query with the server metrics in text form
+     */
+    private void handleStats() {
+        if (!server.getConfig().isStatsQueryEnabled()) {
+            sendError("STATS disabled");
+            return;
+        }
+        sendMessage(new ProtocolMessage.Stats(metrics.render(), System.currentTimeMillis()));
+    }
+
+    /**
+     * Apply TCP_NODELAY and buffer sizes from the configuration
+     */
+    static void applySocketOptions(Socket socket, ServerConfig config) throws IOException {
+        socket.setTcpNoDelay(config.isTcpNoDelay());
+        if (config.getSocketSendBuffer() > 0) {
+            socket.setSendBufferSize(config.getSocketSendBuffer());
+        }
+        if (config.getSocketReceiveBuffer() > 0) {
+            socket.setReceiveBufferSize(config.getSocketReceiveBuffer());
+        }
+    }
+
+    /**
+     * Drain the outbound queue to the socket (writer thread)
+     * Frames queued together are coalesced into one buffered write
+     */
+    private void writeLoop() {
+        try {
+            writer.run();
+        } catch (InterruptedException e) {
+            // Interrupted by disconnect
+        } catch (IOException e) {
+            if (running) {
+                Log.error("❌ Failed to send to " + describe() + ": " + e.getMessage());
+            }
+            disconnect();
         }
     }
 
     /**
      * Send message to this client
+     * Binary peers get the binary form when the message type has one
      */
     public void sendMessage(String message) {
-        if (out != null) {
-            out.println(message);
+        byte[] frame = binaryFraming ? BinaryCodec.encodeJson(message) : null;
+        sendFrame(frame != null ? frame : Protocol.encodeTextFrame(message));
+    }
+
+    /**
+     * Send a typed message to this client in its negotiated codec
+     */
+    public void sendMessage(ProtocolMessage message) {
+        byte[] frame = binaryFraming ? BinaryCodec.encode(message) : null;
+        sendFrame(SharedFrame.wrap(frame != null ? frame : Protocol.encodeTextFrame(message.toJson())), 0,
+                OutboundLane.of(message), OutboundLane.supersedeKey(message));
+    }
+
+    /**
+     * Send a message shared with other recipients, in its lane
+     * @param message Message encoded at most once per codec; the caller keeps ownership
+     */
+    public void sendMessage(EncodedMessage message) {
+        ProtocolMessage decoded = message.getMessage();
+        sendFrame(message.frameFor(this), message.getReceivedNanos(),
+                OutboundLane.of(decoded), OutboundLane.supersedeKey(decoded));
+    }
+
+    /**
+     * Send an already encoded frame
+     * Queues the frame and returns immediately; applies the overflow policy when full
+     */
+    public void sendFrame(byte[] frame) {
+        sendFrame(SharedFrame.wrap(frame), 0);
+    }
+
+    /**
+     * Send a frame shared with other recipients
+     * @param frame Encoded frame; the queue takes its own reference, the caller keeps its own
+     */
+    public void sendFrame(SharedFrame frame) {
+        sendFrame(frame, 0);
+    }
+
+    /**
+     * Send a frame that answers an inbound frame
+     * @param frame Encoded frame; the queue takes its own reference, the caller keeps its own
+     * @param receivedNanos System.nanoTime() when the inbound frame arrived, 0 if unknown
+     */
+    public void sendFrame(SharedFrame frame, long receivedNanos) {
+        sendFrame(frame, receivedNanos, OutboundLane.CHAT, 0);
+    }
+
+    /**
+     * Send a frame in a priority lane
+     * A full PRESENCE or TYPING lane drops the frame quietly; only CHAT applies the overflow policy
+     * @param frame Encoded frame; the queue takes its own reference, the caller keeps its own
+     * @param receivedNanos System.nanoTime() when the inbound frame arrived, 0 if unknown
+     * @param lane Priority class of the frame
+     * @param supersedeKey User whose state a PRESENCE or TYPING frame carries
+     */
+    public void sendFrame(SharedFrame frame, long receivedNanos, OutboundLane lane, int supersedeKey) {
+        if (!running) {
+            return;
+        }
+
+        frame.retain();
+        if (outboundQueue.offer(frame, canBlockOnOverflow(), receivedNanos, lane, supersedeKey)) {
+            metrics.recordSent(frame.length());
+            onFrameQueued();
+            return;
         }
+
+        frame.release();
+        metrics.recordDropped();
+
+        if (lane != OutboundLane.CHAT) {
+            if (Log.isDebugEnabled()) {
+                Log.debug("⚠️ " + lane + " lane full for " + describe() + " - frame dropped");
+            }
+            return;
+        }
+
+        if (outboundQueue.getPolicy() == OverflowPolicy.DISCONNECT) {
+            Log.warn("⚠️ Outbound queue full for " + describe() + " - disconnecting slow client");
+            disconnect();
+        } else {
+            Log.warn("⚠️ Outbound queue full for " + describe() + " - frame dropped (total "
+                    + outboundQueue.getDroppedCount() + ")");
+        }
+    }
+
+    /**
+     * Run blocking work (database, disk) and hand its result on
+     * The thread engines run both on the connection's own thread;
+     * NioClientHandler keeps the work off the event loop and runs then on it
+     * @param work Blocking work
+     * @param then Continues with the result
+     */
+    protected <T> void offload(Supplier<T> work, Consumer<T> then) {
+        then.accept(work.get());
+    }
+
+    /**
+     * Hook for transports that must be woken up when a frame is queued
+     * The writer thread blocks on the queue, so nothing to do here
+     */
+    protected void onFrameQueued() {
+    }
+
+    /**
+     * Whether sendMessage may wait for room under the BLOCK policy
+     */
+    protected boolean canBlockOnOverflow() {
+        return true;
+    }
+
+    /**
+     * Get the outbound queue
+     */
+    protected OutboundQueue getOutboundQueue() {
+        return outboundQueue;
+    }
+
+    /**
+     * Get number of frames waiting to be written to this client
+     */
+    public int getOutboundQueueDepth() {
+        return outboundQueue.size();
+    }
+
+    /**
+     * Get number of frames written to the socket
+     */
+    public long getFramesWritten() {
+        return writer != null ? writer.getFramesWritten() : 0;
+    }
+
+    /**
+     * Get number of socket writes (flushes) used for those frames
+     */
+    public long getSocketWriteCount() {
+        return writer != null ? writer.getFlushCount() : 0;
+    }
+
+    /**
+     * Get number of frames dropped because the outbound queue was full
+     */
+    public long getDroppedFrameCount() {
+        return outboundQueue.getDroppedCount();
+    }
+
+    /**
+     * Check if this client receives binary frames
+     */
+    public boolean isBinaryFraming() {
+        return binaryFraming;
+    }
+
+    /**
+     * Get the inbound frame decoder
+     */
+    protected FrameDecoder getFrameDecoder() {
+        return frameDecoder;
+    }
+
+    /**
+     * Get the listener that dispatches decoded frames
+     */
+    protected FrameDecoder.FrameListener getFrameListener() {
+        return frameListener;
+    }
+
+    /**
+     * Send acknowledgment for a message ID (or message type for clients without IDs)
+     * carrying the sequence number the message was stamped with
+     */
+    private void sendAck(String messageId, DeliveryStatus status, long seq) {
+        sendMessage(ack(messageId, status, seq));
+    }
+
+    /**
+     * Build the ACK telling a sender how its message was routed
+     */
+    static ProtocolMessage.Ack ack(String messageId, DeliveryStatus status, long seq) {
+        String ackStatus = switch (status) {
+            case DELIVERED -> Protocol.DELIVERED;
+            case QUEUED -> Protocol.QUEUED;
+            case FAILED -> null;
+        };
+        return new ProtocolMessage.Ack(messageId, status != DeliveryStatus.FAILED, ackStatus, null, seq, System.currentTimeMillis());
     }
 
     /**
@@ -203,32 +711,75 @@ public class ClientHandler implements Runnable {
      * Disconnect this client
      */
     public void disconnect() {
+        // Both the reader loop and the server may ask to disconnect - only act once
+        if (!running) {
+            return;
+        }
         running = false;
+        metrics.connectionClosed();
 
         try {
             // Unregister from server
             if (userId != null) {
-                server.unregisterClient(userId);
+                server.unregisterClient(userId, this);
             }
 
-            // Close streams
-            if (out != null) {
-                out.close();
-            }
-            if (in != null) {
-                in.close();
-            }
-            if (clientSocket != null && !clientSocket.isClosed()) {
-                clientSocket.close();
-            }
+            closeConnection();
 
-            System.out.println("🔌 Client disconnected: " + (username != null ? username : "Unknown"));
+            Log.info("🔌 Client disconnected: " + (username != null ? username : "Unknown"));
 
         } catch (IOException e) {
-            System.err.println("❌ Error disconnecting client: " + e.getMessage());
+            Log.error("❌ Error disconnecting client: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Close the underlying streams and socket
+     */
+    protected void closeConnection() throws IOException {
+        if (writerThread != null) {
+            writerThread.interrupt();
+        }
+        outboundQueue.clear();
+
+        if (out != null) {
+            out.close();
+        }
+        if (in != null) {
+            in.close();
+        }
+        if (clientSocket != null && !clientSocket.isClosed()) {
+            clientSocket.close();
         }
     }
 
+    /**
+     * Hand this connection to the server's idle tracker, if enabled
+     */
+    protected void startIdleTracking() {
+        lastActivityMillis = System.currentTimeMillis();
+
+        IdleTracker idleTracker = server.getIdleTracker();
+        if (idleTracker != null) {
+            idleTracker.register(this);
+        }
+    }
+
+    /**
+     * Get last time a frame arrived from the client
+     * @return Epoch millis
+     */
+    public long getLastActivityMillis() {
+        return lastActivityMillis;
+    }
+
+    /**
+     * Short description for log lines
+     */
+    String describe() {
+        return username != null ? username : "client";
+    }
+
     /**
      * Get user ID
      */
@@ -0,0 +1,561 @@
+package com.birdsenger.server;
+
+import com.birdsenger.network.FrameDecoder;
+import com.birdsenger.network.JsonCodec;
+import com.birdsenger.network.ProtocolMessage;
+import com.birdsenger.util.Log;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Cluster mode: several server processes, each owning a subset of the connections
+ *
+ * Members are listed statically (--cluster.nodes=1@host:port,2@host:port,...)
+ * and every node opens one ClusterLink to each other node. Each node tells
+ * its peers which users are connected to it (ROUTE frames), so every node
+ * holds the full userId -> node routing table and can reach any user in one
+ * hop. A node that loses its link to a peer forgets that peer's users until
+ * the link comes back with a fresh snapshot.
+ *
+ * BroadcastManager stays in charge of local delivery and only asks the
+ * cluster to forward() when a recipient is not connected locally. Frames
+ * arriving from peers are handed to the ForwardListener, which delivers
+ * them locally only, so a frame never travels more than one hop.
+ *
+ * Each conversation is numbered by one node, picked from its two user IDs
+ * (getSequencerOf), so sequence numbers never collide across nodes. Chat
+ * messages of conversations another node numbers are handed to it in a
+ * SEQUENCE frame; it routes them and acknowledges the sender itself. Each
+ * node keeps its own database with the conversations it numbers, so a
+ * client's SYNC is also sent to every peer (SYNC frame), and each streams
+ * its pages back to the user through the node the user is connected to.
+ *
+ * The listener binds to this node's host from cluster.nodes and accepts a
+ * HELLO only from a listed node's address; with cluster.secret set, the
+ * HELLO must also carry a fresh MAC made with the secret.
+ */
+public class Cluster {
+    // Users per ROUTE frame in a snapshot
+    private static final int SNAPSHOT_BATCH = 4096;
+
+    // How far a HELLO's timestamp may be from this node's clock
+    private static final long HELLO_MAX_SKEW_MILLIS = 30_000;
+
+    // Mixes conversation keys before picking their sequencer
+    private static final long SEQUENCER_HASH = 0x9E3779B97F4A7C15L;
+
+    /**
+     * A cluster member
+     * @param id Node ID, unique and above 0
+     * @param host Host peers connect to
+     * @param port Port of the node's cluster listener
+     */
+    public record Node(int id, String host, int port) {
+
+        /**
+         * Parse "id@host:port,id@host:port,..."
+         * @throws IllegalArgumentException if an entry is malformed
+         */
+        public static List<Node> parseAll(String value) {
+            List<Node> nodes = new ArrayList<>();
+            for (String entry : value.split(",")) {
+                entry = entry.trim();
+                if (entry.isEmpty()) {
+                    continue;
+                }
+                int at = entry.indexOf('@');
+                int colon = entry.lastIndexOf(':');
+                if (at <= 0 || colon <= at + 1) {
+                    throw new IllegalArgumentException("Invalid cluster node: " + entry + " (expected id@host:port)");
+                }
+                try {
+                    int id = Integer.parseInt(entry.substring(0, at));
+                    int port = Integer.parseInt(entry.substring(colon + 1));
+                    if (id <= 0) {
+                        throw new IllegalArgumentException("Cluster node IDs start at 1: " + entry);
+                    }
+                    nodes.add(new Node(id, entry.substring(at + 1, colon), port));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid cluster node: " + entry + " (expected id@host:port)");
+                }
+            }
+            return nodes;
+        }
+    }
+
+    /**
+     * Receives frames forwarded by other nodes
+     */
+    public interface ForwardListener {
+
+        /**
+         * Deliver a frame to users connected to this node
+         * @param userIds Recipients
+         * @param message Decoded message
+         * @param jsonFrame Newline-terminated JSON frame it was decoded from
+         */
+        void onForwarded(int[] userIds, ProtocolMessage message, byte[] jsonFrame);
+
+        /**
+         * Number and route a chat message of a conversation this node sequences
+         * @param chat Message as its sender sent it
+         * @param jsonFrame Newline-terminated JSON frame it was decoded from
+         */
+        void onSequenceRequest(ProtocolMessage.Chat chat, byte[] jsonFrame);
+
+        /**
+         * Stream the messages of conversations this node numbers to a user on another node
+         * @param nodeId Node the user is connected to
+         * @param userId User
+         * @param sync User's SYNC
+         */
+        void onSyncRequest(int nodeId, int userId, ProtocolMessage.Sync sync);
+    }
+
+    private final Node self;
+    private final Map<Integer, ClusterLink> links = new HashMap<>();
+    private final int[] nodeIds;
+    private final byte[] secret;
+    private final ForwardListener listener;
+    private final Supplier<Integer[]> localUsers;
+    private final ServerMetrics metrics;
+    private final int maxFrameSize;
+
+    // userId -> node, for users connected to other nodes
+    private final Map<Integer, Integer> routes = new ConcurrentHashMap<>();
+
+    // Current inbound connection of each peer; only its closing drops the peer's routes
+    private final Map<Integer, Socket> inbound = new ConcurrentHashMap<>();
+
+    private ServerSocket serverSocket;
+    private volatile boolean running;
+
+    /**
+     * @param config Cluster options (cluster.*)
+     * @param nodes All members, this one included
+     * @param listener Delivers frames forwarded by peers
+     * @param localUsers Users connected to this node, for route snapshots
+     * @param metrics Receives forwarding counts
+     * @throws IllegalArgumentException if cluster.nodeId is not one of the nodes
+     */
+    public Cluster(ServerConfig config, List<Node> nodes, ForwardListener listener,
+                   Supplier<Integer[]> localUsers, ServerMetrics metrics) {
+        int nodeId = config.getClusterNodeId();
+        this.self = nodes.stream().filter(node -> node.id() == nodeId).findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("cluster.nodeId " + nodeId + " is not in cluster.nodes"));
+        this.listener = listener;
+        this.localUsers = localUsers;
+        this.metrics = metrics;
+        this.maxFrameSize = config.getMaxFrameSize() * 2;
+        this.nodeIds = nodes.stream().mapToInt(Node::id).distinct().sorted().toArray();
+        this.secret = config.getClusterSecret().isEmpty() ? null : config.getClusterSecret().getBytes(StandardCharsets.UTF_8);
+
+        for (Node node : nodes) {
+            if (node.id() != nodeId) {
+                links.put(node.id(), new ClusterLink(self, node, () -> ClusterCodec.hello(nodeId, node.id(), secret),
+                        this::routeSnapshot, config));
+            }
+        }
+    }
+
+    /**
+     * Listen for peers and start connecting to them
+     * @throws IOException if the cluster port cannot be bound
+     */
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(self.port(), 50, InetAddress.getByName(self.host()));
+        running = true;
+        if (secret == null) {
+            Log.warn("⚠️ No cluster.secret set, cluster links are only checked by address");
+        }
+
+        Thread.ofPlatform().daemon(true).name("ClusterAcceptor").start(this::acceptLoop);
+        for (ClusterLink link : links.values()) {
+            link.start();
+        }
+        Log.info("🕸️ Cluster node " + self.id() + " listening on " + self.host() + ":" + self.port() + ", " + links.size() + " peers");
+    }
+
+    /**
+     * Close all links and stop listening
+     */
+    public void stop() {
+        running = false;
+        for (ClusterLink link : links.values()) {
+            link.stop();
+        }
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+            for (Socket socket : inbound.values()) {
+                socket.close();
+            }
+        } catch (IOException e) {
+            Log.error("❌ Error closing cluster sockets: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Tell the other nodes a user is now connected here
+     */
+    public void userConnected(int userId) {
+        routes.remove(userId);
+        announce(ClusterCodec.route(true, new int[]{userId}, 1));
+    }
+
+    /**
+     * Tell the other nodes a user is no longer connected here
+     */
+    public void userDisconnected(int userId) {
+        announce(ClusterCodec.route(false, new int[]{userId}, 1));
+    }
+
+    private void announce(byte[] frame) {
+        for (ClusterLink link : links.values()) {
+            link.offer(frame);
+        }
+    }
+
+    /**
+     * Get the node a user is connected to
+     * @param userId User ID
+     * @return Node ID, or 0 if the user is not connected to another node
+     */
+    public int getNodeOf(int userId) {
+        return routes.getOrDefault(userId, 0);
+    }
+
+    /**
+     * Get the node that numbers a conversation
+     * Every node picks the same one from the same cluster.nodes
+     * @return Node ID
+     */
+    public int getSequencerOf(int userA, int userB) {
+        long key = ((long) Math.min(userA, userB) << 32) | (Math.max(userA, userB) & 0xFFFFFFFFL);
+        return nodeIds[Math.floorMod(Long.hashCode(key * SEQUENCER_HASH), nodeIds.length)];
+    }
+
+    /**
+     * Hand a chat message to the node that numbers its conversation
+     * @param sequencer Node from getSequencerOf
+     * @param jsonFrame Newline-terminated JSON frame of the message
+     * @return true if the node's link took it
+     */
+    public boolean requestSequence(int sequencer, byte[] jsonFrame) {
+        ClusterLink link = links.get(sequencer);
+        return link != null && link.offer(ClusterCodec.sequence(jsonFrame));
+    }
+
+    /**
+     * Ask every peer for the messages a local user missed in the conversations it numbers
+     * @param userId User connected to this node
+     * @param jsonFrame Newline-terminated JSON frame of the user's SYNC
+     * @return Number of peers whose link took the request
+     */
+    public int requestSync(int userId, byte[] jsonFrame) {
+        byte[] frame = ClusterCodec.sync(userId, jsonFrame);
+        int requested = 0;
+        for (ClusterLink link : links.values()) {
+            if (link.offer(frame)) {
+                requested++;
+            }
+        }
+        return requested;
+    }
+
+    /**
+     * Check if the link to a node has a backlog of frames waiting to be written
+     */
+    public boolean isBacklogged(int nodeId) {
+        ClusterLink link = links.get(nodeId);
+        return link != null && link.isBacklogged();
+    }
+
+    /**
+     * Forward a message to a user connected to another node
+     * @param userId Recipient
+     * @param message Message to deliver
+     * @return true if it was handed to the link of the user's node
+     */
+    public boolean forward(int userId, EncodedMessage message) {
+        return forward(new int[]{userId}, 1, message) == 1;
+    }
+
+    /**
+     * Forward a message to users on other nodes, one frame per node
+     * @param userIds Recipients, count of them used; users not on another node are skipped
+     * @param count Number of recipients
+     * @param message Message to deliver
+     * @return Number of recipients handed to a link
+     */
+    public int forward(int[] userIds, int count, EncodedMessage message) {
+        return forward(userIds, count, message, userId -> { });
+    }
+
+    /**
+     * Forward a message to users on other nodes, one frame per node,
+     * reporting the recipients it could not hand over
+     * @param userIds Recipients, count of them used
+     * @param count Number of recipients
+     * @param message Message to deliver
+     * @param unreached Called for each recipient not on another node or whose link refused the frame
+     * @return Number of recipients handed to a link
+     */
+    public int forward(int[] userIds, int count, EncodedMessage message, IntConsumer unreached) {
+        // Group recipients by node, in place: sort by node, then cut into runs
+        long[] byNode = new long[count];
+        int routed = 0;
+        for (int i = 0; i < count; i++) {
+            Integer node = routes.get(userIds[i]);
+            if (node != null) {
+                byNode[routed++] = ((long) node << 32) | (userIds[i] & 0xFFFFFFFFL);
+            } else {
+                unreached.accept(userIds[i]);
+            }
+        }
+        Arrays.sort(byNode, 0, routed);
+
+        int forwarded = 0;
+        int[] batch = new int[routed];
+        for (int start = 0; start < routed; ) {
+            int node = (int) (byNode[start] >>> 32);
+            int end = start;
+            while (end < routed && (int) (byNode[end] >>> 32) == node) {
+                batch[end - start] = (int) byNode[end];
+                end++;
+            }
+
+            ClusterLink link = links.get(node);
+            if (link != null && link.offer(ClusterCodec.deliver(batch, end - start, message.getJsonFrame()))) {
+                forwarded += end - start;
+                metrics.recordClusterForwarded(end - start);
+            } else {
+                metrics.recordClusterForwardFailed();
+                for (int i = 0; i < end - start; i++) {
+                    unreached.accept(batch[i]);
+                }
+            }
+            start = end;
+        }
+        return forwarded;
+    }
+
+    /**
+     * ROUTE frames listing every user connected here
+     */
+    private List<byte[]> routeSnapshot() {
+        Integer[] users = localUsers.get();
+        List<byte[]> frames = new ArrayList<>();
+        int[] batch = new int[Math.min(users.length, SNAPSHOT_BATCH)];
+
+        for (int start = 0; start < users.length; start += SNAPSHOT_BATCH) {
+            int count = Math.min(SNAPSHOT_BATCH, users.length - start);
+            for (int i = 0; i < count; i++) {
+                batch[i] = users[start + i];
+            }
+            frames.add(ClusterCodec.route(true, batch, count));
+        }
+        return frames;
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Thread.ofVirtual().name("ClusterInbound-" + socket.getPort()).start(() -> readLoop(socket));
+            } catch (IOException e) {
+                if (running) {
+                    Log.error("❌ Error accepting cluster link: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Read frames from a peer's link until it closes
+     */
+    private void readLoop(Socket socket) {
+        int[] peer = new int[1];
+
+        try (socket) {
+            new FrameDecoder(maxFrameSize).readFrom(socket.getInputStream(), new FrameDecoder.FrameListener() {
+                @Override
+                public void onTextFrame(byte[] frame) {
+                    Log.warn("⚠️ Unexpected text frame on cluster link from " + socket.getInetAddress());
+                }
+
+                @Override
+                public void onBinaryFrame(byte[] body) {
+                    peer[0] = handleFrame(peer[0], socket, ByteBuffer.wrap(body));
+                }
+            });
+        } catch (IOException e) {
+            if (running && peer[0] != 0) {
+                Log.warn("⚠️ Cluster link from node " + peer[0] + " failed: " + e.getMessage());
+            }
+        }
+
+        if (peer[0] != 0 && inbound.remove(peer[0], socket)) {
+            routes.values().removeIf(node -> node == peer[0]);
+            Log.warn("⚠️ Cluster node " + peer[0] + " disconnected, its users are unreachable until it returns");
+        }
+    }
+
+    /**
+     * Handle one frame from a peer
+     * @param peer Node that sent it, 0 before its HELLO
+     * @return Node that sent it, known after HELLO
+     */
+    private int handleFrame(int peer, Socket socket, ByteBuffer body) {
+        try {
+            byte type = body.get();
+
+            if (type == ClusterCodec.TYPE_HELLO) {
+                int nodeId = body.getInt();
+                if (!isAuthentic(nodeId, socket, body)) {
+                    socket.close();
+                    return 0;
+                }
+                Socket previous = inbound.put(nodeId, socket);
+                if (previous != null) {
+                    previous.close(); // the peer reconnected, the old link is dead
+                }
+                return nodeId;
+            }
+
+            if (peer == 0) {
+                return 0; // nothing is accepted before HELLO
+            }
+
+            switch (type) {
+                case ClusterCodec.TYPE_ROUTE -> {
+                    boolean online = body.get() != 0;
+                    for (int userId : ClusterCodec.readUserIds(body)) {
+                        if (online) {
+                            routes.put(userId, peer);
+                        } else {
+                            routes.remove(userId, peer);
+                        }
+                    }
+                }
+                case ClusterCodec.TYPE_DELIVER -> {
+                    int[] userIds = ClusterCodec.readUserIds(body);
+                    byte[] jsonFrame = new byte[body.remaining()];
+                    body.get(jsonFrame);
+                    ProtocolMessage message = JsonCodec.decode(FrameDecoder.text(jsonFrame));
+                    if (message != null) {
+                        metrics.recordClusterReceived(userIds.length);
+                        listener.onForwarded(userIds, message, jsonFrame);
+                    }
+                }
+                case ClusterCodec.TYPE_SEQUENCE -> {
+                    byte[] jsonFrame = new byte[body.remaining()];
+                    body.get(jsonFrame);
+                    if (JsonCodec.decode(FrameDecoder.text(jsonFrame)) instanceof ProtocolMessage.Chat chat) {
+                        listener.onSequenceRequest(chat, jsonFrame);
+                    }
+                }
+                case ClusterCodec.TYPE_SYNC -> {
+                    int userId = body.getInt();
+                    byte[] jsonFrame = new byte[body.remaining()];
+                    body.get(jsonFrame);
+                    if (JsonCodec.decode(FrameDecoder.text(jsonFrame)) instanceof ProtocolMessage.Sync sync) {
+                        listener.onSyncRequest(peer, userId, sync);
+                    }
+                }
+                default -> Log.warn("⚠️ Unknown cluster frame type " + type + " from node " + peer);
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException | IOException e) {
+            Log.warn("⚠️ Malformed cluster frame from node " + peer);
+        } catch (RuntimeException e) {
+            Log.error("❌ Error handling cluster frame from node " + peer + ": " + e.getMessage(), e);
+        }
+        return peer;
+    }
+
+    /**
+     * Check a HELLO: a listed node, addressed to this node, from that node's
+     * address and, with a secret, carrying a fresh MAC made with it
+     * @param nodeId Node the HELLO claims to come from
+     * @param body Rest of the HELLO, after the node ID
+     */
+    private boolean isAuthentic(int nodeId, Socket socket, ByteBuffer body) {
+        ClusterLink link = links.get(nodeId);
+        if (link == null) {
+            Log.warn("⚠️ Cluster link from unknown node " + nodeId + " refused");
+            return false;
+        }
+
+        int targetId = body.getInt();
+        long timestamp = body.getLong();
+        byte[] mac = new byte[body.remaining()];
+        body.get(mac);
+        if (targetId != self.id()) {
+            Log.warn("⚠️ Cluster link from node " + nodeId + " meant for node " + targetId + " refused");
+            return false;
+        }
+
+        try {
+            List<InetAddress> addresses = Arrays.asList(InetAddress.getAllByName(link.getPeer().host()));
+            if (!addresses.contains(socket.getInetAddress())) {
+                Log.warn("⚠️ Cluster link claiming node " + nodeId + " from " + socket.getInetAddress() + " refused");
+                return false;
+            }
+        } catch (UnknownHostException e) {
+            Log.warn("⚠️ Cluster link from node " + nodeId + " refused, its host does not resolve: " + e.getMessage());
+            return false;
+        }
+
+        if (secret != null && (Math.abs(System.currentTimeMillis() - timestamp) > HELLO_MAX_SKEW_MILLIS
+                || !MessageDigest.isEqual(mac, ClusterCodec.mac(secret, nodeId, targetId, timestamp)))) {
+            Log.warn("⚠️ Cluster link claiming node " + nodeId + " failed authentication");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get this node's ID
+     */
+    public int getNodeId() {
+        return self.id();
+    }
+
+    /**
+     * Get number of peers currently reachable
+     */
+    public int getLinksUp() {
+        int up = 0;
+        for (ClusterLink link : links.values()) {
+            if (link.isConnected()) {
+                up++;
+            }
+        }
+        return up;
+    }
+
+    /**
+     * Get number of users known to be connected to other nodes
+     */
+    public int getRemoteUserCount() {
+        return routes.size();
+    }
+}
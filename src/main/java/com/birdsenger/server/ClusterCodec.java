@@ -0,0 +1,145 @@
+package com.birdsenger.server;
+
+import com.birdsenger.network.BinaryCodec;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+/**
+ * Frames exchanged between cluster nodes
+ *
+ * Same framing as BinaryCodec (magic, int32 length, type byte, body), so
+ * FrameDecoder reads links like client connections; the type bytes do not
+ * overlap with client message types.
+ *
+ * Bodies (big-endian):
+ *   HELLO    nodeId(4) targetId(4) timestamp(8) mac(HMAC-SHA256, rest; empty without a secret)
+ *   ROUTE    online(1) count(4) userIds(4 each)
+ *   DELIVER  count(4) userIds(4 each) frame (newline-terminated JSON, rest)
+ *   SEQUENCE frame (newline-terminated JSON chat message, rest)
+ *   SYNC     userId(4) frame (newline-terminated JSON SYNC, rest)
+ *
+ * HELLO opens a link; with cluster.secret set, its MAC over the other
+ * fields proves the sender knows the secret. ROUTE tells peers which users
+ * are connected to the sending node; a node sends its whole user list in
+ * one ROUTE when a link comes up. DELIVER carries one client frame for any
+ * number of users on the receiving node. SEQUENCE hands a chat message to
+ * the node that numbers its conversation; SYNC asks a node for the pages
+ * of the conversations it numbers.
+ */
+final class ClusterCodec {
+    static final byte TYPE_HELLO = 0x41;
+    static final byte TYPE_ROUTE = 0x42;
+    static final byte TYPE_DELIVER = 0x43;
+    static final byte TYPE_SEQUENCE = 0x44;
+    static final byte TYPE_SYNC = 0x45;
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private ClusterCodec() {
+    }
+
+    /**
+     * First frame on a link, naming the node that opened it
+     * @param nodeId Node opening the link
+     * @param targetId Node the link leads to
+     * @param secret Shared cluster secret, or null to send no MAC
+     */
+    static byte[] hello(int nodeId, int targetId, byte[] secret) {
+        long timestamp = System.currentTimeMillis();
+        byte[] mac = secret != null ? mac(secret, nodeId, targetId, timestamp) : new byte[0];
+        ByteBuffer frame = allocate(TYPE_HELLO, 4 + 4 + 8 + mac.length);
+        frame.putInt(nodeId).putInt(targetId).putLong(timestamp).put(mac);
+        return frame.array();
+    }
+
+    /**
+     * MAC a HELLO must carry
+     */
+    static byte[] mac(byte[] secret, int nodeId, int targetId, long timestamp) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(secret, MAC_ALGORITHM));
+            return mac.doFinal(ByteBuffer.allocate(16).putInt(nodeId).putInt(targetId).putLong(timestamp).array());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(MAC_ALGORITHM + " unavailable", e);
+        }
+    }
+
+    /**
+     * Announce users connecting to or leaving the sending node
+     * @param online True for users now connected, false for users gone
+     * @param userIds Users, count of them used
+     * @param count Number of users
+     */
+    static byte[] route(boolean online, int[] userIds, int count) {
+        ByteBuffer frame = allocate(TYPE_ROUTE, 1 + 4 + 4 * count);
+        frame.put((byte) (online ? 1 : 0)).putInt(count);
+        for (int i = 0; i < count; i++) {
+            frame.putInt(userIds[i]);
+        }
+        return frame.array();
+    }
+
+    /**
+     * Ask the receiving node to deliver a client frame to its users
+     * @param userIds Recipients, count of them used
+     * @param count Number of recipients
+     * @param jsonFrame Newline-terminated JSON frame
+     */
+    static byte[] deliver(int[] userIds, int count, byte[] jsonFrame) {
+        ByteBuffer frame = allocate(TYPE_DELIVER, 4 + 4 * count + jsonFrame.length);
+        frame.putInt(count);
+        for (int i = 0; i < count; i++) {
+            frame.putInt(userIds[i]);
+        }
+        frame.put(jsonFrame);
+        return frame.array();
+    }
+
+    /**
+     * Ask the receiving node to number a chat message and route it
+     * @param jsonFrame Newline-terminated JSON frame of the message
+     */
+    static byte[] sequence(byte[] jsonFrame) {
+        ByteBuffer frame = allocate(TYPE_SEQUENCE, jsonFrame.length);
+        frame.put(jsonFrame);
+        return frame.array();
+    }
+
+    /**
+     * Ask the receiving node to stream a user's missed messages back to the sending node
+     * @param userId User connected to the sending node
+     * @param jsonFrame Newline-terminated JSON frame of the user's SYNC
+     */
+    static byte[] sync(int userId, byte[] jsonFrame) {
+        ByteBuffer frame = allocate(TYPE_SYNC, 4 + jsonFrame.length);
+        frame.putInt(userId).put(jsonFrame);
+        return frame.array();
+    }
+
+    /**
+     * Read a count-prefixed user ID list
+     * @param in Body positioned at the count
+     * @throws IllegalArgumentException if the count does not fit the body
+     */
+    static int[] readUserIds(ByteBuffer in) {
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining() / 4) {
+            throw new IllegalArgumentException("User count " + count + " exceeds frame");
+        }
+        int[] userIds = new int[count];
+        for (int i = 0; i < userIds.length; i++) {
+            userIds[i] = in.getInt();
+        }
+        return userIds;
+    }
+
+    private static ByteBuffer allocate(byte type, int bodyLength) {
+        ByteBuffer frame = ByteBuffer.allocate(BinaryCodec.HEADER_SIZE + 1 + bodyLength);
+        frame.put(BinaryCodec.MAGIC).putInt(1 + bodyLength).put(type);
+        return frame;
+    }
+}
@@ -0,0 +1,192 @@
+package com.birdsenger.server;
+
+import com.birdsenger.network.CoalescingWriter;
+import com.birdsenger.network.SharedFrame;
+import com.birdsenger.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Persistent connection from this node to one other cluster node
+ *
+ * Frames for the peer wait in a bounded OutboundQueue and are written by a
+ * CoalescingWriter, so everything queued during a write goes out in the
+ * next one and the writer lingers briefly for more: forwarded frames are
+ * batched without a timer per frame. The link only carries frames to the
+ * peer; the peer's own link carries the other direction.
+ *
+ * A lost link is reopened after a delay and starts with HELLO and a route
+ * snapshot. It connects from this node's listed host, the address the
+ * peer accepts it from. While it is down offer() refuses frames, so callers fall back
+ * to what they do for unreachable users.
+ */
+class ClusterLink implements Runnable {
+    private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final Cluster.Node local;
+    private final Cluster.Node peer;
+    private final Supplier<byte[]> hello;
+    private final Supplier<List<byte[]>> routeSnapshot;
+    private final OutboundQueue queue;
+    private final long maxFlushDelayMicros;
+    private final long lingerMicros;
+    private final long reconnectMillis;
+
+    private volatile boolean connected;
+    private volatile boolean running;
+    private volatile Socket socket;
+    private Thread thread;
+
+    /**
+     * @param local This node, whose host the link connects from
+     * @param peer Node to connect to
+     * @param hello HELLO frame for the peer, built for each connection
+     * @param routeSnapshot ROUTE frames listing this node's users, sent whenever the link comes up
+     * @param config Queue size and timings (cluster.*)
+     */
+    ClusterLink(Cluster.Node local, Cluster.Node peer, Supplier<byte[]> hello,
+                Supplier<List<byte[]>> routeSnapshot, ServerConfig config) {
+        this.local = local;
+        this.peer = peer;
+        this.hello = hello;
+        this.routeSnapshot = routeSnapshot;
+        this.queue = new OutboundQueue(config.getClusterLinkQueue(), OverflowPolicy.DROP, 0);
+        this.maxFlushDelayMicros = config.getMaxFlushDelayMicros();
+        this.lingerMicros = config.getClusterLingerMicros();
+        this.reconnectMillis = config.getClusterReconnectMillis();
+    }
+
+    /**
+     * Start connecting in the background
+     */
+    void start() {
+        running = true;
+        thread = Thread.ofVirtual().name("ClusterLink-" + peer.id()).start(this);
+    }
+
+    /**
+     * Close the link and stop reconnecting
+     */
+    void stop() {
+        running = false;
+        closeSocket();
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Queue a frame for the peer
+     * @param frame Complete link frame (ClusterCodec)
+     * @return false if the link is down or its queue is full
+     */
+    boolean offer(byte[] frame) {
+        return connected && queue.offer(SharedFrame.wrap(frame), false);
+    }
+
+    /**
+     * Check if more than a quarter of the link's queue is waiting to be written
+     */
+    boolean isBacklogged() {
+        return queue.size() > queue.getCapacity() / 4;
+    }
+
+    /**
+     * Check if frames can currently be sent to the peer
+     */
+    boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Get the node this link leads to
+     */
+    Cluster.Node getPeer() {
+        return peer;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try (Socket current = new Socket()) {
+                current.bind(new InetSocketAddress(local.host(), 0));
+                current.connect(new InetSocketAddress(peer.host(), peer.port()), CONNECT_TIMEOUT_MILLIS);
+                current.setTcpNoDelay(true);
+                socket = current;
+
+                // HELLO and the snapshot go first, anything routed from now on follows them
+                queue.offer(SharedFrame.wrap(hello.get()), false);
+                for (byte[] frame : routeSnapshot.get()) {
+                    queue.offer(SharedFrame.wrap(frame), false);
+                }
+                connected = true;
+                Log.info("🔗 Cluster link to node " + peer.id() + " (" + peer.host() + ":" + peer.port() + ") up");
+
+                watchForClose(current, Thread.currentThread());
+                new CoalescingWriter(current.getOutputStream(), queue, WRITE_BUFFER_SIZE,
+                        maxFlushDelayMicros, lingerMicros).run();
+
+            } catch (IOException e) {
+                if (connected) {
+                    Log.warn("⚠️ Cluster link to node " + peer.id() + " lost: " + e.getMessage());
+                } else if (Log.isDebugEnabled()) {
+                    Log.debug("🔗 Cluster node " + peer.id() + " not reachable: " + e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                if (connected && running) {
+                    Log.warn("⚠️ Cluster link to node " + peer.id() + " closed by peer");
+                }
+                Thread.interrupted(); // the watcher interrupts on close; only stop() ends the loop
+            }
+
+            connected = false;
+            socket = null;
+            queue.clear();
+
+            if (running) {
+                try {
+                    Thread.sleep(reconnectMillis);
+                } catch (InterruptedException e) {
+                    // stop() or a late watcher interrupt; the loop condition decides
+                }
+            }
+        }
+    }
+
+    /**
+     * Notice the peer closing the link while the writer waits for frames
+     * The peer never sends on this connection, so any read result means it is gone
+     */
+    private void watchForClose(Socket current, Thread writerThread) {
+        Thread.ofVirtual().name("ClusterLink-" + peer.id() + "-watch").start(() -> {
+            try {
+                InputStream in = current.getInputStream();
+                while (in.read() != -1) {
+                    // Nothing is expected
+                }
+            } catch (IOException e) {
+                // Closed either way
+            }
+            if (socket == current) {
+                writerThread.interrupt();
+            }
+        });
+    }
+
+    private void closeSocket() {
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.birdsenger.server;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Connected users and their handlers, split into shards by user ID
+ *
+ * Lookups, registrations and removals touch one shard, so a connect storm
+ * spread over several acceptors resizes and counts small maps instead of
+ * one big one. Walks over every connection (broadcast to all, queue depth
+ * totals) run the shards in parallel on the common fork/join pool once
+ * there are enough connections to be worth it; below that they stay on
+ * the calling thread.
+ */
+public class ConnectionRegistry {
+    // Golden ratio multiplier: consecutive user IDs land on different shards
+    private static final int SPREAD = 0x9E3779B9;
+
+    private final ConcurrentHashMap<Integer, ClientHandler>[] shards;
+    private final int shardBits;
+    private final int parallelThreshold;
+
+    /**
+     * Registry with a single shard that never walks in parallel
+     */
+    public ConnectionRegistry() {
+        this(1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param shardCount Number of shards, rounded up to a power of two
+     * @param parallelThreshold Connections from which walks over all of them run shards in parallel
+     */
+    @SuppressWarnings("unchecked")
+    public ConnectionRegistry(int shardCount, int parallelThreshold) {
+        int count = shardCount <= 1 ? 1 : Integer.highestOneBit(shardCount - 1) << 1;
+        this.shards = (ConcurrentHashMap<Integer, ClientHandler>[]) new ConcurrentHashMap<?, ?>[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new ConcurrentHashMap<>();
+        }
+        this.shardBits = Integer.numberOfTrailingZeros(count);
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    private ConcurrentHashMap<Integer, ClientHandler> shardOf(int userId) {
+        return shardBits == 0 ? shards[0] : shards[(userId * SPREAD) >>> (32 - shardBits)];
+    }
+
+    /**
+     * Get the connection of a user
+     * @return Handler, or null if the user is not connected here
+     */
+    public ClientHandler get(int userId) {
+        return shardOf(userId).get(userId);
+    }
+
+    /**
+     * Register a user's connection, replacing any earlier one
+     * @return Previous handler, or null
+     */
+    public ClientHandler put(int userId, ClientHandler handler) {
+        return shardOf(userId).put(userId, handler);
+    }
+
+    /**
+     * Remove a user's connection if it is still the given one
+     * @return true if removed
+     */
+    public boolean remove(int userId, ClientHandler handler) {
+        return shardOf(userId).remove(userId, handler);
+    }
+
+    /**
+     * Check if a user has a connection here
+     */
+    public boolean containsKey(int userId) {
+        return shardOf(userId).containsKey(userId);
+    }
+
+    /**
+     * Get the number of connected users
+     */
+    public int size() {
+        int size = 0;
+        for (Map<Integer, ClientHandler> shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    /**
+     * Get the number of shards
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Visit every connection on the calling thread
+     */
+    public void forEach(Consumer<ClientHandler> action) {
+        for (Map<Integer, ClientHandler> shard : shards) {
+            shard.values().forEach(action);
+        }
+    }
+
+    /**
+     * Visit every connection, shards in parallel when there are many connections
+     * The action must be safe to call from several threads at once; returns
+     * once every shard is done
+     * @param action Called with each user ID and handler
+     */
+    public void forEachParallel(ShardVisitor action) {
+        if (shards.length == 1 || size() < parallelThreshold) {
+            for (Map<Integer, ClientHandler> shard : shards) {
+                shard.forEach(action::visit);
+            }
+            return;
+        }
+        Arrays.stream(shards).parallel().forEach(shard -> shard.forEach(action::visit));
+    }
+
+    /**
+     * Add up a value over every connection, shards in parallel when there are many connections
+     */
+    public long sum(ToIntFunction<ClientHandler> value) {
+        if (shards.length == 1 || size() < parallelThreshold) {
+            long total = 0;
+            for (Map<Integer, ClientHandler> shard : shards) {
+                for (ClientHandler handler : shard.values()) {
+                    total += value.applyAsInt(handler);
+                }
+            }
+            return total;
+        }
+        return Arrays.stream(shards).parallel()
+                .flatMap(shard -> shard.values().stream())
+                .mapToLong(value::applyAsInt)
+                .sum();
+    }
+
+    /**
+     * Get the largest value over every connection, shards in parallel when there are many connections
+     * @return Maximum, 0 if nobody is connected
+     */
+    public int max(ToIntFunction<ClientHandler> value) {
+        if (shards.length == 1 || size() < parallelThreshold) {
+            int max = 0;
+            for (Map<Integer, ClientHandler> shard : shards) {
+                for (ClientHandler handler : shard.values()) {
+                    max = Math.max(max, value.applyAsInt(handler));
+                }
+            }
+            return max;
+        }
+        return Arrays.stream(shards).parallel()
+                .flatMap(shard -> shard.values().stream())
+                .mapToInt(value)
+                .max()
+                .orElse(0);
+    }
+
+    /**
+     * Get the IDs of all connected users
+     */
+    public Integer[] userIds() {
+        return Arrays.stream(shards)
+                .flatMap(shard -> shard.keySet().stream())
+                .toArray(Integer[]::new);
+    }
+
+    /**
+     * Remove every connection
+     */
+    public void clear() {
+        for (Map<Integer, ClientHandler> shard : shards) {
+            shard.clear();
+        }
+    }
+
+    /**
+     * Receives each connection of a walk over the registry
+     */
+    @FunctionalInterface
+    public interface ShardVisitor {
+        void visit(int userId, ClientHandler handler);
+    }
+}
@@ -0,0 +1,424 @@
+package com.birdsenger.server;
+
+import com.birdsenger.dao.ConversationLogDAO;
+import com.birdsenger.network.JsonCodec;
+import com.birdsenger.network.Protocol;
+import com.birdsenger.network.ProtocolMessage;
+import com.birdsenger.util.Log;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Per-conversation sequence numbers and the history that SYNC reads from
+ *
+ * Every routed chat message is stamped with the next sequence number of its
+ * conversation (the unordered pair of users). Counters live in memory, so
+ * stamping is one increment under the counter's lock. The first message of
+ * a conversation not in memory does not wait for the database on the
+ * calling thread: the worker loads the last number, then stamps and hands
+ * on that message and any that arrived meanwhile, in order. Counters idle
+ * for sequenceIdleMillis are dropped and reloaded when needed again.
+ * Stamped messages are written to the conversation log in batches by the
+ * same worker, on the log's own database connection.
+ *
+ * A SYNC names the last contiguous sequence number the client holds per
+ * conversation; everything after it is streamed back in SYNC_PAGE frames,
+ * with the same backpressure as the offline drain. Reads and writes share
+ * the worker thread, and a sync first writes out everything stamped before it.
+ * Pages go to a PageSink: the user's connection, or in a cluster the link
+ * back to the node the user is connected to.
+ */
+public class ConversationLog {
+    private static final long RETRY_DELAY_MILLIS = 20;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 2000;
+
+    // Encoded bytes after which a page is closed early
+    private static final int PAGE_BYTES = 256 * 1024;
+
+    // Room in a SYNC_PAGE frame for its type, done flag and timestamp
+    private static final int PAGE_OVERHEAD_BYTES = 256;
+
+    // Largest message a client can receive, even on a page of its own
+    private static final int MAX_MESSAGE_BYTES = Protocol.DEFAULT_MAX_FRAME_SIZE - PAGE_OVERHEAD_BYTES;
+
+    /**
+     * Where the pages of one sync go
+     */
+    public interface PageSink {
+
+        /**
+         * Check if pages can still reach the user; false ends the sync
+         */
+        boolean isOpen();
+
+        /**
+         * Check if earlier pages are still waiting to be written
+         */
+        boolean isBacklogged();
+
+        /**
+         * Send a page
+         */
+        void send(ProtocolMessage.SyncPage page);
+    }
+
+    /**
+     * Progress of one conversation in a running sync
+     */
+    private static final class SyncCursor {
+        final int peerId;
+        final long head;
+        long afterSeq;
+
+        SyncCursor(int peerId, long afterSeq, long head) {
+            this.peerId = peerId;
+            this.afterSeq = afterSeq;
+            this.head = head;
+        }
+    }
+
+    /**
+     * Sequence counter of one conversation
+     * Until it is loaded, and until the messages that arrived during the load
+     * are handed on, new messages queue in waiting
+     */
+    private static final class Sequence {
+        long last;
+        List<Pending> waiting = new ArrayList<>(); // null once loaded and drained
+        boolean evicted;                            // removed from the map, look it up again
+        long lastUsedNanos = System.nanoTime();
+    }
+
+    /**
+     * Message waiting for its conversation's counter
+     */
+    private record Pending(ProtocolMessage.Chat chat, Consumer<ProtocolMessage.Chat> then) {
+    }
+
+    private final ConversationLogDAO conversationLogDAO;
+    private final int pageSize;
+    private final long sequenceIdleNanos;
+
+    private final Map<Long, Sequence> sequences = new ConcurrentHashMap<>();
+    private final Queue<ProtocolMessage.Chat> pendingWrites = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService worker;
+
+    /**
+     * @param conversationLogDAO Storage for sequenced messages, used only from the worker
+     * @param pageSize Messages per SYNC_PAGE
+     * @param sequenceIdleMillis Idle time after which a conversation's counter leaves memory
+     */
+    public ConversationLog(ConversationLogDAO conversationLogDAO, int pageSize, long sequenceIdleMillis) {
+        this.conversationLogDAO = conversationLogDAO;
+        this.pageSize = Math.max(1, pageSize);
+        this.sequenceIdleNanos = TimeUnit.MILLISECONDS.toNanos(sequenceIdleMillis);
+        this.worker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ConversationLog");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long sweepMillis = Math.max(1000, sequenceIdleMillis / 2);
+        worker.scheduleWithFixedDelay(this::evictIdle, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Assign the next sequence number of the message's conversation, log it
+     * and hand it on
+     * Runs then on the calling thread if the conversation's counter is in
+     * memory, otherwise on the worker once it is loaded; messages of one
+     * conversation are handed on in the order they were stamped
+     * @param chat Message about to be routed
+     * @param then Routes the message carrying its sequence number, or the
+     *             message unchanged if the conversation's history cannot be read
+     */
+    public void stamp(ProtocolMessage.Chat chat, Consumer<ProtocolMessage.Chat> then) {
+        long key = ((long) Math.min(chat.senderId(), chat.receiverId()) << 32)
+                | (Math.max(chat.senderId(), chat.receiverId()) & 0xFFFFFFFFL);
+
+        while (true) {
+            Sequence sequence = sequences.get(key);
+            if (sequence == null) {
+                Sequence created = new Sequence();
+                sequence = sequences.putIfAbsent(key, created);
+                if (sequence == null) {
+                    sequence = created;
+                    worker.execute(() -> load(key, created));
+                }
+            }
+
+            ProtocolMessage.Chat stamped;
+            synchronized (sequence) {
+                if (sequence.evicted) {
+                    continue;
+                }
+                sequence.lastUsedNanos = System.nanoTime();
+                if (sequence.waiting != null) {
+                    sequence.waiting.add(new Pending(chat, then));
+                    return;
+                }
+                stamped = log(chat.withSeq(++sequence.last));
+            }
+            then.accept(stamped);
+            return;
+        }
+    }
+
+    /**
+     * Stream the messages a user is missing
+     * @param userId Authenticated user
+     * @param handler User's connection
+     * @param cursors Last contiguous sequence number per conversation partner
+     */
+    public void sync(int userId, ClientHandler handler, Map<Integer, Long> cursors) {
+        sync(userId, new PageSink() {
+            @Override
+            public boolean isOpen() {
+                return handler.isRunning();
+            }
+
+            @Override
+            public boolean isBacklogged() {
+                OutboundQueue outbound = handler.getOutboundQueue();
+                return outbound.size() > outbound.getCapacity() / 4;
+            }
+
+            @Override
+            public void send(ProtocolMessage.SyncPage page) {
+                handler.sendMessage(page);
+            }
+        }, cursors);
+    }
+
+    /**
+     * Stream the messages a user is missing to any sink
+     * @param userId Authenticated user
+     * @param sink Receives the pages
+     * @param cursors Last contiguous sequence number per conversation partner
+     */
+    public void sync(int userId, PageSink sink, Map<Integer, Long> cursors) {
+        worker.execute(() -> startSync(userId, sink, cursors));
+    }
+
+    /**
+     * Write out pending messages and stop the worker
+     */
+    public void shutdown() {
+        try {
+            worker.submit(() -> {
+                flush();
+                conversationLogDAO.close();
+            }).get(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            Log.error("❌ Failed to write conversation log on shutdown: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        worker.shutdownNow();
+    }
+
+    /**
+     * Queue a stamped message for the next batch write
+     */
+    private ProtocolMessage.Chat log(ProtocolMessage.Chat stamped) {
+        pendingWrites.offer(stamped);
+        if (flushScheduled.compareAndSet(false, true)) {
+            worker.execute(this::flush);
+        }
+        return stamped;
+    }
+
+    /**
+     * Load a conversation's counter, then stamp and hand on the messages
+     * that waited for it (worker thread)
+     */
+    private void load(long key, Sequence sequence) {
+        // A dropped counter's last messages may not be written yet
+        flush();
+        long last = conversationLogDAO.getLastSequence((int) (key >>> 32), (int) key);
+
+        if (last < 0) {
+            List<Pending> unstamped;
+            synchronized (sequence) {
+                sequence.evicted = true;
+                unstamped = sequence.waiting;
+                sequence.waiting = null;
+            }
+            sequences.remove(key, sequence);
+            for (Pending pending : unstamped) {
+                handOn(pending, pending.chat());
+            }
+            return;
+        }
+
+        synchronized (sequence) {
+            sequence.last = last;
+        }
+
+        // Messages keep queueing behind the batch being handed on, so none overtakes it
+        while (true) {
+            List<Pending> batch;
+            List<ProtocolMessage.Chat> stamped = new ArrayList<>();
+            synchronized (sequence) {
+                if (sequence.waiting.isEmpty()) {
+                    sequence.waiting = null;
+                    return;
+                }
+                batch = sequence.waiting;
+                sequence.waiting = new ArrayList<>();
+                for (Pending pending : batch) {
+                    stamped.add(log(pending.chat().withSeq(++sequence.last)));
+                }
+            }
+
+            for (int i = 0; i < batch.size(); i++) {
+                handOn(batch.get(i), stamped.get(i));
+            }
+        }
+    }
+
+    private static void handOn(Pending pending, ProtocolMessage.Chat chat) {
+        try {
+            pending.then().accept(chat);
+        } catch (RuntimeException e) {
+            Log.error("❌ Error routing sequenced message: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Drop counters of conversations idle for sequenceIdleMillis (worker thread)
+     */
+    private void evictIdle() {
+        long idleSince = System.nanoTime() - sequenceIdleNanos;
+        int evicted = 0;
+
+        for (Map.Entry<Long, Sequence> entry : sequences.entrySet()) {
+            Sequence sequence = entry.getValue();
+            synchronized (sequence) {
+                if (sequence.waiting != null || sequence.lastUsedNanos - idleSince > 0) {
+                    continue;
+                }
+                sequence.evicted = true;
+            }
+            sequences.remove(entry.getKey(), sequence);
+            evicted++;
+        }
+
+        if (evicted > 0 && Log.isDebugEnabled()) {
+            Log.debug("🔢 Dropped " + evicted + " idle conversation counters, " + sequences.size() + " left");
+        }
+    }
+
+    /**
+     * Write every pending message in one transaction (worker thread)
+     */
+    private void flush() {
+        flushScheduled.set(false);
+
+        List<ProtocolMessage.Chat> batch = new ArrayList<>();
+        ProtocolMessage.Chat chat;
+        while ((chat = pendingWrites.poll()) != null) {
+            batch.add(chat);
+        }
+
+        if (!batch.isEmpty() && !conversationLogDAO.appendMessages(batch)) {
+            Log.warn("⚠️ " + batch.size() + " messages missing from the conversation log");
+        }
+    }
+
+    /**
+     * Work out which conversations are behind and send the first page (worker thread)
+     */
+    private void startSync(int userId, PageSink sink, Map<Integer, Long> cursors) {
+        flush();
+
+        Deque<SyncCursor> behind = new ArrayDeque<>();
+        for (Map.Entry<Integer, Long> head : conversationLogDAO.getConversationHeads(userId).entrySet()) {
+            long afterSeq = cursors.getOrDefault(head.getKey(), 0L);
+            if (head.getValue() > afterSeq) {
+                behind.add(new SyncCursor(head.getKey(), afterSeq, head.getValue()));
+            }
+        }
+
+        Log.info("🔄 Syncing " + behind.size() + " conversations for user " + userId);
+        sendPage(userId, sink, behind);
+    }
+
+    /**
+     * Send the next page of missed messages (worker thread)
+     */
+    private void sendPage(int userId, PageSink sink, Deque<SyncCursor> behind) {
+        if (!sink.isOpen()) {
+            return; // the client asks again after reconnecting
+        }
+
+        // Backpressure: wait until the client has consumed most of the last page
+        if (sink.isBacklogged()) {
+            worker.schedule(() -> sendPage(userId, sink, behind), RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        // Pages are sized by encoded bytes so one never exceeds the client's frame
+        // limit; a message too big to share a page goes on a page of its own
+        List<ProtocolMessage.Chat> page = new ArrayList<>();
+        int pageBytes = 0;
+        boolean full = false;
+
+        while (!full && page.size() < pageSize && !behind.isEmpty()) {
+            SyncCursor cursor = behind.peekFirst();
+            List<ProtocolMessage.Chat> messages = conversationLogDAO.getMessagesAfter(
+                    Math.min(userId, cursor.peerId), Math.max(userId, cursor.peerId),
+                    cursor.afterSeq, pageSize - page.size());
+
+            for (ProtocolMessage.Chat chat : messages) {
+                if (chat.seq() > cursor.head) {
+                    break;
+                }
+                int messageBytes = JsonCodec.encode(chat).getBytes(StandardCharsets.UTF_8).length + 1;
+                if (messageBytes > MAX_MESSAGE_BYTES) {
+                    // No client could receive it; skipping keeps the sync from looping on it
+                    Log.warn("⚠️ Message " + chat.seq() + " between " + userId + " and " + cursor.peerId
+                            + " too large to sync (" + messageBytes + " bytes), skipped");
+                    cursor.afterSeq = chat.seq();
+                    continue;
+                }
+                if (!page.isEmpty() && pageBytes + messageBytes > PAGE_BYTES) {
+                    full = true;
+                    break;
+                }
+                page.add(chat);
+                pageBytes += messageBytes;
+                cursor.afterSeq = chat.seq();
+            }
+
+            if (!full && (messages.isEmpty() || cursor.afterSeq >= cursor.head)) {
+                behind.pollFirst();
+            }
+        }
+
+        boolean done = behind.isEmpty();
+        sink.send(new ProtocolMessage.SyncPage(page, done, System.currentTimeMillis()));
+
+        if (done) {
+            Log.info("🔄 Sync complete for user " + userId);
+        } else {
+            worker.execute(() -> sendPage(userId, sink, behind));
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.birdsenger.server;
+
+/**
+ * Outcome of routing a chat message
+ * DELIVERED - Handed to the recipient's connection
+ * QUEUED - Stored in the offline queue until the recipient connects
+ * FAILED - Recipient offline and no offline queue available
+ */
+public enum DeliveryStatus {
+    DELIVERED("Delivered"),
+    QUEUED("Queued"),
+    FAILED("Failed");
+
+    private final String displayName;
+
+    DeliveryStatus(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
@@ -0,0 +1,178 @@
+package com.birdsenger.server;
+
+import com.birdsenger.network.BinaryCodec;
+import com.birdsenger.network.FramePool;
+import com.birdsenger.network.Protocol;
+import com.birdsenger.network.ProtocolMessage;
+import com.birdsenger.network.SharedFrame;
+
+/**
+ * A message being delivered to several clients
+ * Encoded at most once per codec no matter how many recipients there are;
+ * every recipient queues the same SharedFrame
+ *
+ * With a FramePool the frames live in pooled direct buffers, and the
+ * caller must release() once every recipient has queued the message.
+ * Not thread-safe until encodeAll(): meant for a single routing/broadcast call
+ */
+public class EncodedMessage {
+    private final ProtocolMessage message;
+
+    // Raw JSON when the message was never decoded (message is null then)
+    private final String json;
+
+    // When the message arrived from its sender, 0 if it did not come from a client
+    private final long receivedNanos;
+
+    // Null: frames stay in unpooled heap arrays
+    private final FramePool pool;
+
+    private byte[] jsonFrame;
+    private SharedFrame sharedJsonFrame;
+    private SharedFrame binaryFrame;
+    private boolean binaryEncoded;
+
+    public EncodedMessage(ProtocolMessage message) {
+        this(message, null, null, 0, null);
+    }
+
+    /**
+     * Wrap a message for fan-out from pooled buffers
+     * @param message Message to deliver
+     * @param pool Pool the shared frames are copied into
+     */
+    public EncodedMessage(ProtocolMessage message, FramePool pool) {
+        this(message, null, null, 0, pool);
+    }
+
+    /**
+     * Wrap a message that arrived as JSON
+     * @param message Decoded message
+     * @param jsonFrame Newline-terminated JSON frame it was decoded from, forwarded as is
+     */
+    public EncodedMessage(ProtocolMessage message, byte[] jsonFrame) {
+        this(message, null, jsonFrame, 0, null);
+    }
+
+    /**
+     * Wrap a message received from a client, so its delivery can be timed
+     * @param message Decoded message
+     * @param jsonFrame Newline-terminated JSON frame it was decoded from, or null
+     * @param receivedNanos System.nanoTime() when the frame arrived
+     */
+    public EncodedMessage(ProtocolMessage message, byte[] jsonFrame, long receivedNanos) {
+        this(message, null, jsonFrame, receivedNanos, null);
+    }
+
+    /**
+     * Wrap a message received from a client for fan-out from pooled buffers
+     * @param message Decoded message
+     * @param jsonFrame Newline-terminated JSON frame it was decoded from, or null
+     * @param receivedNanos System.nanoTime() when the frame arrived
+     * @param pool Pool the shared frames are copied into
+     */
+    public EncodedMessage(ProtocolMessage message, byte[] jsonFrame, long receivedNanos, FramePool pool) {
+        this(message, null, jsonFrame, receivedNanos, pool);
+    }
+
+    private EncodedMessage(ProtocolMessage message, String json, byte[] jsonFrame, long receivedNanos, FramePool pool) {
+        this.message = message;
+        this.json = json;
+        this.jsonFrame = jsonFrame;
+        this.receivedNanos = receivedNanos;
+        this.pool = pool;
+    }
+
+    /**
+     * Wrap a JSON message string for fan-out
+     * @param json JSON message
+     * @param pool Pool the shared frames are copied into (null = unpooled)
+     * @return Message encoded on first use
+     */
+    public static EncodedMessage ofJson(String json, FramePool pool) {
+        return new EncodedMessage(null, json, null, 0, pool);
+    }
+
+    /**
+     * Get the frame to send to a client in its negotiated codec
+     * @param handler Recipient
+     * @return Encoded frame, shared with every other recipient using the same codec
+     */
+    public SharedFrame frameFor(ClientHandler handler) {
+        if (handler.isBinaryFraming()) {
+            encodeBinary();
+            if (binaryFrame != null) {
+                return binaryFrame;
+            }
+        }
+
+        if (sharedJsonFrame == null) {
+            sharedJsonFrame = share(getJsonFrame());
+        }
+        return sharedJsonFrame;
+    }
+
+    /**
+     * Encode the frames for both codecs now
+     * Afterwards frameFor() only reads, so threads started after this call
+     * may share the message
+     */
+    public void encodeAll() {
+        encodeBinary();
+        if (sharedJsonFrame == null) {
+            sharedJsonFrame = share(getJsonFrame());
+        }
+    }
+
+    private void encodeBinary() {
+        if (!binaryEncoded) {
+            byte[] frame = message != null ? BinaryCodec.encode(message) : BinaryCodec.encodeJson(json);
+            binaryFrame = frame != null ? share(frame) : null;
+            binaryEncoded = true;
+        }
+    }
+
+    /**
+     * Get the newline-terminated JSON frame
+     */
+    public byte[] getJsonFrame() {
+        if (jsonFrame == null) {
+            jsonFrame = Protocol.encodeTextFrame(message != null ? message.toJson() : json);
+        }
+        return jsonFrame;
+    }
+
+    /**
+     * Give back the shared frames once every recipient has queued them
+     * Queued copies stay valid until their writers release them
+     */
+    public void release() {
+        if (sharedJsonFrame != null) {
+            sharedJsonFrame.release();
+            sharedJsonFrame = null;
+        }
+        if (binaryFrame != null) {
+            binaryFrame.release();
+            binaryFrame = null;
+        }
+        binaryEncoded = false;
+    }
+
+    private SharedFrame share(byte[] frame) {
+        return pool != null ? pool.copyOf(frame) : SharedFrame.wrap(frame);
+    }
+
+    /**
+     * Get the message being delivered, null if it was only given as JSON
+     */
+    public ProtocolMessage getMessage() {
+        return message;
+    }
+
+    /**
+     * Get System.nanoTime() when the message arrived, 0 if unknown
+     */
+    public long getReceivedNanos() {
+        return receivedNanos;
+    }
+}
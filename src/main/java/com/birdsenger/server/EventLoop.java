@@ -0,0 +1,169 @@
+package com.birdsenger.server;
+
+import com.birdsenger.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Single-threaded selector loop used by the NIO engine
+ * Owns a set of client channels and performs all reads and writes for them
+ */
+public class EventLoop implements Runnable {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    // Set on loop threads so callers can avoid blocking them
+    private static final ThreadLocal<EventLoop> CURRENT = new ThreadLocal<>();
+
+    private final Selector selector;
+    private final String name;
+
+    // Tasks submitted from other threads (registrations, flushes)
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    // Shared by every channel on this loop - reads are never concurrent
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+    private volatile boolean running;
+
+    public EventLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.name = name;
+    }
+
+    /**
+     * Start the loop thread
+     */
+    public void start() {
+        running = true;
+        new Thread(this, name).start();
+    }
+
+    /**
+     * Stop the loop and close its selector
+     */
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Run a task on the loop thread
+     * @param task Task to execute
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+
+        if (!inEventLoop()) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Check if the caller is running on this loop's thread
+     * @return true if on the loop thread
+     */
+    public boolean inEventLoop() {
+        return CURRENT.get() == this;
+    }
+
+    /**
+     * Register an accepted channel with this loop
+     * @param channel Non-blocking client channel
+     * @param handler Handler attached to the channel
+     */
+    public void register(SocketChannel channel, NioClientHandler handler) {
+        execute(() -> {
+            try {
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ, handler);
+                handler.onRegistered(key);
+            } catch (ClosedChannelException e) {
+                handler.disconnect();
+            }
+        });
+    }
+
+    /**
+     * Check if the caller is running on any event loop thread
+     * @return true if on an event loop thread
+     */
+    public static boolean isEventLoopThread() {
+        return CURRENT.get() != null;
+    }
+
+    @Override
+    public void run() {
+        CURRENT.set(this);
+
+        while (running) {
+            try {
+                selector.select();
+                processSelectedKeys();
+                runTasks();
+            } catch (IOException e) {
+                Log.error("❌ Event loop error: " + e.getMessage());
+            }
+        }
+
+        closeSelector();
+    }
+
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+
+        while (iterator.hasNext()) {
+            SelectionKey key = iterator.next();
+            iterator.remove();
+
+            NioClientHandler handler = (NioClientHandler) key.attachment();
+
+            if (!key.isValid()) {
+                continue;
+            }
+
+            // A failing connection is dropped; the loop keeps serving the others
+            try {
+                if (key.isReadable()) {
+                    handler.onReadable(readBuffer);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    handler.onWritable();
+                }
+            } catch (RuntimeException e) {
+                Log.error("❌ Error on connection " + handler.describe() + ", disconnecting: " + e.getMessage(), e);
+                key.cancel();
+                handler.disconnect();
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                Log.error("❌ Event loop task failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void closeSelector() {
+        for (SelectionKey key : selector.keys()) {
+            ((NioClientHandler) key.attachment()).disconnect();
+        }
+
+        try {
+            selector.close();
+        } catch (IOException e) {
+            Log.error("❌ Error closing selector: " + e.getMessage());
+        }
+    }
+}
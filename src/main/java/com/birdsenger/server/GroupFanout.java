@@ -0,0 +1,104 @@
+package com.birdsenger.server;
+
+import com.birdsenger.util.Log;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Delivers group messages off the sender's connection thread
+ *
+ * A group of thousands means thousands of queue offers (and disk appends
+ * for offline members), too much for a connection or event loop thread.
+ * Each group is served by one of a fixed set of single-thread workers
+ * (group ID modulo the worker count), so a group's messages reach members
+ * in the order they arrived while different groups fan out in parallel.
+ * Worker queues are bounded; when one is full the message is rejected and
+ * the sender gets a failed ACK to retry later.
+ */
+public class GroupFanout {
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 2000;
+
+    private final BroadcastManager broadcastManager;
+    private final ThreadPoolExecutor[] workers;
+
+    /**
+     * @param broadcastManager Routes the message to each member
+     * @param threads Number of workers
+     * @param queueCapacity Messages waiting per worker
+     */
+    public GroupFanout(BroadcastManager broadcastManager, int threads, int queueCapacity) {
+        this.broadcastManager = broadcastManager;
+        this.workers = new ThreadPoolExecutor[Math.max(1, threads)];
+
+        for (int i = 0; i < workers.length; i++) {
+            String name = "GroupFanout-" + i;
+            workers[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                        Thread thread = new Thread(runnable, name);
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+    }
+
+    /**
+     * Deliver a message to every member of a group except the sender
+     * The message is released once delivered or rejected
+     * @param group Members to deliver to
+     * @param senderId Sender, skipped
+     * @param message Message encoded at most once per codec for all members
+     * @param onDelivered Called on the worker with the outcome
+     * @return false if the group's worker is too far behind
+     */
+    public boolean submit(GroupIndex.Group group, int senderId, EncodedMessage message,
+                          Consumer<DeliveryStatus> onDelivered) {
+        try {
+            workers[Math.floorMod(group.id(), workers.length)].execute(() -> {
+                DeliveryStatus status;
+                try {
+                    status = broadcastManager.routeGroupMessage(group, senderId, message);
+                } finally {
+                    message.release();
+                }
+                onDelivered.accept(status);
+            });
+            return true;
+
+        } catch (RejectedExecutionException e) {
+            message.release();
+            Log.warn("⚠️ Group fan-out backlog full - message to group " + group.id() + " rejected");
+            return false;
+        }
+    }
+
+    /**
+     * Get the number of group messages waiting for a worker
+     */
+    public int getBacklog() {
+        int backlog = 0;
+        for (ThreadPoolExecutor worker : workers) {
+            backlog += worker.getQueue().size();
+        }
+        return backlog;
+    }
+
+    /**
+     * Deliver what is already queued, then stop the workers
+     */
+    public void shutdown() {
+        for (ThreadPoolExecutor worker : workers) {
+            worker.shutdown();
+        }
+        try {
+            for (ThreadPoolExecutor worker : workers) {
+                worker.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
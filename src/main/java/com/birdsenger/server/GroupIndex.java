@@ -0,0 +1,177 @@
+package com.birdsenger.server;
+
+import com.birdsenger.dao.GroupDAO;
+import com.birdsenger.util.Log;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory group membership, loaded from the database at startup
+ *
+ * Each group's members are a sorted array that is replaced, never modified,
+ * so fan-out iterates a consistent snapshot without locking and membership
+ * checks are a binary search. Changes are rare; they are serialized on the
+ * index and written through to GroupDAO. Without a database, groups live in
+ * memory only and are gone after a restart.
+ */
+public class GroupIndex {
+
+    /**
+     * A group and a snapshot of its members (sorted, must not be modified)
+     */
+    public record Group(int id, String name, int[] members) {
+
+        /**
+         * Check if a user belongs to the group
+         */
+        public boolean isMember(int userId) {
+            return Arrays.binarySearch(members, userId) >= 0;
+        }
+
+        /**
+         * Get the members as a list, e.g. for a MEMBERS message
+         */
+        public List<Integer> memberList() {
+            return Arrays.stream(members).boxed().toList();
+        }
+    }
+
+    private final Map<Integer, Group> groups = new ConcurrentHashMap<>();
+    private final GroupDAO groupDAO;
+    private final int maxMembers;
+
+    // Group IDs handed out when there is no database
+    private final AtomicInteger nextLocalId = new AtomicInteger(1);
+
+    /**
+     * @param groupDAO Storage for groups, or null to keep them in memory only
+     * @param maxMembers Largest allowed group
+     */
+    public GroupIndex(GroupDAO groupDAO, int maxMembers) {
+        this.groupDAO = groupDAO;
+        this.maxMembers = maxMembers;
+
+        if (groupDAO != null) {
+            load();
+        }
+    }
+
+    private void load() {
+        Map<Integer, List<Integer>> members = groupDAO.getAllMembers();
+        int memberships = 0;
+
+        for (Map.Entry<Integer, String> entry : groupDAO.getGroupNames().entrySet()) {
+            List<Integer> memberIds = members.getOrDefault(entry.getKey(), List.of());
+            groups.put(entry.getKey(), new Group(entry.getKey(), entry.getValue(), sortedIds(memberIds)));
+            memberships += memberIds.size();
+        }
+        Log.info("👥 Loaded " + groups.size() + " groups with " + memberships + " memberships");
+    }
+
+    /**
+     * Get a group
+     * @param groupId Group ID
+     * @return Group, or null if unknown
+     */
+    public Group get(int groupId) {
+        return groups.get(groupId);
+    }
+
+    /**
+     * Create a group
+     * @param name Group name
+     * @param ownerId Creator, always a member
+     * @param memberIds Other initial members
+     * @return New group, or null if it is too big or could not be stored
+     */
+    public synchronized Group create(String name, int ownerId, Collection<Integer> memberIds) {
+        int[] members = withMembers(new int[] {ownerId}, memberIds);
+        if (members.length > maxMembers) {
+            return null;
+        }
+
+        int groupId;
+        if (groupDAO != null) {
+            groupId = groupDAO.createGroup(name, ownerId);
+            if (groupId < 0 || !groupDAO.addMembers(groupId, Arrays.stream(members).boxed().toList())) {
+                return null;
+            }
+        } else {
+            groupId = nextLocalId.getAndIncrement();
+        }
+
+        Group group = new Group(groupId, name, members);
+        groups.put(groupId, group);
+        return group;
+    }
+
+    /**
+     * Add members to a group
+     * @param groupId Group ID
+     * @param memberIds Users to add
+     * @return Updated group, or null if unknown, too big or not stored
+     */
+    public synchronized Group addMembers(int groupId, Collection<Integer> memberIds) {
+        Group group = groups.get(groupId);
+        if (group == null) {
+            return null;
+        }
+
+        int[] members = withMembers(group.members(), memberIds);
+        if (members.length > maxMembers) {
+            return null;
+        }
+        if (groupDAO != null && !groupDAO.addMembers(groupId, memberIds)) {
+            return null;
+        }
+
+        Group updated = new Group(groupId, group.name(), members);
+        groups.put(groupId, updated);
+        return updated;
+    }
+
+    /**
+     * Remove a member from a group
+     * @param groupId Group ID
+     * @param userId User leaving
+     * @return Updated group, or null if the user was not a member
+     */
+    public synchronized Group removeMember(int groupId, int userId) {
+        Group group = groups.get(groupId);
+        if (group == null || !group.isMember(userId)) {
+            return null;
+        }
+        if (groupDAO != null && !groupDAO.removeMember(groupId, userId)) {
+            return null;
+        }
+
+        int[] members = Arrays.stream(group.members()).filter(id -> id != userId).toArray();
+        Group updated = new Group(groupId, group.name(), members);
+        groups.put(groupId, updated);
+        return updated;
+    }
+
+    /**
+     * Get the number of groups
+     */
+    public int getGroupCount() {
+        return groups.size();
+    }
+
+    private static int[] withMembers(int[] members, Collection<Integer> added) {
+        return sortedIds(added.stream().mapToInt(Integer::intValue).toArray(), members);
+    }
+
+    private static int[] sortedIds(List<Integer> ids) {
+        return sortedIds(ids.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    private static int[] sortedIds(int[]... ids) {
+        return Arrays.stream(ids).flatMapToInt(Arrays::stream).sorted().distinct().toArray();
+    }
+}
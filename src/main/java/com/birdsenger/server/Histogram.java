@@ -0,0 +1,136 @@
+package com.birdsenger.server;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of non-negative values (latencies, fan-out sizes, ...)
+ *
+ * Values fall into log-linear buckets: four per power of two, so a
+ * percentile is off by at most 25% at any scale. Each bucket is a LongAdder,
+ * so threads recording at the same time do not contend on one counter.
+ * Snapshots of several histograms (e.g. one per node) can be merged.
+ */
+public class Histogram {
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // Values up to 2^40 get their own bucket, larger ones share the last
+    private static final int MAX_EXPONENT = 40;
+    static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public Histogram() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record one value (negative values count as 0)
+     * @param value Value to record
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        buckets[bucketOf(v)].increment();
+        sum.add(v);
+        max.accumulate(v);
+    }
+
+    /**
+     * Copy the current counts
+     * Not atomic across buckets: a value recorded meanwhile may be half counted
+     * @return Snapshot
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+        return new Snapshot(counts, count, sum.sum(), max.get());
+    }
+
+    /**
+     * Get the bucket a value belongs to
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Get the largest value that falls into a bucket
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+        return lower + width - 1;
+    }
+
+    /**
+     * Point-in-time copy of a histogram
+     * @param counts Count per bucket
+     * @param count Number of values
+     * @param sum Sum of all values
+     * @param max Largest value
+     */
+    public record Snapshot(long[] counts, long count, long sum, long max) {
+
+        /**
+         * Combine with another snapshot, as if both had recorded into one histogram
+         * @param other Snapshot to add
+         * @return Merged snapshot
+         */
+        public Snapshot merge(Snapshot other) {
+            long[] merged = new long[BUCKET_COUNT];
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                merged[i] = counts[i] + other.counts[i];
+            }
+            return new Snapshot(merged, count + other.count, sum + other.sum, Math.max(max, other.max));
+        }
+
+        /**
+         * Get the value below which a fraction of the values fall
+         * @param quantile Fraction between 0 and 1 (0.99 for p99)
+         * @return Upper bound of the bucket holding that value, 0 if empty
+         */
+        public long percentile(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBoundOf(i), max);
+                }
+            }
+            return max;
+        }
+
+        /**
+         * Get the average value, 0 if empty
+         */
+        public double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.birdsenger.server;
+
+import com.birdsenger.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Expires connections that stop sending anything
+ *
+ * Hashed timer wheel with lazy rescheduling: each connection sits in the
+ * slot of its last known deadline. Recording activity is just a volatile
+ * write on the handler, nothing moves in the wheel. When a slot comes due
+ * the tracker re-reads each handler's last activity and either disconnects
+ * it or re-inserts it at the real deadline, so an active connection costs
+ * one slot visit per timeout period and no per-connection scheduled task.
+ *
+ * All wheel state is owned by the tracker thread; other threads hand new
+ * connections over through a concurrent inbox.
+ */
+public class IdleTracker implements Runnable {
+
+    /**
+     * A tracked connection in a wheel slot
+     */
+    private static final class Timeout {
+        final ClientHandler handler;
+        long remainingRounds;
+
+        Timeout(ClientHandler handler) {
+            this.handler = handler;
+        }
+    }
+
+    private final long timeoutMillis;
+    private final long tickMillis;
+    private final Queue<Timeout>[] wheel;
+    private final int mask;
+
+    // Connections registered since the last tick
+    private final Queue<ClientHandler> inbox = new ConcurrentLinkedQueue<>();
+
+    private final long startMillis;
+    private long tick;
+
+    private volatile boolean running;
+    private Thread thread;
+    private volatile long expiredCount;
+
+    /**
+     * @param timeoutMillis Silence after which a connection is dropped
+     * @param tickMillis Wheel resolution
+     * @param wheelSize Number of slots (rounded up to a power of two)
+     */
+    @SuppressWarnings("unchecked")
+    public IdleTracker(long timeoutMillis, long tickMillis, int wheelSize) {
+        this.timeoutMillis = timeoutMillis;
+        this.tickMillis = Math.max(1, tickMillis);
+
+        int size = Integer.highestOneBit(Math.max(2, wheelSize) - 1) << 1;
+        this.wheel = (Queue<Timeout>[]) new Queue<?>[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new ArrayDeque<>();
+        }
+        this.mask = size - 1;
+        this.startMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Start the tracker thread
+     */
+    public void start() {
+        running = true;
+        thread = new Thread(this, "IdleTracker");
+        thread.setDaemon(true);
+        thread.start();
+
+        Log.info("⏱️ Idle tracker started (timeout " + timeoutMillis + " ms)");
+    }
+
+    /**
+     * Stop the tracker thread
+     */
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Start tracking a connection
+     * @param handler Connection, with its last activity already set
+     */
+    public void register(ClientHandler handler) {
+        inbox.offer(handler);
+    }
+
+    /**
+     * Get number of connections dropped for being idle
+     */
+    public long getExpiredCount() {
+        return expiredCount;
+    }
+
+    @Override
+    public void run() {
+        long nextTickMillis = startMillis + tickMillis;
+
+        while (running) {
+            try {
+                long sleep = nextTickMillis - System.currentTimeMillis();
+                if (sleep > 0) {
+                    Thread.sleep(sleep);
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            long now = System.currentTimeMillis();
+            drainInbox();
+
+            // Catch up on ticks missed while busy or descheduled
+            while (nextTickMillis <= now) {
+                expireSlot(wheel[(int) (tick & mask)], now);
+                tick++;
+                nextTickMillis += tickMillis;
+            }
+        }
+    }
+
+    /**
+     * Place newly registered connections in the wheel
+     */
+    private void drainInbox() {
+        ClientHandler handler;
+        while ((handler = inbox.poll()) != null) {
+            schedule(new Timeout(handler), handler.getLastActivityMillis() + timeoutMillis);
+        }
+    }
+
+    /**
+     * Visit every connection in a slot that is due
+     */
+    private void expireSlot(Queue<Timeout> slot, long now) {
+        for (int i = slot.size(); i > 0; i--) {
+            Timeout timeout = slot.poll();
+
+            if (!timeout.handler.isRunning()) {
+                continue; // closed on its own - forget it
+            }
+            if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+                slot.offer(timeout);
+                continue;
+            }
+
+            long deadline = timeout.handler.getLastActivityMillis() + timeoutMillis;
+            if (deadline <= now) {
+                expire(timeout.handler, now);
+            } else {
+                schedule(timeout, deadline);
+            }
+        }
+    }
+
+    /**
+     * Put a connection in the slot for its deadline
+     */
+    private void schedule(Timeout timeout, long deadline) {
+        // Never in the past or in the slot being processed
+        long deadlineTick = Math.max(tick + 1, (deadline - startMillis + tickMillis - 1) / tickMillis);
+        long ticksAway = deadlineTick - tick;
+
+        timeout.remainingRounds = (ticksAway - 1) / wheel.length;
+        wheel[(int) (deadlineTick & mask)].offer(timeout);
+    }
+
+    private void expire(ClientHandler handler, long now) {
+        Log.info("⏱️ Closing idle connection " + handler.describe() + " (silent for "
+                + (now - handler.getLastActivityMillis()) + " ms)");
+        expiredCount++;
+        handler.disconnect();
+    }
+}
@@ -0,0 +1,127 @@
+package com.birdsenger.server;
+
+import com.birdsenger.util.Log;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves ServerMetrics as text on GET /metrics
+ * Built on the JDK HttpServer with a single daemon thread, which is plenty
+ * for a scraper polling every few seconds
+ *
+ * GET /ratelimits lists the inbound rate limits as "name=rate/burst" lines;
+ * POST /ratelimits with lines in the same form changes them. Like the
+ * metrics this is unauthenticated, so keep the endpoint on loopback.
+ */
+public class MetricsHttpServer {
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final ServerMetrics metrics;
+    private final RateLimits rateLimits;
+    private final HttpServer httpServer;
+
+    /**
+     * @param metrics Metrics to serve
+     * @param rateLimits Limits listed and changed on /ratelimits
+     * @param host Address to bind (loopback keeps the endpoint local)
+     * @param port Port to listen on
+     */
+    public MetricsHttpServer(ServerMetrics metrics, RateLimits rateLimits, String host, int port) throws IOException {
+        this.metrics = metrics;
+        this.rateLimits = rateLimits;
+        this.httpServer = HttpServer.create(new InetSocketAddress(host, port), 0);
+        this.httpServer.createContext("/metrics", this::handle);
+        this.httpServer.createContext("/ratelimits", this::handleRateLimits);
+        this.httpServer.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "MetricsHttp");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * Start answering requests
+     */
+    public void start() {
+        httpServer.start();
+        Log.info("📊 Metrics available at http://" + httpServer.getAddress().getHostString()
+                + ":" + httpServer.getAddress().getPort() + "/metrics");
+    }
+
+    /**
+     * Stop answering requests
+     */
+    public void stop() {
+        httpServer.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            respond(exchange, 200, metrics.render());
+        }
+    }
+
+    /**
+     * List the rate limits, or change them from "name=rate/burst" lines
+     * A POST is applied only if every line is valid
+     */
+    private void handleRateLimits(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            switch (exchange.getRequestMethod()) {
+                case "GET" -> respond(exchange, 200, rateLimits.render());
+                case "POST", "PUT" -> {
+                    String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+                    try {
+                        Map<String, RateLimits.Limit> changes = parseLimits(body);
+                        changes.forEach(rateLimits::set);
+                        respond(exchange, 200, rateLimits.render());
+                    } catch (IllegalArgumentException e) {
+                        respond(exchange, 400, e.getMessage() + "\n");
+                    }
+                }
+                default -> exchange.sendResponseHeaders(405, -1);
+            }
+        }
+    }
+
+    private Map<String, RateLimits.Limit> parseLimits(String body) {
+        Map<String, RateLimits.Limit> changes = new LinkedHashMap<>();
+        for (String line : body.split("[\\r\\n&]+")) {
+            if (line.isBlank()) {
+                continue;
+            }
+            int separator = line.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Expected name=rate/burst: " + line);
+            }
+            String name = line.substring(0, separator).trim();
+            if (rateLimits.get(name) == null) {
+                throw new IllegalArgumentException("No rate limit named " + name);
+            }
+            changes.put(name, RateLimits.Limit.parse(line.substring(separator + 1)));
+        }
+        return changes;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
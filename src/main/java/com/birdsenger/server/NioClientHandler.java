@@ -0,0 +1,251 @@
+package com.birdsenger.server;
+
+import com.birdsenger.network.FrameTooLargeException;
+import com.birdsenger.network.SharedFrame;
+import com.birdsenger.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * ClientHandler bound to a non-blocking channel owned by an EventLoop
+ * Reads and writes happen on the loop thread; sendMessage may be called from any thread
+ * and only queues the frame on the shared OutboundQueue
+ */
+public class NioClientHandler extends ClientHandler {
+    private final SocketChannel channel;
+    private final EventLoop eventLoop;
+    private final Executor blockingExecutor;
+
+    // Most frames handed to one gathering write; the batch starts small and grows while it fills up
+    private static final int MIN_GATHER = 4;
+    private static final int MAX_GATHER = 64;
+
+    // Frames of the current gathering write; [batchStart, batchEnd) still unwritten
+    // Each write goes through a read-only duplicate, the frame is released once written
+    // Allocated on the first write; a grown batch is dropped once the queue drains
+    private ByteBuffer[] writeBatch;
+    private SharedFrame[] batchFrames;
+    private int batchStart;
+    private int batchEnd;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    // Written on the event loop only
+    private volatile long framesWritten;
+    private volatile long socketWrites;
+
+    private SelectionKey key;
+
+    /**
+     * @param blockingExecutor Runs database and disk work so the event loop never waits for it
+     */
+    public NioClientHandler(SocketChannel channel, EventLoop eventLoop, Executor blockingExecutor,
+                            BirdSengerServer server, BroadcastManager broadcastManager) {
+        super(server, broadcastManager);
+        this.channel = channel;
+        this.eventLoop = eventLoop;
+        this.blockingExecutor = blockingExecutor;
+    }
+
+    /**
+     * Called by the event loop once the channel is registered
+     */
+    void onRegistered(SelectionKey key) {
+        this.key = key;
+        Log.info("👤 NioClientHandler started for: " + channel.socket().getInetAddress());
+        startIdleTracking();
+    }
+
+    /**
+     * Read whatever is available and dispatch complete frames
+     * @param readBuffer Loop-owned scratch buffer
+     */
+    void onReadable(ByteBuffer readBuffer) {
+        readBuffer.clear();
+
+        int bytesRead;
+        try {
+            bytesRead = channel.read(readBuffer);
+        } catch (IOException e) {
+            Log.error("❌ NioClientHandler error: " + e.getMessage());
+            disconnect();
+            return;
+        }
+
+        if (bytesRead < 0) {
+            disconnect();
+            return;
+        }
+
+        readBuffer.flip();
+        try {
+            getFrameDecoder().decode(readBuffer, getFrameListener());
+        } catch (FrameTooLargeException e) {
+            Log.error("❌ Rejected frame: " + e.getMessage());
+            disconnect();
+        }
+    }
+
+    /**
+     * Socket has room again - continue flushing
+     */
+    void onWritable() {
+        flush();
+    }
+
+    /**
+     * Frame queued - make sure a flush is scheduled on the event loop
+     */
+    @Override
+    protected <T> void offload(Supplier<T> work, Consumer<T> then) {
+        blockingExecutor.execute(() -> {
+            T result;
+            try {
+                result = work.get();
+            } catch (RuntimeException e) {
+                Log.error("❌ Blocking task failed for " + describe() + ": " + e.getMessage(), e);
+                return;
+            }
+            eventLoop.execute(() -> then.accept(result));
+        });
+    }
+
+    @Override
+    protected void onFrameQueued() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            eventLoop.execute(this::flush);
+        }
+    }
+
+    /**
+     * Event loop threads must never wait for queue space
+     */
+    @Override
+    protected boolean canBlockOnOverflow() {
+        return !EventLoop.isEventLoopThread();
+    }
+
+    /**
+     * Write queued frames until the queue is empty or the socket is full
+     * Everything queued since the last flush goes out in one gathering write
+     * Runs on the event loop thread only
+     */
+    private void flush() {
+        OutboundQueue outboundQueue = getOutboundQueue();
+
+        if (key == null || !key.isValid()) {
+            releaseBatch();
+            outboundQueue.clear();
+            flushScheduled.set(false);
+            return;
+        }
+
+        try {
+            while (true) {
+                if (batchStart == batchEnd && !fillBatch(outboundQueue)) {
+                    break;
+                }
+
+                channel.write(writeBatch, batchStart, batchEnd - batchStart);
+                socketWrites++;
+
+                while (batchStart < batchEnd && !writeBatch[batchStart].hasRemaining()) {
+                    releaseFrame(batchStart++);
+                    framesWritten++;
+                }
+
+                if (batchStart < batchEnd) {
+                    // Send buffer full - resume when the selector reports OP_WRITE
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+                outboundQueue.onFlushed();
+            }
+
+            key.interestOps(SelectionKey.OP_READ);
+            if (writeBatch != null && writeBatch.length > MIN_GATHER) {
+                writeBatch = null;
+                batchFrames = null;
+            }
+            flushScheduled.set(false);
+
+            // A frame may have been queued after the last poll
+            if (!outboundQueue.isEmpty() && flushScheduled.compareAndSet(false, true)) {
+                eventLoop.execute(this::flush);
+            }
+
+        } catch (IOException e) {
+            Log.error("❌ Write failed: " + e.getMessage());
+            disconnect();
+        }
+    }
+
+    /**
+     * Move up to MAX_GATHER queued frames into the write batch
+     * A batch that fills up is doubled for the next one while frames keep coming
+     * @return true if at least one frame was taken
+     */
+    private boolean fillBatch(OutboundQueue outboundQueue) {
+        batchStart = 0;
+        batchEnd = 0;
+
+        if (writeBatch == null) {
+            writeBatch = new ByteBuffer[MIN_GATHER];
+            batchFrames = new SharedFrame[MIN_GATHER];
+        } else if (writeBatch.length < MAX_GATHER && outboundQueue.size() > writeBatch.length) {
+            writeBatch = new ByteBuffer[writeBatch.length * 2];
+            batchFrames = new SharedFrame[batchFrames.length * 2];
+        }
+
+        SharedFrame frame;
+        while (batchEnd < writeBatch.length && (frame = outboundQueue.poll()) != null) {
+            batchFrames[batchEnd] = frame;
+            writeBatch[batchEnd++] = frame.duplicate();
+        }
+        return batchEnd > 0;
+    }
+
+    /**
+     * Release frames of a batch that will never be written
+     * Runs on the event loop thread only
+     */
+    private void releaseBatch() {
+        while (batchStart < batchEnd) {
+            releaseFrame(batchStart++);
+        }
+    }
+
+    private void releaseFrame(int index) {
+        SharedFrame frame = batchFrames[index];
+        batchFrames[index] = null;
+        writeBatch[index] = null;
+        frame.release();
+    }
+
+    @Override
+    public long getFramesWritten() {
+        return framesWritten;
+    }
+
+    @Override
+    public long getSocketWriteCount() {
+        return socketWrites;
+    }
+
+    @Override
+    protected void closeConnection() throws IOException {
+        if (key != null) {
+            key.cancel();
+        }
+        channel.close();
+
+        // The loop may be in the middle of writing the batch, so it releases it
+        eventLoop.execute(this::releaseBatch);
+    }
+}
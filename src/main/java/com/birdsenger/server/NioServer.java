@@ -0,0 +1,192 @@
+package com.birdsenger.server;
+
+import com.birdsenger.util.Log;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * NIO engine for BirdSengerServer
+ * Runs one or more acceptor groups: an accept thread with its own
+ * SO_REUSEPORT listening socket and its share of the event loops (one per
+ * core by default), to which it hands connections round-robin. Without
+ * SO_REUSEPORT a single acceptor serves all event loops.
+ *
+ * Database work a connection triggers (contact lists on login, group
+ * changes) runs on a small pool of blocking threads, and its result is
+ * handed back to the connection's event loop.
+ */
+public class NioServer {
+    private final ServerConfig config;
+    private final int port;
+    private final BirdSengerServer server;
+    private final BroadcastManager broadcastManager;
+    private final EventLoop[] eventLoops;
+    private final ExecutorService blockingExecutor;
+
+    private ServerSocketChannel[] serverChannels;
+    private volatile boolean running;
+
+    public NioServer(ServerConfig config, BirdSengerServer server, BroadcastManager broadcastManager) throws IOException {
+        this.config = config;
+        this.port = config.getPort();
+        this.server = server;
+        this.broadcastManager = broadcastManager;
+
+        this.eventLoops = new EventLoop[config.getNioThreads()];
+        for (int i = 0; i < eventLoops.length; i++) {
+            eventLoops[i] = new EventLoop("nio-event-loop-" + i);
+        }
+        this.blockingExecutor = Executors.newFixedThreadPool(config.getNioBlockingThreads(),
+                Thread.ofPlatform().name("nio-blocking-", 0).daemon().factory());
+    }
+
+    /**
+     * Bind and accept connections until stopped (blocks the caller)
+     * The first acceptor group runs on the calling thread
+     */
+    public void start() throws IOException {
+        int acceptors = Math.min(Acceptors.count(config), eventLoops.length);
+        serverChannels = new ServerSocketChannel[acceptors];
+        try {
+            for (int i = 0; i < acceptors; i++) {
+                serverChannels[i] = Acceptors.openChannel(config, acceptors > 1);
+            }
+        } catch (IOException e) {
+            closeServerChannels();
+            throw e;
+        }
+        running = true;
+
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.start();
+        }
+
+        Log.info("🚀 BirdSenger Server started on port " + port + " (NIO, " + eventLoops.length + " event loops, "
+                + acceptors + (acceptors > 1 ? " acceptors)" : " acceptor)"));
+        Log.info("⏳ Waiting for clients to connect...\n");
+
+        // Acceptor i hands off to event loops i, i + acceptors, i + 2 * acceptors, ...
+        for (int i = 1; i < acceptors; i++) {
+            ServerSocketChannel channel = serverChannels[i];
+            EventLoop[] group = groupOf(i, acceptors);
+            Thread.ofPlatform().name("nio-acceptor-" + i).start(() -> acceptLoop(channel, group));
+        }
+        acceptLoop(serverChannels[0], groupOf(0, acceptors));
+    }
+
+    private EventLoop[] groupOf(int acceptor, int acceptors) {
+        EventLoop[] group = new EventLoop[(eventLoops.length - acceptor + acceptors - 1) / acceptors];
+        for (int i = 0; i < group.length; i++) {
+            group[i] = eventLoops[acceptor + i * acceptors];
+        }
+        return group;
+    }
+
+    /**
+     * Accept on one listening channel and spread connections over its event loops
+     */
+    private void acceptLoop(ServerSocketChannel serverChannel, EventLoop[] group) {
+        int nextLoop = 0;
+
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                if (rejectIfOverloaded(channel)) {
+                    continue;
+                }
+                channel.configureBlocking(false);
+                applySocketOptions(channel);
+                Log.info("🔌 New client connected: " + channel.socket().getInetAddress());
+
+                EventLoop eventLoop = group[nextLoop];
+                nextLoop = (nextLoop + 1) % group.length;
+
+                eventLoop.register(channel, new NioClientHandler(channel, eventLoop, blockingExecutor, server, broadcastManager));
+
+            } catch (IOException e) {
+                if (running) {
+                    Log.error("❌ Error accepting client: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Turn a new connection away with an ERROR and a retry-after hint while overloaded
+     * The channel is still blocking, so the small frame goes out in one write
+     * @param channel Connection just accepted
+     * @return true if the connection was rejected and closed
+     */
+    private boolean rejectIfOverloaded(SocketChannel channel) {
+        OverloadController overloadController = server.getOverloadController();
+        if (overloadController == null || !overloadController.isRejectingConnections()) {
+            return false;
+        }
+
+        server.getMetrics().recordConnectionRejected();
+        try (channel) {
+            channel.write(ByteBuffer.wrap(overloadController.rejectFrame()));
+        } catch (IOException e) {
+            // Client is gone already
+        }
+        return true;
+    }
+
+    /**
+     * Apply TCP_NODELAY and buffer sizes from the configuration
+     */
+    private void applySocketOptions(SocketChannel channel) throws IOException {
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, config.isTcpNoDelay());
+        if (config.getSocketSendBuffer() > 0) {
+            channel.setOption(StandardSocketOptions.SO_SNDBUF, config.getSocketSendBuffer());
+        }
+        if (config.getSocketReceiveBuffer() > 0) {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, config.getSocketReceiveBuffer());
+        }
+    }
+
+    /**
+     * Stop accepting and shut down all event loops
+     */
+    public void stop() throws IOException {
+        running = false;
+        closeServerChannels();
+
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.shutdown();
+        }
+        blockingExecutor.shutdownNow();
+    }
+
+    private void closeServerChannels() throws IOException {
+        if (serverChannels == null) {
+            return;
+        }
+        for (ServerSocketChannel channel : serverChannels) {
+            if (channel != null && channel.isOpen()) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Get the event loops
+     */
+    public List<EventLoop> getEventLoops() {
+        return List.of(eventLoops);
+    }
+
+    /**
+     * Get number of event loop threads
+     */
+    public int getEventLoopCount() {
+        return eventLoops.length;
+    }
+}
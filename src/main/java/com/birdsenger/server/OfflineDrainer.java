@@ -0,0 +1,180 @@
+package com.birdsenger.server;
+
+import com.birdsenger.network.FrameDecoder;
+import com.birdsenger.network.JsonCodec;
+import com.birdsenger.network.ProtocolMessage;
+import com.birdsenger.util.Log;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Streams a reconnecting user's offline messages to its connection
+ *
+ * Messages go out in batches, and the next batch is only read once the
+ * connection's outbound queue has drained below a quarter of its capacity,
+ * so a large backlog neither floods the socket nor trips the overflow
+ * policy. New messages for the user keep going to the offline queue until
+ * the backlog is empty, which keeps delivery in order. A batch that fails
+ * to read is retried with a growing delay for as long as the user stays
+ * connected, so an online user's messages never wait on disk for the next
+ * login.
+ *
+ * The same thread writes queued messages to disk, so routing threads (an
+ * NIO event loop among them) never wait for the file system, and writes
+ * and reads of a recipient's files never overlap.
+ */
+public class OfflineDrainer {
+    private static final long RETRY_DELAY_MILLIS = 20;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 2000;
+
+    // Delay before retrying a failed batch, doubled per failure up to the maximum
+    private static final long FAILURE_RETRY_MILLIS = 100;
+    private static final long FAILURE_RETRY_MAX_MILLIS = 5000;
+
+    private final OfflineQueue offlineQueue;
+    private final int batchSize;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param offlineQueue Durable message store
+     * @param batchSize Messages read per batch
+     */
+    public OfflineDrainer(OfflineQueue offlineQueue, int batchSize) {
+        this.offlineQueue = offlineQueue;
+        this.batchSize = Math.max(1, batchSize);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "OfflineDrainer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Start delivering a user's queued messages, if it has any
+     * @param userId Recipient that just authenticated
+     * @param handler Recipient's connection
+     */
+    public void drain(int userId, ClientHandler handler) {
+        OfflineQueue.RecipientQueue queue = offlineQueue.getQueue(userId);
+        if (queue == null) {
+            return;
+        }
+
+        synchronized (queue) {
+            if (queue.isClosed() || queue.draining) {
+                return;
+            }
+            queue.draining = true;
+            Log.info("📬 Delivering " + queue.getPending() + " offline messages to user " + userId);
+        }
+
+        scheduler.execute(() -> drainBatch(userId, handler, queue, 0));
+    }
+
+    /**
+     * Queue a message for a recipient; it is written to disk in the background
+     * @param userId Recipient
+     * @param payload Message bytes
+     */
+    public void store(int userId, byte[] payload) {
+        OfflineQueue.RecipientQueue queue = offlineQueue.reserve(userId);
+        scheduler.execute(() -> offlineQueue.write(userId, queue, payload));
+    }
+
+    /**
+     * Queue a message only if the recipient already has messages waiting
+     * Used for online recipients so new messages cannot overtake queued ones
+     * @param userId Recipient
+     * @param payload Message bytes
+     * @return true if the message was queued
+     */
+    public boolean storeIfPending(int userId, byte[] payload) {
+        OfflineQueue.RecipientQueue queue = offlineQueue.reserveIfPending(userId);
+        if (queue == null) {
+            return false;
+        }
+        scheduler.execute(() -> offlineQueue.write(userId, queue, payload));
+        return true;
+    }
+
+    /**
+     * Get the durable message store
+     */
+    public OfflineQueue getOfflineQueue() {
+        return offlineQueue;
+    }
+
+    /**
+     * Write out messages still waiting for the disk and stop draining
+     */
+    public void shutdown() {
+        try {
+            scheduler.submit(() -> { }).get(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            Log.error("❌ Failed to write offline messages on shutdown: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Send the next batch of a user's backlog (drainer thread)
+     * @param failures Batches that failed in a row so far
+     */
+    private void drainBatch(int userId, ClientHandler handler, OfflineQueue.RecipientQueue queue, int failures) {
+        if (!handler.isRunning()) {
+            synchronized (queue) {
+                queue.draining = false; // picked up again on the next AUTH
+            }
+            return;
+        }
+
+        // Backpressure: wait until the client has consumed most of the last batch
+        OutboundQueue outbound = handler.getOutboundQueue();
+        int limit = Math.max(1, outbound.getCapacity() / 2);
+        if (outbound.size() > outbound.getCapacity() / 4) {
+            scheduler.schedule(() -> drainBatch(userId, handler, queue, failures), RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        boolean done;
+        try {
+            List<byte[]> batch = offlineQueue.poll(userId, queue, Math.min(batchSize, limit));
+
+            for (byte[] frame : batch) {
+                ProtocolMessage message = JsonCodec.decode(FrameDecoder.text(frame));
+                if (message != null) {
+                    handler.sendFrame(new EncodedMessage(message, frame).frameFor(handler));
+                }
+            }
+
+            // Only now may new messages bypass the queue: everything read is already on its way
+            done = offlineQueue.closeIfEmpty(userId, queue);
+            if (done) {
+                synchronized (queue) {
+                    queue.draining = false;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Keep draining: new messages still queue behind the backlog while the user is online
+            long delayMillis = Math.min(FAILURE_RETRY_MAX_MILLIS, FAILURE_RETRY_MILLIS << Math.min(failures, 16));
+            Log.error("❌ Failed to deliver offline messages to user " + userId + ", retrying in "
+                    + delayMillis + " ms: " + e.getMessage());
+            scheduler.schedule(() -> drainBatch(userId, handler, queue, failures + 1), delayMillis, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        if (done) {
+            Log.info("📬 Offline backlog delivered to user " + userId);
+        } else {
+            scheduler.execute(() -> drainBatch(userId, handler, queue, 0));
+        }
+    }
+}
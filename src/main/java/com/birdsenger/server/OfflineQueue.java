@@ -0,0 +1,472 @@
+package com.birdsenger.server;
+
+import com.birdsenger.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Durable store-and-forward queue for messages to offline users
+ *
+ * Each recipient with pending messages has a directory of append-only
+ * segment files plus a small index holding the read cursor:
+ *
+ *   offline/<userId>/00000000000000000001.seg   [length int32 | payload]...
+ *   offline/<userId>/index                      segment(int64) offset(int64)
+ *
+ * Writers append to the newest segment and roll to a new one at the size
+ * limit. Readers consume batches from the cursor, delete segments they
+ * have finished and remove the directory once everything is read.
+ * Payloads are opaque bytes (the server stores chat messages as JSON).
+ *
+ * Storing is split in two so no disk I/O happens on the routing thread:
+ * reserve() only counts the message under the recipient's lock, and the
+ * OfflineDrainer thread writes it. File state is only touched on that one
+ * thread, and segment files are opened per write or per poll and closed
+ * again, so a server holding backlogs for many users keeps no descriptors
+ * open for them.
+ *
+ * Segments are written without fsync: queued messages survive a server
+ * restart, not a power failure.
+ */
+public class OfflineQueue {
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String INDEX_FILE = "index";
+    private static final int RECORD_HEADER = 4;
+
+    /**
+     * Pending messages of one recipient
+     * Counters are guarded by the instance lock; file state is only used
+     * on the writing thread and needs no lock
+     */
+    static final class RecipientQueue {
+        private final Path directory;
+        private final Deque<Long> segments = new ArrayDeque<>();
+        private long writeSize;
+
+        private FileChannel readChannel;
+        private long readSegment;
+        private long readOffset;
+
+        private long pending;   // written and not yet read
+        private long unwritten; // reserved, not yet written
+        private boolean closed;
+
+        // True while a drain to the connected recipient is in progress
+        boolean draining;
+
+        RecipientQueue(Path directory) {
+            this.directory = directory;
+        }
+
+        long getPending() {
+            return pending;
+        }
+
+        boolean isClosed() {
+            return closed;
+        }
+    }
+
+    private final Path root;
+    private final long segmentBytes;
+    private final Map<Integer, RecipientQueue> queues = new ConcurrentHashMap<>();
+
+    /**
+     * Open the queue, picking up messages left from a previous run
+     * @param root Directory holding one subdirectory per recipient
+     * @param segmentBytes Size at which a new segment file is started
+     */
+    public OfflineQueue(Path root, long segmentBytes) throws IOException {
+        this.root = root;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(root);
+        recover();
+    }
+
+    /**
+     * Count a message for a recipient; write() must follow on the writing thread
+     * @param userId Recipient
+     * @return Queue to write the message to
+     */
+    RecipientQueue reserve(int userId) {
+        while (true) {
+            RecipientQueue queue = queues.computeIfAbsent(userId, id -> new RecipientQueue(root.resolve(String.valueOf(id))));
+            synchronized (queue) {
+                if (queue.closed) {
+                    continue; // just emptied and removed, start a fresh one
+                }
+                queue.unwritten++;
+                return queue;
+            }
+        }
+    }
+
+    /**
+     * Count a message only if the recipient already has messages waiting
+     * Used for online recipients so new messages cannot overtake queued ones
+     * @param userId Recipient
+     * @return Queue to write the message to, or null if nothing is waiting
+     */
+    RecipientQueue reserveIfPending(int userId) {
+        RecipientQueue queue = queues.get(userId);
+        if (queue == null) {
+            return null;
+        }
+        synchronized (queue) {
+            if (queue.closed) {
+                return null;
+            }
+            queue.unwritten++;
+            return queue;
+        }
+    }
+
+    /**
+     * Append a reserved message to the newest segment (writing thread)
+     * A message that cannot be written is logged and dropped
+     * @param userId Recipient
+     * @param queue Queue returned by reserve
+     * @param payload Message bytes
+     */
+    void write(int userId, RecipientQueue queue, byte[] payload) {
+        boolean written = false;
+        try {
+            if (queue.segments.isEmpty() || queue.writeSize >= segmentBytes) {
+                rollSegment(queue);
+            }
+
+            try (FileChannel channel = FileChannel.open(segmentPath(queue, queue.segments.peekLast()),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                long start = channel.size();
+                ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + payload.length);
+                record.putInt(payload.length).put(payload).flip();
+                try {
+                    while (record.hasRemaining()) {
+                        channel.write(record);
+                    }
+                } catch (IOException e) {
+                    channel.truncate(start); // no torn record in front of later ones
+                    throw e;
+                }
+                queue.writeSize = start + record.capacity();
+            }
+            written = true;
+
+        } catch (IOException e) {
+            Log.error("❌ Failed to queue offline message in " + queue.directory + ": " + e.getMessage());
+        }
+
+        synchronized (queue) {
+            queue.unwritten--;
+            if (written) {
+                queue.pending++;
+            }
+        }
+        if (!written) {
+            closeIfEmpty(userId, queue);
+        }
+    }
+
+    /**
+     * Check if a user has queued messages
+     * @param userId Recipient
+     * @return true if messages are waiting
+     */
+    public boolean hasPending(int userId) {
+        return queues.containsKey(userId);
+    }
+
+    /**
+     * Get number of messages waiting for a user
+     * @param userId Recipient
+     * @return Message count
+     */
+    public long getPendingCount(int userId) {
+        RecipientQueue queue = queues.get(userId);
+        if (queue == null) {
+            return 0;
+        }
+        synchronized (queue) {
+            return queue.pending + queue.unwritten;
+        }
+    }
+
+    /**
+     * Get number of users with queued messages
+     */
+    public int getRecipientCount() {
+        return queues.size();
+    }
+
+    /**
+     * Get a recipient's queue, if it has one
+     */
+    RecipientQueue getQueue(int userId) {
+        return queues.get(userId);
+    }
+
+    /**
+     * Read and consume up to maxMessages from a recipient (writing thread)
+     * The cursor is persisted before returning. If reading fails after some
+     * messages were read, those are returned and the next poll starts at
+     * the message that failed
+     * @param userId Recipient
+     * @param queue Recipient's queue
+     * @param maxMessages Batch size
+     * @return Payloads in the order they were appended
+     * @throws IOException if not even the first message could be read
+     */
+    List<byte[]> poll(int userId, RecipientQueue queue, int maxMessages) throws IOException {
+        long available;
+        synchronized (queue) {
+            available = queue.pending;
+        }
+
+        List<byte[]> batch = new ArrayList<>((int) Math.min(maxMessages, available));
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+
+        try {
+            while (batch.size() < maxMessages && batch.size() < available) {
+                if (queue.readChannel == null) {
+                    queue.readChannel = FileChannel.open(segmentPath(queue, queue.readSegment), StandardOpenOption.READ);
+                }
+
+                header.clear();
+                if (readFully(queue.readChannel, header, queue.readOffset) < RECORD_HEADER) {
+                    // End of this segment - move to the next one
+                    if (!nextSegment(queue)) {
+                        break;
+                    }
+                    continue;
+                }
+
+                header.flip();
+                ByteBuffer payload = ByteBuffer.allocate(header.getInt());
+                readFully(queue.readChannel, payload, queue.readOffset + RECORD_HEADER);
+                queue.readOffset += RECORD_HEADER + payload.capacity();
+                batch.add(payload.array());
+            }
+        } catch (IOException | RuntimeException e) {
+            if (batch.isEmpty()) {
+                throw e;
+            }
+            Log.warn("⚠️ Offline queue of user " + userId + " failed after " + batch.size() + " messages: " + e.getMessage());
+        } finally {
+            closeReadChannel(queue);
+        }
+
+        synchronized (queue) {
+            queue.pending -= batch.size();
+        }
+        if (!batch.isEmpty()) {
+            writeIndex(queue);
+        }
+        return batch;
+    }
+
+    /**
+     * Remove a queue with nothing written or reserved, and its files (writing thread)
+     * Called once a drain has handed out everything it read, so a message
+     * reserved meanwhile keeps the queue open and stays behind the backlog
+     * @return true if the queue was removed
+     */
+    boolean closeIfEmpty(int userId, RecipientQueue queue) {
+        synchronized (queue) {
+            if (queue.closed || queue.pending > 0 || queue.unwritten > 0) {
+                return queue.closed;
+            }
+            queue.closed = true;
+            queues.remove(userId, queue);
+        }
+
+        try {
+            deleteFiles(queue);
+        } catch (IOException e) {
+            Log.error("❌ Failed to remove offline queue " + queue.directory + ": " + e.getMessage());
+        }
+        return true;
+    }
+
+    private void rollSegment(RecipientQueue queue) throws IOException {
+        boolean first = queue.segments.isEmpty();
+        long segment = first ? 1 : queue.segments.peekLast() + 1;
+
+        Files.createDirectories(queue.directory);
+        queue.writeSize = 0;
+        queue.segments.addLast(segment);
+
+        if (first) {
+            queue.readSegment = segment;
+            queue.readOffset = 0;
+            writeIndex(queue);
+        }
+    }
+
+    /**
+     * Delete the finished read segment and continue with the next one
+     * @return false if the reader is already on the newest segment
+     */
+    private boolean nextSegment(RecipientQueue queue) throws IOException {
+        if (queue.segments.size() < 2) {
+            return false;
+        }
+
+        queue.readChannel.close();
+        queue.readChannel = null;
+        Files.deleteIfExists(segmentPath(queue, queue.segments.pollFirst()));
+
+        queue.readSegment = queue.segments.peekFirst();
+        queue.readOffset = 0;
+        return true;
+    }
+
+    /**
+     * Delete a queue's segments, index and directory
+     */
+    private void deleteFiles(RecipientQueue queue) throws IOException {
+        if (!Files.exists(queue.directory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(queue.directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(queue.directory);
+    }
+
+    private void closeReadChannel(RecipientQueue queue) {
+        if (queue.readChannel == null) {
+            return;
+        }
+        try {
+            queue.readChannel.close();
+        } catch (IOException e) {
+            Log.error("❌ Failed to close offline queue files: " + e.getMessage());
+        }
+        queue.readChannel = null;
+    }
+
+    private void writeIndex(RecipientQueue queue) throws IOException {
+        ByteBuffer index = ByteBuffer.allocate(16);
+        index.putLong(queue.readSegment).putLong(queue.readOffset).flip();
+        Files.write(queue.directory.resolve(INDEX_FILE), index.array());
+    }
+
+    /**
+     * Rebuild queues from the files of a previous run
+     */
+    private void recover() throws IOException {
+        long total = 0;
+
+        try (DirectoryStream<Path> directories = Files.newDirectoryStream(root, Files::isDirectory)) {
+            for (Path directory : directories) {
+                int userId;
+                try {
+                    userId = Integer.parseInt(directory.getFileName().toString());
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+
+                RecipientQueue queue = recoverQueue(directory);
+                if (queue.pending > 0) {
+                    queues.put(userId, queue);
+                    total += queue.pending;
+                } else {
+                    deleteFiles(queue);
+                }
+            }
+        }
+
+        if (total > 0) {
+            Log.info("📬 Recovered " + total + " offline messages for " + queues.size() + " users");
+        }
+    }
+
+    private RecipientQueue recoverQueue(Path directory) throws IOException {
+        RecipientQueue queue = new RecipientQueue(directory);
+
+        List<Long> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                segments.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        segments.sort(null);
+        queue.segments.addAll(segments);
+
+        if (segments.isEmpty()) {
+            return queue;
+        }
+
+        queue.readSegment = segments.get(0);
+        Path index = directory.resolve(INDEX_FILE);
+        if (Files.exists(index)) {
+            ByteBuffer cursor = ByteBuffer.wrap(Files.readAllBytes(index));
+            long segment = cursor.getLong();
+            if (segment == queue.readSegment) {
+                queue.readOffset = cursor.getLong();
+            }
+        }
+
+        // Count unread records; a torn record at the end of a segment is cut off
+        for (long segment : segments) {
+            try (FileChannel channel = FileChannel.open(segmentPath(queue, segment),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long offset = segment == queue.readSegment ? queue.readOffset : 0;
+                ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+
+                while (true) {
+                    header.clear();
+                    if (readFully(channel, header, offset) < RECORD_HEADER) {
+                        break;
+                    }
+                    int length = header.flip().getInt();
+                    long next = offset + RECORD_HEADER + length;
+                    if (length < 0 || next > channel.size()) {
+                        break;
+                    }
+                    offset = next;
+                    queue.pending++;
+                }
+                if (offset < channel.size()) {
+                    channel.truncate(offset);
+                }
+            }
+        }
+
+        // New messages go to a fresh segment
+        queue.writeSize = segmentBytes;
+        return queue;
+    }
+
+    private Path segmentPath(RecipientQueue queue, long segment) {
+        return queue.directory.resolve(String.format("%020d%s", segment, SEGMENT_SUFFIX));
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+}
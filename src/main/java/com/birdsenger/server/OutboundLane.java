@@ -0,0 +1,43 @@
+package com.birdsenger.server;
+
+import com.birdsenger.network.ProtocolMessage;
+
+/**
+ * Priority class of an outbound frame
+ * CHAT - Messages, ACKs and everything else; first out, never replaced
+ * PRESENCE - Status changes; a newer status of the same user replaces a queued one
+ * TYPING - Typing indicators; a newer indicator from the same sender replaces a queued one
+ */
+public enum OutboundLane {
+    CHAT,
+    PRESENCE,
+    TYPING;
+
+    /**
+     * Get the lane a message travels in
+     * @param message Message being sent (null = CHAT)
+     * @return Lane for the message
+     */
+    public static OutboundLane of(ProtocolMessage message) {
+        if (message instanceof ProtocolMessage.Presence) {
+            return PRESENCE;
+        }
+        if (message instanceof ProtocolMessage.Typing) {
+            return TYPING;
+        }
+        return CHAT;
+    }
+
+    /**
+     * Get the key under which a newer frame replaces an older queued one
+     * @param message Message being sent
+     * @return User the state belongs to, 0 for CHAT messages
+     */
+    public static int supersedeKey(ProtocolMessage message) {
+        return switch (message) {
+            case ProtocolMessage.Presence presence -> presence.userId();
+            case ProtocolMessage.Typing typing -> typing.senderId();
+            case null, default -> 0;
+        };
+    }
+}
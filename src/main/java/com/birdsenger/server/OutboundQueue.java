@@ -0,0 +1,408 @@
+package com.birdsenger.server;
+
+import com.birdsenger.network.FrameQueue;
+import com.birdsenger.network.SharedFrame;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded queue of frames waiting to be written to one client
+ * Producers (routing threads) never touch the socket; the connection's
+ * writer drains this queue. Queued frames hold a reference that the writer,
+ * or clear(), releases.
+ *
+ * Frames wait in one of three lanes (see OutboundLane). The writer always
+ * takes CHAT frames first, so a presence storm cannot delay messages and
+ * ACKs; after statusEvery CHAT frames in a row one waiting status frame is
+ * let through so presence and typing are late rather than lost. PRESENCE
+ * and TYPING lanes hold only the latest frame per user: a newer state
+ * replaces the queued one in place and the stale frame is released
+ * unsent. Only the CHAT lane applies the overflow policy; the status
+ * lanes simply drop when they hold capacity users.
+ *
+ * Lanes do not keep the room a burst made them grow to: once the queue
+ * drains after holding more than RETAINED_SIZE frames, they are replaced
+ * by fresh, small ones.
+ *
+ * When given a latency histogram the queue follows one frame at a time
+ * from the moment it was received to the flush that writes it, so the
+ * receive-to-write latency is sampled without a timestamp per frame.
+ */
+public class OutboundQueue implements FrameQueue {
+    private static final int DEFAULT_STATUS_EVERY = 8;
+
+    // Queued frames above which the lanes are rebuilt once the queue drains
+    private static final int RETAINED_SIZE = 64;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    // Guarded by lock
+    private ArrayDeque<SharedFrame> chat = new ArrayDeque<>();
+    private LinkedHashMap<Integer, SharedFrame> presence = new LinkedHashMap<>();
+    private LinkedHashMap<Integer, SharedFrame> typing = new LinkedHashMap<>();
+    private int chatStreak;
+    private int peakCount; // most frames queued since the queue was last empty
+
+    // Written under lock, read without it by monitoring code
+    private volatile int count;
+
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final long blockTimeoutMillis;
+    private final int statusEvery;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong supersededCount = new AtomicLong();
+    private final LongAdder supersededTotal;
+
+    // Receive-to-write sampling (histogram null when disabled)
+    private final Histogram writeLatency;
+    private final AtomicBoolean sampling = new AtomicBoolean();
+    private volatile SharedFrame sampledFrame;
+    private long sampleReceivedNanos; // published by the sampledFrame write
+    private boolean sampleTaken;      // set when the writer takes the sampled frame
+
+    public OutboundQueue(int capacity, OverflowPolicy policy, long blockTimeoutMillis) {
+        this(capacity, policy, blockTimeoutMillis, null, DEFAULT_STATUS_EVERY, null);
+    }
+
+    /**
+     * @param writeLatency Receives sampled receive-to-write latencies in microseconds (may be null)
+     */
+    public OutboundQueue(int capacity, OverflowPolicy policy, long blockTimeoutMillis, Histogram writeLatency) {
+        this(capacity, policy, blockTimeoutMillis, writeLatency, DEFAULT_STATUS_EVERY, null);
+    }
+
+    /**
+     * @param capacity Frames the CHAT lane holds, and users each status lane holds
+     * @param writeLatency Receives sampled receive-to-write latencies in microseconds (may be null)
+     * @param statusEvery CHAT frames written in a row before a waiting status frame goes out
+     * @param supersededTotal Counts status frames replaced by newer ones across all queues (may be null)
+     */
+    public OutboundQueue(int capacity, OverflowPolicy policy, long blockTimeoutMillis, Histogram writeLatency,
+                         int statusEvery, LongAdder supersededTotal) {
+        this.capacity = Math.max(1, capacity);
+        this.policy = policy;
+        this.blockTimeoutMillis = blockTimeoutMillis;
+        this.statusEvery = Math.max(1, statusEvery);
+        this.writeLatency = writeLatency;
+        this.supersededTotal = supersededTotal;
+    }
+
+    /**
+     * Queue a frame, honouring the BLOCK policy when the caller may block
+     * @param frame Frame to send, retained for this queue (the caller releases it if not queued)
+     * @param mayBlock False on threads that must never wait (event loops)
+     * @return true if queued, false if the queue is full
+     */
+    public boolean offer(SharedFrame frame, boolean mayBlock) {
+        return offer(frame, mayBlock, 0);
+    }
+
+    /**
+     * Queue a CHAT frame that answers an inbound frame, timing it if no other frame is being timed
+     * @param frame Frame to send, retained for this queue (the caller releases it if not queued)
+     * @param mayBlock False on threads that must never wait (event loops)
+     * @param receivedNanos System.nanoTime() when the inbound frame arrived, 0 if unknown
+     * @return true if queued, false if the queue is full
+     */
+    public boolean offer(SharedFrame frame, boolean mayBlock, long receivedNanos) {
+        return offer(frame, mayBlock, receivedNanos, OutboundLane.CHAT, 0);
+    }
+
+    /**
+     * Queue a frame in a lane
+     * @param frame Frame to send, retained for this queue (the caller releases it if not queued)
+     * @param mayBlock False on threads that must never wait (event loops)
+     * @param receivedNanos System.nanoTime() when the inbound frame arrived, 0 if unknown
+     * @param lane Priority class of the frame
+     * @param supersedeKey User whose state the frame carries (ignored for CHAT)
+     * @return true if queued (possibly replacing an older frame), false if the lane is full
+     */
+    public boolean offer(SharedFrame frame, boolean mayBlock, long receivedNanos, OutboundLane lane, int supersedeKey) {
+        boolean sample = receivedNanos != 0 && writeLatency != null && sampling.compareAndSet(false, true);
+        if (sample) {
+            sampleReceivedNanos = receivedNanos;
+            sampledFrame = frame;
+        }
+
+        boolean queued = lane == OutboundLane.CHAT
+                ? enqueue(frame, mayBlock)
+                : enqueueStatus(lane, frame, supersedeKey);
+        if (sample && !queued) {
+            cancelSample();
+        }
+        return queued;
+    }
+
+    private boolean enqueue(SharedFrame frame, boolean mayBlock) {
+        lock.lock();
+        try {
+            if (chat.size() >= capacity && policy == OverflowPolicy.BLOCK && mayBlock) {
+                long remaining = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+                while (chat.size() >= capacity && remaining > 0) {
+                    remaining = notFull.awaitNanos(remaining);
+                }
+            }
+
+            if (chat.size() < capacity) {
+                chat.addLast(frame);
+                added();
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+
+        droppedCount.incrementAndGet();
+        return false;
+    }
+
+    private boolean enqueueStatus(OutboundLane statusLane, SharedFrame frame, int key) {
+        SharedFrame stale;
+
+        lock.lock();
+        try {
+            LinkedHashMap<Integer, SharedFrame> lane = statusLane == OutboundLane.PRESENCE ? presence : typing;
+            stale = lane.get(key);
+            if (stale == null && lane.size() >= capacity) {
+                droppedCount.incrementAndGet();
+                return false;
+            }
+
+            // Replacing keeps the key's place, so a busy user does not push others back
+            lane.put(key, frame);
+            if (stale == null) {
+                added();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (stale != null) {
+            if (stale == sampledFrame) {
+                cancelSample();
+            }
+            stale.release();
+            supersededCount.incrementAndGet();
+            if (supersededTotal != null) {
+                supersededTotal.increment();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Count a frame added to a lane (called with lock held)
+     */
+    private void added() {
+        count++;
+        peakCount = Math.max(peakCount, count);
+        notEmpty.signal();
+    }
+
+    /**
+     * Count a frame taken from a lane, rebuilding the lanes if the queue
+     * just drained after a burst (called with lock held)
+     */
+    private void removed() {
+        count--;
+        if (count == 0) {
+            if (peakCount > RETAINED_SIZE) {
+                chat = new ArrayDeque<>();
+                presence = new LinkedHashMap<>();
+                typing = new LinkedHashMap<>();
+            }
+            peakCount = 0;
+        }
+    }
+
+    private void cancelSample() {
+        sampledFrame = null;
+        sampling.set(false);
+    }
+
+    /**
+     * Wait for the next frame
+     * @return Next frame
+     */
+    @Override
+    public SharedFrame take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                notEmpty.await();
+            }
+            return taken(next());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the next frame without waiting
+     * @return Next frame or null if empty
+     */
+    @Override
+    public SharedFrame poll() {
+        if (count == 0) {
+            return null;
+        }
+
+        lock.lock();
+        try {
+            return taken(next());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait up to the timeout for the next frame
+     * @return Next frame or null on timeout
+     */
+    @Override
+    public SharedFrame poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (remaining <= 0) {
+                    return null;
+                }
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+            return taken(next());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take the frame to write next: CHAT first, with a status frame let
+     * through after every statusEvery CHAT frames (called with lock held)
+     * @return Next frame or null if empty
+     */
+    private SharedFrame next() {
+        boolean statusWaiting = !presence.isEmpty() || !typing.isEmpty();
+
+        if (!chat.isEmpty() && (!statusWaiting || chatStreak < statusEvery)) {
+            chatStreak = statusWaiting ? chatStreak + 1 : 0;
+            SharedFrame frame = chat.pollFirst();
+            removed();
+            notFull.signal();
+            return frame;
+        }
+
+        chatStreak = 0;
+        SharedFrame frame = pollFirst(!presence.isEmpty() ? presence : typing);
+        if (frame != null) {
+            removed();
+        }
+        return frame;
+    }
+
+    private static SharedFrame pollFirst(LinkedHashMap<Integer, SharedFrame> lane) {
+        Iterator<SharedFrame> frames = lane.values().iterator();
+        if (!frames.hasNext()) {
+            return null;
+        }
+        SharedFrame frame = frames.next();
+        frames.remove();
+        return frame;
+    }
+
+    /**
+     * Record the sampled frame's latency once the writer has flushed it
+     */
+    @Override
+    public void onFlushed() {
+        if (!sampleTaken) {
+            return;
+        }
+
+        sampleTaken = false;
+        writeLatency.record((System.nanoTime() - sampleReceivedNanos) / 1000);
+        cancelSample();
+    }
+
+    private SharedFrame taken(SharedFrame frame) {
+        if (frame != null && frame == sampledFrame) {
+            sampleTaken = true;
+        }
+        return frame;
+    }
+
+    /**
+     * Discard all queued frames, releasing them
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            SharedFrame frame;
+            while ((frame = next()) != null) {
+                frame.release();
+            }
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        sampleTaken = false;
+        cancelSample();
+    }
+
+    /**
+     * Get number of frames waiting to be written, in all lanes
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Check if nothing is waiting
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Get maximum number of queued CHAT frames
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get overflow policy
+     */
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Get number of frames discarded because their lane was full
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Get number of status frames replaced by a newer state before being written
+     */
+    public long getSupersededCount() {
+        return supersededCount.get();
+    }
+}
@@ -0,0 +1,48 @@
+package com.birdsenger.server;
+
+import com.birdsenger.util.Log;
+
+/**
+ * What a connection does when its outbound queue is full
+ * DROP - Discard the new frame
+ * DISCONNECT - Drop the slow client
+ * BLOCK - Wait up to the configured timeout for room, then discard
+ */
+public enum OverflowPolicy {
+    DROP("Drop"),
+    DISCONNECT("Disconnect"),
+    BLOCK("Block with timeout");
+
+    private final String displayName;
+
+    OverflowPolicy(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Parse a policy name
+     * @param value Policy name (drop, disconnect, block)
+     * @return Matching policy, DROP if unknown
+     */
+    public static OverflowPolicy parse(String value) {
+        if (value == null || value.isBlank()) {
+            return DROP;
+        }
+
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            Log.warn("⚠️ Unknown overflow policy '" + value + "', using drop");
+            return DROP;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
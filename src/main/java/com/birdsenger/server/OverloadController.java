@@ -0,0 +1,291 @@
+package com.birdsenger.server;
+
+import com.birdsenger.network.Protocol;
+import com.birdsenger.network.ProtocolMessage;
+import com.birdsenger.util.Log;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Admission control: watches load and sheds work before the server falls over
+ *
+ * Every tick three signals are sampled, each as a fraction of its limit:
+ * - lag: how late event loops run a posted task (NIO) and how late this
+ *   thread wakes up (all engines; CPU saturation and GC pauses), counted
+ *   only when it persists over two ticks so a single pause is ignored
+ * - frames waiting in all outbound queues
+ * - heap still in use after the last garbage collection
+ * The highest one is the pressure, which picks an OverloadState. Rising
+ * pressure moves up at once, skipping states if needed; the state only
+ * steps back one level after pressure has stayed clearly below it for
+ * the recovery period, so the server does not flap at a threshold.
+ *
+ * Other components read the state: ClientHandler drops typing indicators,
+ * the presence window is widened here, and the accept loops turn new
+ * connections away with rejectFrame().
+ */
+public class OverloadController implements Runnable {
+    // Pressure must fall below this share of a state's threshold before stepping down
+    private static final double HYSTERESIS = 0.8;
+
+    /**
+     * A task posted to an event loop to see how long it waits
+     */
+    private static final class LagProbe {
+        final EventLoop eventLoop;
+        volatile long postedNanos; // 0 when no probe is outstanding
+        volatile long lagNanos;
+
+        LagProbe(EventLoop eventLoop) {
+            this.eventLoop = eventLoop;
+        }
+    }
+
+    private final long tickMillis;
+    private final long maxLagMillis;
+    private final long maxQueuedFrames;
+    private final double maxHeapFraction;
+    private final long recoverMillis;
+    private final PresenceTable presenceTable;
+    private final long presenceCoalesceMillis;
+    private final long overloadCoalesceMillis;
+    private final LongSupplier queuedFrames;
+    private final ServerMetrics metrics;
+
+    private final List<LagProbe> lagProbes = new CopyOnWriteArrayList<>();
+    private final List<MemoryPoolMXBean> heapPools;
+
+    private volatile OverloadState state = OverloadState.NORMAL;
+    private long calmSinceMillis;
+
+    private long previousLagMillis;
+
+    // Last samples, for the metrics
+    private volatile long lagMillis;
+    private volatile int heapPercent;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * @param config Limits and timings (overload.*)
+     * @param presenceTable Presence state whose coalescing window is widened under load
+     * @param queuedFrames Frames waiting in all outbound queues
+     * @param metrics Receives state transitions
+     */
+    public OverloadController(ServerConfig config, PresenceTable presenceTable, LongSupplier queuedFrames,
+                              ServerMetrics metrics) {
+        this.tickMillis = config.getOverloadTickMillis();
+        this.maxLagMillis = config.getOverloadMaxLagMillis();
+        this.maxQueuedFrames = config.getOverloadMaxQueuedFrames();
+        this.maxHeapFraction = config.getOverloadMaxHeapPercent() / 100.0;
+        this.recoverMillis = config.getOverloadRecoverMillis();
+        this.presenceTable = presenceTable;
+        this.presenceCoalesceMillis = config.getPresenceCoalesceMillis();
+        this.overloadCoalesceMillis = Math.max(presenceCoalesceMillis, config.getOverloadPresenceCoalesceMillis());
+        this.queuedFrames = queuedFrames;
+        this.metrics = metrics;
+        this.heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported())
+                .toList();
+    }
+
+    /**
+     * Start the sampling thread
+     */
+    public void start() {
+        running = true;
+        thread = new Thread(this, "OverloadController");
+        thread.setDaemon(true);
+        thread.start();
+
+        Log.info("🚦 Overload control started (lag " + maxLagMillis + " ms, " + maxQueuedFrames
+                + " queued frames, heap " + Math.round(maxHeapFraction * 100) + "%)");
+    }
+
+    /**
+     * Stop the sampling thread
+     */
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Measure scheduling lag on an event loop
+     * @param eventLoop Loop to probe every tick
+     */
+    public void watch(EventLoop eventLoop) {
+        lagProbes.add(new LagProbe(eventLoop));
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            long sleepStart = System.nanoTime();
+            try {
+                Thread.sleep(tickMillis);
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            long overshootNanos = System.nanoTime() - sleepStart - TimeUnit.MILLISECONDS.toNanos(tickMillis);
+            try {
+                sample(Math.max(0, overshootNanos));
+            } catch (RuntimeException e) {
+                Log.error("❌ Overload sampling failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Take one sample of every signal and move between states
+     * @param overshootNanos How late this thread woke up
+     */
+    private void sample(long overshootNanos) {
+        long currentLagMillis = TimeUnit.NANOSECONDS.toMillis(Math.max(overshootNanos, probeEventLoops()));
+        lagMillis = Math.min(currentLagMillis, previousLagMillis);
+        previousLagMillis = currentLagMillis;
+        long queued = queuedFrames.getAsLong();
+        double heap = heapAfterGc();
+        heapPercent = (int) Math.round(heap * 100);
+
+        double pressure = Math.max((double) lagMillis / maxLagMillis,
+                Math.max((double) queued / maxQueuedFrames, heap / maxHeapFraction));
+        OverloadState target = OverloadState.forPressure(pressure);
+        long now = System.currentTimeMillis();
+
+        if (target.ordinal() > state.ordinal()) {
+            transition(target, queued);
+            calmSinceMillis = 0;
+        } else if (state != OverloadState.NORMAL && pressure < state.getEnterPressure() * HYSTERESIS) {
+            if (calmSinceMillis == 0) {
+                calmSinceMillis = now;
+            }
+            if (now - calmSinceMillis >= recoverMillis) {
+                transition(OverloadState.values()[state.ordinal() - 1], queued);
+                calmSinceMillis = now; // the next step down needs its own calm period
+            }
+        } else {
+            calmSinceMillis = 0;
+        }
+    }
+
+    /**
+     * Post a probe to every loop that answered the last one
+     * @return Longest wait seen, counting probes still outstanding
+     */
+    private long probeEventLoops() {
+        long now = System.nanoTime();
+        long lagNanos = 0;
+
+        for (LagProbe probe : lagProbes) {
+            long posted = probe.postedNanos;
+            if (posted != 0) {
+                lagNanos = Math.max(lagNanos, now - posted); // loop is still busy
+                continue;
+            }
+
+            lagNanos = Math.max(lagNanos, probe.lagNanos);
+            probe.postedNanos = now;
+            probe.eventLoop.execute(() -> {
+                probe.lagNanos = System.nanoTime() - probe.postedNanos;
+                probe.postedNanos = 0;
+            });
+        }
+        return lagNanos;
+    }
+
+    /**
+     * Get the share of the maximum heap still used after the last collection
+     * Live data, unlike the current usage, which includes garbage not yet collected
+     */
+    private double heapAfterGc() {
+        long max = Runtime.getRuntime().maxMemory();
+        if (max <= 0 || max == Long.MAX_VALUE) {
+            return 0;
+        }
+
+        long used = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (usage != null) {
+                used += usage.getUsed();
+            }
+        }
+        return (double) used / max;
+    }
+
+    private void transition(OverloadState next, long queued) {
+        OverloadState previous = state;
+        state = next;
+        metrics.recordOverloadTransition(next);
+
+        boolean coalesce = next.ordinal() >= OverloadState.COALESCE_PRESENCE.ordinal();
+        presenceTable.setCoalesceMillis(coalesce ? overloadCoalesceMillis : presenceCoalesceMillis);
+
+        String detail = " (lag " + lagMillis + " ms, " + queued + " queued frames, heap " + heapPercent + "%)";
+        if (next.ordinal() > previous.ordinal()) {
+            Log.warn("🚦 Overload: " + previous + " -> " + next + detail);
+        } else {
+            Log.info("🚦 Overload easing: " + previous + " -> " + next + detail);
+        }
+    }
+
+    /**
+     * Get the current state
+     */
+    public OverloadState getState() {
+        return state;
+    }
+
+    /**
+     * Check if typing indicators should be dropped
+     */
+    public boolean isSheddingTyping() {
+        return state.ordinal() >= OverloadState.SHED_TYPING.ordinal();
+    }
+
+    /**
+     * Check if new connections should be turned away
+     */
+    public boolean isRejectingConnections() {
+        return state == OverloadState.REJECT_CONNECTIONS;
+    }
+
+    /**
+     * Build the ERROR frame sent to a connection that is turned away
+     * The retry-after hint is spread over one to two recovery periods so
+     * rejected clients do not all come back at the same moment
+     * @return Newline-terminated JSON frame
+     */
+    public byte[] rejectFrame() {
+        long retryAfterMillis = recoverMillis + ThreadLocalRandom.current().nextLong(recoverMillis + 1);
+        return Protocol.encodeTextFrame(new ProtocolMessage.Error(
+                "Server overloaded, retry later", retryAfterMillis, System.currentTimeMillis()).toJson());
+    }
+
+    /**
+     * Get the lag sustained over the last two ticks in milliseconds
+     */
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    /**
+     * Get the heap in use after the last collection, in percent of the maximum
+     */
+    public int getHeapPercent() {
+        return heapPercent;
+    }
+}
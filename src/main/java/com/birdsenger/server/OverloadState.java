@@ -0,0 +1,44 @@
+package com.birdsenger.server;
+
+/**
+ * How hard the server is pushing back, from no shedding to refusing connections
+ * Each state also applies everything the states below it do
+ * NORMAL - All traffic is served
+ * SHED_TYPING - Typing indicators are dropped
+ * COALESCE_PRESENCE - Presence changes are collected over a longer window
+ * REJECT_CONNECTIONS - New connections get an ERROR with a retry-after hint and are closed
+ */
+public enum OverloadState {
+    NORMAL(0.0),
+    SHED_TYPING(0.6),
+    COALESCE_PRESENCE(0.8),
+    REJECT_CONNECTIONS(1.0);
+
+    private final double enterPressure;
+
+    OverloadState(double enterPressure) {
+        this.enterPressure = enterPressure;
+    }
+
+    /**
+     * Get the load, as a fraction of the configured limits, at which this state is entered
+     */
+    public double getEnterPressure() {
+        return enterPressure;
+    }
+
+    /**
+     * Get the state a given load calls for
+     * @param pressure Highest load signal as a fraction of its limit
+     * @return Matching state
+     */
+    public static OverloadState forPressure(double pressure) {
+        OverloadState[] states = values();
+        for (int i = states.length - 1; i > 0; i--) {
+            if (pressure >= states[i].enterPressure) {
+                return states[i];
+            }
+        }
+        return NORMAL;
+    }
+}
@@ -0,0 +1,172 @@
+package com.birdsenger.server;
+
+import com.birdsenger.model.PresenceStatus;
+import com.birdsenger.util.Log;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Batches presence while many users log in at once
+ *
+ * After a server restart every client reconnects within seconds, and each
+ * login would send one PRESENCE frame to every online contact. This class
+ * counts logins per tick; once they exceed the storm rate, published
+ * presence changes are collected instead of sent, and each tick they go
+ * out as a single PRESENCE_BATCH per subscriber (BatchListener). Batching
+ * ends after the login rate has stayed below the storm rate for the hold
+ * time.
+ *
+ * OFFLINE is never batched: it is sent at once and drops any change of
+ * the same user still waiting, so contacts never see a user come back
+ * online after it left. Clients apply a status only if it is newer than
+ * the one they have for that user, since a batch and a single PRESENCE
+ * frame may arrive in either order.
+ */
+public class PresenceBatcher implements Runnable {
+
+    /**
+     * Receives the collected changes once per tick
+     */
+    public interface BatchListener {
+        /**
+         * @param statuses Latest status per user, in the order the users changed
+         * @param timestamp When the batch was taken, epoch millis
+         */
+        void onPresenceBatch(Map<Integer, PresenceStatus> statuses, long timestamp);
+    }
+
+    private final long stormLoginsPerSecond;
+    private final long batchMillis;
+    private final long holdMillis;
+    private final BatchListener listener;
+
+    private final LongAdder logins = new LongAdder();
+
+    // Guarded by this
+    private Map<Integer, PresenceStatus> pending = new LinkedHashMap<>();
+    private volatile boolean batching;
+    private long stormSeenMillis;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * @param config Storm rate and timings (presence.*)
+     * @param listener Delivers each batch
+     */
+    public PresenceBatcher(ServerConfig config, BatchListener listener) {
+        this.stormLoginsPerSecond = config.getPresenceStormLoginsPerSecond();
+        this.batchMillis = config.getPresenceBatchMillis();
+        this.holdMillis = config.getPresenceStormHoldMillis();
+        this.listener = listener;
+    }
+
+    /**
+     * Start the tick thread
+     */
+    public void start() {
+        running = true;
+        thread = new Thread(this, "PresenceBatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop the tick thread; changes still waiting are dropped
+     */
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Count a login towards the storm rate
+     */
+    public void recordLogin() {
+        logins.increment();
+    }
+
+    /**
+     * Check if presence is currently being batched
+     */
+    public boolean isBatching() {
+        return batching;
+    }
+
+    /**
+     * Take a published presence change into the next batch
+     * @param userId User whose status changed
+     * @param status New status
+     * @return true if batched, false if the caller must send it now
+     */
+    public synchronized boolean offer(int userId, PresenceStatus status) {
+        if (status == PresenceStatus.OFFLINE) {
+            pending.remove(userId);
+            return false;
+        }
+        if (!batching) {
+            return false;
+        }
+        pending.remove(userId); // keep the order of the latest change
+        pending.put(userId, status);
+        return true;
+    }
+
+    @Override
+    public void run() {
+        long lastTick = System.currentTimeMillis();
+
+        while (running) {
+            try {
+                Thread.sleep(batchMillis);
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            long now = System.currentTimeMillis();
+            try {
+                tick(now, now - lastTick);
+            } catch (RuntimeException e) {
+                Log.error("❌ Presence batch failed: " + e.getMessage());
+            }
+            lastTick = now;
+        }
+    }
+
+    /**
+     * Decide whether to keep batching, then send what was collected
+     * The batch is stamped when it is taken, so a change sent directly
+     * afterwards always carries a later timestamp and clients can tell
+     * which of the two is current
+     */
+    private void tick(long now, long elapsedMillis) {
+        long loginsPerSecond = logins.sumThenReset() * 1000 / Math.max(1, elapsedMillis);
+        Map<Integer, PresenceStatus> statuses;
+
+        synchronized (this) {
+            if (loginsPerSecond >= stormLoginsPerSecond) {
+                stormSeenMillis = now;
+                if (!batching) {
+                    batching = true;
+                    Log.warn("🌪️ Reconnect storm (" + loginsPerSecond + " logins/s), batching presence every "
+                            + batchMillis + " ms");
+                }
+            } else if (batching && now - stormSeenMillis >= holdMillis) {
+                batching = false;
+                Log.info("🌤️ Reconnect storm over, presence sent per change again");
+            }
+
+            if (pending.isEmpty()) {
+                return;
+            }
+            statuses = pending;
+            pending = new LinkedHashMap<>();
+        }
+
+        listener.onPresenceBatch(statuses, now);
+    }
+}
@@ -0,0 +1,122 @@
+package com.birdsenger.server;
+
+import com.birdsenger.dao.FriendDAO;
+import com.birdsenger.dao.MessageDAO;
+import com.birdsenger.util.Log;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory presence subscriber index
+ * A connected user's contacts are its friends plus everyone it has a
+ * conversation with; presence updates are delivered to contacts only
+ * instead of to every connected client.
+ *
+ * The relation is symmetric, so a user's contact set is also the set of
+ * users subscribed to its presence. Sets are loaded from the database on
+ * connect (off the NIO event loops), dropped on disconnect, and extended when two users start
+ * talking to each other while online.
+ */
+public class PresenceSubscriptions {
+
+    // userId -> contacts, for connected users only
+    private final Map<Integer, Set<Integer>> contactsByUser = new ConcurrentHashMap<>();
+
+    /**
+     * Register a user's contacts when it connects
+     * Connected contacts that did not know about this user yet get it added
+     * @param userId User that connected
+     * @param loaded Contacts from loadContacts
+     * @return The user's contacts
+     */
+    public Set<Integer> subscribe(int userId, Set<Integer> loaded) {
+        Set<Integer> contacts = ConcurrentHashMap.newKeySet();
+        contacts.addAll(loaded);
+        contacts.remove(userId);
+        contactsByUser.put(userId, contacts);
+
+        for (int contactId : contacts) {
+            Set<Integer> reverse = contactsByUser.get(contactId);
+            if (reverse != null) {
+                reverse.add(userId);
+            }
+        }
+
+        if (Log.isDebugEnabled()) {
+            Log.debug("📇 Presence contacts for user " + userId + ": " + contacts.size());
+        }
+        return contacts;
+    }
+
+    /**
+     * Forget a user's contacts when it disconnects
+     * @param userId User that disconnected
+     */
+    public void unsubscribe(int userId) {
+        contactsByUser.remove(userId);
+    }
+
+    /**
+     * Record that two users are now in a conversation
+     * @param userId1 First user
+     * @param userId2 Second user
+     * @return true if either side did not have the other as a contact yet
+     */
+    public boolean link(int userId1, int userId2) {
+        if (userId1 == userId2) {
+            return false;
+        }
+
+        boolean added = false;
+
+        Set<Integer> contacts1 = contactsByUser.get(userId1);
+        if (contacts1 != null) {
+            added |= contacts1.add(userId2);
+        }
+
+        Set<Integer> contacts2 = contactsByUser.get(userId2);
+        if (contacts2 != null) {
+            added |= contacts2.add(userId1);
+        }
+
+        return added;
+    }
+
+    /**
+     * Get users that should receive a user's presence updates
+     * @param userId User whose presence changed
+     * @return Subscriber IDs (empty if the user is not connected)
+     */
+    public Set<Integer> getSubscribers(int userId) {
+        Set<Integer> contacts = contactsByUser.get(userId);
+        return contacts != null ? contacts : Collections.emptySet();
+    }
+
+    /**
+     * Get number of users with a loaded contact set
+     */
+    public int getTrackedUserCount() {
+        return contactsByUser.size();
+    }
+
+    /**
+     * Friends and conversation partners from the database (blocking)
+     * Connection failures leave the set empty; traffic fills it in later
+     * @param userId User that connected
+     * @return Contact IDs
+     */
+    public Set<Integer> loadContacts(int userId) {
+        Set<Integer> contacts = new HashSet<>();
+        try {
+            contacts.addAll(new FriendDAO().getFriendIds(userId));
+            contacts.addAll(new MessageDAO().getConversationPartners(userId));
+        } catch (RuntimeException e) {
+            Log.warn("⚠️ Could not load contacts for user " + userId + ": " + e.getMessage());
+        }
+        return contacts;
+    }
+}
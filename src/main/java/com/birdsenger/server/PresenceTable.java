@@ -0,0 +1,184 @@
+package com.birdsenger.server;
+
+import com.birdsenger.model.PresenceStatus;
+import com.birdsenger.util.Log;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Authoritative per-user presence state on the server
+ *
+ * A PRESENCE frame repeating the current status is a heartbeat: it only
+ * refreshes the user's last-seen time. Real transitions are published after
+ * a coalescing window, and only if the status at the end of the window
+ * differs from what subscribers last saw, so ONLINE -> OFFLINE -> ONLINE
+ * within the window (a quick reconnect) produces no update at all.
+ */
+public class PresenceTable {
+
+    /**
+     * Receives transitions once they leave the coalescing window
+     */
+    public interface PresenceListener {
+        void onPresenceChanged(int userId, PresenceStatus status);
+
+        /**
+         * The user settled OFFLINE and its state was dropped
+         */
+        void onPresenceRemoved(int userId);
+    }
+
+    /**
+     * State of one user
+     */
+    private static class Entry {
+        PresenceStatus status = PresenceStatus.OFFLINE;     // latest reported
+        PresenceStatus published = PresenceStatus.OFFLINE;  // last sent to subscribers
+        volatile long lastSeenMillis;
+        boolean flushScheduled;
+        boolean removed;
+    }
+
+    private final Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+    private volatile long coalesceMillis;
+    private final PresenceListener listener;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param coalesceMillis Window for collapsing flaps, 0 to publish immediately
+     * @param listener Receives published transitions
+     */
+    public PresenceTable(long coalesceMillis, PresenceListener listener) {
+        this.coalesceMillis = coalesceMillis;
+        this.listener = listener;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "PresenceCoalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Record a presence report (connect, PRESENCE frame or disconnect)
+     * @param userId User ID
+     * @param status Reported status
+     * @return true if this was a transition rather than a heartbeat
+     */
+    public boolean update(int userId, PresenceStatus status) {
+        if (status == PresenceStatus.OFFLINE && !entries.containsKey(userId)) {
+            return false; // already offline, nothing to track
+        }
+
+        while (true) {
+            Entry entry = entries.computeIfAbsent(userId, id -> new Entry());
+
+            synchronized (entry) {
+                if (entry.removed) {
+                    continue; // lost a race with a published OFFLINE, retry on a fresh entry
+                }
+
+                entry.lastSeenMillis = System.currentTimeMillis();
+
+                if (entry.status == status) {
+                    return false;
+                }
+                entry.status = status;
+
+                if (coalesceMillis == 0) {
+                    publish(userId, entry);
+                } else if (!entry.flushScheduled) {
+                    entry.flushScheduled = true;
+                    scheduler.schedule(() -> flush(userId, entry), coalesceMillis, TimeUnit.MILLISECONDS);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Change the coalescing window, e.g. widen it while the server is overloaded
+     * Windows already running keep their length
+     * @param coalesceMillis Window for collapsing flaps, 0 to publish immediately
+     */
+    public void setCoalesceMillis(long coalesceMillis) {
+        this.coalesceMillis = coalesceMillis;
+    }
+
+    /**
+     * Get the status subscribers currently see for a user
+     * @param userId User ID
+     * @return Published status, OFFLINE if unknown
+     */
+    public PresenceStatus getPublishedStatus(int userId) {
+        Entry entry = entries.get(userId);
+        if (entry == null) {
+            return PresenceStatus.OFFLINE;
+        }
+        synchronized (entry) {
+            return entry.published;
+        }
+    }
+
+    /**
+     * Get when the user last sent anything presence related
+     * @param userId User ID
+     * @return Epoch millis, 0 if unknown
+     */
+    public long getLastSeenMillis(int userId) {
+        Entry entry = entries.get(userId);
+        return entry != null ? entry.lastSeenMillis : 0;
+    }
+
+    /**
+     * Get number of users with presence state
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Stop the coalescing timer; pending transitions are dropped
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * End of a coalescing window
+     */
+    private void flush(int userId, Entry entry) {
+        try {
+            synchronized (entry) {
+                entry.flushScheduled = false;
+                publish(userId, entry);
+            }
+        } catch (RuntimeException e) {
+            Log.error("❌ Failed to publish presence for user " + userId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Publish the current status if subscribers have not seen it (entry locked)
+     */
+    private void publish(int userId, Entry entry) {
+        boolean changed = entry.status != entry.published;
+        entry.published = entry.status;
+
+        // Offline users leave the table so it only holds live state
+        if (entry.status == PresenceStatus.OFFLINE) {
+            entry.removed = true;
+            entries.remove(userId, entry);
+        }
+
+        if (changed) {
+            listener.onPresenceChanged(userId, entry.status);
+        }
+        if (entry.removed) {
+            listener.onPresenceRemoved(userId);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.birdsenger.server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Token buckets of one connection, checked before a frame is handled
+ *
+ * Each bucket is kept as a single number, the time at which it would be
+ * full again (the generic cell rate algorithm): a frame is allowed if
+ * pushing that time one interval further keeps it within burst intervals
+ * of now. Taking a token is one compare-and-set, with no lock and no
+ * refill timer. Limits are read from the shared RateLimits on every call,
+ * so runtime changes apply at once.
+ */
+public class RateLimiter {
+    private final RateLimits limits;
+
+    // Theoretical time each bucket is full again, in System.nanoTime(); index as in RateLimits
+    private final AtomicLongArray fullAt;
+
+    public RateLimiter(RateLimits limits) {
+        this.limits = limits;
+        this.fullAt = new AtomicLongArray(RateLimits.TYPES.size() + 1);
+        for (int i = 0; i < fullAt.length(); i++) {
+            fullAt.set(i, Long.MIN_VALUE);
+        }
+    }
+
+    /**
+     * Why a frame was refused
+     * @param name Option name of the exhausted limit ("connection", "message", ...)
+     * @param limit That limit
+     * @param waitNanos Time until a frame would be allowed
+     */
+    public record Throttle(String name, RateLimits.Limit limit, long waitNanos) {
+    }
+
+    /**
+     * Take a token for a frame from the bucket of its type and the connection bucket
+     * @param type Message type
+     * @return null if the frame may be handled, otherwise the limit it exceeds
+     */
+    public Throttle acquire(String type) {
+        if (!limits.isEnabled()) {
+            return null;
+        }
+
+        long now = System.nanoTime();
+        int index = RateLimits.indexOf(type);
+        if (index >= 0) {
+            long wait = take(index, now);
+            if (wait > 0) {
+                return new Throttle(RateLimits.nameOf(index), limits.get(index), wait);
+            }
+        }
+
+        int connection = RateLimits.TYPES.size();
+        long wait = take(connection, now);
+        return wait > 0 ? new Throttle(RateLimits.CONNECTION, limits.get(connection), wait) : null;
+    }
+
+    private long take(int index, long now) {
+        RateLimits.Limit limit = limits.get(index);
+        long interval = limit.intervalNanos();
+        if (interval == 0) {
+            return 0;
+        }
+        long tolerance = interval * limit.burst();
+
+        while (true) {
+            long current = fullAt.get(index);
+            long next = Math.max(current, now) + interval;
+            long ahead = next - now;
+            if (ahead > tolerance) {
+                return ahead - tolerance;
+            }
+            if (fullAt.compareAndSet(index, current, next)) {
+                return 0;
+            }
+        }
+    }
+}
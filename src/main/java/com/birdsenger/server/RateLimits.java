@@ -0,0 +1,204 @@
+package com.birdsenger.server;
+
+import com.birdsenger.network.Protocol;
+import com.birdsenger.util.Log;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Inbound rate limits shared by every connection, changeable at runtime
+ *
+ * Each limit is a rate and a burst: a connection may send burst frames at
+ * once, then rate frames per second. One limit covers all frames of a
+ * connection, and the message types below have their own on top. Limits
+ * are named like their option, e.g. --ratelimit.message=100/200 or
+ * --ratelimit.connection=500/1000; a rate of 0 means unlimited.
+ *
+ * The current limits are one immutable snapshot behind a volatile field,
+ * so RateLimiter reads them without locking and a change applies to every
+ * connection from its next frame on.
+ */
+public class RateLimits {
+    public static final String CONNECTION = "connection";
+
+    // Message types with a limit of their own; the order is the bucket index in RateLimiter
+    static final List<String> TYPES = List.of(
+            Protocol.MESSAGE,
+            Protocol.GROUP_MESSAGE,
+            Protocol.GROUP,
+            Protocol.PRESENCE,
+            Protocol.TYPING,
+            Protocol.SYNC,
+            Protocol.STATS
+    );
+
+    /**
+     * A rate limit
+     * @param perSecond Sustained frames per second, 0 = unlimited
+     * @param burst Frames allowed at once
+     */
+    public record Limit(double perSecond, int burst) {
+
+        /**
+         * Nanoseconds one frame uses up, 0 if unlimited
+         */
+        long intervalNanos() {
+            return perSecond > 0 ? Math.max(1, (long) (1_000_000_000L / perSecond)) : 0;
+        }
+
+        /**
+         * Parse "rate/burst" or "rate" (burst = rate)
+         * @throws IllegalArgumentException if the value is malformed
+         */
+        public static Limit parse(String value) {
+            String[] parts = value.trim().split("/", 2);
+            try {
+                double perSecond = Double.parseDouble(parts[0].trim());
+                int burst = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : (int) Math.ceil(perSecond);
+                if (perSecond < 0 || burst < 0) {
+                    throw new IllegalArgumentException("Negative rate limit: " + value);
+                }
+                return new Limit(perSecond, Math.max(1, burst));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid rate limit: " + value);
+            }
+        }
+
+        /**
+         * Describe the limit for people, e.g. "100/s, burst 200"
+         */
+        public String describe() {
+            return perSecond > 0 ? fmt(perSecond) + "/s, burst " + burst : "unlimited";
+        }
+
+        @Override
+        public String toString() {
+            return perSecond > 0 ? fmt(perSecond) + "/" + burst : "0";
+        }
+
+        private static String fmt(double value) {
+            return value == Math.rint(value) ? Long.toString((long) value) : Double.toString(value);
+        }
+    }
+
+    private static final Map<String, Limit> DEFAULTS = defaults();
+
+    private final boolean enabled;
+
+    // Connection limit at index TYPES.size(), message types before it
+    private volatile Limit[] limits;
+
+    /**
+     * @param config Startup options (ratelimit.enabled, ratelimit.&lt;name&gt;)
+     */
+    public RateLimits(ServerConfig config) {
+        this.enabled = config.isRateLimitEnabled();
+
+        Limit[] initial = new Limit[TYPES.size() + 1];
+        for (Map.Entry<String, Limit> entry : DEFAULTS.entrySet()) {
+            Limit limit = entry.getValue();
+            String value = config.getString("ratelimit." + entry.getKey(), null);
+            if (value != null) {
+                try {
+                    limit = Limit.parse(value);
+                } catch (IllegalArgumentException e) {
+                    Log.warn("⚠️ " + e.getMessage() + " for ratelimit." + entry.getKey() + ", using " + limit);
+                }
+            }
+            initial[indexOf(entry.getKey())] = limit;
+        }
+        this.limits = initial;
+    }
+
+    private static Map<String, Limit> defaults() {
+        Map<String, Limit> defaults = new LinkedHashMap<>();
+        defaults.put(CONNECTION, new Limit(500, 1000));
+        defaults.put(Protocol.MESSAGE.toLowerCase(Locale.ROOT), new Limit(100, 200));
+        defaults.put(Protocol.GROUP_MESSAGE.toLowerCase(Locale.ROOT), new Limit(50, 100));
+        defaults.put(Protocol.GROUP.toLowerCase(Locale.ROOT), new Limit(5, 20));
+        defaults.put(Protocol.PRESENCE.toLowerCase(Locale.ROOT), new Limit(10, 20));
+        defaults.put(Protocol.TYPING.toLowerCase(Locale.ROOT), new Limit(20, 40));
+        defaults.put(Protocol.SYNC.toLowerCase(Locale.ROOT), new Limit(10, 20));
+        defaults.put(Protocol.STATS.toLowerCase(Locale.ROOT), new Limit(2, 10));
+        return defaults;
+    }
+
+    /**
+     * Bucket index of a limit name (CONNECTION or a message type, any case)
+     * @return Index, or -1 if the name has no limit
+     */
+    static int indexOf(String name) {
+        if (CONNECTION.equalsIgnoreCase(name)) {
+            return TYPES.size();
+        }
+        for (int i = 0; i < TYPES.size(); i++) {
+            if (TYPES.get(i).equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the option name of a bucket index, e.g. "message"
+     */
+    static String nameOf(int index) {
+        return index == TYPES.size() ? CONNECTION : TYPES.get(index).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Check if limits are enforced at all (--ratelimit.enabled=true)
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Get the limit at a bucket index
+     */
+    Limit get(int index) {
+        return limits[index];
+    }
+
+    /**
+     * Get a limit by name
+     * @param name CONNECTION or a message type
+     * @return Limit, or null if the name has no limit
+     */
+    public Limit get(String name) {
+        int index = indexOf(name);
+        return index >= 0 ? limits[index] : null;
+    }
+
+    /**
+     * Change a limit for every connection
+     * @param name CONNECTION or a message type
+     * @param limit New limit
+     * @throws IllegalArgumentException if the name has no limit
+     */
+    public synchronized void set(String name, Limit limit) {
+        int index = indexOf(name);
+        if (index < 0) {
+            throw new IllegalArgumentException("No rate limit named " + name);
+        }
+
+        Limit[] updated = limits.clone();
+        updated[index] = limit;
+        limits = updated;
+        Log.info("🚰 Rate limit " + name.toLowerCase(Locale.ROOT) + " set to " + limit);
+    }
+
+    /**
+     * Render all limits, one "name=rate/burst" per line, as accepted by set()
+     */
+    public String render() {
+        StringBuilder out = new StringBuilder();
+        for (String name : DEFAULTS.keySet()) {
+            out.append(name).append('=').append(limits[indexOf(name)]).append('\n');
+        }
+        return out.toString();
+    }
+}
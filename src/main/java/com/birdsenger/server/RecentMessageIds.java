@@ -0,0 +1,111 @@
+package com.birdsenger.server;
+
+import com.birdsenger.util.Log;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of recently routed message IDs per sender
+ *
+ * Clients retransmit unacknowledged messages after a reconnect; if the
+ * first copy did reach the server, the retransmit is recognised here and
+ * acknowledged with the original outcome instead of being routed twice.
+ * Each sender keeps its last windowSize IDs, and only the most recently
+ * active maxSenders senders are kept at all.
+ */
+public class RecentMessageIds {
+    private final int windowSize;
+    private final Map<Integer, Map<String, DeliveryStatus>> senders;
+
+    /**
+     * @param windowSize IDs remembered per sender (at least the client's in-flight window)
+     * @param maxSenders Senders remembered before the least recently active is dropped
+     */
+    public RecentMessageIds(int windowSize, int maxSenders) {
+        this.windowSize = windowSize;
+        this.senders = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Map<String, DeliveryStatus>> eldest) {
+                return size() > maxSenders;
+            }
+        };
+    }
+
+    /**
+     * Route a message unless the same ID from the same sender was routed recently
+     * @param senderId Sender
+     * @param messageId Client message ID (null routes unconditionally)
+     * @param route Delivers the message and reports the outcome
+     * @return Outcome of this delivery, or of the original one for a duplicate
+     */
+    public DeliveryStatus deliverOnce(int senderId, String messageId, Supplier<DeliveryStatus> route) {
+        DeliveryStatus previous = claim(senderId, messageId);
+        if (previous != null) {
+            return previous;
+        }
+
+        DeliveryStatus status = route.get();
+        complete(senderId, messageId, status);
+        return status;
+    }
+
+    /**
+     * Reserve a message ID for a delivery that finishes later (see complete)
+     * A duplicate arriving before then is answered QUEUED: the original is
+     * on its way and acknowledged on its own
+     * @param senderId Sender
+     * @param messageId Client message ID (null is never a duplicate)
+     * @return null if the caller should route the message, otherwise the
+     *         outcome to acknowledge the duplicate with
+     */
+    public DeliveryStatus claim(int senderId, String messageId) {
+        if (messageId == null) {
+            return null;
+        }
+
+        Map<String, DeliveryStatus> recent = recentIds(senderId);
+
+        // One sender's frames are handled one at a time, so this lock is rarely contended
+        synchronized (recent) {
+            DeliveryStatus previous = recent.putIfAbsent(messageId, DeliveryStatus.QUEUED);
+            if (previous != null && Log.isDebugEnabled()) {
+                Log.debug("♻️ Duplicate message " + messageId + " from user " + senderId + " - not routed again");
+            }
+            return previous;
+        }
+    }
+
+    /**
+     * Record the outcome of a claimed delivery; a failed one may be retried
+     * @param senderId Sender
+     * @param messageId Client message ID passed to claim
+     * @param status Outcome of the delivery
+     */
+    public void complete(int senderId, String messageId, DeliveryStatus status) {
+        if (messageId == null) {
+            return;
+        }
+
+        Map<String, DeliveryStatus> recent = recentIds(senderId);
+        synchronized (recent) {
+            if (status == DeliveryStatus.FAILED) {
+                recent.remove(messageId);
+            } else {
+                recent.replace(messageId, status);
+            }
+        }
+    }
+
+    private Map<String, DeliveryStatus> recentIds(int senderId) {
+        synchronized (senders) {
+            return senders.computeIfAbsent(senderId, id -> new LinkedHashMap<>(16, 0.75f, false) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, DeliveryStatus> eldest) {
+                    return size() > windowSize;
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,545 @@
+package com.birdsenger.server;
+
+import com.birdsenger.network.Protocol;
+import com.birdsenger.util.Log;
+import com.birdsenger.util.LogLevel;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Startup settings for BirdSengerServer
+ * Every option can be given on the command line as --name=value or as a
+ * system property -Dbirdsenger.name=value (command line wins)
+ */
+public class ServerConfig {
+    private static final String PROPERTY_PREFIX = "birdsenger.";
+
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_FRAME_POOL_BYTES = 16 * 1024 * 1024;
+
+    private final Map<String, String> options;
+
+    private ServerConfig(Map<String, String> options) {
+        this.options = options;
+    }
+
+    /**
+     * Build configuration from command line arguments and system properties
+     * @param args Command line arguments (may be null)
+     * @return Server configuration
+     */
+    public static ServerConfig fromArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+
+        if (args != null) {
+            for (String arg : args) {
+                if (arg.startsWith("--") && arg.contains("=")) {
+                    int separator = arg.indexOf('=');
+                    options.put(arg.substring(2, separator), arg.substring(separator + 1));
+                }
+            }
+        }
+
+        return new ServerConfig(options);
+    }
+
+    /**
+     * Configuration using only system properties and defaults
+     * @return Server configuration
+     */
+    public static ServerConfig defaults() {
+        return fromArgs(null);
+    }
+
+    /**
+     * Connection handling engine (--engine=thread|virtual|nio)
+     */
+    public ServerEngine getEngine() {
+        return ServerEngine.parse(getString("engine", null));
+    }
+
+    /**
+     * Listening port (--port=8080)
+     */
+    public int getPort() {
+        return getInt("port", DEFAULT_PORT);
+    }
+
+    /**
+     * Number of NIO event loops (--nio.threads=N), one per core by default
+     */
+    public int getNioThreads() {
+        return Math.max(1, getInt("nio.threads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Threads running database work for NIO connections off the event loops (--nio.blockingThreads=4)
+     */
+    public int getNioBlockingThreads() {
+        return Math.max(1, getInt("nio.blockingThreads", 4));
+    }
+
+    /**
+     * Threads accepting connections (--accept.threads=N), each on its own
+     * SO_REUSEPORT socket; one per two cores, at most 4, by default.
+     * Where SO_REUSEPORT is unavailable a single acceptor is used
+     */
+    public int getAcceptThreads() {
+        int defaultThreads = Math.min(4, Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        return Math.max(1, getInt("accept.threads", defaultThreads));
+    }
+
+    /**
+     * Connections the kernel holds per listening socket until accepted (--accept.backlog=1024)
+     * The JDK default of 50 makes a connect storm wait on SYN retransmits
+     */
+    public int getAcceptBacklog() {
+        return Math.max(1, getInt("accept.backlog", 1024));
+    }
+
+    /**
+     * Shards of the connected-user registry (--registry.shards=N), rounded
+     * up to a power of two; two per core by default
+     */
+    public int getRegistryShards() {
+        return Math.max(1, getInt("registry.shards", 2 * Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Connected users from which broadcasts to everyone walk the registry
+     * shards in parallel (--registry.parallelThreshold=4096)
+     */
+    public int getRegistryParallelThreshold() {
+        return Math.max(1, getInt("registry.parallelThreshold", 4096));
+    }
+
+    /**
+     * Maximum frames queued per connection (--outbound.capacity=1024)
+     */
+    public int getOutboundCapacity() {
+        return Math.max(1, getInt("outbound.capacity", 1024));
+    }
+
+    /**
+     * What to do when a connection's queue is full (--outbound.overflow=drop|disconnect|block)
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return OverflowPolicy.parse(getString("outbound.overflow", null));
+    }
+
+    /**
+     * How long the BLOCK policy waits for room (--outbound.blockTimeoutMs=100)
+     */
+    public int getOutboundBlockTimeoutMillis() {
+        return Math.max(0, getInt("outbound.blockTimeoutMs", 100));
+    }
+
+    /**
+     * CHAT frames written in a row before a waiting presence or typing
+     * frame is let through (--outbound.statusEvery=8)
+     */
+    public int getOutboundStatusEvery() {
+        return Math.max(1, getInt("outbound.statusEvery", 8));
+    }
+
+    /**
+     * Application write buffer per connection in bytes (--outbound.bufferSize=8192)
+     */
+    public int getOutboundBufferSize() {
+        return Math.max(512, getInt("outbound.bufferSize", 8192));
+    }
+
+    /**
+     * Longest time a written frame may wait for a flush while more frames
+     * keep arriving (--outbound.maxFlushDelayMicros=1000, 0 = flush every frame)
+     */
+    public int getMaxFlushDelayMicros() {
+        return Math.max(0, getInt("outbound.maxFlushDelayMicros", 1000));
+    }
+
+    /**
+     * How long the writer waits for more frames once its queue drains
+     * before flushing (--outbound.lingerMicros=0)
+     */
+    public int getLingerMicros() {
+        return Math.max(0, getInt("outbound.lingerMicros", 0));
+    }
+
+    /**
+     * How long a connection's writer may sit idle before its write buffer
+     * is freed (--outbound.idleReleaseMillis=5000, 0 = keep it)
+     */
+    public int getOutboundIdleReleaseMillis() {
+        return Math.max(0, getInt("outbound.idleReleaseMillis", 5000));
+    }
+
+    /**
+     * Idle bytes of pooled direct buffers kept for broadcast frames
+     * (--broadcast.poolBytes=16777216, 0 = encode fan-out frames into heap arrays)
+     */
+    public int getFramePoolBytes() {
+        return Math.max(0, getInt("broadcast.poolBytes", DEFAULT_FRAME_POOL_BYTES));
+    }
+
+    /**
+     * Disable Nagle's algorithm on client sockets (--tcp.noDelay=true)
+     * Writers already coalesce frames, so Nagle only adds latency
+     */
+    public boolean isTcpNoDelay() {
+        return getBoolean("tcp.noDelay", true);
+    }
+
+    /**
+     * SO_SNDBUF for client sockets (--socket.sendBuffer=N, 0 = OS default)
+     */
+    public int getSocketSendBuffer() {
+        return Math.max(0, getInt("socket.sendBuffer", 0));
+    }
+
+    /**
+     * SO_RCVBUF for client sockets (--socket.receiveBuffer=N, 0 = OS default)
+     */
+    public int getSocketReceiveBuffer() {
+        return Math.max(0, getInt("socket.receiveBuffer", 0));
+    }
+
+    /**
+     * Largest inbound frame accepted before allocation (--frame.maxBytes=1048576)
+     */
+    public int getMaxFrameSize() {
+        return Math.max(1024, getInt("frame.maxBytes", Protocol.DEFAULT_MAX_FRAME_SIZE));
+    }
+
+    /**
+     * Worker threads delivering group messages (--group.fanoutThreads=2)
+     * A group is always served by the same worker, so its messages stay in order
+     */
+    public int getGroupFanoutThreads() {
+        return Math.max(1, getInt("group.fanoutThreads", 2));
+    }
+
+    /**
+     * Group messages waiting per fan-out worker before senders get a failed ACK
+     * (--group.fanoutQueue=4096)
+     */
+    public int getGroupFanoutQueue() {
+        return Math.max(1, getInt("group.fanoutQueue", 4096));
+    }
+
+    /**
+     * Largest allowed group (--group.maxMembers=10000)
+     */
+    public int getGroupMaxMembers() {
+        return Math.max(2, getInt("group.maxMembers", 10_000));
+    }
+
+    /**
+     * Allow clients to negotiate binary frames during AUTH (--protocol.binary=true)
+     */
+    public boolean isBinaryProtocolEnabled() {
+        return getBoolean("protocol.binary", true);
+    }
+
+    /**
+     * Window in which presence flaps are collapsed into one update
+     * (--presence.coalesceMillis=500, 0 publishes every transition immediately)
+     */
+    public int getPresenceCoalesceMillis() {
+        return Math.max(0, getInt("presence.coalesceMillis", 500));
+    }
+
+    /**
+     * Logins per second from which the server treats the connects as a
+     * reconnect storm and batches presence (--presence.stormLoginsPerSecond=500, 0 = never)
+     */
+    public int getPresenceStormLoginsPerSecond() {
+        return Math.max(0, getInt("presence.stormLoginsPerSecond", 500));
+    }
+
+    /**
+     * How long presence changes are collected into one PRESENCE_BATCH per
+     * subscriber during a storm (--presence.batchMillis=250)
+     */
+    public int getPresenceBatchMillis() {
+        return Math.max(10, getInt("presence.batchMillis", 250));
+    }
+
+    /**
+     * How long batching continues after the login rate falls below the
+     * storm threshold (--presence.stormHoldMillis=3000)
+     */
+    public int getPresenceStormHoldMillis() {
+        return Math.max(0, getInt("presence.stormHoldMillis", 3000));
+    }
+
+    /**
+     * Store messages for offline users and deliver them on login (--offline.enabled=true)
+     */
+    public boolean isOfflineQueueEnabled() {
+        return getBoolean("offline.enabled", true);
+    }
+
+    /**
+     * Directory holding the offline message segments (--offline.dir=offline-queue)
+     */
+    public String getOfflineQueueDir() {
+        return getString("offline.dir", "offline-queue");
+    }
+
+    /**
+     * Size at which an offline segment file is rolled (--offline.segmentBytes=4194304)
+     */
+    public int getOfflineSegmentBytes() {
+        return Math.max(4096, getInt("offline.segmentBytes", 4 * 1024 * 1024));
+    }
+
+    /**
+     * Offline messages sent per batch while draining a backlog (--offline.batchSize=256)
+     */
+    public int getOfflineBatchSize() {
+        return Math.max(1, getInt("offline.batchSize", 256));
+    }
+
+    /**
+     * Message IDs remembered per sender to drop retransmits (--dedupe.window=256)
+     * Should be at least the client in-flight window
+     */
+    public int getDedupeWindow() {
+        return Math.max(1, getInt("dedupe.window", 256));
+    }
+
+    /**
+     * Senders whose recent message IDs are remembered (--dedupe.maxSenders=100000)
+     */
+    public int getDedupeMaxSenders() {
+        return Math.max(1, getInt("dedupe.maxSenders", 100_000));
+    }
+
+    /**
+     * Lowest log level written (--log.level=info); per-message lines are debug
+     */
+    public LogLevel getLogLevel() {
+        return LogLevel.parse(getString("log.level", "info"));
+    }
+
+    /**
+     * Include chat message text in log lines (--log.content=true)
+     * Turn off in production to keep message content out of the logs
+     */
+    public boolean isContentLoggingEnabled() {
+        return getBoolean("log.content", true);
+    }
+
+    /**
+     * Stamp messages with conversation sequence numbers and answer SYNC (--sync.enabled=true)
+     */
+    public boolean isSyncEnabled() {
+        return getBoolean("sync.enabled", true);
+    }
+
+    /**
+     * Messages per SYNC_PAGE frame (--sync.pageSize=100)
+     */
+    public int getSyncPageSize() {
+        return Math.max(1, getInt("sync.pageSize", 100));
+    }
+
+    /**
+     * Idle time after which a conversation's sequence counter is dropped from
+     * memory and reloaded from the log on its next message (--sync.sequenceIdleMillis=600000)
+     */
+    public int getSequenceIdleMillis() {
+        return Math.max(1000, getInt("sync.sequenceIdleMillis", 600_000));
+    }
+
+    /**
+     * Enforce per-connection rate limits (--ratelimit.enabled=true)
+     * Limits themselves are --ratelimit.connection=500/1000, --ratelimit.message=100/200, ...
+     * (rate per second / burst, see RateLimits)
+     */
+    public boolean isRateLimitEnabled() {
+        return getBoolean("ratelimit.enabled", true);
+    }
+
+    /**
+     * Answer STATS queries from connected clients (--metrics.stats=true)
+     */
+    public boolean isStatsQueryEnabled() {
+        return getBoolean("metrics.stats", true);
+    }
+
+    /**
+     * Port of the HTTP metrics endpoint (--metrics.port=0, 0 = disabled)
+     */
+    public int getMetricsPort() {
+        return Math.max(0, getInt("metrics.port", 0));
+    }
+
+    /**
+     * Address the HTTP metrics endpoint binds to (--metrics.host=127.0.0.1)
+     * Local only by default; the metrics are not authenticated
+     */
+    public String getMetricsHost() {
+        return getString("metrics.host", "127.0.0.1");
+    }
+
+    /**
+     * Heartbeat intervals a client may miss before it is disconnected
+     * (--idle.missedHeartbeats=3, 0 disables idle detection)
+     */
+    public int getIdleMissedHeartbeats() {
+        return Math.max(0, getInt("idle.missedHeartbeats", 3));
+    }
+
+    /**
+     * Resolution of the idle timer wheel (--idle.tickMillis=1000)
+     */
+    public int getIdleTickMillis() {
+        return Math.max(1, getInt("idle.tickMillis", 1000));
+    }
+
+    /**
+     * Watch load and shed work when the server saturates (--overload.enabled=true)
+     */
+    public boolean isOverloadControlEnabled() {
+        return getBoolean("overload.enabled", true);
+    }
+
+    /**
+     * How often load is sampled (--overload.tickMillis=250)
+     */
+    public int getOverloadTickMillis() {
+        return Math.max(10, getInt("overload.tickMillis", 250));
+    }
+
+    /**
+     * Event loop / scheduling lag at which new connections are rejected (--overload.maxLagMillis=200)
+     */
+    public int getOverloadMaxLagMillis() {
+        return Math.max(1, getInt("overload.maxLagMillis", 200));
+    }
+
+    /**
+     * Frames queued in all outbound queues at which new connections are
+     * rejected (--overload.maxQueuedFrames=500000)
+     */
+    public int getOverloadMaxQueuedFrames() {
+        return Math.max(1, getInt("overload.maxQueuedFrames", 500_000));
+    }
+
+    /**
+     * Heap still in use after garbage collection, in percent of the maximum,
+     * at which new connections are rejected (--overload.maxHeapPercent=90)
+     */
+    public int getOverloadMaxHeapPercent() {
+        return Math.max(1, Math.min(100, getInt("overload.maxHeapPercent", 90)));
+    }
+
+    /**
+     * How long load must stay low before stepping back one overload state
+     * (--overload.recoverMillis=2000); also the base of the retry-after hint
+     */
+    public int getOverloadRecoverMillis() {
+        return Math.max(0, getInt("overload.recoverMillis", 2000));
+    }
+
+    /**
+     * Presence coalescing window while presence is being coalesced under
+     * overload (--overload.presenceCoalesceMillis=5000)
+     */
+    public int getOverloadPresenceCoalesceMillis() {
+        return Math.max(0, getInt("overload.presenceCoalesceMillis", 5000));
+    }
+
+    /**
+     * Cluster members as id@host:port, comma separated, this node included
+     * (--cluster.nodes=1@127.0.0.1:9101,2@127.0.0.1:9102); empty runs a single server
+     */
+    public String getClusterNodes() {
+        return getString("cluster.nodes", "");
+    }
+
+    /**
+     * This server's ID in cluster.nodes (--cluster.nodeId=1)
+     */
+    public int getClusterNodeId() {
+        return getInt("cluster.nodeId", 1);
+    }
+
+    /**
+     * Secret shared by all cluster nodes, proving a link comes from one of them
+     * (--cluster.secret=...); empty accepts any link from a listed node's address
+     */
+    public String getClusterSecret() {
+        return getString("cluster.secret", "");
+    }
+
+    /**
+     * Frames waiting on one inter-node link before forwarding to that node fails
+     * (--cluster.linkQueue=65536)
+     */
+    public int getClusterLinkQueue() {
+        return Math.max(1, getInt("cluster.linkQueue", 65_536));
+    }
+
+    /**
+     * How long a link writer waits for more frames before writing a batch
+     * (--cluster.lingerMicros=200)
+     */
+    public int getClusterLingerMicros() {
+        return Math.max(0, getInt("cluster.lingerMicros", 200));
+    }
+
+    /**
+     * Delay between attempts to reopen a lost inter-node link (--cluster.reconnectMillis=1000)
+     */
+    public int getClusterReconnectMillis() {
+        return Math.max(10, getInt("cluster.reconnectMillis", 1000));
+    }
+
+    /**
+     * Look up a raw option value
+     * @param name Option name without prefix
+     * @param defaultValue Value used when the option is not set
+     * @return Option value
+     */
+    public String getString(String name, String defaultValue) {
+        String value = options.get(name);
+        if (value == null) {
+            value = System.getProperty(PROPERTY_PREFIX + name);
+        }
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * Look up an integer option
+     * @param name Option name without prefix
+     * @param defaultValue Value used when the option is missing or invalid
+     * @return Option value
+     */
+    public int getInt(String name, int defaultValue) {
+        String value = getString(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            Log.warn("⚠️ Invalid value for " + name + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Look up a boolean option
+     * @param name Option name without prefix
+     * @param defaultValue Value used when the option is not set
+     * @return Option value
+     */
+    public boolean getBoolean(String name, boolean defaultValue) {
+        String value = getString(name, null);
+        return value != null ? Boolean.parseBoolean(value.trim()) : defaultValue;
+    }
+}
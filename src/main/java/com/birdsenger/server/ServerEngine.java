@@ -0,0 +1,51 @@
+package com.birdsenger.server;
+
+import com.birdsenger.util.Log;
+
+/**
+ * Connection handling engines supported by the server
+ * THREAD_PER_CONNECTION - One blocking platform thread per client (original engine)
+ * VIRTUAL_THREADS - One blocking virtual thread per client
+ * NIO - Selector based event loops, one per core, with non-blocking I/O
+ */
+public enum ServerEngine {
+    THREAD_PER_CONNECTION("Thread per connection"),
+    VIRTUAL_THREADS("Virtual thread per connection"),
+    NIO("NIO event loops");
+
+    private final String displayName;
+
+    ServerEngine(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Parse an engine name, accepting short aliases
+     * @param value Engine name (thread, virtual, nio)
+     * @return Matching engine, THREAD_PER_CONNECTION if unknown
+     */
+    public static ServerEngine parse(String value) {
+        if (value == null || value.isBlank()) {
+            return THREAD_PER_CONNECTION;
+        }
+
+        return switch (value.trim().toLowerCase()) {
+            case "nio" -> NIO;
+            case "virtual", "virtual_threads" -> VIRTUAL_THREADS;
+            case "thread", "thread_per_connection" -> THREAD_PER_CONNECTION;
+            default -> {
+                Log.warn("⚠️ Unknown server engine '" + value + "', using thread per connection");
+                yield THREAD_PER_CONNECTION;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
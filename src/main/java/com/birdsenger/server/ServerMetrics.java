@@ -0,0 +1,330 @@
+package com.birdsenger.server;
+
+import com.birdsenger.network.ProtocolMessage;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters and histograms describing what the server is doing
+ *
+ * Everything recorded on the message path is a LongAdder or a Histogram,
+ * so connection threads bump their own cells instead of fighting over one
+ * counter. Gauges (queue depths, connected users, ...) are read from the
+ * live state only when the metrics are rendered.
+ *
+ * render() produces the Prometheus text format, served by MetricsHttpServer
+ * and returned in answer to a STATS message. Rates are derived by the
+ * scraper from the _total counters.
+ */
+public class ServerMetrics {
+    private static final String PREFIX = "birdsenger_";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    // Inbound messages by Protocol type; unknown types share one counter
+    private final Map<String, LongAdder> messagesReceived = new ConcurrentHashMap<>();
+    private final LongAdder invalidFrames = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder framesSent = new LongAdder();
+    private final LongAdder framesDropped = new LongAdder();
+    private final LongAdder framesSuperseded = new LongAdder();
+    private final LongAdder typingShed = new LongAdder();
+    // Frames refused by a rate limit, by limit name
+    private final Map<String, LongAdder> rateLimited = new ConcurrentHashMap<>();
+    private final LongAdder connectionsRejected = new LongAdder();
+    private final Map<OverloadState, LongAdder> overloadTransitions = new EnumMap<>(OverloadState.class);
+
+    // PRESENCE_BATCH frames sent during reconnect storms, and the user statuses they carried
+    private final LongAdder presenceBatches = new LongAdder();
+    private final LongAdder presenceBatchedStatuses = new LongAdder();
+
+    // Recipients handed to / received from other cluster nodes
+    private final LongAdder clusterForwarded = new LongAdder();
+    private final LongAdder clusterReceived = new LongAdder();
+    private final LongAdder clusterForwardFailures = new LongAdder();
+
+    // Connection churn
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder connectionsClosed = new LongAdder();
+    private final LongAdder logins = new LongAdder();
+
+    // Frame received -> frame written to the recipient's socket, in microseconds
+    private final Histogram routeLatency = new Histogram();
+
+    // Recipients of each presence broadcast
+    private final Histogram presenceFanout = new Histogram();
+
+    // Members reached (delivered or queued) by each group message
+    private final Histogram groupFanout = new Histogram();
+
+    private final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+    private final long startMillis = System.currentTimeMillis();
+
+    private record Gauge(String help, LongSupplier value) {
+    }
+
+    public ServerMetrics() {
+        // Filled once, so recording never writes to the map
+        for (OverloadState state : OverloadState.values()) {
+            overloadTransitions.put(state, new LongAdder());
+        }
+    }
+
+    /**
+     * Count an inbound message
+     * @param message Decoded message, null if the frame was malformed
+     * @param frameBytes Size of the frame on the wire
+     */
+    public void recordReceived(ProtocolMessage message, int frameBytes) {
+        bytesReceived.add(frameBytes);
+
+        if (message == null || message.type() == null) {
+            invalidFrames.increment();
+            return;
+        }
+
+        String type = message instanceof ProtocolMessage.Other ? "OTHER" : message.type();
+        LongAdder counter = messagesReceived.get(type);
+        if (counter == null) {
+            counter = messagesReceived.computeIfAbsent(type, t -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    /**
+     * Count a frame accepted by a connection's outbound queue
+     * @param frameBytes Size of the frame on the wire
+     */
+    public void recordSent(int frameBytes) {
+        framesSent.increment();
+        bytesSent.add(frameBytes);
+    }
+
+    /**
+     * Count a frame discarded because a connection's outbound queue was full
+     */
+    public void recordDropped() {
+        framesDropped.increment();
+    }
+
+    /**
+     * Record the number of recipients of a presence broadcast
+     */
+    public void recordPresenceFanout(int recipients) {
+        presenceFanout.record(recipients);
+    }
+
+    /**
+     * Count a PRESENCE_BATCH frame queued for one subscriber
+     * @param statuses User statuses it carries
+     */
+    public void recordPresenceBatch(int statuses) {
+        presenceBatches.increment();
+        presenceBatchedStatuses.add(statuses);
+    }
+
+    /**
+     * Record the number of members a group message reached
+     */
+    public void recordGroupFanout(int recipients) {
+        groupFanout.record(recipients);
+    }
+
+    public void connectionOpened() {
+        connectionsOpened.increment();
+    }
+
+    public void connectionClosed() {
+        connectionsClosed.increment();
+    }
+
+    public void loginCompleted() {
+        logins.increment();
+    }
+
+    /**
+     * Count a frame refused by a rate limit
+     * @param limit Name of the exhausted limit (connection or a message type)
+     */
+    public void recordRateLimited(String limit) {
+        LongAdder counter = rateLimited.get(limit);
+        if (counter == null) {
+            counter = rateLimited.computeIfAbsent(limit, l -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    /**
+     * Count a typing indicator dropped under overload
+     */
+    public void recordTypingShed() {
+        typingShed.increment();
+    }
+
+    /**
+     * Count a connection turned away under overload
+     */
+    public void recordConnectionRejected() {
+        connectionsRejected.increment();
+    }
+
+    /**
+     * Count a move into an overload state
+     * @param state State entered
+     */
+    public void recordOverloadTransition(OverloadState state) {
+        overloadTransitions.get(state).increment();
+    }
+
+    /**
+     * Count recipients whose frame was handed to another cluster node
+     */
+    public void recordClusterForwarded(int recipients) {
+        clusterForwarded.add(recipients);
+    }
+
+    /**
+     * Count recipients of a frame forwarded here by another cluster node
+     */
+    public void recordClusterReceived(int recipients) {
+        clusterReceived.add(recipients);
+    }
+
+    /**
+     * Count a frame that could not be forwarded because its node's link was down or full
+     */
+    public void recordClusterForwardFailed() {
+        clusterForwardFailures.increment();
+    }
+
+    /**
+     * Get the counter of presence/typing frames replaced in a queue by a newer state
+     */
+    public LongAdder getFramesSuperseded() {
+        return framesSuperseded;
+    }
+
+    /**
+     * Get the receive-to-write latency histogram (microseconds)
+     */
+    public Histogram getRouteLatency() {
+        return routeLatency;
+    }
+
+    /**
+     * Get the presence broadcast fan-out histogram
+     */
+    public Histogram getPresenceFanout() {
+        return presenceFanout;
+    }
+
+    /**
+     * Get number of connections currently open (authenticated or not)
+     */
+    public long getOpenConnections() {
+        return connectionsOpened.sum() - connectionsClosed.sum();
+    }
+
+    /**
+     * Publish a value that is read from live state when rendering
+     * @param name Metric name without prefix
+     * @param help One-line description
+     * @param value Reads the current value
+     */
+    public void registerGauge(String name, String help, LongSupplier value) {
+        gauges.put(name, new Gauge(help, value));
+    }
+
+    /**
+     * Render every metric in the Prometheus text format
+     * @return Metrics text
+     */
+    public String render() {
+        StringBuilder out = new StringBuilder(4096);
+
+        header(out, "uptime_seconds", "Seconds since the server started", "gauge");
+        line(out, "uptime_seconds", "", (System.currentTimeMillis() - startMillis) / 1000);
+
+        header(out, "messages_received_total", "Inbound messages by protocol type", "counter");
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(messagesReceived).entrySet()) {
+            line(out, "messages_received_total", "{type=\"" + entry.getKey() + "\"}", entry.getValue().sum());
+        }
+        counter(out, "invalid_frames_total", "Inbound frames that could not be decoded", invalidFrames);
+        counter(out, "bytes_received_total", "Inbound frame bytes", bytesReceived);
+        counter(out, "frames_sent_total", "Frames queued for sending", framesSent);
+        counter(out, "bytes_sent_total", "Bytes of frames queued for sending", bytesSent);
+        counter(out, "frames_dropped_total", "Frames dropped because an outbound queue was full", framesDropped);
+        counter(out, "frames_superseded_total", "Presence and typing frames replaced by a newer state before sending",
+                framesSuperseded);
+
+        counter(out, "connections_opened_total", "Connections accepted", connectionsOpened);
+        counter(out, "connections_closed_total", "Connections closed", connectionsClosed);
+        counter(out, "logins_total", "Successful AUTH logins", logins);
+        counter(out, "connections_rejected_total", "Connections turned away under overload", connectionsRejected);
+        counter(out, "typing_shed_total", "Typing indicators dropped under overload", typingShed);
+
+        header(out, "rate_limited_total", "Inbound frames refused by a rate limit", "counter");
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(rateLimited).entrySet()) {
+            line(out, "rate_limited_total", "{limit=\"" + entry.getKey() + "\"}", entry.getValue().sum());
+        }
+
+        header(out, "overload_transitions_total", "Moves into each overload state", "counter");
+        for (Map.Entry<OverloadState, LongAdder> entry : overloadTransitions.entrySet()) {
+            line(out, "overload_transitions_total", "{state=\"" + entry.getKey() + "\"}", entry.getValue().sum());
+        }
+        counter(out, "presence_batches_total", "PRESENCE_BATCH frames sent while batching presence", presenceBatches);
+        counter(out, "presence_batched_statuses_total", "User statuses delivered inside PRESENCE_BATCH frames",
+                presenceBatchedStatuses);
+        counter(out, "cluster_forwarded_total", "Recipients whose frame was forwarded to another node", clusterForwarded);
+        counter(out, "cluster_received_total", "Recipients of frames forwarded by other nodes", clusterReceived);
+        counter(out, "cluster_forward_failures_total", "Frames not forwarded because a node link was down or full",
+                clusterForwardFailures);
+
+        header(out, "connections_open", "Connections currently open", "gauge");
+        line(out, "connections_open", "", getOpenConnections());
+
+        for (Map.Entry<String, Gauge> entry : new TreeMap<>(gauges).entrySet()) {
+            header(out, entry.getKey(), entry.getValue().help(), "gauge");
+            line(out, entry.getKey(), "", entry.getValue().value().getAsLong());
+        }
+
+        summary(out, "route_latency_micros",
+                "Sampled time from receiving a frame to writing it to the recipient socket", routeLatency.snapshot());
+        summary(out, "presence_fanout", "Recipients per presence broadcast", presenceFanout.snapshot());
+        summary(out, "group_fanout", "Members reached per group message", groupFanout.snapshot());
+
+        return out.toString();
+    }
+
+    /**
+     * Render a histogram as a summary with fixed quantiles
+     */
+    static void summary(StringBuilder out, String name, String help, Histogram.Snapshot snapshot) {
+        header(out, name, help, "summary");
+        for (double quantile : QUANTILES) {
+            line(out, name, "{quantile=\"" + quantile + "\"}", snapshot.percentile(quantile));
+        }
+        line(out, name + "_max", "", snapshot.max());
+        line(out, name + "_sum", "", snapshot.sum());
+        line(out, name + "_count", "", snapshot.count());
+    }
+
+    private static void counter(StringBuilder out, String name, String help, LongAdder counter) {
+        header(out, name, help, "counter");
+        line(out, name, "", counter.sum());
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void line(StringBuilder out, String name, String labels, long value) {
+        out.append(PREFIX).append(name).append(labels).append(' ').append(value).append('\n');
+    }
+}
@@ -1,14 +1,16 @@
 package com.birdsenger.server;
 
 import com.birdsenger.server.BirdSengerServer;
+import com.birdsenger.util.Log;
 
 public class ServerRunner {
     public static void main(String[] args) {
-        BirdSengerServer server = new BirdSengerServer();
+        BirdSengerServer server = new BirdSengerServer(ServerConfig.fromArgs(args));
 
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            System.out.println("\n🛑 Shutting down server...");
+            Log.info("\n🛑 Shutting down server...");
             server.stop();
+            Log.flush();
         }));
 
         server.start();
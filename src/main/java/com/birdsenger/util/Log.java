@@ -0,0 +1,195 @@
+package com.birdsenger.util;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous console logging
+ *
+ * Callers only put the line into a lock-free ring (LogRing); a background
+ * thread drains it and writes each batch to stdout/stderr in one call, so
+ * connection threads never queue up on the synchronized PrintStream. When
+ * the ring is full lines are dropped and counted rather than slowing the
+ * caller down. An idle drainer sleeps until the next line wakes it, so a
+ * quiet process has no logging wakeups at all.
+ *
+ * Settings (system properties, the server also takes them as --log.*):
+ *   birdsenger.log.level=info      lowest level written (debug, info, warn, error)
+ *   birdsenger.log.content=true    include chat message text in log lines
+ *   birdsenger.log.bufferSize=16384 lines the ring holds
+ *
+ * Per-message lines are DEBUG; build them inside isDebugEnabled() so a
+ * disabled level costs no string concatenation.
+ */
+public final class Log {
+    private static final int MAX_BATCH_LINES = 1024;
+
+    private static final LogRing ring = new LogRing(Integer.getInteger("birdsenger.log.bufferSize", 16384));
+    private static final LongAdder dropped = new LongAdder();
+
+    private static volatile LogLevel level = LogLevel.parse(System.getProperty("birdsenger.log.level"));
+    private static volatile boolean logContent = !"false".equals(System.getProperty("birdsenger.log.content"));
+
+    // Consumer side state, guarded by the class lock
+    private static final StringBuilder outBatch = new StringBuilder(8192);
+    private static final StringBuilder errBatch = new StringBuilder(1024);
+    private static long droppedReported;
+
+    // Set while the drainer is (about to be) parked; loggers only unpark it then
+    private static volatile boolean drainerParked;
+    private static final Thread drainer = new Thread(Log::drainLoop, "Log");
+
+    static {
+        drainer.setDaemon(true);
+        drainer.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::flush, "Log-Flush"));
+    }
+
+    private Log() {
+    }
+
+    /**
+     * Change the level and content logging at runtime
+     * @param newLevel Lowest level written
+     * @param includeContent Whether message text may appear in log lines
+     */
+    public static void configure(LogLevel newLevel, boolean includeContent) {
+        level = newLevel;
+        logContent = includeContent;
+    }
+
+    /**
+     * Get the lowest level written
+     */
+    public static LogLevel getLevel() {
+        return level;
+    }
+
+    /**
+     * Check if DEBUG lines are written
+     */
+    public static boolean isDebugEnabled() {
+        return level == LogLevel.DEBUG;
+    }
+
+    /**
+     * Message text for a log line, or just its length when content logging is off
+     * @param content Chat message text
+     * @return Text to log
+     */
+    public static String content(String content) {
+        if (logContent || content == null) {
+            return content;
+        }
+        return "[" + content.length() + " chars]";
+    }
+
+    public static void debug(String message) {
+        log(LogLevel.DEBUG, message);
+    }
+
+    public static void info(String message) {
+        log(LogLevel.INFO, message);
+    }
+
+    public static void warn(String message) {
+        log(LogLevel.WARN, message);
+    }
+
+    public static void error(String message) {
+        log(LogLevel.ERROR, message);
+    }
+
+    /**
+     * Log an error with its stack trace
+     * @param message What failed
+     * @param error Cause
+     */
+    public static void error(String message, Throwable error) {
+        StringWriter trace = new StringWriter();
+        error.printStackTrace(new PrintWriter(trace));
+        log(LogLevel.ERROR, message + System.lineSeparator() + trace.toString().stripTrailing());
+    }
+
+    /**
+     * Get number of lines dropped because the ring was full
+     */
+    public static long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Write out everything logged so far (e.g. before exiting)
+     */
+    public static void flush() {
+        while (drain()) {
+            // keep going until the ring is empty
+        }
+    }
+
+    private static void log(LogLevel lineLevel, String message) {
+        if (lineLevel.compareTo(level) < 0) {
+            return;
+        }
+        if (!ring.offer(lineLevel, message)) {
+            dropped.increment();
+        }
+        if (drainerParked) {
+            LockSupport.unpark(drainer);
+        }
+    }
+
+    private static void drainLoop() {
+        while (true) {
+            if (drain()) {
+                continue;
+            }
+            // Announce the park first, then look once more: a line offered in
+            // between is either seen here or its logger sees the flag and unparks
+            drainerParked = true;
+            if (!drain()) {
+                LockSupport.park();
+            }
+            drainerParked = false;
+        }
+    }
+
+    /**
+     * Move up to one batch of lines from the ring to the console
+     * @return true if anything was written
+     */
+    private static synchronized boolean drain() {
+        int lines = 0;
+        while (lines < MAX_BATCH_LINES && ring.poll(Log::append)) {
+            lines++;
+        }
+        boolean any = lines > 0;
+
+        long droppedTotal = dropped.sum();
+        if (droppedTotal != droppedReported) {
+            errBatch.append("⚠️ Log buffer full - ").append(droppedTotal - droppedReported).append(" lines dropped\n");
+            droppedReported = droppedTotal;
+            any = true;
+        }
+
+        if (outBatch.length() > 0) {
+            System.out.print(outBatch);
+            System.out.flush();
+            outBatch.setLength(0);
+        }
+        if (errBatch.length() > 0) {
+            System.err.print(errBatch);
+            System.err.flush();
+            errBatch.setLength(0);
+        }
+        return any;
+    }
+
+    private static void append(LogLevel lineLevel, String message) {
+        StringBuilder batch = lineLevel.compareTo(LogLevel.WARN) >= 0 ? errBatch : outBatch;
+        batch.append(message).append('\n');
+    }
+}
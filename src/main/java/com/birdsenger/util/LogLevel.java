@@ -0,0 +1,48 @@
+package com.birdsenger.util;
+
+/**
+ * Severity of a log line, lowest first
+ * DEBUG - Per-message tracing (routing, frames, content)
+ * INFO - Connections, logins, state changes
+ * WARN - Recoverable problems
+ * ERROR - Failures
+ */
+public enum LogLevel {
+    DEBUG("Debug"),
+    INFO("Info"),
+    WARN("Warning"),
+    ERROR("Error");
+
+    private final String displayName;
+
+    LogLevel(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Parse a level name
+     * @param value Level name (debug, info, warn, error)
+     * @return Matching level, INFO if unknown
+     */
+    public static LogLevel parse(String value) {
+        if (value == null || value.isBlank()) {
+            return INFO;
+        }
+
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("⚠️ Unknown log level '" + value + "', using info");
+            return INFO;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
@@ -0,0 +1,91 @@
+package com.birdsenger.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free ring of log lines: many producers, one consumer
+ *
+ * Each slot carries a sequence number telling whose turn it is. A producer
+ * claims a position with one CAS on the tail, fills the slot and publishes
+ * it by advancing the slot's sequence; the consumer reads a slot once its
+ * sequence says it is published and hands it back one lap later. A full
+ * ring rejects the line instead of making the producer wait.
+ */
+final class LogRing {
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final LogLevel[] levels;
+    private final String[] messages;
+
+    private final AtomicLong tail = new AtomicLong();
+    private long head; // consumer only
+
+    /**
+     * @param capacity Number of slots (rounded up to a power of two)
+     */
+    LogRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        this.levels = new LogLevel[size];
+        this.messages = new String[size];
+
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Add a line (any thread)
+     * @return false if the ring is full
+     */
+    boolean offer(LogLevel level, String message) {
+        long position = tail.get();
+
+        while (true) {
+            int index = (int) (position & mask);
+            long turn = sequences.getAcquire(index) - position;
+
+            if (turn == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    levels[index] = level;
+                    messages[index] = message;
+                    sequences.setRelease(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (turn < 0) {
+                return false; // consumer is a full lap behind
+            } else {
+                position = tail.get(); // another producer took this slot
+            }
+        }
+    }
+
+    /**
+     * Take the oldest line (consumer only)
+     * @param sink Receives the line
+     * @return false if no line is ready
+     */
+    boolean poll(LineSink sink) {
+        int index = (int) (head & mask);
+        if (sequences.getAcquire(index) != head + 1) {
+            return false;
+        }
+
+        sink.accept(levels[index], messages[index]);
+        levels[index] = null;
+        messages[index] = null;
+        sequences.setRelease(index, head + mask + 1);
+        head++;
+        return true;
+    }
+
+    /**
+     * Receiver of drained lines
+     */
+    interface LineSink {
+        void accept(LogLevel level, String message);
+    }
+}